@@ -121,6 +121,55 @@ public class EulerIntegrator implements Integrator {
 		return new TimeSeriesImpl(times, values, units);
 	}
 
+	/**
+	 * Integrates a linear system with input that is constant over the given interval, in the 
+	 * same way as integrate(...), but updates the given state in place and doesn't create any 
+	 * objects. Only the output at the end of the interval is returned.
+	 *
+	 * @param A Dynamics matrix
+	 * @param B Input matrix
+	 * @param C Output matrix
+	 * @param D Passthrough matrix
+	 * @param x State vector (updated in place)
+	 * @param u Input vector, constant over the interval
+	 * @param startTime Start of the interval
+	 * @param endTime End of the interval
+	 * @param dxdt Buffer with the same length as x
+	 * @param y Buffer into which the output at endTime is written
+	 */
+	public void integrateInPlace(float[][] A, float[][] B, float[][] C, float[][] D, float[] x, float[] u,
+			float startTime, float endTime, float[] dxdt, float[] y) {
+		float timespan = endTime - startTime;
+		int steps = (int) Math.ceil(timespan*SHRINK / h);
+
+		float t = startTime;
+		for (int i = 1; i <= steps; i++) {
+			float dt = (i < steps) ? h : (endTime - t);
+			t = t + dt;
+
+			multiplyAdd(A, x, B, u, dxdt);
+			for (int j = 0; j < x.length; j++) {
+				x[j] = x[j] + dxdt[j] * dt;
+			}
+		}
+
+		multiplyAdd(C, x, D, u, y);
+	}
+
+	//result = A1*x1 + A2*x2
+	private static void multiplyAdd(float[][] A1, float[] x1, float[][] A2, float[] x2, float[] result) {
+		for (int i = 0; i < result.length; i++) {
+			float sum = 0;
+			for (int j = 0; j < x1.length; j++) {
+				sum += A1[i][j] * x1[j];
+			}
+			for (int j = 0; j < x2.length; j++) {
+				sum += A2[i][j] * x2[j];
+			}
+			result[i] = sum;
+		}
+	}
+
 	@Override
 	public Integrator clone() throws CloneNotSupportedException {
 		return (Integrator) super.clone();
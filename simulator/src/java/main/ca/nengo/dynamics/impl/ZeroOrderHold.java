@@ -0,0 +1,167 @@
+package ca.nengo.dynamics.impl;
+
+/**
+ * Exact discretization of a single-input single-output LTI system over a fixed time step,
+ * assuming that the input is constant over each step (zero-order hold).
+ *
+ * If x' = Ax + Bu and y = Cx + Du, then over a step of length dt with constant u,
+ * x(t+dt) = Ad x(t) + Bd u, where Ad = e^(A dt) and Bd = (integral from 0 to dt of e^(As) ds) B.
+ * Ad and Bd are found together as blocks of the exponential of [A B; 0 0] dt, which doesn't
+ * require A to be invertible.
+ */
+public class ZeroOrderHold {
+
+	private float myStep;
+	private float[][] myA;
+	private float[] myB;
+	private float[] myC;
+	private float myD;
+
+	/**
+	 * @param system A single-input single-output LTI system
+	 * @param step Length of the time step
+	 */
+	public ZeroOrderHold(LTISystem system, float step) {
+		if (system.getInputDimension() != 1 || system.getOutputDimension() != 1) {
+			throw new IllegalArgumentException("System must be single-input single-output");
+		}
+
+		float[][] A = system.getA(0);
+		float[][] B = system.getB(0);
+		int n = A.length;
+
+		double[][] augmented = new double[n+1][n+1];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				augmented[i][j] = A[i][j] * (double) step;
+			}
+			augmented[i][n] = B[i][0] * (double) step;
+		}
+		double[][] exp = exp(augmented);
+
+		myStep = step;
+		myA = new float[n][n];
+		myB = new float[n];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				myA[i][j] = (float) exp[i][j];
+			}
+			myB[i] = (float) exp[i][n];
+		}
+		myC = system.getC(0)[0];
+		myD = system.getD(0)[0][0];
+	}
+
+	/**
+	 * @return Length of the time step
+	 */
+	public float getStep() {
+		return myStep;
+	}
+
+	/**
+	 * @return Discrete dynamics matrix Ad
+	 */
+	public float[][] getA() {
+		return myA;
+	}
+
+	/**
+	 * @return Discrete input vector Bd
+	 */
+	public float[] getB() {
+		return myB;
+	}
+
+	/**
+	 * Advances the state by one step.
+	 *
+	 * @param x State at the start of the step (updated in place to the state at the end)
+	 * @param u Input over the step
+	 * @param buffer Scratch array with the same length as x (may be null for 1st and 2nd order systems)
+	 * @return Output at the end of the step
+	 */
+	public float step(float[] x, float u, float[] buffer) {
+		if (x.length == 1) {
+			x[0] = myA[0][0] * x[0] + myB[0] * u;
+			return myC[0] * x[0] + myD * u;
+		} else if (x.length == 2) {
+			float x0 = myA[0][0] * x[0] + myA[0][1] * x[1] + myB[0] * u;
+			float x1 = myA[1][0] * x[0] + myA[1][1] * x[1] + myB[1] * u;
+			x[0] = x0;
+			x[1] = x1;
+			return myC[0] * x0 + myC[1] * x1 + myD * u;
+		} else {
+			for (int i = 0; i < x.length; i++) {
+				float sum = myB[i] * u;
+				for (int j = 0; j < x.length; j++) {
+					sum += myA[i][j] * x[j];
+				}
+				buffer[i] = sum;
+			}
+			float y = myD * u;
+			for (int i = 0; i < x.length; i++) {
+				x[i] = buffer[i];
+				y += myC[i] * x[i];
+			}
+			return y;
+		}
+	}
+
+	//matrix exponential by scaling and squaring of a Taylor series
+	private static double[][] exp(double[][] M) {
+		int n = M.length;
+
+		double norm = 0;
+		for (int i = 0; i < n; i++) {
+			double rowSum = 0;
+			for (int j = 0; j < n; j++) {
+				rowSum += Math.abs(M[i][j]);
+			}
+			norm = Math.max(norm, rowSum);
+		}
+		int squarings = Math.max(0, (int) Math.ceil(Math.log(norm / .5) / Math.log(2)));
+		double scale = Math.pow(2, -squarings);
+
+		double[][] result = identity(n);
+		double[][] term = identity(n);
+		for (int k = 1; k <= 16; k++) {
+			term = prod(term, M);
+			for (int i = 0; i < n; i++) {
+				for (int j = 0; j < n; j++) {
+					term[i][j] *= scale / k;
+					result[i][j] += term[i][j];
+				}
+			}
+		}
+
+		for (int i = 0; i < squarings; i++) {
+			result = prod(result, result);
+		}
+		return result;
+	}
+
+	private static double[][] identity(int n) {
+		double[][] result = new double[n][n];
+		for (int i = 0; i < n; i++) {
+			result[i][i] = 1;
+		}
+		return result;
+	}
+
+	private static double[][] prod(double[][] A, double[][] B) {
+		int n = A.length;
+		double[][] result = new double[n][n];
+		for (int i = 0; i < n; i++) {
+			for (int k = 0; k < n; k++) {
+				if (A[i][k] != 0) {
+					for (int j = 0; j < n; j++) {
+						result[i][j] += A[i][k] * B[k][j];
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+}
@@ -54,6 +54,16 @@ public interface LinearApproximator extends Serializable, Cloneable {
 	 */
 	public float[] findCoefficients(Function target);
 
+	/**
+	 * Finds coefficients for several target Functions at once, so that calculations that are
+	 * shared between targets (for example evaluating the component functions) are only done once.
+	 *
+	 * @param targets Functions to approximate
+	 * @return coefficients on component functions for each target, with one row per component
+	 * 		function and one column per target (e.g. the decoding vectors of a multi-dimensional origin)
+	 */
+	public float[][] findCoefficients(Function[] targets);
+
 	/**
 	 * @return Valid clone
 	 * @throws CloneNotSupportedException if clone can't be made
@@ -37,6 +37,7 @@ import java.util.Random;
 public class PDFTools {
 	
 	private static final Random ourRandom = new Random();
+	private static final ThreadLocal<Random> ourThreadRandom = new ThreadLocal<Random>();
 
 	/**
 	 * Note: PDF treated as univariate (only first dimension considered). 
@@ -76,7 +77,8 @@ public class PDFTools {
 	 * @return A random sample between 0 and 1
 	 */
 	public static double random() {
-		return ourRandom.nextDouble();
+		Random random = ourThreadRandom.get();
+		return (random != null) ? random.nextDouble() : ourRandom.nextDouble();
 	}
 	
 	/**
@@ -86,4 +88,27 @@ public class PDFTools {
 		ourRandom.setSeed(seed);
 	}
 	
+	/**
+	 * @return A new generator, seeded from the one that random() uses in the calling thread
+	 */
+	public static Random makeRandom() {
+		Random random = ourThreadRandom.get();
+		return new Random((random != null) ? random.nextLong() : ourRandom.nextLong());
+	}
+	
+	/**
+	 * Sets a generator for random() to use in the calling thread instead of the shared one. Work 
+	 * that is spread over several threads draws from the shared generator in an unpredictable order, 
+	 * so it can be made reproducible by giving each piece of work its own generator from makeRandom().  
+	 * 
+	 * @param random Generator for the calling thread, or null to use the shared one again
+	 */
+	public static void setThreadRandom(Random random) {
+		if (random == null) {
+			ourThreadRandom.remove();
+		} else {
+			ourThreadRandom.set(random);
+		}
+	}
+	
 }
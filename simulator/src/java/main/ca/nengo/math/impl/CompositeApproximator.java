@@ -30,6 +30,7 @@ package ca.nengo.math.impl;
 
 import ca.nengo.math.Function;
 import ca.nengo.math.LinearApproximator;
+import ca.nengo.util.MU;
 
 /**
  * <p>A LinearApproximator that approximates multi-dimensional functions as sums of
@@ -112,6 +113,17 @@ public class CompositeApproximator implements LinearApproximator {
 		return result;
 	}
 
+	/**
+	 * @see ca.nengo.math.LinearApproximator#findCoefficients(ca.nengo.math.Function[])
+	 */
+	public float[][] findCoefficients(Function[] targets) {
+		float[][] result = new float[targets.length][];
+		for (int i = 0; i < targets.length; i++) {
+			result[i] = findCoefficients(targets[i]);
+		}
+		return MU.transpose(result);
+	}
+
 	private static class FunctionWrapper extends AbstractFunction {
 
 		private static final long serialVersionUID = 1L;
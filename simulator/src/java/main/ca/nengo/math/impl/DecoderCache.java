@@ -0,0 +1,397 @@
+package ca.nengo.math.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.log4j.Logger;
+
+/**
+ * <p>An on-disk cache of the expensive parts of finding decoders, addressed by the content they
+ * were computed from rather than by name. Identical ensembles (same neuron parameters, encoders,
+ * radii and evaluation points, and so the same activities) built in different runs, or several
+ * times in one run, share one pseudoinverse of the correlation matrix, and identical decoding
+ * targets share decoders.</p>
+ *
+ * <p>Entries are stored in a compact binary format, one file per key, and are written to a
+ * temporary file first, so that several processes can share a cache directory. Problems reading or
+ * writing the cache are logged and otherwise ignored (the cached values are just computed again).</p>
+ *
+ * <p>A default cache can be set with setDefault(...) or with the system property ca.nengo.decoderCache
+ * (a directory). WeightedCostApproximator.Factory uses the default cache unless it is given its own.</p>
+ */
+public class DecoderCache implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+	private static Logger ourLogger = Logger.getLogger(DecoderCache.class);
+
+	/**
+	 * System property that names the default cache directory
+	 */
+	public static final String DIRECTORY_PROPERTY = "ca.nengo.decoderCache";
+
+	private static final int MAGIC = 0x4e454643; //"NEFC"
+	private static final int VERSION = 1;
+	private static final String GAMMA_EXTENSION = "gamma";
+	private static final String DECODERS_EXTENSION = "decoders";
+
+	private static DecoderCache ourDefault;
+
+	static {
+		String directory = System.getProperty(DIRECTORY_PROPERTY);
+		if (directory != null && directory.length() > 0) {
+			ourDefault = new DecoderCache(new File(directory));
+		}
+	}
+
+	private File myDirectory;
+
+	/**
+	 * @param directory Directory in which to store cached values (created if it doesn't exist)
+	 */
+	public DecoderCache(File directory) {
+		if ( !directory.isDirectory() && !directory.mkdirs() ) {
+			throw new IllegalArgumentException("Can't create cache directory " + directory);
+		}
+		myDirectory = directory;
+	}
+
+	/**
+	 * @return Directory in which cached values are stored
+	 */
+	public File getDirectory() {
+		return myDirectory;
+	}
+
+	/**
+	 * @return Cache used by approximator factories that aren't given one (null if none)
+	 */
+	public static DecoderCache getDefault() {
+		return ourDefault;
+	}
+
+	/**
+	 * @param cache Cache to be used by approximator factories that aren't given one (null for none)
+	 */
+	public static void setDefault(DecoderCache cache) {
+		ourDefault = cache;
+	}
+
+	/**
+	 * Removes all entries from the cache.
+	 */
+	public void clear() {
+		File[] files = myDirectory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				String name = file.getName();
+				if (name.endsWith("." + GAMMA_EXTENSION) || name.endsWith("." + DECODERS_EXTENSION)) {
+					file.delete();
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param key Key of an approximator (see Key)
+	 * @return True if the cache has a correlation matrix pseudoinverse for the given key
+	 */
+	public boolean hasGammaInverse(String key) {
+		return getFile(key, GAMMA_EXTENSION).exists();
+	}
+
+	/**
+	 * @param key Key of an approximator (see Key)
+	 * @return Values with noise (first element, float[][]) and pseudoinverse of their correlation
+	 * 		matrix (second element, double[][]), or null if they aren't cached
+	 */
+	public Object[] getGammaInverse(String key) {
+		DataInputStream in = open(key, GAMMA_EXTENSION);
+		if (in == null) {
+			return null;
+		}
+
+		try {
+			float[][] noisyValues = readFloats(in);
+			double[][] gammaInverse = readDoubles(in);
+			return new Object[]{noisyValues, gammaInverse};
+		} catch (IOException e) {
+			ourLogger.warn("Can't read cached correlation matrix " + key, e);
+			return null;
+		} finally {
+			close(in);
+		}
+	}
+
+	/**
+	 * @param key Key of an approximator (see Key)
+	 * @param noisyValues Values with noise from which the correlation matrix was found
+	 * @param gammaInverse Pseudoinverse of the correlation matrix
+	 */
+	public void putGammaInverse(String key, float[][] noisyValues, double[][] gammaInverse) {
+		DataOutputStream out = null;
+		File temp = null;
+		try {
+			temp = File.createTempFile("tmp-" + key, ".tmp", myDirectory);
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16));
+			writeHeader(out);
+			writeFloats(out, noisyValues);
+			writeDoubles(out, gammaInverse);
+			out.close();
+			out = null;
+			commit(temp, getFile(key, GAMMA_EXTENSION));
+		} catch (IOException e) {
+			ourLogger.warn("Can't cache correlation matrix " + key, e);
+			if (temp != null) {
+				temp.delete();
+			}
+		} finally {
+			close(out);
+		}
+	}
+
+	/**
+	 * @param key Key of a set of decoders (see Key)
+	 * @return Cached decoders, or null if they aren't cached
+	 */
+	public float[][] getDecoders(String key) {
+		DataInputStream in = open(key, DECODERS_EXTENSION);
+		if (in == null) {
+			return null;
+		}
+
+		try {
+			return readFloats(in);
+		} catch (IOException e) {
+			ourLogger.warn("Can't read cached decoders " + key, e);
+			return null;
+		} finally {
+			close(in);
+		}
+	}
+
+	/**
+	 * @param key Key of a set of decoders (see Key)
+	 * @param decoders Decoders to cache
+	 */
+	public void putDecoders(String key, float[][] decoders) {
+		DataOutputStream out = null;
+		File temp = null;
+		try {
+			temp = File.createTempFile("tmp-" + key, ".tmp", myDirectory);
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16));
+			writeHeader(out);
+			writeFloats(out, decoders);
+			out.close();
+			out = null;
+			commit(temp, getFile(key, DECODERS_EXTENSION));
+		} catch (IOException e) {
+			ourLogger.warn("Can't cache decoders " + key, e);
+			if (temp != null) {
+				temp.delete();
+			}
+		} finally {
+			close(out);
+		}
+	}
+
+	private File getFile(String key, String extension) {
+		return new File(myDirectory, key + "." + extension);
+	}
+
+	//opens a cache file and checks its header, or returns null if there isn't a valid one
+	private DataInputStream open(String key, String extension) {
+		File file = getFile(key, extension);
+		if ( !file.exists() ) {
+			return null;
+		}
+
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				ourLogger.warn("Ignoring cache file with unknown format: " + file);
+				close(in);
+				return null;
+			}
+			return in;
+		} catch (IOException e) {
+			ourLogger.warn("Can't read cache file " + file, e);
+			close(in);
+			return null;
+		}
+	}
+
+	//moves a finished temporary file into place (another process may have written the same entry)
+	private static void commit(File temp, File file) {
+		if ( !temp.renameTo(file) ) {
+			file.delete();
+			if ( !temp.renameTo(file) ) {
+				temp.delete();
+			}
+		}
+	}
+
+	private static void close(Closeable stream) {
+		if (stream != null) {
+			try {
+				stream.close();
+			} catch (IOException e) {
+				ourLogger.warn("Can't close cache file", e);
+			}
+		}
+	}
+
+	private static void writeHeader(DataOutputStream out) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+	}
+
+	private static void writeFloats(DataOutputStream out, float[][] matrix) throws IOException {
+		out.writeInt(matrix.length);
+		out.writeInt(matrix.length == 0 ? 0 : matrix[0].length);
+		for (float[] row : matrix) {
+			for (float value : row) {
+				out.writeFloat(value);
+			}
+		}
+	}
+
+	private static float[][] readFloats(DataInputStream in) throws IOException {
+		float[][] result = new float[in.readInt()][in.readInt()];
+		for (float[] row : result) {
+			for (int j = 0; j < row.length; j++) {
+				row[j] = in.readFloat();
+			}
+		}
+		return result;
+	}
+
+	private static void writeDoubles(DataOutputStream out, double[][] matrix) throws IOException {
+		out.writeInt(matrix.length);
+		out.writeInt(matrix.length == 0 ? 0 : matrix[0].length);
+		for (double[] row : matrix) {
+			for (double value : row) {
+				out.writeDouble(value);
+			}
+		}
+	}
+
+	private static double[][] readDoubles(DataInputStream in) throws IOException {
+		double[][] result = new double[in.readInt()][in.readInt()];
+		for (double[] row : result) {
+			for (int j = 0; j < row.length; j++) {
+				row[j] = in.readDouble();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Builds a cache key as a hash of the contents from which a cached value is computed.
+	 */
+	public static class Key {
+
+		private MessageDigest myDigest;
+		private byte[] myBuffer;
+
+		/**
+		 * @param kind Name of the kind of value that is cached (values of different kinds never share keys)
+		 */
+		public Key(String kind) {
+			try {
+				myDigest = MessageDigest.getInstance("SHA-1");
+			} catch (NoSuchAlgorithmException e) {
+				throw new RuntimeException(e);
+			}
+			myBuffer = new byte[4];
+			add(kind);
+		}
+
+		/**
+		 * @param value A value to include in the key
+		 * @return This Key
+		 */
+		public Key add(String value) {
+			add(value.length());
+			for (int i = 0; i < value.length(); i++) {
+				add((int) value.charAt(i));
+			}
+			return this;
+		}
+
+		/**
+		 * @param value A value to include in the key
+		 * @return This Key
+		 */
+		public Key add(int value) {
+			myBuffer[0] = (byte) (value >>> 24);
+			myBuffer[1] = (byte) (value >>> 16);
+			myBuffer[2] = (byte) (value >>> 8);
+			myBuffer[3] = (byte) value;
+			myDigest.update(myBuffer);
+			return this;
+		}
+
+		/**
+		 * @param value A value to include in the key
+		 * @return This Key
+		 */
+		public Key add(float value) {
+			return add(Float.floatToIntBits(value));
+		}
+
+		/**
+		 * @param values Values to include in the key
+		 * @return This Key
+		 */
+		public Key add(float[] values) {
+			add(values.length);
+			byte[] bytes = new byte[4 * values.length];
+			for (int i = 0; i < values.length; i++) {
+				int bits = Float.floatToIntBits(values[i]);
+				bytes[4*i] = (byte) (bits >>> 24);
+				bytes[4*i+1] = (byte) (bits >>> 16);
+				bytes[4*i+2] = (byte) (bits >>> 8);
+				bytes[4*i+3] = (byte) bits;
+			}
+			myDigest.update(bytes);
+			return this;
+		}
+
+		/**
+		 * @param values Values to include in the key
+		 * @return This Key
+		 */
+		public Key add(float[][] values) {
+			add(values.length);
+			for (float[] row : values) {
+				add(row);
+			}
+			return this;
+		}
+
+		/**
+		 * @return Hexadecimal hash of everything added to the key (the key can't be added to after this)
+		 */
+		public String getHash() {
+			byte[] hash = myDigest.digest();
+			StringBuilder result = new StringBuilder(hash.length * 2);
+			for (byte b : hash) {
+				result.append(Character.forDigit((b >> 4) & 0xf, 16));
+				result.append(Character.forDigit(b & 0xf, 16));
+			}
+			return result.toString();
+		}
+	}
+
+}
@@ -129,6 +129,17 @@ public class IndependentDimensionApproximator implements LinearApproximator {
 		return result;
 	}
 
+	/**
+	 * @see ca.nengo.math.LinearApproximator#findCoefficients(ca.nengo.math.Function[])
+	 */
+	public float[][] findCoefficients(Function[] targets) {
+		float[][] result = new float[targets.length][];
+		for (int i = 0; i < targets.length; i++) {
+			result[i] = findCoefficients(targets[i]);
+		}
+		return MU.transpose(result);
+	}
+
 	@Override
 	public LinearApproximator clone() throws CloneNotSupportedException {
 		IndependentDimensionApproximator result = (IndependentDimensionApproximator) super.clone();
@@ -0,0 +1,240 @@
+package ca.nengo.math.impl;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import Jama.EigenvalueDecomposition;
+import Jama.Matrix;
+
+import ca.nengo.util.impl.ParallelRange;
+
+/**
+ * <p>A truncated pseudoinverse of a symmetric positive semi-definite matrix (e.g. the correlation
+ * matrix of neuron activities) that is found from a randomized range finder (Halko, Martinsson &
+ * Tropp, 2011) instead of a full SVD.</p>
+ *
+ * <p>The matrix is applied to a few more random vectors than the number of singular values that are
+ * wanted, followed by a few power iterations to sharpen the estimate of its dominant subspace. The
+ * matrix is then projected onto that subspace and the small projection is decomposed exactly. For an
+ * NxN matrix and k singular values this takes O(N^2 k) time rather than the O(N^3) of a full SVD, and
+ * is accurate when the singular values decay quickly, as they do for tuning curves.</p>
+ */
+public class RandomizedSVD {
+
+	/**
+	 * Number of random vectors beyond the number of singular values wanted
+	 */
+	public static final int OVERSAMPLING = 10;
+
+	/**
+	 * Number of power iterations
+	 */
+	public static final int POWER_ITERATIONS = 4;
+
+	private static final long SEED = 1; //fixed so that decoders are repeatable
+	private static final double RELATIVE_TOLERANCE = 1e-12; //singular values below this fraction of the largest are treated as zero
+
+	private final int mySize;
+	private final double[] mySingularValues;
+	private final double[][] mySingularVectors;
+	private final int myNumThreads;
+
+	/**
+	 * @param matrix A symmetric positive semi-definite matrix
+	 * @param nSV Number of singular values wanted (must be greater than zero)
+	 * @param numThreads Number of threads with which to compute matrix products
+	 */
+	public RandomizedSVD(double[][] matrix, int nSV, int numThreads) {
+		int n = matrix.length;
+		int l = Math.min(n, nSV + OVERSAMPLING);
+		mySize = n;
+		myNumThreads = numThreads;
+
+		//basis vectors are stored as rows
+		double[][] basis = new double[l][n];
+		Random random = new Random(SEED);
+		for (double[] row : basis) {
+			for (int j = 0; j < n; j++) {
+				row[j] = random.nextGaussian();
+			}
+		}
+
+		basis = orthonormalize(multiply(matrix, basis, numThreads));
+		for (int q = 0; q < POWER_ITERATIONS; q++) {
+			basis = orthonormalize(multiply(matrix, basis, numThreads));
+		}
+
+		//projection of the matrix onto the basis, decomposed exactly
+		double[][] product = multiply(matrix, basis, numThreads);
+		double[][] projection = new double[l][l];
+		for (int a = 0; a < l; a++) {
+			for (int b = a; b < l; b++) {
+				double sum = 0;
+				for (int j = 0; j < n; j++) {
+					sum += basis[a][j] * product[b][j];
+				}
+				projection[a][b] = sum;
+				projection[b][a] = sum;
+			}
+		}
+		EigenvalueDecomposition eig = new Matrix(projection).eig();
+		final double[] values = eig.getRealEigenvalues();
+		double[][] vectors = eig.getV().getArray();
+
+		Integer[] order = new Integer[l];
+		for (int a = 0; a < l; a++) {
+			order[a] = Integer.valueOf(a);
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Double.compare(values[b.intValue()], values[a.intValue()]);
+			}
+		});
+
+		//singular vectors of the matrix are the basis times eigenvectors of the projection
+		mySingularValues = new double[l];
+		mySingularVectors = new double[l][n];
+		for (int m = 0; m < l; m++) {
+			int index = order[m].intValue();
+			mySingularValues[m] = values[index];
+			for (int a = 0; a < l; a++) {
+				double c = vectors[a][index];
+				for (int j = 0; j < n; j++) {
+					mySingularVectors[m][j] += c * basis[a][j];
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return Estimated largest singular values, in descending order (a few more than were asked for)
+	 */
+	public double[] getSingularValues() {
+		return mySingularValues;
+	}
+
+	/**
+	 * @param minSV Smallest singular value to use
+	 * @param nSV Max number of singular values to use
+	 * @return Number of singular values that pseudoInverse(minSV, nSV) uses
+	 */
+	public int getRank(float minSV, int nSV) {
+		double tolerance = mySingularValues.length > 0 ? RELATIVE_TOLERANCE * mySingularValues[0] : 0;
+		int k = 0;
+		while (k < mySingularValues.length && (nSV <= 0 || k < nSV)
+				&& mySingularValues[k] > minSV && mySingularValues[k] > tolerance) {
+			k++;
+		}
+		return k;
+	}
+
+	/**
+	 * @param minSV Smallest singular value to use
+	 * @param nSV Max number of singular values to use
+	 * @return Pseudoinverse of the matrix from its largest singular values
+	 */
+	public double[][] pseudoInverse(float minSV, int nSV) {
+		final int n = mySize;
+		final int k = getRank(minSV, nSV);
+
+		//singular vectors scaled by the square root of the inverse singular values
+		final double[][] scaled = new double[k][];
+		for (int m = 0; m < k; m++) {
+			scaled[m] = mySingularVectors[m].clone();
+			double scale = 1 / Math.sqrt(mySingularValues[m]);
+			for (int j = 0; j < n; j++) {
+				scaled[m][j] *= scale;
+			}
+		}
+
+		final double[][] result = new double[n][n];
+		ParallelRange.run(n, (long) n * n * k / 2, myNumThreads, new ParallelRange.Task() {
+			public void run(int start, int end) {
+				for (int i = start; i < end; i++) {
+					double[] row = result[i];
+					for (int m = 0; m < k; m++) {
+						double c = scaled[m][i];
+						double[] u = scaled[m];
+						for (int j = 0; j <= i; j++) {
+							row[j] += c * u[j];
+						}
+					}
+				}
+			}
+		});
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < i; j++) {
+				result[j][i] = result[i][j];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param n Size of a matrix
+	 * @param nSV Number of singular values wanted
+	 * @return True if the randomized method is likely to be substantially faster than a full SVD
+	 */
+	public static boolean isWorthwhile(int n, int nSV) {
+		return nSV > 0 && 4 * (nSV + OVERSAMPLING) <= n;
+	}
+
+	//the matrix times each of the given row vectors
+	private static double[][] multiply(final double[][] matrix, final double[][] vectors, int numThreads) {
+		final int n = matrix.length;
+		final double[][] result = new double[vectors.length][n];
+		ParallelRange.run(n, (long) n * n * vectors.length, numThreads, new ParallelRange.Task() {
+			public void run(int start, int end) {
+				for (int i = start; i < end; i++) {
+					double[] row = matrix[i];
+					for (int a = 0; a < vectors.length; a++) {
+						double[] vector = vectors[a];
+						double sum = 0;
+						for (int j = 0; j < n; j++) {
+							sum += row[j] * vector[j];
+						}
+						result[a][i] = sum;
+					}
+				}
+			}
+		});
+		return result;
+	}
+
+	//modified Gram-Schmidt (twice, for stability) in place; dependent vectors become zero
+	private static double[][] orthonormalize(double[][] vectors) {
+		for (int a = 0; a < vectors.length; a++) {
+			double[] vector = vectors[a];
+			double original = norm(vector);
+			for (int pass = 0; pass < 2; pass++) {
+				for (int b = 0; b < a; b++) {
+					double[] other = vectors[b];
+					double dot = 0;
+					for (int j = 0; j < vector.length; j++) {
+						dot += vector[j] * other[j];
+					}
+					for (int j = 0; j < vector.length; j++) {
+						vector[j] -= dot * other[j];
+					}
+				}
+			}
+
+			double norm = norm(vector);
+			double scale = (norm > 1e-10 * original) ? 1 / norm : 0;
+			for (int j = 0; j < vector.length; j++) {
+				vector[j] *= scale;
+			}
+		}
+		return vectors;
+	}
+
+	private static double norm(double[] vector) {
+		double sum = 0;
+		for (double element : vector) {
+			sum += element * element;
+		}
+		return Math.sqrt(sum);
+	}
+
+}
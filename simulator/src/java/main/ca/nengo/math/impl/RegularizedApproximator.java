@@ -0,0 +1,412 @@
+package ca.nengo.math.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+
+import ca.nengo.math.Function;
+import ca.nengo.math.LinearApproximator;
+import ca.nengo.util.MU;
+
+/**
+ * <p>A LinearApproximator that minimizes the same weighted squared error as WeightedCostApproximator,
+ * but regularizes with a ridge term instead of a truncated pseudoinverse, so that the coefficients can be
+ * found with a Cholesky factorization (or, for very large problems, conjugate gradients) rather than a
+ * full singular value decomposition.</p>
+ *
+ * <p>It solves (GAMMA + s^2 I) PHI = UPSILON, where GAMMA and UPSILON are as in WeightedCostApproximator and
+ * s is the standard deviation of the noise. This is the expected value of GAMMA when noise of this SD is
+ * added to the values, so it regularizes the solution in the same way as WeightedCostApproximator's noise,
+ * without sampling it.</p>
+ */
+public class RegularizedApproximator implements LinearApproximator {
+
+	private static final long serialVersionUID = 1L;
+	private static Logger ourLogger = Logger.getLogger(RegularizedApproximator.class);
+
+	private static final int MIN_ROWS_PER_TASK = 32;
+
+	private float[][] myEvalPoints;
+	private float[][] myValues;
+	private float[] myCostWeights;
+	private double myRidge;
+	private double[][] myGamma; //regularized, kept if solving with conjugate gradients
+	private double[][] myCholesky; //lower triangular factor of regularized gamma, if solving directly
+	private boolean myQuiet;
+
+	/**
+	 * @param evaluationPoints Points at which error is evaluated (see WeightedCostApproximator)
+	 * @param values The values of the functions that are being combined, at the evaluation points
+	 * 		(first dimension is the list of functions)
+	 * @param costFunction A cost function that weights squared error over the domain of evaluation points
+	 * @param noise Standard deviation of noise with which to regularize, as a proportion of the maximum
+	 * 		absolute value over all values
+	 * @param cgThreshold Number of functions at or above which conjugate gradients are used instead of
+	 * 		a Cholesky factorization
+	 * @param quiet Turn off logging?
+	 */
+	public RegularizedApproximator(float[][] evaluationPoints, float[][] values, Function costFunction, float noise,
+			int cgThreshold, boolean quiet) {
+		assert MU.isMatrix(evaluationPoints);
+		assert MU.isMatrix(values);
+		assert evaluationPoints.length == values[0].length;
+
+		myEvalPoints = evaluationPoints;
+		myValues = MU.clone(values);
+		myQuiet = quiet;
+
+		myCostWeights = new float[evaluationPoints.length];
+		double totalWeight = 0;
+		for (int k = 0; k < myCostWeights.length; k++) {
+			myCostWeights[k] = costFunction.map(evaluationPoints[k]) / evaluationPoints.length;
+			totalWeight += myCostWeights[k];
+		}
+
+		float maxValue = 0;
+		for (float[] row : values) {
+			for (float value : row) {
+				maxValue = Math.max(maxValue, Math.abs(value));
+			}
+		}
+		double sd = noise * maxValue;
+		myRidge = sd * sd * totalWeight;
+
+		int threads = WeightedCostApproximator.getNumThreads();
+		double[][] gamma = WeightedCostApproximator.findGamma(myValues, myCostWeights, threads);
+		for (int i = 0; i < gamma.length; i++) {
+			gamma[i][i] += myRidge;
+		}
+
+		if (gamma.length >= cgThreshold) {
+			myGamma = gamma;
+		} else {
+			double[] diagonal = new double[gamma.length];
+			for (int i = 0; i < gamma.length; i++) {
+				diagonal[i] = gamma[i][i];
+			}
+
+			ExecutorService executor = (threads > 1) ? Executors.newFixedThreadPool(threads) : null;
+			try {
+				while (!factor(gamma, executor, threads)) {
+					//only happens if gamma is singular without regularization; the upper triangle is intact
+					double jitter = Math.max(myRidge * 9, 1e-10 * sum(diagonal) / gamma.length);
+					ourLogger.warn("Correlation matrix is not positive definite; adding " + jitter + " to diagonal");
+					for (int i = 0; i < gamma.length; i++) {
+						for (int j = 0; j < i; j++) {
+							gamma[i][j] = gamma[j][i];
+						}
+						diagonal[i] += jitter;
+						gamma[i][i] = diagonal[i];
+					}
+					myRidge += jitter;
+				}
+			} finally {
+				if (executor != null) {
+					executor.shutdown();
+				}
+			}
+			myCholesky = gamma;
+		}
+
+		if (!quiet) {
+			ourLogger.info("Regularized " + gamma.length + " functions with ridge " + myRidge
+					+ (myCholesky == null ? " (conjugate gradients)" : " (Cholesky)"));
+		}
+	}
+
+	/**
+	 * @see ca.nengo.math.LinearApproximator#getEvalPoints()
+	 */
+	public float[][] getEvalPoints() {
+		return myEvalPoints;
+	}
+
+	/**
+	 * @see ca.nengo.math.LinearApproximator#getValues()
+	 */
+	public float[][] getValues() {
+		return myValues;
+	}
+
+	/**
+	 * @return Value added to the diagonal of the correlation matrix
+	 */
+	public double getRidge() {
+		return myRidge;
+	}
+
+	/**
+	 * @see ca.nengo.math.LinearApproximator#findCoefficients(ca.nengo.math.Function)
+	 */
+	public float[] findCoefficients(Function target) {
+		float[][] coefficients = findCoefficients(new Function[]{target});
+		float[] result = new float[coefficients.length];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = coefficients[i][0];
+		}
+		return result;
+	}
+
+	/**
+	 * Targets are evaluated and UPSILON is found for all of them together (see
+	 * WeightedCostApproximator.findCoefficients(Function[])), and then each is solved with the
+	 * same factorization.
+	 *
+	 * @see ca.nengo.math.LinearApproximator#findCoefficients(ca.nengo.math.Function[])
+	 */
+	public float[][] findCoefficients(Function[] targets) {
+		int threads = WeightedCostApproximator.getNumThreads();
+		float[][] targetValues = WeightedCostApproximator.evaluate(targets, myEvalPoints, threads);
+		double[][] upsilon = WeightedCostApproximator.findUpsilon(myValues, myCostWeights, targetValues, threads);
+
+		float[][] result = new float[myValues.length][targets.length];
+		double[] column = new double[upsilon.length];
+		for (int d = 0; d < targets.length; d++) {
+			for (int i = 0; i < column.length; i++) {
+				column[i] = upsilon[i][d];
+			}
+			double[] solution = (myCholesky != null) ? solveCholesky(myCholesky, column) : solveCG(myGamma, column);
+			for (int i = 0; i < solution.length; i++) {
+				result[i][d] = (float) solution[i];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Replaces the lower triangle of a symmetric positive definite matrix with its Cholesky factor L
+	 * (A = LL'), computing each column's rows in parallel.
+	 *
+	 * @return False if the matrix isn't positive definite
+	 */
+	private static boolean factor(final double[][] A, ExecutorService executor, int threads) {
+		int n = A.length;
+		for (int j = 0; j < n; j++) {
+			final int column = j;
+			final double[] rowJ = A[j];
+
+			double diagonal = rowJ[j] - dot(rowJ, rowJ, j);
+			if (!(diagonal > 0)) {
+				return false;
+			}
+			final double pivot = Math.sqrt(diagonal);
+			rowJ[j] = pivot;
+
+			forRows(j+1, n, executor, threads, (long) (n-j-1) * j, new Rows() {
+				public void run(int start, int end) {
+					for (int i = start; i < end; i++) {
+						double[] rowI = A[i];
+						rowI[column] = (rowI[column] - dot(rowI, rowJ, column)) / pivot;
+					}
+				}
+			});
+		}
+		return true;
+	}
+
+	//dot product of the first n elements
+	private static double dot(double[] a, double[] b, int n) {
+		double sum = 0;
+		for (int k = 0; k < n; k++) {
+			sum += a[k] * b[k];
+		}
+		return sum;
+	}
+
+	private static double sum(double[] a) {
+		double result = 0;
+		for (double v : a) {
+			result += v;
+		}
+		return result;
+	}
+
+	//forward and back substitution with a lower-triangular factor
+	private static double[] solveCholesky(double[][] L, double[] b) {
+		int n = b.length;
+		double[] y = new double[n];
+		for (int i = 0; i < n; i++) {
+			y[i] = (b[i] - dot(L[i], y, i)) / L[i][i];
+		}
+
+		double[] x = new double[n];
+		for (int i = n-1; i >= 0; i--) {
+			double sum = y[i];
+			for (int k = i+1; k < n; k++) {
+				sum -= L[k][i] * x[k];
+			}
+			x[i] = sum / L[i][i];
+		}
+		return x;
+	}
+
+	//conjugate gradients, with the matrix-vector product spread over threads
+	private static double[] solveCG(final double[][] A, double[] b) {
+		final int n = b.length;
+		int threads = WeightedCostApproximator.getNumThreads();
+		ExecutorService executor = (threads > 1) ? Executors.newFixedThreadPool(threads) : null;
+
+		try {
+			double[] x = new double[n];
+			double[] r = b.clone();
+			final double[] p = b.clone();
+			final double[] Ap = new double[n];
+			double rr = dot(r, r, n);
+			double tolerance = 1e-16 * rr;
+
+			for (int iteration = 0; iteration < n && rr > tolerance; iteration++) {
+				forRows(0, n, executor, threads, (long) n * n, new Rows() {
+					public void run(int start, int end) {
+						for (int i = start; i < end; i++) {
+							Ap[i] = dot(A[i], p, n);
+						}
+					}
+				});
+
+				double alpha = rr / dot(p, Ap, n);
+				for (int i = 0; i < n; i++) {
+					x[i] += alpha * p[i];
+					r[i] -= alpha * Ap[i];
+				}
+				double rrNew = dot(r, r, n);
+				double beta = rrNew / rr;
+				for (int i = 0; i < n; i++) {
+					p[i] = r[i] + beta * p[i];
+				}
+				rr = rrNew;
+			}
+			return x;
+		} finally {
+			if (executor != null) {
+				executor.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * Work on a range of rows.
+	 */
+	private static interface Rows {
+		public void run(int start, int end);
+	}
+
+	//runs rows [start, end) in parallel chunks if there is enough work, otherwise in this thread
+	private static void forRows(int start, int end, ExecutorService executor, int threads, long work, final Rows rows) {
+		int n = end - start;
+		int chunks = Math.min(threads, n / MIN_ROWS_PER_TASK);
+		if (executor == null || chunks < 2 || work < 100000) {
+			rows.run(start, end);
+			return;
+		}
+
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(chunks);
+		for (int c = 0; c < chunks; c++) {
+			final int chunkStart = start + (int) ((long) n * c / chunks);
+			final int chunkEnd = start + (int) ((long) n * (c+1) / chunks);
+			tasks.add(new Callable<Object>() {
+				public Object call() {
+					rows.run(chunkStart, chunkEnd);
+					return null;
+				}
+			});
+		}
+
+		try {
+			for (Future<Object> future : executor.invokeAll(tasks)) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	@Override
+	public LinearApproximator clone() throws CloneNotSupportedException {
+		RegularizedApproximator result = (RegularizedApproximator) super.clone();
+		result.myEvalPoints = MU.clone(myEvalPoints);
+		result.myValues = MU.clone(myValues);
+		result.myCostWeights = myCostWeights.clone();
+		if (myGamma != null) {
+			result.myGamma = clone(myGamma);
+		}
+		if (myCholesky != null) {
+			result.myCholesky = clone(myCholesky);
+		}
+		return result;
+	}
+
+	private static double[][] clone(double[][] matrix) {
+		double[][] result = new double[matrix.length][];
+		for (int i = 0; i < matrix.length; i++) {
+			result[i] = matrix[i].clone();
+		}
+		return result;
+	}
+
+	/**
+	 * An ApproximatorFactory that produces RegularizedApproximators. Approximators over evaluation
+	 * signals are still WeightedCostApproximators, and the number of singular values and the
+	 * DecoderCache are ignored.
+	 */
+	public static class Factory extends WeightedCostApproximator.Factory {
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * Default number of functions at or above which conjugate gradients are used
+		 */
+		public static final int DEFAULT_CG_THRESHOLD = 8000;
+
+		private int myCGThreshold;
+
+		/**
+		 * @param noise Standard deviation of noise with which to regularize (proportion of largest value over all functions)
+		 */
+		public Factory(float noise) {
+			this(noise, false);
+		}
+
+		/**
+		 * @param noise Standard deviation of noise with which to regularize (proportion of largest value over all functions)
+		 * @param quiet Turn off logging?
+		 */
+		public Factory(float noise, boolean quiet) {
+			super(noise, -1, quiet);
+			myCGThreshold = DEFAULT_CG_THRESHOLD;
+		}
+
+		/**
+		 * @return Number of functions at or above which conjugate gradients are used instead of a
+		 * 		Cholesky factorization
+		 */
+		public int getCGThreshold() {
+			return myCGThreshold;
+		}
+
+		/**
+		 * @param threshold Number of functions at or above which conjugate gradients are used instead
+		 * 		of a Cholesky factorization
+		 */
+		public void setCGThreshold(int threshold) {
+			myCGThreshold = threshold;
+		}
+
+		/**
+		 * @see ca.nengo.math.ApproximatorFactory#getApproximator(float[][], float[][])
+		 */
+		@Override
+		public LinearApproximator getApproximator(float[][] evalPoints, float[][] values) {
+			return new RegularizedApproximator(evalPoints, values, getCostFunction(evalPoints[0].length), getNoise(),
+					myCGThreshold, getQuiet());
+		}
+	}
+
+}
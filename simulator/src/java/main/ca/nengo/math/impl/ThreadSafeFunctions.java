@@ -0,0 +1,62 @@
+package ca.nengo.math.impl;
+
+import java.io.Serializable;
+
+import ca.nengo.math.Function;
+import ca.nengo.util.Environment;
+
+/**
+ * Decides whether Functions can be evaluated from several threads at once while a model is built
+ * (e.g. when finding decoders). Functions in general may keep state between calls (for example
+ * Python functions that cache their last value), so only Functions of classes in this package that
+ * are known to be stateless are evaluated in parallel, unless Environment.isParallelFunctions() is
+ * set.
+ */
+public class ThreadSafeFunctions {
+
+	private ThreadSafeFunctions() {
+	}
+
+	/**
+	 * @param functions Functions to be evaluated
+	 * @return True if the functions may be evaluated from several threads at once
+	 */
+	public static boolean isParallelizable(Function[] functions) {
+		if (Environment.isParallelFunctions()) {
+			return true;
+		}
+		for (Function function : functions) {
+			if (!isThreadSafe(function)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param function A Function
+	 * @return True if the Function is of a class that is known to have no state that changes when
+	 * 		it is evaluated (subclasses aren't included, as they may add state)
+	 */
+	public static boolean isThreadSafe(Function function) {
+		Class<?> c = function.getClass();
+		if (c == ConstantFunction.class || c == IdentityFunction.class || c == LinearFunction.class
+				|| c == SineFunction.class || c == FourierFunction.class || c == Polynomial.class
+				|| c == SigmoidFunction.class || c == InterpolatedFunction.class
+				|| c == PiecewiseConstantFunction.class || c.getEnclosingClass() == SimpleFunctions.class
+				|| c.getEnclosingClass() == DefaultFunctionInterpreter.class) { //the latter are operators
+			return true;
+		}
+		if (c == PostfixFunction.class) {
+			//the expression may refer to other functions
+			for (Serializable element : ((PostfixFunction) function).getExpressionList()) {
+				if (element instanceof Function && !isThreadSafe((Function) element)) {
+					return false;
+				}
+			}
+			return true;
+		}
+		return false;
+	}
+
+}
@@ -29,7 +29,15 @@ a recipient may use your version of this file under either the MPL or the GPL Li
 package ca.nengo.math.impl;
 
 import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.Logger;
 
@@ -40,6 +48,7 @@ import ca.nengo.math.Function;
 import ca.nengo.math.LinearApproximator;
 import ca.nengo.util.MU;
 import ca.nengo.util.Memory;
+import ca.nengo.util.impl.ParallelRange;
 
 /**
  * <p>A LinearApproximator in which error is evaluated at a fixed set of points, and
@@ -56,6 +65,10 @@ public class WeightedCostApproximator implements LinearApproximator {
 	private static Logger ourLogger = Logger.getLogger(WeightedCostApproximator.class);
 	private static final long serialVersionUID = 1L;
 
+	private static final int GAMMA_TILE = 64; //rows and columns in each tile of gamma
+	private static final int GAMMA_DEPTH = 512; //evaluation points per pass over a tile (so rows stay in cache)
+	private static final int FUNCTION_COST = 50; //rough cost of a target function evaluation in multiply-adds
+
 	private float[][] myEvalPoints;
 	private final float[][] myValues;
 	private float[][] myNoisyValues;
@@ -64,8 +77,17 @@ public class WeightedCostApproximator implements LinearApproximator {
 	private final boolean myQuiet;
 
 	private double[][] myGammaInverse;
+	private float[] myCostWeights;
+
+	//for finding or loading the pseudoinverse on demand, if it's cached
+	private DecoderCache myCache;
+	private String myCacheKey;
+	private float myNoise;
+	private int myNSV;
 
+	private static int myNumThreads = Runtime.getRuntime().availableProcessors();
 	private static boolean myUseGPU = false;
+	private static boolean myUseRandomizedSVD = true;
 	private static boolean canUseGPU;
 	private static String myGPUErrorMessage;
 
@@ -115,6 +137,37 @@ public class WeightedCostApproximator implements LinearApproximator {
 		return myGPUErrorMessage;
 	}
 
+	/**
+	 * @param numThreads Number of threads with which to compute the gamma matrix and batches of
+	 * 		coefficients (1 to use only the calling thread)
+	 */
+	public static void setNumThreads(int numThreads) {
+		myNumThreads = numThreads;
+	}
+
+	/**
+	 * @return Number of threads with which the gamma matrix and batches of coefficients are
+	 * 		computed (defaults to the number of processors)
+	 */
+	public static int getNumThreads() {
+		return myNumThreads;
+	}
+
+	/**
+	 * @param use Use a randomized truncated SVD (see RandomizedSVD) for the pseudoinverse when the
+	 * 		number of singular values is limited to well below the number of nodes?
+	 */
+	public static void setUseRandomizedSVD(boolean use) {
+		myUseRandomizedSVD = use;
+	}
+
+	/**
+	 * @return Using a randomized truncated SVD when the number of singular values is limited?
+	 */
+	public static boolean getUseRandomizedSVD() {
+		return myUseRandomizedSVD;
+	}
+
 	private static native boolean hasGPU();
 	
 	@SuppressWarnings("unused")
@@ -239,6 +292,76 @@ public class WeightedCostApproximator implements LinearApproximator {
 	public WeightedCostApproximator(float[][] evaluationPoints, float[][] values, Function costFunction, float noise, int nSV) {
 		this(evaluationPoints, values, costFunction, noise, nSV, false);
 	}
+
+	/**
+	 * As WeightedCostApproximator(float[][], float[][], Function, float, int, boolean), but the pseudoinverse
+	 * of the correlation matrix is only found if the cache doesn't have one computed from the same evaluation
+	 * points, values, cost and parameters (otherwise it is read from the cache when it is first needed).
+	 * Coefficients for multiple targets (see findCoefficients(Function[])) are also cached.
+	 *
+	 * @param evaluationPoints As in other constructors
+	 * @param values As in other constructors
+	 * @param costFunction As in other constructors
+	 * @param noise As in other constructors
+	 * @param nSV As in other constructors
+	 * @param quiet Turn off logging?
+	 * @param cache Cache of pseudoinverses and coefficients
+	 */
+	public WeightedCostApproximator(float[][] evaluationPoints, float[][] values, Function costFunction, float noise, int nSV,
+			boolean quiet, DecoderCache cache) {
+		assert MU.isMatrix(evaluationPoints);
+		assert MU.isMatrix(values);
+		assert evaluationPoints.length == values[0].length;
+
+		myEvalPoints = evaluationPoints;
+		myValues = MU.clone(values);
+		myQuiet = quiet;
+		mySignalLength = -1;
+		myCostFunction = costFunction;
+		myNoise = noise;
+		myNSV = nSV;
+		myCache = cache;
+		myCacheKey = new DecoderCache.Key("WeightedCostApproximator").add(evaluationPoints).add(values)
+			.add(getCostWeights()).add(noise).add(nSV)
+			.add(getUseRandomizedSVD() ? 1 : 0).add(getUseGPU() ? 1 : 0).getHash();
+
+		if (cache.hasGammaInverse(myCacheKey)) {
+			if (!quiet) {
+				ourLogger.info("Using cached correlation matrix " + myCacheKey);
+			}
+		} else {
+			solve();
+		}
+	}
+
+	/**
+	 * @return Key of this approximator's pseudoinverse in its DecoderCache (null if it has no cache)
+	 */
+	String getCacheKey() {
+		return myCacheKey;
+	}
+
+	//adds noise to the values, finds the pseudoinverse of their correlation matrix, and caches it
+	private void solve() {
+		myNoisyValues = MU.clone(myValues);
+		float absNoiseSD = addNoise(myNoisyValues, myNoise);
+		calcGamma(absNoiseSD, myNSV);
+		myCache.putGammaInverse(myCacheKey, myNoisyValues, myGammaInverse);
+	}
+
+	//reads the cached pseudoinverse if it hasn't been found or read yet (synchronized because
+	//approximators may be shared between ensembles that are built or run on different threads)
+	private synchronized void ensureSolved() {
+		if (myGammaInverse == null) {
+			Object[] cached = myCache.getGammaInverse(myCacheKey);
+			if (cached != null && ((float[][]) cached[0]).length == myValues.length) {
+				myNoisyValues = (float[][]) cached[0];
+				myGammaInverse = (double[][]) cached[1];
+			} else {
+				solve();
+			}
+		}
+	}
 	
 	/**
 	 * Calculate the gamma matrix.
@@ -489,6 +612,16 @@ public class WeightedCostApproximator implements LinearApproximator {
             }
         }
 
+		if (result==null && myUseRandomizedSVD && RandomizedSVD.isWorthwhile(matrix.length, nSV)) {
+
+			RandomizedSVD svd = new RandomizedSVD(matrix, nSV, myNumThreads);
+			if(!myQuiet) {
+                ourLogger.info("Using " + svd.getRank(minSV, nSV) + " singular values for pseudo-inverse (randomized)");
+            }
+			result = svd.pseudoInverse(minSV, nSV);
+
+		}
+
 		if (result==null) {
 
 			Matrix m = new Matrix(matrix);
@@ -532,24 +665,50 @@ public class WeightedCostApproximator implements LinearApproximator {
 			targetValues[i] = target.map(myEvalPoints[i]);
 		}
 
-		float[] upsilon = new float[myNoisyValues.length];
-		for (int i = 0; i < myNoisyValues.length; i++) {
-			for (int j = 0; j < myEvalPoints.length; j++) {
-				upsilon[i] += myNoisyValues[i][j] * targetValues[j] * myCostFunction.map(myEvalPoints[j]);
-			}
-			upsilon[i] = upsilon[i] / myEvalPoints.length;
-		}
+		return findCoefficients(targetValues, getCostWeights());
+	}
 
-		float[] result = new float[myNoisyValues.length];
-		for (int i = 0; i < myNoisyValues.length; i++) {
-			for (int j = 0; j < myNoisyValues.length; j++) {
-				result[i] += myGammaInverse[i][j] * upsilon[j];
-			}
+	/**
+	 * Finds coefficients for all targets together. The targets are evaluated in parallel over
+	 * chunks of evaluation points if they are known to be thread-safe (see ThreadSafeFunctions), and
+	 * UPSILON and GAMMA" UPSILON are each found as one matrix product, split by rows over threads.
+	 *
+	 * @see ca.nengo.math.LinearApproximator#findCoefficients(ca.nengo.math.Function[])
+	 */
+	public float[][] findCoefficients(Function[] targets) {
+		if(mySignalLength != -1)
+			System.err.println("Warning, finding coefficients using a function on WeightedCostApproximator initialized with signals");
+
+		float[][] targetValues = evaluate(targets, myEvalPoints, myNumThreads);
+		if (myCache == null) {
+			return findCoefficients(targetValues, getCostWeights());
 		}
 
+		String key = new DecoderCache.Key("decoders").add(myCacheKey).add(targetValues).getHash();
+		float[][] result = myCache.getDecoders(key);
+		if (result == null || result.length != myValues.length || (result.length > 0 && result[0].length != targets.length)) {
+			result = findCoefficients(targetValues, getCostWeights());
+			myCache.putDecoders(key, result);
+		}
 		return result;
 	}
-    
+
+	/**
+	 * Similar to findCoefficients(ca.nengo.math.Function[]), but finds coefficients for target signals
+	 * (over time) rather than target functions.
+	 *
+	 * @param targetSignals signals over time that the coefficients should fit to (first dimension is
+	 * 		the list of signals)
+	 * @return coefficients, with one row per component function and one column per target signal
+	 */
+	public float[][] findCoefficients(float[][] targetSignals) {
+		float[][] targetValues = new float[targetSignals.length][];
+		for (int i = 0; i < targetSignals.length; i++) {
+			targetValues[i] = getSignalTargetValues(targetSignals[i]);
+		}
+		return findCoefficients(targetValues, getCostWeights());
+	}
+
     /**
      * Similar to findCoefficients(ca.nengo.math.Function), but finds coefficients for a target signal (over time)
      * rather than a target function.
@@ -558,6 +717,11 @@ public class WeightedCostApproximator implements LinearApproximator {
      * @return coefficients (weights on the output of each neuron)
      */
     public float[] findCoefficients(float[] targetSignal) {
+		return findCoefficients(getSignalTargetValues(targetSignal), getCostWeights());
+    }
+
+	//target signal repeated to the length of the evaluation signals
+	private float[] getSignalTargetValues(float[] targetSignal) {
     	if(mySignalLength == -1)
     		System.err.println("Warning, finding coefficients using a signal on WeightedCostApproximator initialized with points");
     	if(targetSignal.length != mySignalLength)
@@ -581,12 +745,26 @@ public class WeightedCostApproximator implements LinearApproximator {
     			targetValues[i*mySignalLength+j] = targetSignal[j];
     	}
     	
-    	float[] upsilon = new float[myNoisyValues.length];
+		return targetValues;
+	}
+
+	//solves for coefficients given target values and cost weights at each evaluation point
+	private float[] findCoefficients(float[] targetValues, float[] weights) {
+		if (myCache != null) {
+			ensureSolved();
+		}
+
+		float[] weightedTarget = new float[targetValues.length];
+		for (int j = 0; j < targetValues.length; j++) {
+			weightedTarget[j] = targetValues[j] * weights[j];
+		}
+
+		float[] upsilon = new float[myNoisyValues.length];
 		for (int i = 0; i < myNoisyValues.length; i++) {
-			for (int j = 0; j < myEvalPoints.length; j++) {
-				upsilon[i] += myNoisyValues[i][j] * targetValues[j] * myCostFunction.map(myEvalPoints[j]);
+			float[] values = myNoisyValues[i];
+			for (int j = 0; j < weightedTarget.length; j++) {
+				upsilon[i] += values[j] * weightedTarget[j];
 			}
-			upsilon[i] = upsilon[i] / myEvalPoints.length;
 		}
 
 		float[] result = new float[myNoisyValues.length];
@@ -597,37 +775,243 @@ public class WeightedCostApproximator implements LinearApproximator {
 		}
 
 		return result;
-    }
+	}
 
-	private double[][] findGamma() {
+	//solves for coefficients for several targets together (first dimension of target values is the list of targets)
+	private float[][] findCoefficients(float[][] targetValues, float[] weights) {
+		if (myCache != null) {
+			ensureSolved();
+		}
+
+		final double[][] upsilon = findUpsilon(myNoisyValues, weights, targetValues, myNumThreads);
+		final double[][] gammaInverse = myGammaInverse;
+		final int numTargets = targetValues.length;
+		final float[][] result = new float[gammaInverse.length][numTargets];
+
+		ParallelRange.run(result.length, (long) result.length * result.length * numTargets, myNumThreads, new ParallelRange.Task() {
+			public void run(int start, int end) {
+				double[] sums = new double[numTargets];
+				for (int i = start; i < end; i++) {
+					Arrays.fill(sums, 0);
+					double[] row = gammaInverse[i];
+					for (int j = 0; j < row.length; j++) {
+						double g = row[j];
+						double[] u = upsilon[j];
+						for (int d = 0; d < numTargets; d++) {
+							sums[d] += g * u[d];
+						}
+					}
+					for (int d = 0; d < numTargets; d++) {
+						result[i][d] = (float) sums[d];
+					}
+				}
+			}
+		});
+
+		return result;
+	}
+
+	/**
+	 * Evaluates target functions at each evaluation point, in parallel over chunks of points if
+	 * the functions are known to be thread-safe (see ThreadSafeFunctions). Otherwise they are
+	 * evaluated in this thread, one point at a time (so that functions that cache their value
+	 * at the last point, such as those of different dimensions of a Python function, are called
+	 * with the same point in succession).
+	 *
+	 * @param targets Functions to evaluate
+	 * @param points Evaluation points
+	 * @param numThreads Number of threads to use
+	 * @return Values of each target (first dimension) at each point (second dimension)
+	 */
+	static float[][] evaluate(final Function[] targets, final float[][] points, int numThreads) {
+		final float[][] result = new float[targets.length][points.length];
 
-		double[][] result = new double[myNoisyValues.length][];
-//		double[][] nativeResult = new double[myNoisyValues.length][];
+		if (!ThreadSafeFunctions.isParallelizable(targets)) {
+			for (int k = 0; k < points.length; k++) {
+				for (int d = 0; d < targets.length; d++) {
+					result[d][k] = targets[d].map(points[k]);
+				}
+			}
+			return result;
+		}
 
-		for (int i = 0; i < result.length; i++) {
-			result[i] = new double[myNoisyValues.length];
-			for (int j = 0; j < result[i].length; j++) {
-				for (int k = 0; k < myEvalPoints.length; k++) {
-					result[i][j] += myNoisyValues[i][k] * myNoisyValues[j][k] * myCostFunction.map(myEvalPoints[k]);
+		ParallelRange.run(points.length, (long) points.length * targets.length * FUNCTION_COST, numThreads, new ParallelRange.Task() {
+			public void run(int start, int end) {
+				float[][] chunk = new float[end - start][];
+				System.arraycopy(points, start, chunk, 0, chunk.length);
+				for (int d = 0; d < targets.length; d++) {
+					System.arraycopy(targets[d].multiMap(chunk), 0, result[d], start, chunk.length);
 				}
-				result[i][j] = result[i][j] / myEvalPoints.length;
+			}
+		});
+
+		return result;
+	}
+
+	/**
+	 * Finds UPSILON_id = sum_k values_ik targets_dk weights_k for several targets at once.
+	 *
+	 * @param values Values of each function at each evaluation point
+	 * @param weights Weight of each evaluation point
+	 * @param targetValues Values of each target at each evaluation point
+	 * @param numThreads Number of threads to use
+	 * @return Upsilon, with one row per function and one column per target
+	 */
+	static double[][] findUpsilon(final float[][] values, float[] weights, float[][] targetValues, int numThreads) {
+		final int numTargets = targetValues.length;
+		final float[][] weightedTargets = new float[numTargets][weights.length];
+		for (int d = 0; d < numTargets; d++) {
+			for (int k = 0; k < weights.length; k++) {
+				weightedTargets[d][k] = targetValues[d][k] * weights[k];
 			}
 		}
 
+		final double[][] result = new double[values.length][numTargets];
+		ParallelRange.run(values.length, (long) values.length * weights.length * numTargets, numThreads, new ParallelRange.Task() {
+			public void run(int start, int end) {
+				for (int i = start; i < end; i++) {
+					float[] a = values[i];
+					for (int d = 0; d < numTargets; d++) {
+						float[] t = weightedTargets[d];
+						double sum = 0;
+						for (int k = 0; k < t.length; k++) {
+							sum += a[k] * t[k];
+						}
+						result[i][d] = sum;
+					}
+				}
+			}
+		});
+
 		return result;
 	}
 
+	//cost function at each evaluation point, divided by the number of points (so that sums are averages)
+	private float[] getCostWeights() {
+		if (myCostWeights == null) {
+			float[] weights = new float[myEvalPoints.length];
+			for (int k = 0; k < weights.length; k++) {
+				weights[k] = myCostFunction.map(myEvalPoints[k]) / myEvalPoints.length;
+			}
+			myCostWeights = weights;
+		}
+		return myCostWeights;
+	}
+
+	private double[][] findGamma() {
+		return findGamma(myNoisyValues, getCostWeights(), myNumThreads);
+	}
+
+	/**
+	 * Finds GAMMA_ij = sum_k values_ik values_jk weights_k. As gamma is symmetric, only the upper
+	 * triangle is computed (in square tiles, which are spread over threads) and then copied into
+	 * the lower triangle.
+	 *
+	 * @param values Values of each function at each evaluation point
+	 * @param weights Weight of each evaluation point
+	 * @param numThreads Number of threads to use
+	 * @return Gamma matrix
+	 */
+	static double[][] findGamma(float[][] values, float[] weights, int numThreads) {
+		final int n = values.length;
+		final double[][] result = new double[n][n];
+
+		//weight one side in advance rather than in the inner loop
+		final float[][] left = new float[n][];
+		for (int i = 0; i < n; i++) {
+			left[i] = new float[weights.length];
+			for (int k = 0; k < weights.length; k++) {
+				left[i][k] = values[i][k] * weights[k];
+			}
+		}
+		final float[][] right = values;
+
+		final int tiles = (n + GAMMA_TILE - 1) / GAMMA_TILE;
+		final int numTiles = tiles * (tiles + 1) / 2;
+		final AtomicInteger nextTile = new AtomicInteger();
+		Runnable worker = new Runnable() {
+			public void run() {
+				for (int tile = nextTile.getAndIncrement(); tile < numTiles; tile = nextTile.getAndIncrement()) {
+					//find the tile's row and column (on or above the diagonal)
+					int row = 0;
+					int column = tile;
+					while (column >= tiles - row) {
+						column -= tiles - row;
+						row++;
+					}
+					fillTile(left, right, result, row * GAMMA_TILE, (row + column) * GAMMA_TILE);
+				}
+			}
+		};
+
+		int threads = Math.min(numThreads, numTiles);
+		if (threads <= 1) {
+			worker.run();
+		} else {
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
+			try {
+				List<Future<?>> futures = new ArrayList<Future<?>>(threads);
+				for (int i = 0; i < threads; i++) {
+					futures.add(executor.submit(worker));
+				}
+				for (Future<?> future : futures) {
+					future.get();
+				}
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				throw new RuntimeException(e.getCause());
+			} finally {
+				executor.shutdown();
+			}
+		}
+
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < i; j++) {
+				result[i][j] = result[j][i];
+			}
+		}
+
+		return result;
+	}
+
+	//adds left * right' to a tile of the result, for elements on or above the diagonal
+	private static void fillTile(float[][] left, float[][] right, double[][] result, int rowStart, int columnStart) {
+		int rowEnd = Math.min(rowStart + GAMMA_TILE, result.length);
+		int columnEnd = Math.min(columnStart + GAMMA_TILE, result.length);
+		int depth = left[rowStart].length;
+
+		for (int kStart = 0; kStart < depth; kStart += GAMMA_DEPTH) {
+			int kEnd = Math.min(kStart + GAMMA_DEPTH, depth);
+			for (int i = rowStart; i < rowEnd; i++) {
+				float[] a = left[i];
+				double[] resultRow = result[i];
+				for (int j = Math.max(i, columnStart); j < columnEnd; j++) {
+					float[] b = right[j];
+					double sum = 0;
+					for (int k = kStart; k < kEnd; k++) {
+						sum += a[k] * b[k];
+					}
+					resultRow[j] += sum;
+				}
+			}
+		}
+	}
+
 	@Override
 	public LinearApproximator clone() throws CloneNotSupportedException {
 		WeightedCostApproximator result = (WeightedCostApproximator) super.clone();
 
 		result.myCostFunction = myCostFunction.clone();
 		result.myEvalPoints = MU.clone(myEvalPoints);
-		result.myNoisyValues = MU.clone(myNoisyValues);
 
-		result.myGammaInverse = new double[myGammaInverse.length][];
-		for (int i = 0; i < myGammaInverse.length; i++) {
-			result.myGammaInverse[i] = myGammaInverse[i].clone();
+		//not there yet if it's still in the cache
+		if (myGammaInverse != null) {
+			result.myNoisyValues = MU.clone(myNoisyValues);
+			result.myGammaInverse = new double[myGammaInverse.length][];
+			for (int i = 0; i < myGammaInverse.length; i++) {
+				result.myGammaInverse[i] = myGammaInverse[i].clone();
+			}
 		}
 
 		return result;
@@ -646,6 +1030,7 @@ public class WeightedCostApproximator implements LinearApproximator {
 		private float myNoise;
 		private int myNSV;
 		private boolean myQuiet;
+		private DecoderCache myCache;
 
 		/**
 		 * @param noise Random noise to add to component functions (proportion of largest value over all functions)
@@ -728,11 +1113,31 @@ public class WeightedCostApproximator implements LinearApproximator {
 			myQuiet = quiet;
 		}
 
+		/**
+		 * @return Cache of correlation matrix pseudoinverses and coefficients used by approximators from
+		 * 		this factory (the default cache if none has been set, or null if there isn't one)
+		 */
+		public DecoderCache getCache() {
+			return (myCache != null) ? myCache : DecoderCache.getDefault();
+		}
+
+		/**
+		 * @param cache Cache of correlation matrix pseudoinverses and coefficients to be used by approximators
+		 * 		from this factory (null to use the default cache)
+		 */
+		public void setCache(DecoderCache cache) {
+			myCache = cache;
+		}
+
 
 		/**
 		 * @see ca.nengo.math.ApproximatorFactory#getApproximator(float[][], float[][])
 		 */
         public LinearApproximator getApproximator(float[][] evalPoints, float[][] values) {
+			DecoderCache cache = getCache();
+			if (cache != null) {
+				return new WeightedCostApproximator(evalPoints, values, getCostFunction(evalPoints[0].length), myNoise, myNSV, myQuiet, cache);
+			}
 			return new WeightedCostApproximator(evalPoints, values, getCostFunction(evalPoints[0].length), myNoise, myNSV, myQuiet);
 		}
         
@@ -0,0 +1,20 @@
+package ca.nengo.model;
+
+/**
+ * <p>A Probeable that is told when Probes are connected to and disconnected from its states, so
+ * that it can avoid recording the history of states that nobody is probing (see
+ * Environment.isRecordingOnlyProbed()).</p>
+ */
+public interface ProbeAware extends Probeable {
+
+	/**
+	 * @param stateName Name of a state to which a Probe has been connected
+	 */
+	public void probeAdded(String stateName);
+
+	/**
+	 * @param stateName Name of a state from which a Probe has been disconnected
+	 */
+	public void probeRemoved(String stateName);
+
+}
@@ -0,0 +1,15 @@
+package ca.nengo.model;
+
+/**
+ * SpikeOutput that also lists which elements spiked, so that a receiver can handle a
+ * step's spikes in time proportional to their number rather than to the dimension.
+ */
+public interface SparseSpikeOutput extends SpikeOutput {
+
+	/**
+	 * @return Indices of the elements of getValues() that are true, in increasing order
+	 * 		(the array must not be modified)
+	 */
+	public int[] getSpikeIndices();
+
+}
@@ -43,6 +43,7 @@ import ca.nengo.model.InstantaneousOutput;
 import ca.nengo.model.Node;
 import ca.nengo.model.Origin;
 import ca.nengo.model.PreciseSpikeOutput;
+import ca.nengo.model.ProbeAware;
 import ca.nengo.model.Probeable;
 import ca.nengo.model.SimulationException;
 import ca.nengo.model.SimulationMode;
@@ -63,7 +64,7 @@ import ca.nengo.util.impl.TimeSeriesImpl;
  *
  * @author Bryan Tripp
  */
-public abstract class AbstractEnsemble implements Ensemble, Probeable, VisiblyMutable {
+public abstract class AbstractEnsemble implements Ensemble, ProbeAware, VisiblyMutable {
 
 	private static final long serialVersionUID = -5498397418584843304L;
 
@@ -190,6 +191,18 @@ public abstract class AbstractEnsemble implements Ensemble, Probeable, VisiblyMu
 			mySpikePattern = new SpikePatternImpl(myNodes.length);
 		}
 
+		runNodes(startTime, endTime);
+	}
+
+	/**
+	 * Runs each Node in turn and collects spikes if requested. Subclasses that advance
+	 * their Nodes in bulk can override this.
+	 *
+	 * @param startTime simulation time at which running starts (s)
+	 * @param endTime simulation time at which running ends (s)
+	 * @throws SimulationException if a Node can not be run
+	 */
+	protected void runNodes(float startTime, float endTime) throws SimulationException {
 		for (int i = 0; i < myNodes.length; i++) {
 			myNodes[i].run(startTime, endTime);
 
@@ -404,6 +417,37 @@ public abstract class AbstractEnsemble implements Ensemble, Probeable, VisiblyMu
 		}
 		return result;
 	}
+
+	/**
+	 * Forwards to the ProbeAware Nodes that have a state by the given name, since the composite
+	 * history is made from theirs.
+	 *
+	 * @see ca.nengo.model.ProbeAware#probeAdded(java.lang.String)
+	 */
+	public void probeAdded(String stateName) {
+		List<Integer> nodeNumbers = myStateNames.get(stateName);
+		if (nodeNumbers != null) {
+			for (Integer i : nodeNumbers) {
+				if (myNodes[i.intValue()] instanceof ProbeAware) {
+					((ProbeAware) myNodes[i.intValue()]).probeAdded(stateName);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @see ca.nengo.model.ProbeAware#probeRemoved(java.lang.String)
+	 */
+	public void probeRemoved(String stateName) {
+		List<Integer> nodeNumbers = myStateNames.get(stateName);
+		if (nodeNumbers != null) {
+			for (Integer i : nodeNumbers) {
+				if (myNodes[i.intValue()] instanceof ProbeAware) {
+					((ProbeAware) myNodes[i.intValue()]).probeRemoved(stateName);
+				}
+			}
+		}
+	}
     
     public void stopProbing(String stateName){
 	}
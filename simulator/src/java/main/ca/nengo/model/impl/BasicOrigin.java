@@ -43,6 +43,7 @@ import ca.nengo.model.Origin;
 import ca.nengo.model.Resettable;
 import ca.nengo.model.SimulationException;
 import ca.nengo.model.Units;
+import ca.nengo.util.Environment;
 
 /**
  * A generic implementation of Origin. Nodes that contain an Origin of this type should call one
@@ -65,6 +66,8 @@ public class BasicOrigin implements Origin, Noise.Noisy, Resettable, Configurabl
 	private Noise[] myNoises; //per output
 	private transient ConfigurationImpl myConfiguration;
 	private boolean myRequiredOnCPU;
+	private transient RealOutputImpl[] myBuffers; //recycled outputs (see Environment.isZeroAllocation())
+	private transient int myBufferIndex;
 
 	/**
 	 * Dummy default, necessary for object "ArrayOrigin" in jython code
@@ -122,6 +125,17 @@ public class BasicOrigin implements Origin, Noise.Noisy, Resettable, Configurabl
 	public void setValues(float startTime, float endTime, float[] values) {
 		assert values.length == myDimension;
 
+		if (Environment.isZeroAllocation()) {
+			RealOutputImpl output = nextBuffer();
+			float[] v = output.getValues();
+			for (int i = 0; i < myDimension; i++) {
+				v[i] = (myNoise != null) ? myNoises[i].getValue(startTime, endTime, values[i]) : values[i];
+			}
+			output.setTime(endTime);
+			myValues = output;
+			return;
+		}
+
 		float[] v = values;
 		if (myNoise != null) {
 			v = new float[myDimension];
@@ -134,6 +148,17 @@ public class BasicOrigin implements Origin, Noise.Noisy, Resettable, Configurabl
 		myValues = new RealOutputImpl(v, myUnits, endTime);
 	}
 
+	//alternates between two recycled outputs, so that the last output remains valid during the next step
+	private RealOutputImpl nextBuffer() {
+		if (myBuffers == null || myBuffers[0].getDimension() != myDimension || myBuffers[0].getUnits() != myUnits) {
+			myBuffers = new RealOutputImpl[]{
+					new RealOutputImpl(new float[myDimension], myUnits, 0),
+					new RealOutputImpl(new float[myDimension], myUnits, 0)};
+		}
+		myBufferIndex = 1 - myBufferIndex;
+		return myBuffers[myBufferIndex];
+	}
+
 	/**
 	 * This method is normally called by the Node that contains this Origin, to set the input that is
 	 * read by other nodes from getValues(). No noise is applied to the given values.
@@ -233,6 +258,7 @@ public class BasicOrigin implements Origin, Noise.Noisy, Resettable, Configurabl
 	@Override
 	public BasicOrigin clone() throws CloneNotSupportedException {
 		BasicOrigin result = (BasicOrigin) super.clone();
+		result.myBuffers = null;
 		if (myNoise != null) {
             result.setNoise(myNoise.clone());
         }
@@ -133,6 +133,7 @@ public class EnsembleOrigin implements Origin {
 	
 	private static SpikeOutput composeSpikeOutput(Origin[] origins, Units units) throws SimulationException {
 		boolean[] values = new boolean[origins.length];
+		int numSpikes = 0;
 		
 		for (int i = 0; i < origins.length; i++) {
 			InstantaneousOutput o = origins[i].getValues();
@@ -144,9 +145,16 @@ public class EnsembleOrigin implements Origin {
 			}
 			
 			values[i] = ((SpikeOutput) o).getValues()[0];
+			if (values[i]) numSpikes++;
 		}
 		
-		return new SpikeOutputImpl(values, units, origins[0].getValues().getTime());
+		//list the spikes now so that receivers don't have to search for them
+		int[] spikeIndices = new int[numSpikes];
+		for (int i = 0, j = 0; j < numSpikes; i++) {
+			if (values[i]) spikeIndices[j++] = i;
+		}
+		
+		return new SpikeOutputImpl(values, spikeIndices, units, origins[0].getValues().getTime());
 	}
 
 	private static PreciseSpikeOutput composePreciseSpikeOutput(Origin[] origins, Units units) throws SimulationException {
@@ -52,6 +52,7 @@ import ca.nengo.model.StructuralException;
 import ca.nengo.model.Termination;
 import ca.nengo.model.Units;
 import ca.nengo.util.ScriptGenException;
+import ca.nengo.util.Environment;
 import ca.nengo.util.TimeSeries;
 import ca.nengo.util.VisiblyMutable;
 import ca.nengo.util.VisiblyMutableUtils;
@@ -83,6 +84,8 @@ public class FunctionInput implements Node, Probeable {
 	private BasicOrigin myOrigin;
 	private String myDocumentation;
 	private transient List<VisiblyMutable.Listener> myListeners;
+	private transient float[] myValueBuffer; //scratch space in zero-allocation mode (BasicOrigin copies values)
+	private transient float[] myTimeBuffer;
 
 	/**
 	 * @param name The name of this Node
@@ -149,9 +152,23 @@ public class FunctionInput implements Node, Probeable {
 	public void run(float startTime, float endTime) {
 		myTime = endTime;
 
-		float[] values = new float[myFunctions.length];
+		float[] values;
+		float[] time;
+		if (Environment.isZeroAllocation()) {
+			if (myValueBuffer == null || myValueBuffer.length != myFunctions.length) {
+				myValueBuffer = new float[myFunctions.length];
+				myTimeBuffer = new float[1];
+			}
+			values = myValueBuffer;
+			time = myTimeBuffer;
+			time[0] = myTime;
+		} else {
+			values = new float[myFunctions.length];
+			time = null;
+		}
+
 		for (int i = 0; i < values.length; i++) {
-			values[i] = myFunctions[i].map(new float[]{myTime});
+			values[i] = myFunctions[i].map(time != null ? time : new float[]{myTime});
 		}
 
 		myOrigin.setValues(startTime, endTime, values);
@@ -194,7 +211,7 @@ public class FunctionInput implements Node, Probeable {
 		}
 
 		float[] values = ((RealOutput) myOrigin.getValues()).getValues();
-		result = new TimeSeriesImpl(new float[]{myTime}, new float[][]{values}, Units.uniform(myUnits, values.length));
+		result = new TimeSeriesImpl(new float[]{myTime}, new float[][]{values.clone()}, Units.uniform(myUnits, values.length));
 
 		return result;
 	}
@@ -374,6 +391,8 @@ public class FunctionInput implements Node, Probeable {
 	@Override
 	public Node clone() throws CloneNotSupportedException {
 		FunctionInput result = (FunctionInput) super.clone();
+		result.myValueBuffer = null;
+		result.myTimeBuffer = null;
 
 		Function[] functions = new Function[myFunctions.length];
 		for (int i = 0; i < functions.length; i++) {
@@ -33,6 +33,7 @@ import ca.nengo.model.PlasticNodeTermination;
 import ca.nengo.model.PreciseSpikeOutput;
 import ca.nengo.model.RealOutput;
 import ca.nengo.model.SimulationException;
+import ca.nengo.model.SparseSpikeOutput;
 import ca.nengo.model.SpikeOutput;
 import ca.nengo.model.StructuralException;
 
@@ -299,6 +300,10 @@ public class LinearExponentialTermination implements PlasticNodeTermination {
     }
 
     private float combineSpikes(SpikeOutput input, float[] weights) {
+        if (input instanceof SparseSpikeOutput) {
+            return combineSpikes(((SparseSpikeOutput) input).getSpikeIndices(), weights);
+        }
+
         float result = 0;
         boolean[] spikes = input.getValues();
 
@@ -313,6 +318,25 @@ public class LinearExponentialTermination implements PlasticNodeTermination {
                 if (spikes[i]) {
                     result += weights[i];
                 }
+            }
+        }
+
+        return result;
+    }
+
+    //only visits the inputs that spiked (same result, and same random draws, as the dense version)
+    private float combineSpikes(int[] spikeIndices, float[] weights) {
+        float result = 0;
+
+        if (myWeightProbabilities!=null) {
+            for (int i = 0; i < spikeIndices.length; i++) {
+                if (random.nextFloat()<myWeightProbabilities[spikeIndices[i]]) {
+                    result += weights[spikeIndices[i]];
+                }
+            }
+        } else {
+            for (int i = 0; i < spikeIndices.length; i++) {
+                result += weights[spikeIndices[i]];
             }
         }
 
@@ -118,6 +118,37 @@ public class NetworkArrayImpl extends NetworkImpl {
 		createEnsembleOrigin("X");
 		this.setUseGPU(true);
 	}
+
+	/**
+	 * Create a network holding an array of identical nodes, copied from a template. Rather than
+	 * each finding its own activities and decoders, the nodes share those of the template, including
+	 * for Origins added later with addDecodedOrigin(), so building the array costs about as much as
+	 * building one node (see NEFEnsembleImpl.shareApproximators()). A node whose encoders, radii or
+	 * neurons are later changed stops sharing.
+	 *
+	 * @param name The name of the NetworkArray to create
+	 * @param template Ensemble to use as the first node; the others are copies of it, named by their index
+	 * @param length Number of nodes
+	 * @throws StructuralException if the template can't be copied
+	 */
+	public NetworkArrayImpl(String name, NEFEnsembleImpl template, int length) throws StructuralException {
+		this(name, copy(template, length));
+	}
+
+	private static NEFEnsembleImpl[] copy(NEFEnsembleImpl template, int length) throws StructuralException {
+		NEFEnsembleImpl[] result = new NEFEnsembleImpl[length];
+		result[0] = template;
+		for (int i = 1; i < length; i++) {
+			try {
+				result[i] = template.clone();
+			} catch (CloneNotSupportedException e) {
+				throw new StructuralException("Can't copy template ensemble", e);
+			}
+			result[i].setName(String.valueOf(i));
+			result[i].shareApproximators(template);
+		}
+		return result;
+	}
 	
 	/** 
 	 * Create an Origin that concatenates the values of internal Origins.
@@ -160,7 +191,14 @@ public class NetworkArrayImpl extends NetworkImpl {
 	public Origin addDecodedOrigin(String name, Function[] functions, String nodeOrigin) throws StructuralException {
 		DecodedOrigin[] origins = new DecodedOrigin[myNumNodes];
 		for (int i = 0; i < myNumNodes; i++) {
-			origins[i] = (DecodedOrigin) myNodes[i].addDecodedOrigin(name,  functions,  nodeOrigin);
+			if (i > 0 && myNodes[i].isSharingApproximators(myNodes[0])) {
+				//identical nodes have identical decoders
+				origins[i] = new DecodedOrigin(myNodes[i], name, myNodes[i].getNodes(), nodeOrigin, functions,
+						MU.clone(origins[0].getDecoders()));
+				myNodes[i].addDecodedOrigin(origins[i]);
+			} else {
+				origins[i] = (DecodedOrigin) myNodes[i].addDecodedOrigin(name,  functions,  nodeOrigin);
+			}
 		}
 		this.createEnsembleOrigin(name, origins);
 		return this.getOrigin(name);
@@ -451,6 +489,10 @@ public class NetworkArrayImpl extends NetworkImpl {
 		float[] times = myNodes[0].getHistory(stateName).getTimes();
 		float[][] values = new float[1][myNumNodes];
 		Units[] units = new Units[myNumNodes];
+		if (times.length == 0) {
+			//nothing recorded yet (e.g. before the first run)
+			return new TimeSeriesImpl(times, new float[0][], Units.uniform(Units.UNK, myNumNodes));
+		}
 		
 		for(int i=0; i < myNumNodes; i++) {
 			TimeSeries data = myNodes[i].getHistory(stateName);
@@ -459,6 +501,26 @@ public class NetworkArrayImpl extends NetworkImpl {
 		}
 		return new TimeSeriesImpl(times, values, units);
 	}
+
+	/**
+	 * Forwards to every ensemble in the array, since the history is made from theirs.
+	 *
+	 * @see ca.nengo.model.impl.NetworkImpl#probeAdded(java.lang.String)
+	 */
+	@Override
+	public void probeAdded(String stateName) {
+		for(int i=0; i < myNumNodes; i++)
+			myNodes[i].probeAdded(stateName);
+	}
+
+	/**
+	 * @see ca.nengo.model.impl.NetworkImpl#probeRemoved(java.lang.String)
+	 */
+	@Override
+	public void probeRemoved(String stateName) {
+		for(int i=0; i < myNumNodes; i++)
+			myNodes[i].probeRemoved(stateName);
+	}
 	
 	/**
 	 * Sets learning parameters on learned terminations in the array.
@@ -47,6 +47,7 @@ import ca.nengo.model.InstantaneousOutput;
 import ca.nengo.model.Network;
 import ca.nengo.model.Node;
 import ca.nengo.model.Origin;
+import ca.nengo.model.ProbeAware;
 import ca.nengo.model.Probeable;
 import ca.nengo.model.Projection;
 import ca.nengo.model.SimulationException;
@@ -74,7 +75,7 @@ import ca.nengo.util.impl.ScriptGenerator;
  *
  * @author Bryan Tripp
  */
-public class NetworkImpl implements Network, VisiblyMutable, VisiblyMutable.Listener, TaskSpawner {
+public class NetworkImpl implements Network, ProbeAware, VisiblyMutable, VisiblyMutable.Listener, TaskSpawner {
 
 	/**
 	 * Default name for a Network
@@ -140,9 +141,12 @@ public class NetworkImpl implements Network, VisiblyMutable, VisiblyMutable.List
 	}
 
 	/**
-	 * @param simulator Simulator with which to run this Network
+	 * @param simulator Simulator with which to run this Network (a replaced LocalSimulator is closed)
 	 */
 	public void setSimulator(Simulator simulator) {
+		if (mySimulator instanceof LocalSimulator && mySimulator != simulator) {
+			((LocalSimulator) mySimulator).close();
+		}
 		mySimulator = simulator;
 		mySimulator.initialize(this);
 	}
@@ -624,6 +628,28 @@ public class NetworkImpl implements Network, VisiblyMutable, VisiblyMutable.List
 		return p.getHistory(n);
 	}
 
+	/**
+	 * Forwards to the Probeable whose state is exposed with the given name, if it is ProbeAware.
+	 *
+	 * @see ca.nengo.model.ProbeAware#probeAdded(java.lang.String)
+	 */
+	public void probeAdded(String stateName) {
+		Probeable p = myProbeables.get(stateName);
+		if (p instanceof ProbeAware) {
+			((ProbeAware) p).probeAdded(myProbeableStates.get(stateName));
+		}
+	}
+
+	/**
+	 * @see ca.nengo.model.ProbeAware#probeRemoved(java.lang.String)
+	 */
+	public void probeRemoved(String stateName) {
+		Probeable p = myProbeables.get(stateName);
+		if (p instanceof ProbeAware) {
+			((ProbeAware) p).probeRemoved(myProbeableStates.get(stateName));
+		}
+	}
+
 	/**
 	 * @see ca.nengo.model.Probeable#listStates()
 	 */
@@ -1293,6 +1319,9 @@ public class NetworkImpl implements Network, VisiblyMutable, VisiblyMutable.List
 		if (myStepListeners == null) {
 			myStepListeners = new ArrayList<StepListener>(1);
 		}
+		if (myStepListeners.isEmpty()) { //avoid creating an iterator at each step
+			return;
+		}
 		for (StepListener listener: myStepListeners) {
 			listener.stepStarted(time);
 		}
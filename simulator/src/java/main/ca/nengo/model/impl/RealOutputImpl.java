@@ -82,6 +82,16 @@ public class RealOutputImpl implements RealOutput {
 		return myTime;
 	}
 
+	/**
+	 * Allows an output object to be recycled from step to step (see 
+	 * ca.nengo.util.Environment#isZeroAllocation()). Values can be changed in place through getValues().
+	 * 
+	 * @param time New time of this output
+	 */
+	public void setTime(float time) {
+		myTime = time;
+	}
+
 	@Override
 	public RealOutput clone() throws CloneNotSupportedException {
 		return new RealOutputImpl(myValues.clone(), myUnits, myTime);
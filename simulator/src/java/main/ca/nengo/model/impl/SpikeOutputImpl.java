@@ -27,6 +27,7 @@ a recipient may use your version of this file under either the MPL or the GPL Li
  */
 package ca.nengo.model.impl;
 
+import ca.nengo.model.SparseSpikeOutput;
 import ca.nengo.model.SpikeOutput;
 import ca.nengo.model.Units;
 
@@ -35,13 +36,14 @@ import ca.nengo.model.Units;
  *  
  * @author Bryan Tripp
  */
-public class SpikeOutputImpl implements SpikeOutput {
+public class SpikeOutputImpl implements SparseSpikeOutput {
 
 	private static final long serialVersionUID = 1L;
 	
 	private boolean[] myValues;
 	private Units myUnits;
 	private float myTime;
+	private transient volatile int[] mySpikeIndices; //found when first needed
 
 	/**
 	 * @param values @see #getValues()
@@ -54,6 +56,17 @@ public class SpikeOutputImpl implements SpikeOutput {
 		myTime = time;
 	}
 
+	/**
+	 * @param values @see #getValues()
+	 * @param spikeIndices @see #getSpikeIndices() (must match values)
+	 * @param units @see #getUnits()
+	 * @param time @see #getTime()
+	 */
+	public SpikeOutputImpl(boolean[] values, int[] spikeIndices, Units units, float time) {
+		this(values, units, time);
+		mySpikeIndices = spikeIndices;
+	}
+
 	/**
 	 * @see ca.nengo.model.SpikeOutput#getValues()
 	 */
@@ -82,6 +95,48 @@ public class SpikeOutputImpl implements SpikeOutput {
 		return myTime;
 	}
 
+	/**
+	 * The indices are found on the first call, and shared by all the receivers of this output. 
+	 * 
+	 * @see ca.nengo.model.SparseSpikeOutput#getSpikeIndices()
+	 */
+	public int[] getSpikeIndices() {
+		int[] result = mySpikeIndices;
+		if (result == null) {
+			result = findSpikes(myValues);
+			mySpikeIndices = result;
+		}
+		return result;
+	}
+
+	/**
+	 * @param values Spike values
+	 * @return Indices of the true values
+	 */
+	public static int[] findSpikes(boolean[] values) {
+		int n = 0;
+		for (int i = 0; i < values.length; i++) {
+			if (values[i]) n++;
+		}
+		int[] result = new int[n];
+		for (int i = 0, j = 0; j < n; i++) {
+			if (values[i]) result[j++] = i;
+		}
+		return result;
+	}
+
+	/**
+	 * Allows an output object to be recycled from step to step (see 
+	 * ca.nengo.util.Environment#isZeroAllocation()). Values can be changed in place through getValues(), 
+	 * after which this method must be called (it also clears the spike indices). 
+	 * 
+	 * @param time New time of this output
+	 */
+	public void setTime(float time) {
+		myTime = time;
+		mySpikeIndices = null;
+	}
+
 	@Override
 	public SpikeOutput clone() throws CloneNotSupportedException {
 		return new SpikeOutputImpl(myValues.clone(), myUnits, myTime);
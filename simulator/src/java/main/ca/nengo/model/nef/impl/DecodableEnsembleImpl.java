@@ -79,6 +79,8 @@ public class DecodableEnsembleImpl extends PlasticEnsembleImpl implements Decoda
 	private ApproximatorFactory myApproximatorFactory;
 	private Map<String, LinearApproximator> myApproximators;
 	private float myTime; //used to support Probeable
+	private transient DecodedOrigin[] myDecodedOriginArray; //cached for iteration at each step, cleared on change
+	private transient DecodedTermination[] myDecodedTerminationArray;
 	
 	private static Logger ourLogger = Logger.getLogger(DecodableEnsembleImpl.class);
 
@@ -459,11 +461,54 @@ public class DecodableEnsembleImpl extends PlasticEnsembleImpl implements Decoda
     public void run(float startTime, float endTime) throws SimulationException {
 		super.run(startTime, endTime);
 
-		for (DecodedOrigin o : myDecodedOrigins.values()) {
+		runDecodedOrigins(startTime, endTime);
+
+		setTime(endTime);
+	}
+
+	/**
+	 * Runs each DecodedOrigin after the Nodes have been run.
+	 *
+	 * @param startTime simulation time of timestep onset
+	 * @param endTime simulation time of timestep end
+	 * @throws SimulationException if an Origin can not be run
+	 */
+	protected void runDecodedOrigins(float startTime, float endTime) throws SimulationException {
+		for (DecodedOrigin o : getDecodedOriginArray()) {
             o.run(null, startTime, endTime);
         }
+	}
 
-		setTime(endTime);
+	/**
+	 * @return The DecodedOrigins of this ensemble, in an array that is cached until the next
+	 * 		visible change (so that iterating over them at each step doesn't create objects)
+	 */
+	protected DecodedOrigin[] getDecodedOriginArray() {
+		if (myDecodedOriginArray == null || myDecodedOriginArray.length != myDecodedOrigins.size()) {
+			myDecodedOriginArray = myDecodedOrigins.values().toArray(new DecodedOrigin[0]);
+		}
+		return myDecodedOriginArray;
+	}
+
+	/**
+	 * @return The DecodedTerminations of this ensemble, in an array that is cached until the next
+	 * 		visible change (so that iterating over them at each step doesn't create objects)
+	 */
+	protected DecodedTermination[] getDecodedTerminationArray() {
+		if (myDecodedTerminationArray == null || myDecodedTerminationArray.length != myDecodedTerminations.size()) {
+			myDecodedTerminationArray = myDecodedTerminations.values().toArray(new DecodedTermination[0]);
+		}
+		return myDecodedTerminationArray;
+	}
+
+	/**
+	 * @see ca.nengo.model.impl.AbstractEnsemble#fireVisibleChangeEvent()
+	 */
+	@Override
+	protected void fireVisibleChangeEvent() {
+		myDecodedOriginArray = null;
+		myDecodedTerminationArray = null;
+		super.fireVisibleChangeEvent();
 	}
 
 	/**
@@ -505,7 +550,7 @@ public class DecodableEnsembleImpl extends PlasticEnsembleImpl implements Decoda
 			for (int i = 0; i < vals.length; i++) {
 				units[i] = origin.getValues().getUnits();
 			}
-			result = new TimeSeriesImpl(new float[]{myTime}, new float[][]{vals}, units);
+			result = new TimeSeriesImpl(new float[]{myTime}, new float[][]{vals.clone()}, units); //copy, as outputs may be recycled
 		} else if (t != null) {
 			result = t.getHistory(DecodedTermination.OUTPUT);
     	} else if (t == null && stateName.endsWith(":STP")) {
@@ -556,6 +601,8 @@ public class DecodableEnsembleImpl extends PlasticEnsembleImpl implements Decoda
 	@Override
 	public DecodableEnsembleImpl clone() throws CloneNotSupportedException {
 		DecodableEnsembleImpl result = (DecodableEnsembleImpl) super.clone();
+		result.myDecodedOriginArray = null;
+		result.myDecodedTerminationArray = null;
 
 		result.myApproximatorFactory = myApproximatorFactory.clone();
 		result.myApproximators = new HashMap<String, LinearApproximator>(5);
@@ -27,6 +27,8 @@ a recipient may use your version of this file under either the MPL or the GPL Li
  */
 package ca.nengo.model.nef.impl;
 
+import java.util.Arrays;
+
 import org.apache.log4j.Logger;
 
 import ca.nengo.config.ConfigUtil;
@@ -56,6 +58,7 @@ import ca.nengo.model.impl.RealOutputImpl;
 import ca.nengo.model.nef.ExpressModel;
 import ca.nengo.model.nef.NEFEnsemble;
 import ca.nengo.model.plasticity.ShortTermPlastic;
+import ca.nengo.util.Environment;
 import ca.nengo.util.MU;
 import ca.nengo.util.TimeSeries;
 import ca.nengo.util.VectorGenerator;
@@ -91,6 +94,8 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 	private DynamicalSystem[] mySTPDynamics;
 	private Integrator myIntegrator;
 	private float[] mySTPHistory;
+	private transient RealOutputImpl[] myBuffers; //recycled outputs (see Environment.isZeroAllocation())
+	private transient int myBufferIndex;
 	private float myTime;
 	private boolean myRequiredOnCPU;
 	private ExpressModel myExpressModel;
@@ -263,6 +268,32 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 		return result;
 	}
 
+	/**
+	 * Estimates error from constant-rate node outputs, without running this origin (see 
+	 * DecodingErrorEstimator). This is faster than getError(int), and uses less memory, but 
+	 * output noise and short-term plasticity are not included.
+	 *
+	 * @param samples The number of input vectors the error is sampled over
+	 * @return Mean-squared error of this origin and its confidence interval
+	 * @throws StructuralException if this origin doesn't belong to an NEFEnsembleImpl
+	 */
+	public DecodingErrorEstimator.Estimate estimateError(int samples) throws StructuralException {
+		return new DecodingErrorEstimator(this).estimate(samples);
+	}
+
+	/**
+	 * As estimateError(int), but samples error at random points until the 95% confidence interval 
+	 * of the mean-squared error in each dimension is within a given fraction of the mean.
+	 *
+	 * @param relativeTolerance Largest acceptable ratio of confidence interval half-width to mean
+	 * @param maxSamples Maximum number of input vectors the error is sampled over
+	 * @return Mean-squared error of this origin and its confidence interval
+	 * @throws StructuralException if this origin doesn't belong to an NEFEnsembleImpl
+	 */
+	public DecodingErrorEstimator.Estimate estimateError(float relativeTolerance, int maxSamples) throws StructuralException {
+		return new DecodingErrorEstimator(this).estimate(relativeTolerance, DecodingErrorEstimator.BLOCK_SIZE, maxSamples);
+	}
+
 	/**
 	 * @param noise New output noise model (defaults to no noise)
 	 */
@@ -301,34 +332,15 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 	}
 
 	private static float[][] findDecoders(Node[] nodes, Function[] functions, LinearApproximator approximator)  {
-		float[][] result = new float[nodes.length][];
-		for (int i = 0; i < result.length; i++) {
-			result[i] = new float[functions.length];
-		}
-
-		for (int j = 0; j < functions.length; j++) {
-			float[] coeffs = approximator.findCoefficients(functions[j]);
-			for (int i = 0; i < nodes.length; i++) {
-				result[i][j] = coeffs[i];
-			}
-		}
-
+		//all dimensions together, so that work shared between them is only done once
+		float[][] result = approximator.findCoefficients(functions);
+		assert result.length == nodes.length;
 		return result;
 	}
 	
 	private static float[][] findDecoders(Node[] nodes, float[][] targetSignal, LinearApproximator approximator)  {
-		float[][] result = new float[nodes.length][];
-		for (int i = 0; i < result.length; i++) {
-			result[i] = new float[targetSignal.length];
-		}
-
-		for (int j = 0; j < targetSignal.length; j++) {
-			float[] coeffs = ((WeightedCostApproximator)approximator).findCoefficients(targetSignal[j]);
-			for (int i = 0; i < nodes.length; i++) {
-				result[i][j] = coeffs[i];
-			}
-		}
-
+		float[][] result = ((WeightedCostApproximator)approximator).findCoefficients(targetSignal);
+		assert result.length == nodes.length;
 		return result;
 	}
 
@@ -448,10 +460,10 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 			throw new SimulationException("A state of dimension " + myFunctions[0].getDimension() + " was expected");
 		}
 
-		float[] values = new float[myFunctions.length];
+		float[] values = startValues();
 		float stepSize = endTime - startTime;
 
-		mySTPHistory = new float[myNodes.length];
+		resetSTPHistory();
 		if (myMode == SimulationMode.DIRECT) {
 			for (int i = 0; i < values.length; i++) {
 				values[i] = myFunctions[i].map(state);
@@ -492,6 +504,45 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 			}
 		}
 		
+		setOutput(values, startTime, endTime);
+	}
+
+	/**
+	 * An alternative to run(float[], float, float) for ensembles that advance their Nodes in bulk
+	 * and so already have the main output of each Node in an array. In DIRECT and EXPRESS modes this
+	 * is the same as run(state, startTime, endTime).
+	 *
+	 * @param state Idealized state, as in run(float[], float, float)
+	 * @param nodeOutputs Output of the Node-level Origin of each Node, with spikes expressed as
+	 * 		1/(endTime-startTime) and no spike as 0
+	 * @param startTime simulation time of timestep onset
+	 * @param endTime simulation time of timestep end
+	 * @throws SimulationException If the given state is not of the expected dimension
+	 */
+	public void run(float[] state, float[] nodeOutputs, float startTime, float endTime) throws SimulationException {
+		if (myMode == SimulationMode.DIRECT || myMode == SimulationMode.EXPRESS) {
+			run(state, startTime, endTime);
+			return;
+		}
+
+		float[] values = startValues();
+
+		resetSTPHistory();
+		for (int i = 0; i < nodeOutputs.length; i++) {
+			float val = nodeOutputs[i];
+			if (val != 0 || mySTPDynamicsTemplate != null) {
+				float[] decoder = getDynamicDecoder(i, val, startTime, endTime);
+				for (int j = 0; j < values.length; j++) {
+					values[j] += val * decoder[j];
+				}
+			}
+		}
+
+		setOutput(values, startTime, endTime);
+	}
+
+	//applies noise and stores the output of a step
+	private void setOutput(float[] values, float startTime, float endTime) {
 		if (myNoise != null) {
 			for (int i = 0; i < values.length; i++) {
 				values[i] = myNoises[i].getValue(startTime, endTime, values[i]);
@@ -499,7 +550,37 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 		}
 
 		myTime = endTime;
-		myOutput = new RealOutputImpl(values, Units.UNK, endTime);
+		if (myBuffers != null && values == myBuffers[myBufferIndex].getValues()) {
+			myBuffers[myBufferIndex].setTime(endTime);
+			myOutput = myBuffers[myBufferIndex];
+		} else {
+			myOutput = new RealOutputImpl(values, Units.UNK, endTime);
+		}
+	}
+
+	//zeroed array for the values of the next output (alternating between two recycled outputs in zero-allocation mode)
+	private float[] startValues() {
+		if (!Environment.isZeroAllocation()) {
+			return new float[myFunctions.length];
+		}
+
+		if (myBuffers == null || myBuffers[0].getDimension() != myFunctions.length) {
+			myBuffers = new RealOutputImpl[]{
+					new RealOutputImpl(new float[myFunctions.length], Units.UNK, 0),
+					new RealOutputImpl(new float[myFunctions.length], Units.UNK, 0)};
+		}
+		myBufferIndex = 1 - myBufferIndex;
+		float[] result = myBuffers[myBufferIndex].getValues();
+		Arrays.fill(result, 0);
+		return result;
+	}
+
+	private void resetSTPHistory() {
+		if (Environment.isZeroAllocation() && mySTPHistory != null && mySTPHistory.length == myNodes.length) {
+			Arrays.fill(mySTPHistory, 0);
+		} else {
+			mySTPHistory = new float[myNodes.length];
+		}
 	}
 
 	private float[] getDynamicDecoder(int i, float input, float startTime, float endTime) {
@@ -519,7 +600,7 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 		if (mySTPHistory == null) {
             mySTPHistory = new float[myNodes.length];
         }
-		return new TimeSeriesImpl(new float[]{myTime}, new float[][]{mySTPHistory}, Units.uniform(Units.UNK, mySTPHistory.length));
+		return new TimeSeriesImpl(new float[]{myTime}, new float[][]{mySTPHistory.clone()}, Units.uniform(Units.UNK, mySTPHistory.length));
 	}
 
 	/**
@@ -0,0 +1,221 @@
+package ca.nengo.model.nef.impl;
+
+import ca.nengo.math.Function;
+import ca.nengo.math.impl.ThreadSafeFunctions;
+import ca.nengo.math.impl.WeightedCostApproximator;
+import ca.nengo.model.StructuralException;
+import ca.nengo.util.MU;
+import ca.nengo.util.VectorGenerator;
+import ca.nengo.util.impl.ParallelRange;
+import ca.nengo.util.impl.RandomHypersphereVG;
+
+/**
+ * <p>Estimates the decoding error of a DecodedOrigin at random points in the represented space,
+ * as DecodedOrigin.getError() does, but without running the origin in simulation modes (see
+ * DecodedOrigin.estimateError(...)). Points are processed in blocks: the constant-rate outputs of
+ * all nodes are found for a block at once (see NEFEnsembleImpl.getConstantOutputs(...)), and decoded
+ * estimates are compared to the origin's functions in parallel over points. Only sums of squared errors are kept between blocks, so memory
+ * doesn't grow with the number of samples.</p>
+ *
+ * <p>The origin's functions are only evaluated from several threads if they are known to be
+ * thread-safe (see ThreadSafeFunctions); otherwise each block is processed in the calling thread.
+ * Output noise and short-term plasticity are not included.</p>
+ */
+public class DecodingErrorEstimator {
+
+	/**
+	 * Number of points in each block
+	 */
+	public static final int BLOCK_SIZE = 256;
+
+	private static final double Z_95 = 1.96; //standard normal quantile for a 95% confidence interval
+	private static final int FUNCTION_COST = 50; //rough cost of a function evaluation in multiply-adds
+
+	private final DecodedOrigin myOrigin;
+	private final NEFEnsembleImpl myEnsemble;
+	private final VectorGenerator myInputGenerator;
+
+	/**
+	 * @param origin Origin whose error is to be estimated
+	 * @throws StructuralException if the origin doesn't belong to an NEFEnsembleImpl
+	 */
+	public DecodingErrorEstimator(DecodedOrigin origin) throws StructuralException {
+		if ( !(origin.getNode() instanceof NEFEnsembleImpl) ) {
+			throw new StructuralException("Can't estimate error of a DecodedOrigin unless it belongs to an NEFEnsembleImpl");
+		}
+		myOrigin = origin;
+		myEnsemble = (NEFEnsembleImpl) origin.getNode();
+		myInputGenerator = new RandomHypersphereVG(false, 1, 0);
+	}
+
+	/**
+	 * @param samples Number of points at which to sample error
+	 * @return Estimated mean-squared error in each dimension
+	 * @throws StructuralException if outputs of the ensemble's nodes can't be found
+	 */
+	public Estimate estimate(int samples) throws StructuralException {
+		Accumulator accumulator = new Accumulator(myOrigin.getDimensions());
+		while (accumulator.mySamples < samples) {
+			addBlock(accumulator, Math.min(BLOCK_SIZE, samples - accumulator.mySamples));
+		}
+		return accumulator.getEstimate();
+	}
+
+	/**
+	 * Samples error until the 95% confidence interval of the mean-squared error in each dimension
+	 * is within a given fraction of the mean, or until a maximum number of samples.
+	 *
+	 * @param relativeTolerance Largest acceptable ratio of confidence interval half-width to mean
+	 * @param minSamples Minimum number of samples
+	 * @param maxSamples Maximum number of samples
+	 * @return Estimated mean-squared error in each dimension
+	 * @throws StructuralException if outputs of the ensemble's nodes can't be found
+	 */
+	public Estimate estimate(float relativeTolerance, int minSamples, int maxSamples) throws StructuralException {
+		Accumulator accumulator = new Accumulator(myOrigin.getDimensions());
+		while (accumulator.mySamples < maxSamples) {
+			addBlock(accumulator, Math.min(BLOCK_SIZE, maxSamples - accumulator.mySamples));
+			if (accumulator.mySamples >= minSamples && accumulator.getEstimate().isWithin(relativeTolerance)) {
+				break;
+			}
+		}
+		return accumulator.getEstimate();
+	}
+
+	private void addBlock(Accumulator accumulator, int size) throws StructuralException {
+		final float[][] input = myInputGenerator.genVectors(size, myEnsemble.getDimension());
+		float[] radii = myEnsemble.getRadii();
+		for (int k = 0; k < size; k++) {
+			input[k] = MU.prodElementwise(input[k], radii);
+		}
+
+		final float[][] outputs;
+		synchronized (myEnsemble) { //nodes are switched to CONSTANT_RATE mode, so not while the ensemble runs
+			outputs = myEnsemble.getConstantOutputs(input, myOrigin.getNodeOrigin());
+		}
+		final float[][] decoders = myOrigin.getDecoders();
+		final Function[] functions = myOrigin.getFunctions();
+		final int dim = functions.length;
+		final float[][] squaredErrors = new float[size][dim];
+
+		long work = (long) size * (outputs.length + FUNCTION_COST) * dim;
+		int numThreads = ThreadSafeFunctions.isParallelizable(functions) ? WeightedCostApproximator.getNumThreads() : 1;
+		ParallelRange.run(size, work, numThreads, new ParallelRange.Task() {
+			public void run(int start, int end) {
+				float[] estimate = new float[dim];
+				for (int k = start; k < end; k++) {
+					for (int d = 0; d < dim; d++) {
+						estimate[d] = 0;
+					}
+					for (int i = 0; i < outputs.length; i++) {
+						float output = outputs[i][k];
+						if (output != 0) {
+							for (int d = 0; d < dim; d++) {
+								estimate[d] += output * decoders[i][d];
+							}
+						}
+					}
+					for (int d = 0; d < dim; d++) {
+						float error = estimate[d] - functions[d].map(input[k]);
+						squaredErrors[k][d] = error * error;
+					}
+				}
+			}
+		});
+
+		accumulator.add(squaredErrors);
+	}
+
+	//running sums of squared errors and their squares
+	private static class Accumulator {
+
+		private final double[] mySums;
+		private final double[] mySumsOfSquares;
+		private int mySamples;
+
+		public Accumulator(int dim) {
+			mySums = new double[dim];
+			mySumsOfSquares = new double[dim];
+		}
+
+		public void add(float[][] squaredErrors) {
+			for (float[] point : squaredErrors) {
+				for (int d = 0; d < point.length; d++) {
+					mySums[d] += point[d];
+					mySumsOfSquares[d] += (double) point[d] * point[d];
+				}
+			}
+			mySamples += squaredErrors.length;
+		}
+
+		public Estimate getEstimate() {
+			float[] mean = new float[mySums.length];
+			float[] halfWidth = new float[mySums.length];
+			for (int d = 0; d < mean.length; d++) {
+				double m = mySums[d] / mySamples;
+				mean[d] = (float) m;
+				if (mySamples > 1) {
+					double variance = Math.max(0, (mySumsOfSquares[d] - mySamples * m * m) / (mySamples - 1));
+					halfWidth[d] = (float) (Z_95 * Math.sqrt(variance / mySamples));
+				}
+			}
+			return new Estimate(mean, halfWidth, mySamples);
+		}
+	}
+
+	/**
+	 * An estimate of mean-squared decoding error in each output dimension.
+	 */
+	public static class Estimate {
+
+		private final float[] myMeanSquaredError;
+		private final float[] myConfidenceInterval;
+		private final int mySamples;
+
+		/**
+		 * @param meanSquaredError Estimated mean-squared error in each dimension
+		 * @param confidenceInterval Half-width of the 95% confidence interval of each estimate
+		 * @param samples Number of points sampled
+		 */
+		public Estimate(float[] meanSquaredError, float[] confidenceInterval, int samples) {
+			myMeanSquaredError = meanSquaredError;
+			myConfidenceInterval = confidenceInterval;
+			mySamples = samples;
+		}
+
+		/**
+		 * @return Estimated mean-squared error in each dimension
+		 */
+		public float[] getMeanSquaredError() {
+			return myMeanSquaredError;
+		}
+
+		/**
+		 * @return Half-width of the 95% confidence interval of the mean-squared error in each dimension
+		 */
+		public float[] getConfidenceInterval() {
+			return myConfidenceInterval;
+		}
+
+		/**
+		 * @return Number of points sampled
+		 */
+		public int getSamples() {
+			return mySamples;
+		}
+
+		/**
+		 * @param relativeTolerance Largest acceptable ratio of confidence interval half-width to mean
+		 * @return True if the confidence interval in every dimension is within the given fraction of the mean
+		 */
+		public boolean isWithin(float relativeTolerance) {
+			for (int d = 0; d < myMeanSquaredError.length; d++) {
+				if (myConfidenceInterval[d] > relativeTolerance * myMeanSquaredError[d]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+}
@@ -29,12 +29,21 @@ package ca.nengo.model.nef.impl;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.log4j.Logger;
 
 import ca.nengo.io.FileManager;
 import ca.nengo.math.ApproximatorFactory;
 import ca.nengo.math.Function;
+import ca.nengo.math.PDFTools;
 import ca.nengo.math.impl.IdentityFunction;
 import ca.nengo.math.impl.IndicatorPDF;
 import ca.nengo.math.impl.WeightedCostApproximator;
@@ -62,11 +71,15 @@ public class NEFEnsembleFactoryImpl implements NEFEnsembleFactory, java.io.Seria
 
 	private static Logger ourLogger = Logger.getLogger(NEFEnsembleFactoryImpl.class);
 
+	private static final int MAX_ATTEMPTS = 10; //to regenerate parts of an ensemble with a singular activity matrix
+
 	private ApproximatorFactory myApproximatorFactory;
 	private VectorGenerator myEncoderFactory;
 	private VectorGenerator myEvalPointFactory;
 	private NodeFactory myNodeFactory;
 	private transient File myDatabase;
+	private boolean myVectorized;
+	private boolean myCompact;
 
 	/**
 	 * Default constructor. Sets up factories.
@@ -106,6 +119,39 @@ public class NEFEnsembleFactoryImpl implements NEFEnsembleFactory, java.io.Seria
 		return myNodeFactory;
 	}
 
+	/**
+	 * @return True if new ensembles are VectorizedNEFEnsembleImpls, which advance LIF, ALIF and
+	 * 		Izhikevich populations in bulk (see VectorizedNEFEnsembleImpl)
+	 */
+	public boolean getVectorized() {
+		return myVectorized;
+	}
+
+	/**
+	 * @param vectorized True if new ensembles should be VectorizedNEFEnsembleImpls, which advance LIF,
+	 * 		ALIF and Izhikevich populations in bulk; false (the default) for NEFEnsembleImpls
+	 */
+	public void setVectorized(boolean vectorized) {
+		myVectorized = vectorized;
+	}
+
+	/**
+	 * @return True if new VectorizedNEFEnsembleImpls keep LIF neuron state in reduced precision
+	 * 		where possible (see VectorizedNEFEnsembleImpl.setCompact(boolean))
+	 */
+	public boolean getCompact() {
+		return myCompact;
+	}
+
+	/**
+	 * @param compact True if new VectorizedNEFEnsembleImpls should keep LIF neuron state in reduced
+	 * 		precision where possible; false (the default) for single precision. Has no effect unless
+	 * 		getVectorized() is true.
+	 */
+	public void setCompact(boolean compact) {
+		myCompact = compact;
+	}
+
 	/**
 	 * Stops the factory from printing out information to console during make process.
 	 */
@@ -122,14 +168,14 @@ public class NEFEnsembleFactoryImpl implements NEFEnsembleFactory, java.io.Seria
 	 */
 	public NEFEnsemble make(String name, int n, int dim) throws StructuralException {
 		float[] radii = MU.uniform(1, dim, 1)[0];
-		return doMake(name, n, radii, 0);
+		return doMake(name, n, radii);
 	}
 
 	/**
 	 * @see ca.nengo.model.nef.NEFEnsembleFactory#make(java.lang.String, int, float[])
 	 */
 	public NEFEnsemble make(String name, int n, float[] radii) throws StructuralException {
-		return doMake(name, n, radii, 0);
+		return doMake(name, n, radii);
 	}
 
 	/**
@@ -168,7 +214,7 @@ public class NEFEnsembleFactoryImpl implements NEFEnsembleFactory, java.io.Seria
                 }
             }
             if (result == null) {
-                result = doMake(name, n, radii, 0);
+                result = doMake(name, n, radii);
 
                 try {
                     // Set the ensemble's factory to null to allow saving with customized ensemble factories
@@ -180,7 +226,7 @@ public class NEFEnsembleFactoryImpl implements NEFEnsembleFactory, java.io.Seria
             }
 		}
         else{
-            result = doMake(name, n, radii, 0);
+            result = doMake(name, n, radii);
         }
 
         // Set the resulting ensemble's factory to this. It must be noted that this can be a good thing or
@@ -219,58 +265,219 @@ public class NEFEnsembleFactoryImpl implements NEFEnsembleFactory, java.io.Seria
 		myNodeFactory = factory;
 	}
 
-	//common make(...) implementation
-	private NEFEnsemble doMake(String name, int n, float[] radii, int attempts) throws StructuralException {
-		
-		try
-		{
-			int dim = radii.length;
-			NEFNode[] nodes = new NEFNode[n];
-
-			if(n < 1) {
-                ourLogger.error("Calling doMake with n = " + n);
-            }
+	/**
+	 * Makes several ensembles concurrently. Nodes, encoders and evaluation points are generated in the
+	 * calling thread, in order, and the ensembles and their default origins (which require activities,
+	 * pseudoinverses and decoders) are then built on a pool of threads. construct(...) and
+	 * addDefaultOrigins(...) must therefore be safe to call from several threads at once.
+	 *
+	 * If an ensemble's activity matrix is singular, the calling thread replaces the failing parts and
+	 * builds it again, before going on to the next ensemble. This method therefore returns once all the
+	 * ensembles are built, and the node, encoder and evaluation point factories are only used from the
+	 * calling thread, in a fixed order. Each build also gets its own generator for PDFTools.random(), 
+	 * seeded from the calling thread in the same order, which the pool thread uses for anything it draws 
+	 * (e.g. the noise added to activities for decoders). So a seeded model is reproducible. (It is not 
+	 * the same as when its ensembles are made one at a time, because replacements are generated after 
+	 * the initial parts of all the ensembles, and the pool threads draw from separate generators.)
+	 *
+	 * @param names Names of the new ensembles
+	 * @param n Number of nodes in each ensemble
+	 * @param radii Radius for each dimension of each ensemble
+	 * @return One (completed) Future per ensemble, in the same order as the names
+	 * @throws StructuralException if nodes can't be made, or if interrupted
+	 */
+	public List<Future<NEFEnsemble>> makeAll(String[] names, int[] n, float[][] radii) throws StructuralException {
+		if (n.length != names.length || radii.length != names.length) {
+			throw new StructuralException("Different numbers of names, node counts and radii");
+		}
 
-			for (int i = 0; i < n; i++) {
-				Node node = myNodeFactory.make("node" + i);
-				if ( !(node instanceof NEFNode) ) {
-					throw new StructuralException("Nodes must be NEFNodes");
-				}
-				nodes[i] = (NEFNode) node;
+		int numThreads = Math.min(names.length, Runtime.getRuntime().availableProcessors());
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, numThreads));
+		try {
+			List<Future<NEFEnsemble>> result = new ArrayList<Future<NEFEnsemble>>(names.length);
+			NEFNode[][] nodes = new NEFNode[names.length][];
+			float[][][] encoders = new float[names.length][][];
+			float[][][] evalPoints = new float[names.length][][];
+			for (int i = 0; i < names.length; i++) {
+				int dim = radii[i].length;
+				nodes[i] = makeNodes(n[i]);
+				encoders[i] = myEncoderFactory.genVectors(n[i], dim);
+				evalPoints[i] = getEvalPointFactory().genVectors(getNumEvalPoints(dim), dim);
+				result.add(executor.submit(makeTask(names[i], nodes[i], encoders[i], evalPoints[i], radii[i], true)));
+			}
 
-				nodes[i].setMode(SimulationMode.CONSTANT_RATE);
-				if ( !nodes[i].getMode().equals(SimulationMode.CONSTANT_RATE) ) {
-					throw new StructuralException("Neurons in an NEFEnsemble must support CONSTANT_RATE mode");
+			//failures are handled here rather than in the pool, so that replacements are generated in a fixed order
+			for (int i = 0; i < names.length; i++) {
+				for (int attempts = 1; ; attempts++) {
+					try {
+						result.get(i).get();
+						break;
+					} catch (ExecutionException e) {
+						if ( !(e.getCause() instanceof SingularMatrixException) ) {
+							break; //the Future reports the error
+						}
+						NEFEnsemble failed = ((SingularMatrixException) e.getCause()).getEnsemble();
+						regenerate(failed, nodes[i], encoders[i], evalPoints[i], radii[i].length);
+						result.set(i, executor.submit(makeTask(names[i], nodes[i], encoders[i], evalPoints[i], radii[i], attempts < MAX_ATTEMPTS)));
+					}
 				}
+			}
+			return result;
+		} catch (InterruptedException e) {
+			throw new StructuralException("Interrupted while making ensembles", e);
+		} finally {
+			executor.shutdown(); //submitted ensembles are still built
+		}
+	}
 
-				nodes[i].setMode(SimulationMode.DEFAULT);
+	/**
+	 * Makes several ensembles concurrently, and waits for them (see makeAll(String[], int[], float[][])).
+	 *
+	 * @param names Names of the new ensembles
+	 * @param n Number of nodes in each ensemble
+	 * @param dim Dimension of each ensemble
+	 * @return New ensembles, in the same order as the names
+	 * @throws StructuralException if any of the ensembles can't be made
+	 */
+	public NEFEnsemble[] makeAll(String[] names, int n, int dim) throws StructuralException {
+		int[] counts = new int[names.length];
+		float[][] radii = new float[names.length][];
+		for (int i = 0; i < names.length; i++) {
+			counts[i] = n;
+			radii[i] = MU.uniform(1, dim, 1)[0];
+		}
+
+		List<Future<NEFEnsemble>> futures = makeAll(names, counts, radii);
+		NEFEnsemble[] result = new NEFEnsemble[names.length];
+		try {
+			for (int i = 0; i < result.length; i++) {
+				result[i] = futures.get(i).get();
+			}
+		} catch (InterruptedException e) {
+			throw new StructuralException("Interrupted while making ensembles", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof StructuralException) {
+				throw (StructuralException) e.getCause();
 			}
+			throw new StructuralException("Error making ensembles", e.getCause());
+		}
+		return result;
+	}
 
-			float[][] encoders = myEncoderFactory.genVectors(n, dim);
-			float[][] evalPoints = getEvalPointFactory().genVectors(getNumEvalPoints(dim), dim);
-			NEFEnsemble result = construct(name, nodes, encoders, myApproximatorFactory, evalPoints, radii);
+	//common make(...) implementation
+	private NEFEnsemble doMake(String name, int n, float[] radii) throws StructuralException {
+		if(n < 1) {
+			ourLogger.error("Calling doMake with n = " + n);
+		}
 
-			addDefaultOrigins(result);
+		int dim = radii.length;
+		NEFNode[] nodes = makeNodes(n);
+		float[][] encoders = myEncoderFactory.genVectors(n, dim);
+		float[][] evalPoints = getEvalPointFactory().genVectors(getNumEvalPoints(dim), dim);
+		return build(name, nodes, encoders, evalPoints, radii);
+	}
 
-			result.setEnsembleFactory(this);
+	private NEFNode[] makeNodes(int n) throws StructuralException {
+		NEFNode[] nodes = new NEFNode[n];
+		for (int i = 0; i < n; i++) {
+			nodes[i] = makeNode(i);
+		}
+		return nodes;
+	}
+
+	private NEFNode makeNode(int i) throws StructuralException {
+		Node node = myNodeFactory.make("node" + i);
+		if ( !(node instanceof NEFNode) ) {
+			throw new StructuralException("Nodes must be NEFNodes");
+		}
+		NEFNode result = (NEFNode) node;
+
+		result.setMode(SimulationMode.CONSTANT_RATE);
+		if ( !result.getMode().equals(SimulationMode.CONSTANT_RATE) ) {
+			throw new StructuralException("Neurons in an NEFEnsemble must support CONSTANT_RATE mode");
+		}
+
+		result.setMode(SimulationMode.DEFAULT);
+		return result;
+	}
+
+	/*
+	 * Constructs an ensemble and its default origins. A singular gamma matrix can produce a runtime
+	 * exception. If this occurs, nodes that are silent at every evaluation point (the usual cause) are
+	 * replaced, along with their encoders, or the evaluation points are replaced if no nodes are silent,
+	 * and the rest is kept.
+	 */
+	private NEFEnsemble build(String name, NEFNode[] nodes, float[][] encoders, float[][] evalPoints, float[] radii)
+			throws StructuralException {
+
+		for (int attempts = 0; ; attempts++) {
+			try {
+				return tryBuild(name, nodes, encoders, evalPoints, radii, attempts < MAX_ATTEMPTS);
+			} catch (SingularMatrixException e) {
+				regenerate(e.getEnsemble(), nodes, encoders, evalPoints, radii.length);
+			}
+		}
+	}
 
+	//as build(...), but throws SingularMatrixException (if retry) instead of regenerating
+	private NEFEnsemble tryBuild(String name, NEFNode[] nodes, float[][] encoders, float[][] evalPoints, float[] radii,
+			boolean retry) throws StructuralException, SingularMatrixException {
+
+		NEFEnsemble result = null;
+		try {
+			result = construct(name, nodes, encoders, myApproximatorFactory, evalPoints, radii);
+			addDefaultOrigins(result);
+			result.setEnsembleFactory(this);
 			return result;
+		} catch (RuntimeException re) {
+			if (re.getMessage() == null || !re.getMessage().equals("Matrix is singular.")) {
+				throw new StructuralException("Error creating ensemble " + name, re);
+			}
+			if (!retry) {
+				throw new StructuralException("Error creating ensemble: With the given parameters, there is insufficient\nneural activity to construct a decoder (the activity matrix is singular)");
+			}
+			throw new SingularMatrixException(result);
 		}
-		catch(RuntimeException re)
-		{
-			// a singular gamma matrix can produce a runtime exception.  If this occurs,
-			// call make again.
-			if(re.getMessage() != null && re.getMessage().equals("Matrix is singular.")) {
-				if (attempts<10) {
-					return doMake(name,n,radii,attempts+1);
-				} else {
-					throw new StructuralException("Error creating ensemble: With the given parameters, there is insufficient\nneural activity to construct a decoder (the activity matrix is singular)");
+	}
+
+	//tryBuild(...) on a pool thread, with its own generator for PDFTools.random() (seeded in the calling thread)
+	private Callable<NEFEnsemble> makeTask(final String name, final NEFNode[] nodes, final float[][] encoders,
+			final float[][] evalPoints, final float[] radii, final boolean retry) {
+		final Random random = PDFTools.makeRandom();
+		return new Callable<NEFEnsemble>() {
+			public NEFEnsemble call() throws StructuralException, SingularMatrixException {
+				PDFTools.setThreadRandom(random);
+				try {
+					return tryBuild(name, nodes, encoders, evalPoints, radii, retry);
+				} finally {
+					PDFTools.setThreadRandom(null);
 				}
-            } else
-			{
-				System.err.println(re);
-				return(null);
 			}
+		};
+	}
+
+	private void regenerate(NEFEnsemble failed, NEFNode[] nodes, float[][] encoders, float[][] evalPoints, int dim)
+			throws StructuralException {
+
+		int silent = 0;
+		if (failed instanceof NEFEnsembleImpl) {
+			NEFEnsembleImpl ensemble = (NEFEnsembleImpl) failed;
+			float[][] outputs = ensemble.getConstantOutputs(ensemble.getEvalPoints(), Neuron.AXON);
+			for (int i = 0; i < nodes.length; i++) {
+				if (MU.max(outputs[i]) <= 0 && MU.min(outputs[i]) >= 0) {
+					nodes[i] = makeNode(i);
+					encoders[i] = myEncoderFactory.genVectors(1, dim)[0];
+					silent++;
+				}
+			}
+		}
+
+		if (silent > 0) {
+			ourLogger.info("Replacing " + silent + " silent nodes after singular activity matrix");
+		} else {
+			float[][] replacement = getEvalPointFactory().genVectors(evalPoints.length, dim);
+			System.arraycopy(replacement, 0, evalPoints, 0, evalPoints.length);
+			ourLogger.info("Replacing evaluation points after singular activity matrix");
 		}
 	}
 
@@ -305,6 +512,11 @@ public class NEFEnsembleFactoryImpl implements NEFEnsembleFactory, java.io.Seria
 	 */
 	protected NEFEnsemble construct(String name, NEFNode[] nodes, float[][] encoders, ApproximatorFactory af, float[][] evalPoints, float[] radii)
 			throws StructuralException {
+		if (myVectorized) {
+			VectorizedNEFEnsembleImpl result = new VectorizedNEFEnsembleImpl(name, nodes, encoders, af, evalPoints, radii);
+			result.setCompact(myCompact);
+			return result;
+		}
 		return new NEFEnsembleImpl(name, nodes, encoders, af, evalPoints, radii);
 	}
 
@@ -343,4 +555,22 @@ public class NEFEnsembleFactoryImpl implements NEFEnsembleFactory, java.io.Seria
 		myDatabase = database;
 	}
 
+	//a build that failed because of a singular activity matrix, and might succeed with regenerated parts
+	private static class SingularMatrixException extends Exception {
+
+		private static final long serialVersionUID = 1L;
+
+		private final NEFEnsemble myEnsemble;
+
+		public SingularMatrixException(NEFEnsemble ensemble) {
+			super("Matrix is singular.");
+			myEnsemble = ensemble;
+		}
+
+		//the ensemble, if it was constructed before the failure, otherwise null
+		public NEFEnsemble getEnsemble() {
+			return myEnsemble;
+		}
+	}
+
 }
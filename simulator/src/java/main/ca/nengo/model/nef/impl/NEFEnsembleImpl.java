@@ -27,6 +27,7 @@ a recipient may use your version of this file under either the MPL or the GPL Li
  */
 package ca.nengo.model.nef.impl;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -65,10 +66,12 @@ import ca.nengo.model.neuron.impl.SpikingNeuron;
 import ca.nengo.model.plasticity.impl.PESTermination;
 import ca.nengo.model.plasticity.impl.PlasticEnsembleTermination;
 import ca.nengo.model.plasticity.impl.PreLearnTermination;
+import ca.nengo.util.Environment;
 import ca.nengo.util.MU;
 import ca.nengo.util.ScriptGenException;
 import ca.nengo.util.TimeSeries;
 import ca.nengo.util.impl.LearningTask;
+import ca.nengo.util.impl.ParallelRange;
 import ca.nengo.util.impl.TimeSeriesImpl;
 /**
  * Default implementation of NEFEnsemble.
@@ -100,6 +103,7 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 
 	private Map<String, LinearApproximator> myDecodingApproximators;
 	private boolean myReuseApproximators;
+	private boolean mySharedApproximators; //myDecodingApproximators may belong to other ensembles too
 	private float[][] myUnscaledEvalPoints;
 	private float[][] myEvalPoints;
 	private float[] myRadii;
@@ -113,6 +117,11 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 
 	private boolean myUseGPU;
 
+	//scratch space for run(...) in zero-allocation mode (see Environment.isZeroAllocation())
+	private transient float[] myStateBuffer;
+	private transient float[] myScaledStateBuffer;
+	private transient Map<String, Float> myBiasBuffer;
+
 	/**
 	 * @param name Unique name of Ensemble
 	 * @param nodes Nodes that make up the Ensemble
@@ -220,7 +229,7 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
             }
 		}
 
-		myDecodingApproximators.clear();
+		clearApproximators();
 
 		// update the decoders for any existing origins
 		Origin[] origins = getOrigins();
@@ -240,7 +249,7 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 					if (!myReuseApproximators || !myDecodingApproximators.containsKey(nodeOrigin)) {
 						float[][] outputs = getConstantOutputs(myEvalPoints, nodeOrigin);
 						LinearApproximator approximator = getApproximatorFactory().getApproximator(myEvalPoints, outputs);
-						myDecodingApproximators.put(nodeOrigin, approximator);
+						putApproximator(nodeOrigin, approximator);
 					}
 
 					origin.rebuildDecoder(myDecodingApproximators.get(nodeOrigin));
@@ -260,8 +269,8 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 	}
 
 	/**
-	 * Note: by-products of decoding are sometimes cached, so if these are changed it may be
-	 * necessary to call setReuseApproximators(false) for the change to take effect.
+	 * Note: approximators made with the previous points are discarded, but the decoders of existing
+	 * origins are not recalculated.
 	 *
 	 * @param evalPoints Points in the encoded space at which node outputs are evaluated for
 	 * 		establishing new DecodedOrigins.
@@ -273,6 +282,7 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 		}
 
 		myEvalPoints = evalPoints;
+		clearApproximators();
 	}
 
     /**
@@ -325,14 +335,43 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 	 * @throws StructuralException If CONSTANT_RATE is not supported by any Node
 	 */
 	protected float[][] getConstantOutputs(float[][] evalPoints, String origin) throws StructuralException {
-		NEFNode[] nodes = (NEFNode[]) getNodes();
-		float[][] result = new float[nodes.length][];
+		final NEFNode[] nodes = (NEFNode[]) getNodes();
+		final float[][] result = new float[nodes.length][];
+
+		//rates of most neurons can be found in closed form at all points together, in parallel over neurons
+		if (Neuron.AXON.equals(origin)) {
+			final float[][] scaled = new float[evalPoints.length][];
+			for (int k = 0; k < evalPoints.length; k++) {
+				scaled[k] = myRadiiAreOne ? evalPoints[k] : MU.prodElementwise(evalPoints[k], myInverseRadii);
+			}
+			final float[][] encoders = myEncoders;
+
+			long work = (long) nodes.length * evalPoints.length * (getDimension() + 20); //20 for the rate function
+			ParallelRange.run(nodes.length, work, WeightedCostApproximator.getNumThreads(), new ParallelRange.Task() {
+				public void run(int start, int end) {
+					for (int i = start; i < end; i++) {
+						if (nodes[i] instanceof SpikingNeuron) {
+							float[] rates = new float[scaled.length];
+							for (int k = 0; k < scaled.length; k++) {
+								rates[k] = MU.prod(scaled[k], encoders[i]);
+							}
+							if (((SpikingNeuron) nodes[i]).getConstantRates(rates, rates)) {
+								result[i] = rates;
+							}
+						}
+					}
+				}
+			});
+		}
 
+		//other nodes are run at each point
 		for (int i = 0; i < nodes.length; i++) {
-			try {
-				result[i] = getConstantOutput(i, evalPoints, origin);
-			} catch (SimulationException e) {
-				throw new StructuralException("Node " + i + " does not have the Origin " + origin);
+			if (result[i] == null) {
+				try {
+					result[i] = getConstantOutput(i, evalPoints, origin);
+				} catch (SimulationException e) {
+					throw new StructuralException("Node " + i + " does not have the Origin " + origin);
+				}
 			}
 		}
 
@@ -490,6 +529,9 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 		assert encoders[0].length == getDimension();
 
 		myEncoders = encoders;
+		if (mySharedApproximators) {
+			clearApproximators();
+		}
 	}
 
 	/**
@@ -506,6 +548,49 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 		myReuseApproximators = reuse;
 	}
 
+	/**
+	 * Shares LinearApproximators (i.e. activities and the factorization used to find decoders) with
+	 * another ensemble, which must have the same nodes, encoders, radii and evaluation points, for example
+	 * a clone. Approximators that either ensemble creates later (e.g. in addDecodedOrigin(...)) are
+	 * shared as well. Sharing is copy-on-write: an ensemble whose encoders, radii or nodes change stops
+	 * sharing, and the others are unaffected.
+	 *
+	 * @param template Ensemble with which to share approximators
+	 */
+	public void shareApproximators(NEFEnsembleImpl template) {
+		myDecodingApproximators = template.myDecodingApproximators;
+		mySharedApproximators = true;
+		myReuseApproximators = true;
+		template.mySharedApproximators = true;
+	}
+
+	/**
+	 * @param other Another ensemble
+	 * @return True if this ensemble shares LinearApproximators with the other (see shareApproximators(...))
+	 */
+	public boolean isSharingApproximators(NEFEnsembleImpl other) {
+		return other == this || (mySharedApproximators && myDecodingApproximators == other.myDecodingApproximators);
+	}
+
+	//discards approximators, without affecting any other ensembles that share them
+	private void clearApproximators() {
+		if (mySharedApproximators) {
+			myDecodingApproximators = new HashMap<String, LinearApproximator>(10);
+			mySharedApproximators = false;
+		} else {
+			myDecodingApproximators.clear();
+		}
+	}
+
+	//adds an approximator; if approximators aren't reused it replaces one that other ensembles may still use, so stops sharing first
+	private void putApproximator(String nodeOrigin, LinearApproximator approximator) {
+		if (mySharedApproximators && !myReuseApproximators) {
+			myDecodingApproximators = new HashMap<String, LinearApproximator>(myDecodingApproximators);
+			mySharedApproximators = false;
+		}
+		myDecodingApproximators.put(nodeOrigin, approximator);
+	}
+
 	/**
 	 * @see ca.nengo.model.nef.NEFEnsemble#addDecodedOrigin(java.lang.String, Function[], String)
 	 */
@@ -513,7 +598,7 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 		if (!myReuseApproximators || !myDecodingApproximators.containsKey(nodeOrigin)) {
 			float[][] outputs = getConstantOutputs(myEvalPoints, nodeOrigin);
 			LinearApproximator approximator = getApproximatorFactory().getApproximator(myEvalPoints, outputs);
-			myDecodingApproximators.put(nodeOrigin, approximator);
+			putApproximator(nodeOrigin, approximator);
 		}
 
 		DecodedOrigin result = new DecodedOrigin(this, name, getNodes(), nodeOrigin, functions, myDecodingApproximators.get(nodeOrigin));
@@ -782,12 +867,25 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
     public void run(float startTime, float endTime) throws SimulationException {
 		synchronized (this) {
 			try{
-				float[] state = new float[myDimension];
-				Map<String, Float> bias = new HashMap<String, Float>(5);
+				boolean recycle = Environment.isZeroAllocation();
+				float[] state;
+				Map<String, Float> bias;
+				if (recycle) {
+					if (myStateBuffer == null) {
+						myStateBuffer = new float[myDimension];
+						myBiasBuffer = new HashMap<String, Float>(5);
+					}
+					state = myStateBuffer;
+					Arrays.fill(state, 0);
+					bias = myBiasBuffer;
+					bias.clear();
+				} else {
+					state = new float[myDimension];
+					bias = new HashMap<String, Float>(5);
+				}
 
 				//run terminations and sum state ...
-				DecodedTermination[] dts = super.getDecodedTerminations();
-				for (DecodedTermination t : dts) {
+				for (DecodedTermination t : getDecodedTerminationArray()) {
 					t.run(startTime, endTime);
 					float[] output = t.getOutput();
 
@@ -803,7 +901,9 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
                         }
 					} else {
 						if (!isModulatory) {
-                            state = MU.sum(state, output);
+							for (int i = 0; i < state.length; i++) {
+								state[i] += output[i];
+							}
                         }
 					}
 
@@ -828,11 +928,7 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 					// TODO Have plasticity work in DIRECT mode
 				} else {
 					//multiply state by encoders (cosine tuning), set radial input of each Neuron and run ...
-					Node[] nodes = getNodes();
-					for (int i = 0; i < nodes.length; i++) {
-						((NEFNode) nodes[i]).setRadialInput(getRadialInput(state, i) +
-						        getBiasInput(bias, myDecodedTerminations, i));
-					}
+					setRadialInputs(state, bias);
 					super.run(startTime, endTime);
 				}
 			} catch (SimulationException e) {
@@ -842,8 +938,42 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 		}
 	}
 
+	/**
+	 * Sets the radial input of each Node from the ensemble state. Called at each step before
+	 * the Nodes are run (not in DIRECT or EXPRESS mode).
+	 *
+	 * @param state State vector (sum of decoded termination outputs)
+	 * @param bias Net bias input for each base termination name (see addBiasTerminations(...))
+	 */
+	protected void setRadialInputs(float[] state, Map<String, Float> bias) {
+		//scale state to unit circle once rather than for each node (see getRadialInput(...))
+		float[] scaled = state;
+		if (!myRadiiAreOne) {
+			if (Environment.isZeroAllocation()) {
+				if (myScaledStateBuffer == null || myScaledStateBuffer.length != state.length) {
+					myScaledStateBuffer = new float[state.length];
+				}
+				scaled = myScaledStateBuffer;
+				for (int i = 0; i < state.length; i++) {
+					scaled[i] = state[i] * myInverseRadii[i];
+				}
+			} else {
+				scaled = MU.prodElementwise(state, myInverseRadii);
+			}
+		}
+
+		Node[] nodes = getNodes();
+		for (int i = 0; i < nodes.length; i++) {
+			float radialInput = MU.prod(scaled, myEncoders[i]);
+			if (!bias.isEmpty()) {
+				radialInput += getBiasInput(bias, myDecodedTerminations, i);
+			}
+			((NEFNode) nodes[i]).setRadialInput(radialInput);
+		}
+	}
+
 	// @param bias Bias input (related to avoidance of negative weights with interneurons)
-	private static float getBiasInput(Map<String, Float> bias, Map<String, DecodedTermination> dt, int node) {
+	static float getBiasInput(Map<String, Float> bias, Map<String, DecodedTermination> dt, int node) {
 		float sumBias = 0;
 		Iterator<String> it = bias.keySet().iterator();
 		while (it.hasNext()) {
@@ -965,7 +1095,7 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 		myEncoders = myEnsembleFactory.getEncoderFactory().genVectors(n, getDimension());
 
 
-		myDecodingApproximators.clear();
+		clearApproximators();
 
 		// update the decoders for any existing origins
 		Origin[] origins = getOrigins();
@@ -977,7 +1107,7 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 				if (!myReuseApproximators || !myDecodingApproximators.containsKey(nodeOrigin)) {
 					float[][] outputs = getConstantOutputs(myEvalPoints, nodeOrigin);
 					LinearApproximator approximator = getApproximatorFactory().getApproximator(myEvalPoints, outputs);
-					myDecodingApproximators.put(nodeOrigin, approximator);
+					putApproximator(nodeOrigin, approximator);
 				}
 					origin.redefineNodes(nodes,myDecodingApproximators.get(nodeOrigin));
 			}
@@ -1050,11 +1180,15 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 		result.myReuseApproximators=false;
 
 		result.myDecodingApproximators = new HashMap<String, LinearApproximator>(5);
+		result.mySharedApproximators = false;
 		result.myEncoders = MU.clone(myEncoders);
 		result.myEvalPoints = MU.clone(myEvalPoints);
 		result.myInverseRadii = myInverseRadii.clone();
 		result.myRadii = myRadii.clone();
 		result.myUnscaledEvalPoints = MU.clone(myUnscaledEvalPoints);
+		result.myStateBuffer = null;
+		result.myScaledStateBuffer = null;
+		result.myBiasBuffer = null;
 		return result;
 	}
 
@@ -1062,7 +1196,7 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 	 * Releases any memory that can be freed.  Should be called after all origins are created for this ensemble
 	 */
     public void releaseMemory() {
-		myDecodingApproximators.clear();
+		clearApproximators();
 	}
 
 	/**
@@ -0,0 +1,217 @@
+package ca.nengo.model.nef.impl;
+
+import org.apache.log4j.Logger;
+
+import ca.nengo.model.ExpandableNode;
+import ca.nengo.model.Network;
+import ca.nengo.model.Node;
+import ca.nengo.model.Origin;
+import ca.nengo.model.Projection;
+import ca.nengo.model.SimulationMode;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.Termination;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.util.MU;
+
+/**
+ * Chooses, for each decoded projection between NEF ensembles, the cheaper way of computing it
+ * at each step.
+ *
+ * A decoded projection from an ensemble of N neurons to one of M neurons, carrying a D-dimensional
+ * origin through a transform onto the D' dimensions of the receiving ensemble, costs about
+ * N*D + D*D' + D'*M multiply-adds per step (decoding, transform, encoding). The same projection
+ * can be fused into a single M x N matrix of connection weights (encoders * transform * decoders),
+ * which costs N*M per step (less when the neurons spike, since only the spiking neurons' weights are
+ * added, see SparseSpikeOutput). The first is cheaper for large, low-dimensional populations, and the
+ * second for small, high-dimensional ones.
+ *
+ * Fusing replaces the DecodedTermination with a weight-matrix termination of the same name and time
+ * constant, fed by the neuron-level origin of the sending ensemble. The PSCs are filtered in the same
+ * way, so the receiving neurons get the same current, but the decoded value at the termination is no
+ * longer available, and the ensembles of a fused projection shouldn't be switched to DIRECT or
+ * EXPRESS mode.
+ */
+public class ProjectionPlanner {
+
+	private static Logger ourLogger = Logger.getLogger(ProjectionPlanner.class);
+
+	/**
+	 * @param n Number of neurons in the sending ensemble
+	 * @param d Dimension of the decoded origin
+	 * @param dPost Dimension of the receiving ensemble
+	 * @param m Number of neurons in the receiving ensemble
+	 * @return Approximate number of multiply-adds per step to decode, transform and encode
+	 */
+	public static long getDecodedCost(int n, int d, int dPost, int m) {
+		return (long) n * d + (long) d * dPost + (long) dPost * m;
+	}
+
+	/**
+	 * @param n Number of neurons in the sending ensemble
+	 * @param m Number of neurons in the receiving ensemble
+	 * @return Approximate number of multiply-adds per step through a full weight matrix
+	 */
+	public static long getFusedCost(int n, int m) {
+		return (long) n * m;
+	}
+
+	/**
+	 * @param projection A Projection
+	 * @return True if the projection can be replaced with an equivalent weight-matrix projection (it
+	 * 		must run from a DecodedOrigin without noise or short-term plasticity to a non-modulatory
+	 * 		DecodedTermination with a first-order PSC and no scaling or static bias, between
+	 * 		NEFEnsembleImpls that aren't in DIRECT or EXPRESS mode and whose neurons accept
+	 * 		weighted terminations)
+	 */
+	public static boolean canFuse(Projection projection) {
+		Origin o = projection.getOrigin();
+		Termination t = projection.getTermination();
+		if (projection.getNetwork() == null || projection.biasIsEnabled()
+				|| o.getClass() != DecodedOrigin.class || t.getClass() != DecodedTermination.class
+				|| !(o.getNode() instanceof NEFEnsembleImpl) || !(t.getNode() instanceof NEFEnsembleImpl)) {
+			return false;
+		}
+
+		DecodedOrigin origin = (DecodedOrigin) o;
+		DecodedTermination termination = (DecodedTermination) t;
+		NEFEnsembleImpl pre = (NEFEnsembleImpl) origin.getNode();
+		NEFEnsembleImpl post = (NEFEnsembleImpl) termination.getNode();
+
+		if (origin.getNoise() != null || origin.getSTPDynamics() != null || !isNeural(pre) || !isNeural(post)
+				|| termination.getModulatory() || termination.getScaling() != null
+				|| !termination.isFirstOrderLowPass() || hasStaticBias(termination)
+				|| projection.getNetwork().getExposedTerminationName(termination) != null) {
+			return false;
+		}
+
+		//the vectorized ensemble would have to fall back to running neurons one at a time
+		if (post instanceof VectorizedNEFEnsembleImpl) {
+			return false;
+		}
+
+		for (Node node : post.getNodes()) {
+			if ( !(node instanceof ExpandableNode) ) {
+				return false;
+			}
+		}
+
+		try {
+			return pre.getOrigin(origin.getNodeOrigin()).getDimensions() == pre.getNodes().length;
+		} catch (StructuralException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @param projection A Projection
+	 * @return True if the projection can be fused and a weight matrix is cheaper than decoding
+	 */
+	public static boolean shouldFuse(Projection projection) {
+		if (!canFuse(projection)) {
+			return false;
+		}
+
+		DecodedOrigin origin = (DecodedOrigin) projection.getOrigin();
+		DecodedTermination termination = (DecodedTermination) projection.getTermination();
+		int n = ((NEFEnsemble) origin.getNode()).getNodes().length;
+		int m = ((NEFEnsemble) termination.getNode()).getNodes().length;
+		return getFusedCost(n, m) < getDecodedCost(n, origin.getDimensions(), termination.getTransform().length, m);
+	}
+
+	/**
+	 * @param origin A DecodedOrigin
+	 * @param termination A DecodedTermination that receives from the origin
+	 * @return Weights onto each neuron of the termination's ensemble from each neuron of the origin's
+	 * 		ensemble, equivalent to decoding, transforming and encoding
+	 */
+	public static float[][] getFusedWeights(DecodedOrigin origin, DecodedTermination termination) {
+		NEFEnsemble post = (NEFEnsemble) termination.getNode();
+		float[][] encoders = post.getEncoders();
+		float[] radii = post.getRadii();
+
+		//encoders apply to the state scaled to the unit sphere
+		float[][] scaledEncoders = new float[encoders.length][];
+		for (int i = 0; i < encoders.length; i++) {
+			scaledEncoders[i] = new float[encoders[i].length];
+			for (int j = 0; j < radii.length; j++) {
+				scaledEncoders[i][j] = encoders[i][j] / radii[j];
+			}
+		}
+
+		//(M x D') * (D' x D) first, as D is usually smaller than N
+		return MU.prod(MU.prod(scaledEncoders, termination.getTransform()), MU.transpose(origin.getDecoders()));
+	}
+
+	/**
+	 * Replaces a decoded projection with an equivalent weight-matrix projection.
+	 *
+	 * @param projection A Projection for which canFuse(projection) is true
+	 * @return The new Projection, from the neuron-level origin of the sending ensemble to a
+	 * 		weight-matrix termination with the same name as the old termination
+	 * @throws StructuralException if the projection can't be fused
+	 */
+	public static Projection fuse(Projection projection) throws StructuralException {
+		if (!canFuse(projection)) {
+			throw new StructuralException("Projection to " + projection.getTermination().getName() + " can't be fused");
+		}
+
+		Network network = projection.getNetwork();
+		DecodedOrigin origin = (DecodedOrigin) projection.getOrigin();
+		DecodedTermination termination = (DecodedTermination) projection.getTermination();
+		NEFEnsembleImpl pre = (NEFEnsembleImpl) origin.getNode();
+		NEFEnsembleImpl post = (NEFEnsembleImpl) termination.getNode();
+
+		float[][] weights = getFusedWeights(origin, termination);
+		Origin neuronOrigin = pre.getOrigin(origin.getNodeOrigin());
+
+		network.removeProjection(termination);
+		post.removeDecodedTermination(termination.getName());
+		Termination fused = post.addTermination(termination.getName(), weights, termination.getTau(), false);
+		return network.addProjection(neuronOrigin, fused);
+	}
+
+	/**
+	 * Fuses each projection in the given network (and networks inside it) for which a weight
+	 * matrix is cheaper. Should be called after the network is built and before probes are added.
+	 *
+	 * @param network A Network
+	 * @return Number of projections fused
+	 * @throws StructuralException if a projection can't be replaced
+	 */
+	public static int plan(Network network) throws StructuralException {
+		int result = 0;
+
+		for (Projection projection : network.getProjections()) {
+			if (shouldFuse(projection)) {
+				ourLogger.info("Fusing projection " + projection.getOrigin().getNode().getName() + ":"
+						+ projection.getOrigin().getName() + " -> " + projection.getTermination().getNode().getName()
+						+ ":" + projection.getTermination().getName());
+				fuse(projection);
+				result++;
+			}
+		}
+
+		for (Node node : network.getNodes()) {
+			if (node instanceof Network) {
+				result += plan((Network) node);
+			}
+		}
+
+		return result;
+	}
+
+	private static boolean hasStaticBias(DecodedTermination termination) {
+		for (float bias : termination.getStaticBias()) {
+			if (bias != 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isNeural(NEFEnsemble ensemble) {
+		SimulationMode mode = ensemble.getMode();
+		return mode != SimulationMode.DIRECT && mode != SimulationMode.EXPRESS;
+	}
+
+}
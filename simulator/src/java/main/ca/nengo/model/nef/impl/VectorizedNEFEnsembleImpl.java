@@ -0,0 +1,380 @@
+package ca.nengo.model.nef.impl;
+
+import java.util.Map;
+
+import ca.nengo.math.ApproximatorFactory;
+import ca.nengo.model.Node;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.SimulationMode;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.SpikeOutputImpl;
+import ca.nengo.model.nef.NEFNode;
+import ca.nengo.model.neuron.Neuron;
+import ca.nengo.model.neuron.PopulationSpikeGenerator;
+import ca.nengo.model.neuron.SpikeGenerator;
+import ca.nengo.model.neuron.impl.ALIFPopulationSpikeGenerator;
+import ca.nengo.model.neuron.impl.FixedPointLIFPopulation;
+import ca.nengo.model.neuron.impl.IzhikevichPopulationSpikeGenerator;
+import ca.nengo.model.neuron.impl.LIFPopulationSpikeGenerator;
+import ca.nengo.model.neuron.impl.SpikeGeneratorOrigin;
+import ca.nengo.model.neuron.impl.SpikingNeuron;
+import ca.nengo.util.Environment;
+import ca.nengo.util.MU;
+
+/**
+ * <p>An NEFEnsemble that keeps the state of a population of spiking neurons in flat arrays
+ * (one entry per neuron) and advances the whole population with a PopulationSpikeGenerator,
+ * rather than running each SpikingNeuron with its own SynapticIntegrator and SpikeGenerator.</p>
+ *
+ * <p>Decoders, Origins, Terminations, modes etc. work as in NEFEnsembleImpl (which this class
+ * uses for everything but the spiking simulation itself). The fast path is taken in
+ * SimulationMode.DEFAULT when every Node is a SpikingNeuron with no Node noise and no Node-level
+ * Terminations, and all the Nodes have LIFSpikeGenerators, or all have ALIFSpikeGenerators, or all
+ * have IzhikevichSpikeGenerators; otherwise the ensemble runs exactly like an NEFEnsembleImpl.
+ * On the fast path the spike output of each Node is still published (so that Neuron.AXON
+ * projections and spike collection work), but neuron-level states such as "V" and "I" are not
+ * updated, so the fast path is also not taken while any of the Nodes has a Probe connected (see
+ * SpikingNeuron.isProbed()). Probes should be connected before a run: the fast path and the Nodes
+ * keep separate neuron states, and each continues from its own state when the path changes.</p>
+ *
+ * <p>In compact mode (see setCompact(...)), LIF populations with a common tauRC and tauRef keep
+ * their state in reduced precision with a FixedPointLIFPopulation, which takes three bytes per
+ * neuron rather than sixteen, within the accuracy bounds documented there. This only shrinks the
+ * state that the fast path reads and writes on each step; the Nodes are kept as usual.</p>
+ *
+ * <p>Neuron parameters are read from the Nodes the first time the ensemble runs after
+ * construction, reset(...), setEncoders(...), setRadii(...), setCompact(...) or a change of Nodes.</p>
+ */
+public class VectorizedNEFEnsembleImpl extends NEFEnsembleImpl {
+
+	private static final long serialVersionUID = 1L;
+
+	//parameters (null when they have to be re-read from the Nodes)
+	private transient float[] myBias;
+	private transient float[] myGain;
+	private transient float[] myFlatEncoders; //row-major, pre-scaled by inverse radii
+	private transient SpikingNeuron[] myNeurons;
+	private transient SpikeGeneratorOrigin[] mySpikeOrigins;
+	private transient PopulationSpikeGenerator myPopulation;
+	private transient FixedPointLIFPopulation myCompactPopulation;
+	private transient boolean myVectorizable;
+	private boolean myCompact;
+
+	//state
+	private double[][] myState;
+	private FixedPointLIFPopulation.State myCompactState;
+	private transient float[] myRadialInput;
+	private transient float[] myCurrent;
+	private transient float[] myOutput;
+	private transient boolean myStepVectorized;
+	private transient SpikeOutputImpl[][] mySpikeBuffers; //two recycled outputs per Node (see Environment.isZeroAllocation())
+	private transient int mySpikeBufferIndex;
+
+	/**
+	 * @see NEFEnsembleImpl#NEFEnsembleImpl(String, NEFNode[], float[][], ApproximatorFactory, float[][], float[])
+	 */
+	public VectorizedNEFEnsembleImpl(String name, NEFNode[] nodes, float[][] encoders, ApproximatorFactory factory,
+			float[][] evalPoints, float[] radii) throws StructuralException {
+		super(name, nodes, encoders, factory, evalPoints, radii);
+	}
+
+	/**
+	 * @return True if this ensemble is able to advance its neurons in bulk in the current mode
+	 */
+	public boolean isVectorized() {
+		prepare();
+		return canVectorize();
+	}
+
+	/**
+	 * @return True if LIF neuron state is kept in reduced precision where possible (see
+	 * 		FixedPointLIFPopulation)
+	 */
+	public boolean getCompact() {
+		return myCompact;
+	}
+
+	/**
+	 * @param compact True if LIF neuron state should be kept in reduced precision where possible
+	 * 		(see FixedPointLIFPopulation); false (the default) for single precision. Neuron states
+	 * 		return to their initial values.
+	 */
+	public void setCompact(boolean compact) {
+		myCompact = compact;
+		myState = null;
+		myCompactState = null;
+		invalidate();
+	}
+
+	private boolean canVectorize() {
+		return myVectorizable && getMode() == SimulationMode.DEFAULT
+			&& myExpandedTerminations.isEmpty() && myPlasticEnsembleTerminations.isEmpty() && !isAnyNeuronProbed();
+	}
+
+	private boolean isAnyNeuronProbed() {
+		for (SpikingNeuron neuron : myNeurons) {
+			if (neuron.isProbed()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	//reads neuron parameters into flat arrays if necessary
+	private void prepare() {
+		if (myBias != null) {
+			return;
+		}
+
+		Node[] nodes = getNodes();
+		int n = nodes.length;
+		int dim = getDimension();
+
+		float[] bias = new float[n];
+		float[] gain = new float[n];
+		SpikeGenerator[] generators = new SpikeGenerator[n];
+		SpikingNeuron[] neurons = new SpikingNeuron[n];
+		SpikeGeneratorOrigin[] origins = new SpikeGeneratorOrigin[n];
+		boolean vectorizable = true;
+
+		for (int i = 0; i < n && vectorizable; i++) {
+			if ( !(nodes[i] instanceof SpikingNeuron) ) {
+				vectorizable = false;
+				break;
+			}
+
+			SpikingNeuron neuron = (SpikingNeuron) nodes[i];
+			if (neuron.getNoise() != null || neuron.getTerminations().length > 0
+					|| neuron.getMode() != SimulationMode.DEFAULT) {
+				vectorizable = false;
+				break;
+			}
+
+			neurons[i] = neuron;
+			bias[i] = neuron.getBias();
+			gain[i] = neuron.getScale();
+			generators[i] = neuron.getGenerator();
+			try {
+				origins[i] = (SpikeGeneratorOrigin) neuron.getOrigin(Neuron.AXON);
+			} catch (StructuralException e) {
+				vectorizable = false;
+			}
+		}
+
+		FixedPointLIFPopulation compactPopulation = (vectorizable && myCompact) ? FixedPointLIFPopulation.make(generators) : null;
+		PopulationSpikeGenerator population = (vectorizable && compactPopulation == null) ? makePopulation(generators) : null;
+		vectorizable = vectorizable && (population != null || compactPopulation != null);
+		if (!vectorizable) {
+			neurons = new SpikingNeuron[0];
+		}
+
+		float[][] encoders = getEncoders();
+		float[] radii = getRadii();
+		float[] flatEncoders = new float[n * dim];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < dim; j++) {
+				flatEncoders[i*dim + j] = encoders[i][j] / radii[j];
+			}
+		}
+
+		if (population != null && (myState == null || myState.length != population.getStateNames().length
+				|| myState[0].length != n)) {
+			myState = population.makeState();
+		}
+		if (compactPopulation != null && (myCompactState == null || myCompactState.getSize() != n)) {
+			myCompactState = compactPopulation.makeState();
+		}
+		myRadialInput = new float[n];
+		myCurrent = new float[n];
+		myOutput = new float[n];
+
+		myGain = gain;
+		myFlatEncoders = flatEncoders;
+		myNeurons = neurons;
+		mySpikeOrigins = origins;
+		mySpikeBuffers = null;
+		myPopulation = population;
+		myCompactPopulation = compactPopulation;
+		myVectorizable = vectorizable;
+		myBias = bias;
+	}
+
+	//a population generator for the given generators, or null if there isn't one for their type
+	private static PopulationSpikeGenerator makePopulation(SpikeGenerator[] generators) {
+		PopulationSpikeGenerator result = LIFPopulationSpikeGenerator.make(generators);
+		if (result == null) {
+			result = ALIFPopulationSpikeGenerator.make(generators);
+		}
+		if (result == null) {
+			result = IzhikevichPopulationSpikeGenerator.make(generators);
+		}
+		return result;
+	}
+
+	private void invalidate() {
+		myBias = null;
+	}
+
+	/**
+	 * @see ca.nengo.model.nef.impl.NEFEnsembleImpl#setRadialInputs(float[], java.util.Map)
+	 */
+	@Override
+	protected void setRadialInputs(float[] state, Map<String, Float> bias) {
+		prepare();
+		myStepVectorized = canVectorize();
+
+		if (!myStepVectorized) {
+			super.setRadialInputs(state, bias);
+			return;
+		}
+
+		int dim = state.length;
+		float[] encoders = myFlatEncoders;
+		for (int i = 0, offset = 0; i < myRadialInput.length; i++, offset += dim) {
+			float sum = 0;
+			for (int j = 0; j < dim; j++) {
+				sum += state[j] * encoders[offset + j];
+			}
+			myRadialInput[i] = sum;
+		}
+
+		if (!bias.isEmpty()) {
+			for (int i = 0; i < myRadialInput.length; i++) {
+				myRadialInput[i] += getBiasInput(bias, myDecodedTerminations, i);
+			}
+		}
+	}
+
+	/**
+	 * @see ca.nengo.model.impl.AbstractEnsemble#runNodes(float, float)
+	 */
+	@Override
+	protected void runNodes(float startTime, float endTime) throws SimulationException {
+		if (!myStepVectorized) {
+			super.runNodes(startTime, endTime);
+			return;
+		}
+
+		float[] radialInput = myRadialInput;
+		float[] current = myCurrent;
+		float[] bias = myBias;
+		float[] gain = myGain;
+		for (int i = 0; i < current.length; i++) {
+			current[i] = bias[i] + gain[i] * radialInput[i];
+		}
+
+		float[] output = myOutput;
+		if (myCompactPopulation != null) {
+			myCompactPopulation.run(current, startTime, endTime, myCompactState, output);
+		} else {
+			myPopulation.run(current, startTime, endTime, myState, output);
+		}
+
+		//each Node gets its own output, as it would from its SpikeGeneratorOrigin
+		if (Environment.isZeroAllocation()) {
+			if (mySpikeBuffers == null) {
+				mySpikeBuffers = new SpikeOutputImpl[2][output.length];
+				for (SpikeOutputImpl[] buffers : mySpikeBuffers) {
+					for (int i = 0; i < buffers.length; i++) {
+						buffers[i] = new SpikeOutputImpl(new boolean[1], Units.SPIKES, 0);
+					}
+				}
+			}
+			mySpikeBufferIndex = 1 - mySpikeBufferIndex; //the previous step's outputs stay valid for a step
+			SpikeOutputImpl[] buffers = mySpikeBuffers[mySpikeBufferIndex];
+			for (int i = 0; i < output.length; i++) {
+				buffers[i].getValues()[0] = output[i] != 0;
+				buffers[i].setTime(endTime);
+				mySpikeOrigins[i].setValues(buffers[i]);
+			}
+		} else {
+			for (int i = 0; i < output.length; i++) {
+				mySpikeOrigins[i].setValues(new SpikeOutputImpl(new boolean[]{output[i] != 0}, Units.SPIKES, endTime));
+			}
+		}
+
+		if (isCollectingSpikes()) {
+			setSpikePattern(output, endTime);
+		}
+	}
+
+	/**
+	 * @see ca.nengo.model.nef.impl.DecodableEnsembleImpl#runDecodedOrigins(float, float)
+	 */
+	@Override
+	protected void runDecodedOrigins(float startTime, float endTime) throws SimulationException {
+		if (!myStepVectorized) {
+			super.runDecodedOrigins(startTime, endTime);
+			return;
+		}
+
+		for (DecodedOrigin o : getDecodedOriginArray()) {
+			if (Neuron.AXON.equals(o.getNodeOrigin())) {
+				o.run(null, myOutput, startTime, endTime);
+			} else {
+				o.run(null, startTime, endTime);
+			}
+		}
+	}
+
+	/**
+	 * @see ca.nengo.model.nef.impl.NEFEnsembleImpl#reset(boolean)
+	 */
+	@Override
+	public void reset(boolean randomize) {
+		super.reset(randomize);
+		myState = null;
+		myCompactState = null;
+		invalidate();
+	}
+
+	/**
+	 * @see ca.nengo.model.nef.impl.NEFEnsembleImpl#setEncoders(float[][])
+	 */
+	@Override
+	public void setEncoders(float[][] encoders) {
+		super.setEncoders(encoders);
+		invalidate();
+	}
+
+	/**
+	 * @see ca.nengo.model.nef.impl.NEFEnsembleImpl#setRadii(float[])
+	 */
+	@Override
+	public void setRadii(float[] radii) throws StructuralException {
+		super.setRadii(radii);
+		invalidate();
+	}
+
+	/**
+	 * @see ca.nengo.model.impl.AbstractEnsemble#redefineNodes(ca.nengo.model.Node[])
+	 */
+	@Override
+	public void redefineNodes(Node[] nodes) {
+		super.redefineNodes(nodes);
+		myState = null;
+		myCompactState = null;
+		invalidate();
+	}
+
+	/**
+	 * @see ca.nengo.model.nef.impl.NEFEnsembleImpl#setMode(ca.nengo.model.SimulationMode)
+	 */
+	@Override
+	public void setMode(SimulationMode mode) {
+		super.setMode(mode);
+		invalidate();
+	}
+
+	@Override
+	public VectorizedNEFEnsembleImpl clone() throws CloneNotSupportedException {
+		VectorizedNEFEnsembleImpl result = (VectorizedNEFEnsembleImpl) super.clone();
+		result.myState = (myState == null) ? null : MU.clone(myState);
+		result.myCompactState = (myCompactState == null) ? null : myCompactState.clone();
+		result.mySpikeBuffers = null;
+		result.invalidate();
+		return result;
+	}
+
+}
@@ -0,0 +1,20 @@
+package ca.nengo.model.neuron;
+
+/**
+ * A SpikeGenerator whose output in CONSTANT_RATE mode is a closed-form function of the driving
+ * current. This allows rates to be found for many currents at once (e.g. to find decoders),
+ * without running the generator once for each.
+ */
+public interface ConstantRateSpikeGenerator extends SpikeGenerator {
+
+	/**
+	 * Finds the same rates that run(...) would give in CONSTANT_RATE mode, without changing the
+	 * state of the generator.
+	 *
+	 * @param currents Constant driving currents
+	 * @param rates Array into which the firing rate (spikes/s) at each current is written (same
+	 * 		length as currents, and may be the same array)
+	 */
+	public void getConstantRates(float[] currents, float[] rates);
+
+}
@@ -0,0 +1,54 @@
+package ca.nengo.model.neuron;
+
+import java.io.Serializable;
+
+/**
+ * <p>Spike generation model for a whole population of neurons, ie a companion to SpikeGenerator
+ * that advances N neurons from N driving currents in one call, rather than one neuron per call.</p>
+ *
+ * <p>The parameters of each neuron belong to the PopulationSpikeGenerator, but the dynamic state
+ * belongs to the caller, as one array per state variable with one entry per neuron (see makeState()).
+ * This lets a caller keep state in flat arrays that are updated in place, without the output
+ * objects and history arrays that SpikeGenerator.run(...) creates for each neuron on each step.
+ * State is kept in double precision, so that a population can match a SpikeGenerator that keeps
+ * double-precision state; one that matches a single-precision SpikeGenerator still computes in
+ * single precision (doubles hold those values exactly).</p>
+ */
+public interface PopulationSpikeGenerator extends Serializable {
+
+	/**
+	 * @return Number of neurons in the population
+	 */
+	public int getSize();
+
+	/**
+	 * @return Names of state variables, in the order of the arrays returned by makeState()
+	 */
+	public String[] getStateNames();
+
+	/**
+	 * @return New state arrays (one per state variable, each with one entry per neuron),
+	 * 		with initial values
+	 */
+	public double[][] makeState();
+
+	/**
+	 * @param state State arrays (as returned by makeState()) to return to initial values
+	 */
+	public void reset(double[][] state);
+
+	/**
+	 * Runs the population for a given time segment. As with SpikeGenerator.run(...), the time
+	 * segment is meant to be short, so that the output of each neuron is either a spike or no spike.
+	 *
+	 * @param current Driving current of each neuron (assumed to be constant over the segment)
+	 * @param startTime Start of the time segment (s)
+	 * @param endTime End of the time segment (s)
+	 * @param state State arrays (as returned by makeState()), which are updated in place
+	 * @param spikes Array into which the output of each neuron is written: 1/(endTime-startTime)
+	 * 		if it spiked during the segment, otherwise 0 (the same output that DecodedOrigins
+	 * 		use for spikes)
+	 */
+	public void run(float[] current, float startTime, float endTime, double[][] state, float[] spikes);
+
+}
@@ -0,0 +1,179 @@
+package ca.nengo.model.neuron.impl;
+
+import java.util.Arrays;
+
+import ca.nengo.model.SimulationMode;
+import ca.nengo.model.neuron.PopulationSpikeGenerator;
+import ca.nengo.model.neuron.SpikeGenerator;
+
+/**
+ * <p>A population of adapting leaky-integrate-and-fire neurons, with the same dynamics as
+ * ALIFSpikeGenerator in SimulationMode.DEFAULT (a single integration step per run).</p>
+ *
+ * <p>State variables are membrane potential ("V"), time since the last spike ("T") and the
+ * adaptation variable ("N").</p>
+ */
+public class ALIFPopulationSpikeGenerator implements PopulationSpikeGenerator {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Name of membrane potential state variable
+	 */
+	public static final String V = "V";
+
+	/**
+	 * Name of time-since-spike state variable
+	 */
+	public static final String T = "T";
+
+	/**
+	 * Name of adaptation state variable
+	 */
+	public static final String N = "N";
+
+	//as in ALIFSpikeGenerator
+	private static final float R = 1;
+	private static final float Vth = 1;
+	private static final float G_N = 1;
+
+	private float[] myInverseTauRC;
+	private float[] myTauRef;
+	private float[] myTauN;
+	private float[] myIncN;
+	private float[] myInitialVoltage;
+
+	/**
+	 * @param tauRef Refractory period of each neuron (s)
+	 * @param tauRC Resistive-capacitive time constant of each neuron (s)
+	 * @param tauN Time constant of adaptation of each neuron (s)
+	 * @param incN Increment of adaptation variable with each spike of each neuron
+	 * @param initialVoltage Initial condition on V of each neuron
+	 */
+	public ALIFPopulationSpikeGenerator(float[] tauRef, float[] tauRC, float[] tauN, float[] incN, float[] initialVoltage) {
+		int n = tauRef.length;
+		if (tauRC.length != n || tauN.length != n || incN.length != n || initialVoltage.length != n) {
+			throw new IllegalArgumentException("Parameter arrays must have equal length");
+		}
+
+		myInverseTauRC = new float[n];
+		for (int i = 0; i < n; i++) {
+			myInverseTauRC[i] = 1 / tauRC[i];
+		}
+		myTauRef = tauRef.clone();
+		myTauN = tauN.clone();
+		myIncN = incN.clone();
+		myInitialVoltage = initialVoltage.clone();
+	}
+
+	/**
+	 * @param generators A SpikeGenerator for each neuron
+	 * @return A population with the parameters of the given generators, or null if they aren't all
+	 * 		ALIFSpikeGenerators in SimulationMode.DEFAULT
+	 */
+	public static ALIFPopulationSpikeGenerator make(SpikeGenerator[] generators) {
+		int n = generators.length;
+		float[] tauRef = new float[n];
+		float[] tauRC = new float[n];
+		float[] tauN = new float[n];
+		float[] incN = new float[n];
+		float[] initialVoltage = new float[n];
+
+		for (int i = 0; i < n; i++) {
+			if (generators[i].getClass() != ALIFSpikeGenerator.class || generators[i].getMode() != SimulationMode.DEFAULT) {
+				return null;
+			}
+
+			ALIFSpikeGenerator generator = (ALIFSpikeGenerator) generators[i];
+			tauRef[i] = generator.getTauRef();
+			tauRC[i] = generator.getTauRC();
+			tauN[i] = generator.getTauN();
+			incN[i] = generator.getIncN();
+			initialVoltage[i] = generator.getInitialVoltage();
+		}
+
+		return new ALIFPopulationSpikeGenerator(tauRef, tauRC, tauN, incN, initialVoltage);
+	}
+
+	/**
+	 * @see ca.nengo.model.neuron.PopulationSpikeGenerator#getSize()
+	 */
+	public int getSize() {
+		return myTauRef.length;
+	}
+
+	/**
+	 * @see ca.nengo.model.neuron.PopulationSpikeGenerator#getStateNames()
+	 */
+	public String[] getStateNames() {
+		return new String[]{V, T, N};
+	}
+
+	/**
+	 * @see ca.nengo.model.neuron.PopulationSpikeGenerator#makeState()
+	 */
+	public double[][] makeState() {
+		double[][] result = new double[3][getSize()];
+		reset(result);
+		return result;
+	}
+
+	/**
+	 * @see ca.nengo.model.neuron.PopulationSpikeGenerator#reset(double[][])
+	 */
+	public void reset(double[][] state) {
+		for (int i = 0; i < myInitialVoltage.length; i++) {
+			state[0][i] = myInitialVoltage[i];
+			state[1][i] = myTauRef[i];
+		}
+		Arrays.fill(state[2], 0);
+	}
+
+	/**
+	 * @see ca.nengo.model.neuron.PopulationSpikeGenerator#run(float[], float, float, double[][], float[])
+	 */
+	public void run(float[] current, float startTime, float endTime, double[][] state, float[] spikes) {
+		float dt = endTime - startTime;
+		float spikeValue = 1f / dt;
+
+		double[] voltage = state[0];
+		double[] timeSinceSpike = state[1];
+		double[] adaptation = state[2];
+		float[] inverseTauRC = myInverseTauRC;
+		float[] tauRef = myTauRef;
+		float[] tauN = myTauN;
+		float[] incN = myIncN;
+		int n = voltage.length;
+
+		for (int i = 0; i < n; i++) {
+			float a = (float) adaptation[i];
+			a = Math.max(0, a + dt*(-a / tauN[i]));
+			float I = current[i] - G_N*a;
+
+			float t = (float) timeSinceSpike[i] + dt;
+			float v = (float) voltage[i];
+			float dV = inverseTauRC[i] * (I*R - v);
+			if (t < tauRef[i]) {
+				dV = 0;
+			} else if (t < tauRef[i] + dt) {
+				dV *= (t - tauRef[i]) / dt;
+			}
+			float next = Math.max(0, v + dt*dV);
+
+			float spike = 0;
+			if (next >= Vth) {
+				float spikeTime = (Vth - v) * dt / (next - v);
+				t = dt - spikeTime;
+				a += incN[i];
+				next = 0;
+				spike = spikeValue;
+			}
+
+			voltage[i] = next;
+			timeSinceSpike[i] = t;
+			adaptation[i] = a;
+			spikes[i] = spike;
+		}
+	}
+
+}
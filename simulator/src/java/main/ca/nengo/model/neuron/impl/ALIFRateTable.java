@@ -0,0 +1,177 @@
+package ca.nengo.model.neuron.impl;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * <p>A lookup table of the adapted (steady-state) firing rate of an ALIF neuron as a function of
+ * driving current.</p>
+ *
+ * <p>At an adapted rate r, the adaptation current is G_N*incN*tauN*r, and the remaining current J
+ * drives the neuron at rate r, so J is given by the inverse of the LIF rate curve. The current that
+ * produces rate r is therefore known in closed form and increases with r:</p>
+ *
+ * <p>I(r) = 1 / (1 - exp((tauRef - 1/r) / tauRC)) + G_N*incN*tauN*r</p>
+ *
+ * <p>The table holds points (I(r), r), with r spaced more closely where the curve bends, so that
+ * linear interpolation between neighbouring points is within a given error (checked at the midpoint
+ * of each interval). Currents beyond the last point are solved by bisection on I(r).</p>
+ */
+public class ALIFRateTable implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Default maximum interpolation error (spikes/s)
+	 */
+	public static final float DEFAULT_TOLERANCE = .01f;
+
+	private static final int INITIAL_INTERVALS = 32;
+	private static final int MAX_DEPTH = 16; //max number of times each initial interval is halved
+	private static final double MAX_RATE_FRACTION = .99; //table covers rates up to this fraction of 1/tauRef
+	private static final int BISECTION_ITERATIONS = 60;
+
+	private final double myTauRef;
+	private final double myTauRC;
+	private final double myAdaptation;
+	private final double[] myCurrents;
+	private final float[] myRates;
+
+	/**
+	 * @param tauRef Refractory period (s)
+	 * @param tauRC Resistive-capacitive time constant (s)
+	 * @param adaptation Adaptation current per unit of firing rate (G_N*incN*tauN)
+	 * @param tolerance Maximum interpolation error (spikes/s)
+	 */
+	public ALIFRateTable(float tauRef, float tauRC, float adaptation, float tolerance) {
+		myTauRef = tauRef;
+		myTauRC = tauRC;
+		myAdaptation = adaptation;
+
+		double maxRate = MAX_RATE_FRACTION / tauRef;
+		Points points = new Points();
+		points.add(1, 0);
+		for (int k = 0; k < INITIAL_INTERVALS; k++) {
+			double a = maxRate * k / INITIAL_INTERVALS;
+			double b = maxRate * (k + 1) / INITIAL_INTERVALS;
+			addInterval(points, a, getCurrent(a), b, getCurrent(b), tolerance, 0);
+		}
+
+		myCurrents = new double[points.mySize];
+		System.arraycopy(points.myCurrents, 0, myCurrents, 0, points.mySize);
+		myRates = copy(points.myRates, points.mySize);
+	}
+
+	/**
+	 * @param tauRef Refractory period (s)
+	 * @param tauRC Resistive-capacitive time constant (s)
+	 * @param adaptation Adaptation current per unit of firing rate (G_N*incN*tauN)
+	 */
+	public ALIFRateTable(float tauRef, float tauRC, float adaptation) {
+		this(tauRef, tauRC, adaptation, DEFAULT_TOLERANCE);
+	}
+
+	/**
+	 * @return Number of points in the table
+	 */
+	public int getSize() {
+		return myCurrents.length;
+	}
+
+	/**
+	 * @param current Driving current
+	 * @return Adapted firing rate (spikes/s)
+	 */
+	public float getRate(float current) {
+		if (current <= 1) {
+			return 0;
+		}
+
+		int last = myCurrents.length - 1;
+		if (current >= myCurrents[last]) {
+			return (float) solve(current, myRates[last], 1 / myTauRef);
+		}
+
+		int index = Arrays.binarySearch(myCurrents, current);
+		if (index >= 0) {
+			return myRates[index];
+		}
+
+		int upper = -index - 1;
+		int lower = upper - 1;
+		double fraction = (current - myCurrents[lower]) / (myCurrents[upper] - myCurrents[lower]);
+		return (float) (myRates[lower] + fraction * (myRates[upper] - myRates[lower]));
+	}
+
+	/**
+	 * @param currents Driving currents
+	 * @param rates Array into which the adapted firing rate for each current is written (spikes/s)
+	 */
+	public void getRates(float[] currents, float[] rates) {
+		for (int i = 0; i < currents.length; i++) {
+			rates[i] = getRate(currents[i]);
+		}
+	}
+
+	//current needed for the given adapted rate
+	private double getCurrent(double rate) {
+		if (rate <= 0) {
+			return 1;
+		}
+		return 1 / (1 - Math.exp((myTauRef - 1 / rate) / myTauRC)) + myAdaptation * rate;
+	}
+
+	//adds points within (a, b] until interpolation between neighbours is within tolerance
+	private void addInterval(Points points, double a, double Ia, double b, double Ib, float tolerance, int depth) {
+		double mid = (a + b) / 2;
+		double Imid = getCurrent(mid);
+		double interpolated = (Ib > Ia) ? a + (b - a) * (Imid - Ia) / (Ib - Ia) : a;
+
+		if (depth < MAX_DEPTH && Math.abs(interpolated - mid) > tolerance) {
+			addInterval(points, a, Ia, mid, Imid, tolerance, depth + 1);
+			addInterval(points, mid, Imid, b, Ib, tolerance, depth + 1);
+		} else {
+			points.add(Ib, b);
+		}
+	}
+
+	//rate in [low, high) at which I(r) equals the given current
+	private double solve(double current, double low, double high) {
+		for (int i = 0; i < BISECTION_ITERATIONS && high - low > 1e-6; i++) {
+			double mid = (low + high) / 2;
+			if (getCurrent(mid) < current) {
+				low = mid;
+			} else {
+				high = mid;
+			}
+		}
+		return (low + high) / 2;
+	}
+
+	private static float[] copy(float[] array, int length) {
+		float[] result = new float[length];
+		System.arraycopy(array, 0, result, 0, Math.min(length, array.length));
+		return result;
+	}
+
+	//growable arrays of points
+	private static class Points {
+
+		private double[] myCurrents = new double[256];
+		private float[] myRates = new float[256];
+		private int mySize;
+
+		public void add(double current, double rate) {
+			if (mySize == myCurrents.length) {
+				double[] currents = new double[2 * mySize];
+				System.arraycopy(myCurrents, 0, currents, 0, mySize);
+				myCurrents = currents;
+				myRates = copy(myRates, 2 * mySize);
+			}
+			myCurrents[mySize] = current;
+			myRates[mySize] = (float) rate;
+			mySize++;
+		}
+	}
+
+}
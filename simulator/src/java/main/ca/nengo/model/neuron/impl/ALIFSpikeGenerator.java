@@ -29,13 +29,10 @@ package ca.nengo.model.neuron.impl;
 
 import java.util.Properties;
 
-import ca.nengo.math.Function;
 import ca.nengo.math.PDF;
-import ca.nengo.math.RootFinder;
-import ca.nengo.math.impl.AbstractFunction;
 import ca.nengo.math.impl.IndicatorPDF;
-import ca.nengo.math.impl.NewtonRootFinder;
 import ca.nengo.model.InstantaneousOutput;
+import ca.nengo.model.ProbeAware;
 import ca.nengo.model.Probeable;
 import ca.nengo.model.SimulationException;
 import ca.nengo.model.SimulationMode;
@@ -43,9 +40,11 @@ import ca.nengo.model.Units;
 import ca.nengo.model.impl.PreciseSpikeOutputImpl;
 import ca.nengo.model.impl.RealOutputImpl;
 import ca.nengo.model.impl.SpikeOutputImpl;
+import ca.nengo.model.neuron.ConstantRateSpikeGenerator;
 import ca.nengo.model.neuron.SpikeGenerator;
 import ca.nengo.util.TimeSeries;
 import ca.nengo.util.TimeSeries1D;
+import ca.nengo.util.impl.ProbedStates;
 import ca.nengo.util.impl.TimeSeries1DImpl;
 
 /**
@@ -65,7 +64,7 @@ import ca.nengo.util.impl.TimeSeries1DImpl;
  *
  * @author Bryan Tripp
  */
-public class ALIFSpikeGenerator implements SpikeGenerator, Probeable {
+public class ALIFSpikeGenerator implements ConstantRateSpikeGenerator, ProbeAware {
 
 	private static final long serialVersionUID = 1L;
 
@@ -82,6 +81,7 @@ public class ALIFSpikeGenerator implements SpikeGenerator, Probeable {
 	private float myTauN;
 	private float myIncN; //increment of N with each spike
 	private float myInitialVoltage = 0;
+	private transient ALIFRateTable myRateTable; //adapted rates (null when parameters change)
 
 	private float myV;
 	private float myN;
@@ -91,6 +91,7 @@ public class ALIFSpikeGenerator implements SpikeGenerator, Probeable {
 	private float[] myVHistory;
 	private float[] myNHistory;
 	private float[] myRateHistory;
+	private ProbedStates myProbedStates; //null until a state is probed
 
 	private static final float[] ourNullTime = new float[0];
 	private static final float[] ourNullVHistory = new float[0];
@@ -130,6 +131,14 @@ public class ALIFSpikeGenerator implements SpikeGenerator, Probeable {
 	 */
 	public void setTauRef(float tauRef) {
 		myTauRef = tauRef;
+		myRateTable = null;
+	}
+
+	/**
+	 * @return Initial condition on V
+	 */
+	public float getInitialVoltage() {
+		return myInitialVoltage;
 	}
 
 	/**
@@ -144,6 +153,7 @@ public class ALIFSpikeGenerator implements SpikeGenerator, Probeable {
 	 */
 	public void setTauRC(float tauRC) {
 		myTauRC = tauRC;
+		myRateTable = null;
 	}
 
 	/**
@@ -158,6 +168,7 @@ public class ALIFSpikeGenerator implements SpikeGenerator, Probeable {
 	 */
 	public void setTauN(float tauN) {
 		myTauN = tauN;
+		myRateTable = null;
 	}
 
 	/**
@@ -172,6 +183,7 @@ public class ALIFSpikeGenerator implements SpikeGenerator, Probeable {
 	 */
 	public void setIncN(float incN) {
 		myIncN = Math.max(0, incN); //TODO: rethink this (prevents potentiation)
+		myRateTable = null;
 	}
 
 	/**
@@ -187,6 +199,7 @@ public class ALIFSpikeGenerator implements SpikeGenerator, Probeable {
 		float I = I_in - G_N*myN;
 
 		InstantaneousOutput result = null;
+		float historyRate;
 		if (myMode.equals(SimulationMode.DEFAULT) || myMode.equals(SimulationMode.PRECISE)) {
 			myTimeSinceLastSpike = myTimeSinceLastSpike + dt;
 
@@ -209,7 +222,7 @@ public class ALIFSpikeGenerator implements SpikeGenerator, Probeable {
 				myV = 0;
 			}
 
-			myRateHistory = new float[]{spikeTime>=0 ? 1f/dt : 0};
+			historyRate = spikeTime>=0 ? 1f/dt : 0;
 
 			if (myMode.equals(SimulationMode.DEFAULT)) {
                 result = new SpikeOutputImpl(new boolean[]{spikeTime>=0f}, Units.SPIKES, time[time.length-1]);
@@ -220,18 +233,26 @@ public class ALIFSpikeGenerator implements SpikeGenerator, Probeable {
 			float rate = I > 1 ? 1f / ( myTauRef - myTauRC * ((float) Math.log(1f - 1f/I)) ) : 0;
 			myN += (rate * dt) * myIncN; //analog of # spikes X increment
 
-			myRateHistory = new float[]{rate};
+			historyRate = rate;
 			result = new RealOutputImpl(new float[]{rate}, Units.SPIKES_PER_S, time[time.length-1]);
 		} else {
 			float rate = I_in > 1 ? 1f / ( myTauRef - myTauRC * ((float) Math.log(1f - 1f/I_in)) ) : 0;
 
-			myRateHistory = new float[]{rate};
+			historyRate = rate;
 			result = new RealOutputImpl(new float[]{rate}, Units.SPIKES_PER_S, time[time.length-1]);
 		}
 
-		myTime = new float[]{time[time.length-1]};
-		myNHistory = new float[]{myN};
-		myVHistory = new float[]{myV};
+		if (ProbedStates.isRecording(myProbedStates)) {
+			myTime = new float[]{time[time.length-1]};
+			myNHistory = new float[]{myN};
+			myVHistory = new float[]{myV};
+			myRateHistory = new float[]{historyRate};
+		} else {
+			myTime = ourNullTime;
+			myNHistory = ourNullNHistory;
+			myVHistory = ourNullVHistory;
+			myRateHistory = ourNullRateHistory;
+		}
 
 		return result;
 	}
@@ -245,26 +266,40 @@ public class ALIFSpikeGenerator implements SpikeGenerator, Probeable {
 	}
 
 	/**
+	 * Rates in CONSTANT_RATE mode are unadapted.
+	 *
+	 * @see ca.nengo.model.neuron.ConstantRateSpikeGenerator#getConstantRates(float[], float[])
+	 */
+	public void getConstantRates(float[] currents, float[] rates) {
+		for (int i = 0; i < currents.length; i++) {
+			rates[i] = getOnsetRate(currents[i]);
+		}
+	}
+
+	/**
+	 * Adapted rates are interpolated from a table (see ALIFRateTable), which is made the first
+	 * time it's needed after a change of parameters.
+	 *
 	 * @param I driving current
 	 * @return Adapted firing rate given this current
 	 */
-	public float getAdaptedRate(final float I) {
-		if (I > 1) {
-			RootFinder rf = new NewtonRootFinder(50, false);
-
-			Function f = new AbstractFunction(1) {
-				private static final long serialVersionUID = 1L;
-				public float map(float[] from) {
-					float r = from[0];
-					return r - 1 / (myTauRef - myTauRC * (float) Math.log(1f - 1f/(I-G_N*myIncN*myTauN*r)));
-				}
-			};
-
-			float max = (I-1) / (G_N * myIncN * myTauN); //will be NaN if current < 1
-			return rf.findRoot(f, 0, max, 0.1f);
-		} else {
-			return 0;
+	public float getAdaptedRate(float I) {
+		return getRateTable().getRate(I);
+	}
+
+	/**
+	 * @param currents Driving currents
+	 * @param rates Array into which the adapted firing rate for each current is written
+	 */
+	public void getAdaptedRates(float[] currents, float[] rates) {
+		getRateTable().getRates(currents, rates);
+	}
+
+	private ALIFRateTable getRateTable() {
+		if (myRateTable == null) {
+			myRateTable = new ALIFRateTable(myTauRef, myTauRC, G_N * myIncN * myTauN);
 		}
+		return myRateTable;
 	}
 
 	/**
@@ -333,6 +368,25 @@ public class ALIFSpikeGenerator implements SpikeGenerator, Probeable {
 		p.setProperty("rate", "Firing rate (only available in rate mode) (spikes/s)");
 		return p;
 	}
+
+	/**
+	 * @see ca.nengo.model.ProbeAware#probeAdded(java.lang.String)
+	 */
+	public void probeAdded(String stateName) {
+		if (myProbedStates == null) {
+			myProbedStates = new ProbedStates();
+		}
+		myProbedStates.add(stateName);
+	}
+
+	/**
+	 * @see ca.nengo.model.ProbeAware#probeRemoved(java.lang.String)
+	 */
+	public void probeRemoved(String stateName) {
+		if (myProbedStates != null) {
+			myProbedStates.remove(stateName);
+		}
+	}
     
 	@Override
 	public SpikeGenerator clone() throws CloneNotSupportedException {
@@ -341,6 +395,7 @@ public class ALIFSpikeGenerator implements SpikeGenerator, Probeable {
 		result.myRateHistory = myRateHistory.clone();
 		result.myTime = myTime.clone();
 		result.myVHistory = myVHistory.clone();
+		result.myProbedStates = null;
 		return result;
 	}
 
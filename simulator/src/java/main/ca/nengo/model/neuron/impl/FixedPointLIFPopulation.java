@@ -0,0 +1,281 @@
+package ca.nengo.model.neuron.impl;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import ca.nengo.model.SimulationMode;
+import ca.nengo.model.neuron.SpikeGenerator;
+
+/**
+ * <p>A population of leaky-integrate-and-fire neurons with the same dynamics as
+ * LIFPopulationSpikeGenerator, but with state stored in reduced precision, for very large
+ * ensembles in which memory footprint and bandwidth dominate run time.</p>
+ *
+ * <p>The population holds only packed arrays, with no object per neuron. Note that in
+ * VectorizedNEFEnsembleImpl's compact mode the ensemble still keeps its Nodes (a SpikingNeuron
+ * and LIFSpikeGenerator per neuron, for parameters, Origins and Probes), so there it reduces the
+ * state that is read and written on every step, but not the total memory of the ensemble.</p>
+ *
+ * <p>Each neuron's state takes three bytes (see State): membrane potential as a 16-bit fixed-point
+ * fraction of threshold (resolution VOLTAGE_RESOLUTION = 2^-15), and remaining refractory time as an
+ * 8-bit counter in units of tauRef/REFRACTORY_LEVELS. LIFPopulationSpikeGenerator uses sixteen bytes
+ * (two doubles) per neuron. All neurons share tauRC and tauRef, so parameters take two bytes per
+ * neuron (the initial voltage) rather than twelve. Integration is done in integer arithmetic on the
+ * fixed-point voltage (with dt/tauRC to 24 fraction bits), and each neuron is taken through all the
+ * steps of a run(...) at once, so the state arrays are read and written once per run.</p>
+ *
+ * <p>Accuracy relative to LIFSpikeGenerator, with integration step dt:</p>
+ * <ul>
+ * <li>Each step rounds V by at most VOLTAGE_RESOLUTION/2. Leak shrinks earlier rounding errors by
+ * 		a factor (1 - dt/tauRC) per step, so the accumulated voltage error is at most
+ * 		VOLTAGE_RESOLUTION*tauRC/(2*dt) (about 1.2e-3 of threshold with tauRC=20ms and dt=.25ms).
+ * 		Spike times shift by at most this error divided by the slope of V at threshold,
+ * 		(I-1)/tauRC, so firing rates are close for currents well above threshold. Neurons
+ * 		driven to within this error of threshold may gain or lose spikes.</li>
+ * <li>Each step rounds the remaining refractory time by at most tauRef/(2*REFRACTORY_LEVELS), so a
+ * 		refractory period is off by at most ceil(tauRef/dt)*tauRef/(2*REFRACTORY_LEVELS) (about 8
+ * 		microseconds with tauRef=2ms and dt=.25ms).</li>
+ * </ul>
+ *
+ * <p>As with PopulationSpikeGenerator, parameters belong to this object and state belongs to the
+ * caller, in a State made by makeState().</p>
+ */
+public class FixedPointLIFPopulation implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Smallest representable difference in membrane potential (threshold is 1)
+	 */
+	public static final float VOLTAGE_RESOLUTION = 1f / 32768;
+
+	/**
+	 * Number of distinct non-zero values of the refractory counter
+	 */
+	public static final int REFRACTORY_LEVELS = 255;
+
+	private static final float VOLTAGE_SCALE = 32768;
+	private static final long THRESHOLD = 32768; //fixed-point threshold voltage
+	private static final int DECAY_BITS = 24; //fraction bits of fixed-point dt/tauRC
+	private static final float DECAY_SCALE = 1 << DECAY_BITS;
+	private static final long DECAY_ROUNDING = 1L << (DECAY_BITS - 1);
+	private static final float ourMaxTimeStepCorrection = 1.01f; //as in LIFSpikeGenerator
+
+	private float myMaxTimeStep;
+	private float myTauRC;
+	private float myTauRef;
+	private short[] myInitialVoltage;
+
+	/**
+	 * @param maxTimeStep Maximum integration time step (s). Shorter time steps may be used if a
+	 * 		run(...) is requested with a length that is not an integer multiple of this value.
+	 * @param tauRC Resistive-capacitive time constant of every neuron (s)
+	 * @param tauRef Refractory period of every neuron (s)
+	 * @param initialVoltage Initial condition on V of each neuron (in [0, 1))
+	 */
+	public FixedPointLIFPopulation(float maxTimeStep, float tauRC, float tauRef, float[] initialVoltage) {
+		myMaxTimeStep = maxTimeStep * ourMaxTimeStepCorrection;
+		myTauRC = tauRC;
+		myTauRef = tauRef;
+		myInitialVoltage = new short[initialVoltage.length];
+		for (int i = 0; i < initialVoltage.length; i++) {
+			myInitialVoltage[i] = encodeVoltage(initialVoltage[i]);
+		}
+	}
+
+	/**
+	 * @param generators A SpikeGenerator for each neuron
+	 * @return A population with the parameters of the given generators, or null if they aren't all
+	 * 		LIFSpikeGenerators in SimulationMode.DEFAULT with Euler integration and the same tauRC
+	 * 		and tauRef
+	 */
+	public static FixedPointLIFPopulation make(SpikeGenerator[] generators) {
+		int n = generators.length;
+		if (n == 0) {
+			return null;
+		}
+
+		float maxTimeStep = Float.MAX_VALUE;
+		float[] initialVoltage = new float[n];
+		float tauRC = 0;
+		float tauRef = 0;
+
+		for (int i = 0; i < n; i++) {
+			if (generators[i].getClass() != LIFSpikeGenerator.class || generators[i].getMode() != SimulationMode.DEFAULT) {
+				return null;
+			}
+
+			LIFSpikeGenerator generator = (LIFSpikeGenerator) generators[i];
+			if (generator.getExact()) {
+				return null;
+			}
+			if (i == 0) {
+				tauRC = generator.getTauRC();
+				tauRef = generator.getTauRef();
+			} else if (generator.getTauRC() != tauRC || generator.getTauRef() != tauRef) {
+				return null;
+			}
+			maxTimeStep = Math.min(maxTimeStep, generator.getMaxTimeStep());
+			initialVoltage[i] = generator.getInitialVoltage();
+		}
+
+		return new FixedPointLIFPopulation(maxTimeStep, tauRC, tauRef, initialVoltage);
+	}
+
+	/**
+	 * @return Number of neurons in the population
+	 */
+	public int getSize() {
+		return myInitialVoltage.length;
+	}
+
+	/**
+	 * @return Resistive-capacitive time constant of every neuron (s)
+	 */
+	public float getTauRC() {
+		return myTauRC;
+	}
+
+	/**
+	 * @return Refractory period of every neuron (s)
+	 */
+	public float getTauRef() {
+		return myTauRef;
+	}
+
+	/**
+	 * @return New state with initial values
+	 */
+	public State makeState() {
+		State result = new State(getSize());
+		reset(result);
+		return result;
+	}
+
+	/**
+	 * @param state State (as returned by makeState()) to return to initial values
+	 */
+	public void reset(State state) {
+		System.arraycopy(myInitialVoltage, 0, state.myVoltage, 0, myInitialVoltage.length);
+		Arrays.fill(state.myRefractory, (byte) 0);
+	}
+
+	/**
+	 * Runs the population for a given time segment, as PopulationSpikeGenerator.run(...).
+	 *
+	 * @param current Driving current of each neuron (assumed to be constant over the segment)
+	 * @param startTime Start of the time segment (s)
+	 * @param endTime End of the time segment (s)
+	 * @param state State (as returned by makeState()), which is updated in place
+	 * @param spikes Array into which the output of each neuron is written: 1/(endTime-startTime)
+	 * 		if it spiked during the segment, otherwise 0
+	 */
+	public void run(float[] current, float startTime, float endTime, State state, float[] spikes) {
+		float len = endTime - startTime;
+		int steps = (int) Math.ceil(len / myMaxTimeStep);
+		float dt = len / steps;
+		float spikeValue = 1f / len;
+
+		long decay = Math.round(dt / myTauRC * DECAY_SCALE);
+		float quantum = myTauRef / REFRACTORY_LEVELS;
+		float inverseQuantum = 1 / quantum;
+		float inverseDt = 1 / dt;
+		float tauRef = myTauRef;
+		short[] voltage = state.myVoltage;
+		byte[] refractory = state.myRefractory;
+		int n = voltage.length;
+
+		//neurons are independent, so each one is run through all the steps while its state is in registers
+		for (int i = 0; i < n; i++) {
+			long I = Math.round(current[i] * VOLTAGE_SCALE);
+			long v = voltage[i];
+			int counter = refractory[i] & 0xFF;
+			float spike = 0;
+
+			for (int k = 0; k < steps; k++) {
+				long dV = decay * (I - v);
+				if (counter > 0) {
+					float remaining = counter * quantum;
+					if (remaining >= dt) {
+						dV = 0;
+					} else {
+						dV = (long) (dV * ((dt - remaining) * inverseDt));
+					}
+					counter = encodeRefractory(remaining - dt, inverseQuantum);
+				}
+				long next = v + ((dV + DECAY_ROUNDING) >> DECAY_BITS);
+				if (next < 0) {
+					next = 0;
+				}
+
+				if (next >= THRESHOLD) {
+					float dSpike = (THRESHOLD - v) * dt / (next - v);
+					counter = encodeRefractory(tauRef - dt + dSpike, inverseQuantum);
+					next = 0;
+					spike = spikeValue;
+				}
+				v = next;
+			}
+
+			voltage[i] = (short) v;
+			refractory[i] = (byte) counter;
+			spikes[i] = spike;
+		}
+	}
+
+	private static short encodeVoltage(float voltage) {
+		return (short) Math.max(0, Math.min(THRESHOLD - 1, Math.round(voltage * VOLTAGE_SCALE)));
+	}
+
+	private static int encodeRefractory(float remaining, float inverseQuantum) {
+		if (remaining <= 0) {
+			return 0;
+		}
+		int result = (int) (remaining * inverseQuantum + .5f);
+		return result > REFRACTORY_LEVELS ? REFRACTORY_LEVELS : result;
+	}
+
+	/**
+	 * Dynamic state of a FixedPointLIFPopulation.
+	 */
+	public static class State implements Serializable, Cloneable {
+
+		private static final long serialVersionUID = 1L;
+
+		private short[] myVoltage;
+		private byte[] myRefractory;
+
+		private State(int size) {
+			myVoltage = new short[size];
+			myRefractory = new byte[size];
+		}
+
+		/**
+		 * @return Number of neurons
+		 */
+		public int getSize() {
+			return myVoltage.length;
+		}
+
+		/**
+		 * @param index Index of a neuron
+		 * @return Membrane potential of the neuron
+		 */
+		public float getVoltage(int index) {
+			return myVoltage[index] * VOLTAGE_RESOLUTION;
+		}
+
+		@Override
+		public State clone() {
+			try {
+				State result = (State) super.clone();
+				result.myVoltage = myVoltage.clone();
+				result.myRefractory = myRefractory.clone();
+				return result;
+			} catch (CloneNotSupportedException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,169 @@
+package ca.nengo.model.neuron.impl;
+
+import ca.nengo.model.SimulationMode;
+import ca.nengo.model.neuron.PopulationSpikeGenerator;
+import ca.nengo.model.neuron.SpikeGenerator;
+
+/**
+ * <p>A population of Izhikevich neurons, with the same dynamics as IzhikevichSpikeGenerator in
+ * SimulationMode.DEFAULT. As in IzhikevichSpikeGenerator, state is kept and updated in double
+ * precision, so the two give the same spikes.</p>
+ *
+ * <p>State variables are membrane potential ("V") and the recovery variable ("U").</p>
+ */
+public class IzhikevichPopulationSpikeGenerator implements PopulationSpikeGenerator {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Name of membrane potential state variable
+	 */
+	public static final String V = IzhikevichSpikeGenerator.V;
+
+	/**
+	 * Name of recovery state variable
+	 */
+	public static final String U = IzhikevichSpikeGenerator.U;
+
+	//as in IzhikevichSpikeGenerator
+	private static final float ourMaxTimeStep = .001f;
+	private static final float Vth = 30;
+
+	private double[] myA;
+	private double[] myB;
+	private double[] myC;
+	private double[] myD;
+	private float[] myInitialVoltage;
+
+	/**
+	 * @param a Time scale of recovery variable of each neuron
+	 * @param b Sensitivity of recovery variable of each neuron
+	 * @param c Voltage reset value of each neuron
+	 * @param d Recovery variable reset change of each neuron
+	 * @param initialVoltage Initial voltage of each neuron
+	 */
+	public IzhikevichPopulationSpikeGenerator(float[] a, float[] b, float[] c, float[] d, float[] initialVoltage) {
+		int n = a.length;
+		if (b.length != n || c.length != n || d.length != n || initialVoltage.length != n) {
+			throw new IllegalArgumentException("Parameter arrays must have equal length");
+		}
+
+		myA = new double[n];
+		myB = new double[n];
+		myC = new double[n];
+		myD = new double[n];
+		for (int i = 0; i < n; i++) {
+			myA[i] = a[i];
+			myB[i] = b[i];
+			myC[i] = c[i];
+			myD[i] = d[i];
+		}
+		myInitialVoltage = initialVoltage.clone();
+	}
+
+	/**
+	 * @param generators A SpikeGenerator for each neuron
+	 * @return A population with the parameters of the given generators, or null if they aren't all
+	 * 		IzhikevichSpikeGenerators in SimulationMode.DEFAULT
+	 */
+	public static IzhikevichPopulationSpikeGenerator make(SpikeGenerator[] generators) {
+		int n = generators.length;
+		float[] a = new float[n];
+		float[] b = new float[n];
+		float[] c = new float[n];
+		float[] d = new float[n];
+		float[] initialVoltage = new float[n];
+
+		for (int i = 0; i < n; i++) {
+			if (generators[i].getClass() != IzhikevichSpikeGenerator.class || generators[i].getMode() != SimulationMode.DEFAULT) {
+				return null;
+			}
+
+			IzhikevichSpikeGenerator generator = (IzhikevichSpikeGenerator) generators[i];
+			a[i] = generator.getA();
+			b[i] = generator.getB();
+			c[i] = generator.getC();
+			d[i] = generator.getD();
+			initialVoltage[i] = generator.getInitialVoltage();
+		}
+
+		return new IzhikevichPopulationSpikeGenerator(a, b, c, d, initialVoltage);
+	}
+
+	/**
+	 * @see ca.nengo.model.neuron.PopulationSpikeGenerator#getSize()
+	 */
+	public int getSize() {
+		return myA.length;
+	}
+
+	/**
+	 * @see ca.nengo.model.neuron.PopulationSpikeGenerator#getStateNames()
+	 */
+	public String[] getStateNames() {
+		return new String[]{V, U};
+	}
+
+	/**
+	 * @see ca.nengo.model.neuron.PopulationSpikeGenerator#makeState()
+	 */
+	public double[][] makeState() {
+		double[][] result = new double[2][getSize()];
+		reset(result);
+		return result;
+	}
+
+	/**
+	 * @see ca.nengo.model.neuron.PopulationSpikeGenerator#reset(double[][])
+	 */
+	public void reset(double[][] state) {
+		for (int i = 0; i < myInitialVoltage.length; i++) {
+			state[0][i] = myInitialVoltage[i];
+			state[1][i] = myB[i] * myInitialVoltage[i];
+		}
+	}
+
+	/**
+	 * @see ca.nengo.model.neuron.PopulationSpikeGenerator#run(float[], float, float, double[][], float[])
+	 */
+	public void run(float[] current, float startTime, float endTime, double[][] state, float[] spikes) {
+		float len = endTime - startTime;
+		int steps = (int) Math.ceil((len - 1e-5) / ourMaxTimeStep);
+		float dt = len / steps;
+		float spikeValue = 1f / len;
+
+		double[] voltage = state[0];
+		double[] recovery = state[1];
+		double[] a = myA;
+		double[] b = myB;
+		double[] c = myC;
+		double[] d = myD;
+		int n = voltage.length;
+
+		for (int i = 0; i < n; i++) {
+			spikes[i] = 0;
+		}
+
+		for (int k = 0; k < steps; k++) {
+			for (int i = 0; i < n; i++) {
+				double I = current[i];
+				double v = voltage[i];
+				double u = recovery[i];
+
+				if (v >= Vth) {
+					spikes[i] = spikeValue;
+					v = c[i];
+					u = u + d[i];
+				}
+
+				v += 500 * dt * (0.04*v*v + 5*v + 140 - u + I);
+				v += 500 * dt * (0.04*v*v + 5*v + 140 - u + I);
+				u += 1000 * dt * (a[i]*(b[i]*v - u));
+
+				voltage[i] = v;
+				recovery[i] = u;
+			}
+		}
+	}
+
+}
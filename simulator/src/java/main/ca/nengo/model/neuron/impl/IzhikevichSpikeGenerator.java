@@ -41,6 +41,7 @@ import java.util.Properties;
 
 import ca.nengo.math.impl.InterpolatedFunction;
 import ca.nengo.model.InstantaneousOutput;
+import ca.nengo.model.ProbeAware;
 import ca.nengo.model.Probeable;
 import ca.nengo.model.SimulationException;
 import ca.nengo.model.SimulationMode;
@@ -50,6 +51,7 @@ import ca.nengo.model.impl.SpikeOutputImpl;
 import ca.nengo.model.neuron.SpikeGenerator;
 import ca.nengo.util.TimeSeries;
 import ca.nengo.util.TimeSeries1D;
+import ca.nengo.util.impl.ProbedStates;
 import ca.nengo.util.impl.TimeSeries1DImpl;
 
 /**
@@ -65,7 +67,7 @@ import ca.nengo.util.impl.TimeSeries1DImpl;
  *
  * @author Hussein, Bryan
  */
-public class IzhikevichSpikeGenerator implements SpikeGenerator, Probeable {
+public class IzhikevichSpikeGenerator implements SpikeGenerator, ProbeAware {
 
 	private static final long serialVersionUID = 1L;
 
@@ -187,6 +189,7 @@ public class IzhikevichSpikeGenerator implements SpikeGenerator, Probeable {
 	private float[] myTime;
 	private float[] myVoltageHistory;
 	private float[] myRecoveryHistory;
+	private ProbedStates myProbedStates; //null until a state is probed
 	private float mySpikeRate;
 
 	private SimulationMode myMode;
@@ -327,6 +330,13 @@ public class IzhikevichSpikeGenerator implements SpikeGenerator, Probeable {
 		myD = d;
 	}
 
+	/**
+	 * @return initial voltage value
+	 */
+	public float getInitialVoltage() {
+		return (float) myInitialVoltage;
+	}
+
 	/**
 	 * @see ca.nengo.model.Resettable#reset(boolean)
 	 */
@@ -363,14 +373,21 @@ public class IzhikevichSpikeGenerator implements SpikeGenerator, Probeable {
 		int steps = (int) Math.ceil((len - 1e-5) / myMaxTimeStep);
 		float dt = len / steps;
 
-		myTime = new float[steps];
-		myVoltageHistory = new float[steps];
-		myRecoveryHistory = new float[steps];
+		boolean record = ProbedStates.isRecording(myProbedStates);
+		if (record) {
+			myTime = new float[steps];
+			myVoltageHistory = new float[steps];
+			myRecoveryHistory = new float[steps];
+		} else {
+			myTime = ourNullTime;
+			myVoltageHistory = ourNullVoltageHistory;
+			myRecoveryHistory = ourNullRecoveryHistory;
+		}
 
 		boolean spiking = false;
 		for (int i = 0; i < steps; i++) {
-			myTime[i] = time[0] + i*dt;
-			double I = InterpolatedFunction.interpolate(time, current, myTime[i]+dt/2f);
+			float stepTime = time[0] + i*dt;
+			double I = InterpolatedFunction.interpolate(time, current, stepTime+dt/2f);
 
 			if (myVoltage >= Vth) {
 				spiking = true;
@@ -380,10 +397,13 @@ public class IzhikevichSpikeGenerator implements SpikeGenerator, Probeable {
 
 			myVoltage += 500 * dt * (0.04*myVoltage*myVoltage + 5*myVoltage + 140 - myRecovery + I);
 			myVoltage += 500 * dt * (0.04*myVoltage*myVoltage + 5*myVoltage + 140 - myRecovery + I);
-			myVoltageHistory[i] = (float) myVoltage;
-
 			myRecovery += 1000 * dt * (myA*(myB*myVoltage - myRecovery));
-			myRecoveryHistory[i] = (float) myRecovery;
+
+			if (record) {
+				myTime[i] = stepTime;
+				myVoltageHistory[i] = (float) myVoltage;
+				myRecoveryHistory[i] = (float) myRecovery;
+			}
 		}
 
 		return spiking;
@@ -416,6 +436,25 @@ public class IzhikevichSpikeGenerator implements SpikeGenerator, Probeable {
 		return p;
 	}
 
+	/**
+	 * @see ca.nengo.model.ProbeAware#probeAdded(java.lang.String)
+	 */
+	public void probeAdded(String stateName) {
+		if (myProbedStates == null) {
+			myProbedStates = new ProbedStates();
+		}
+		myProbedStates.add(stateName);
+	}
+
+	/**
+	 * @see ca.nengo.model.ProbeAware#probeRemoved(java.lang.String)
+	 */
+	public void probeRemoved(String stateName) {
+		if (myProbedStates != null) {
+			myProbedStates.remove(stateName);
+		}
+	}
+
 	/**
 	 * @see ca.nengo.model.SimulationMode.ModeConfigurable#getMode()
 	 */
@@ -436,6 +475,7 @@ public class IzhikevichSpikeGenerator implements SpikeGenerator, Probeable {
 		result.myTime = myTime.clone();
 		result.myVoltageHistory = myVoltageHistory.clone();
 		result.myRecoveryHistory = myRecoveryHistory.clone();
+		result.myProbedStates = null;
 		return result;
 	}
 
@@ -0,0 +1,163 @@
+package ca.nengo.model.neuron.impl;
+
+import ca.nengo.model.SimulationMode;
+import ca.nengo.model.neuron.PopulationSpikeGenerator;
+import ca.nengo.model.neuron.SpikeGenerator;
+
+/**
+ * <p>A population of leaky-integrate-and-fire neurons, with the same dynamics as LIFSpikeGenerator
+ * in SimulationMode.DEFAULT. Each integration step updates every neuron in a simple loop over flat
+ * arrays.</p>
+ *
+ * <p>State variables are membrane potential ("V") and time since the last spike ("T").</p>
+ */
+public class LIFPopulationSpikeGenerator implements PopulationSpikeGenerator {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Name of membrane potential state variable
+	 */
+	public static final String V = "V";
+
+	/**
+	 * Name of time-since-spike state variable
+	 */
+	public static final String T = "T";
+
+	private static final float Vth = 1;
+	private static final float ourMaxTimeStepCorrection = 1.01f; //as in LIFSpikeGenerator
+
+	private float myMaxTimeStep;
+	private float[] myInverseTauRC;
+	private float[] myTauRef;
+	private float[] myInitialVoltage;
+
+	/**
+	 * @param maxTimeStep Maximum integration time step (s). Shorter time steps may be used if a
+	 * 		run(...) is requested with a length that is not an integer multiple of this value.
+	 * @param tauRC Resistive-capacitive time constant of each neuron (s)
+	 * @param tauRef Refractory period of each neuron (s)
+	 * @param initialVoltage Initial condition on V of each neuron
+	 */
+	public LIFPopulationSpikeGenerator(float maxTimeStep, float[] tauRC, float[] tauRef, float[] initialVoltage) {
+		if (tauRC.length != tauRef.length || tauRC.length != initialVoltage.length) {
+			throw new IllegalArgumentException("Parameter arrays must have equal length");
+		}
+
+		myMaxTimeStep = maxTimeStep * ourMaxTimeStepCorrection;
+		myInverseTauRC = new float[tauRC.length];
+		for (int i = 0; i < tauRC.length; i++) {
+			myInverseTauRC[i] = 1 / tauRC[i];
+		}
+		myTauRef = tauRef.clone();
+		myInitialVoltage = initialVoltage.clone();
+	}
+
+	/**
+	 * @param generators A SpikeGenerator for each neuron
+	 * @return A population with the parameters of the given generators, or null if they aren't all
+	 * 		LIFSpikeGenerators in SimulationMode.DEFAULT with Euler integration
+	 */
+	public static LIFPopulationSpikeGenerator make(SpikeGenerator[] generators) {
+		int n = generators.length;
+		float maxTimeStep = Float.MAX_VALUE;
+		float[] tauRC = new float[n];
+		float[] tauRef = new float[n];
+		float[] initialVoltage = new float[n];
+
+		for (int i = 0; i < n; i++) {
+			if (generators[i].getClass() != LIFSpikeGenerator.class || generators[i].getMode() != SimulationMode.DEFAULT) {
+				return null;
+			}
+
+			LIFSpikeGenerator generator = (LIFSpikeGenerator) generators[i];
+			if (generator.getExact()) {
+				return null;
+			}
+			maxTimeStep = Math.min(maxTimeStep, generator.getMaxTimeStep());
+			tauRC[i] = generator.getTauRC();
+			tauRef[i] = generator.getTauRef();
+			initialVoltage[i] = generator.getInitialVoltage();
+		}
+
+		return new LIFPopulationSpikeGenerator(maxTimeStep, tauRC, tauRef, initialVoltage);
+	}
+
+	/**
+	 * @see ca.nengo.model.neuron.PopulationSpikeGenerator#getSize()
+	 */
+	public int getSize() {
+		return myTauRef.length;
+	}
+
+	/**
+	 * @see ca.nengo.model.neuron.PopulationSpikeGenerator#getStateNames()
+	 */
+	public String[] getStateNames() {
+		return new String[]{V, T};
+	}
+
+	/**
+	 * @see ca.nengo.model.neuron.PopulationSpikeGenerator#makeState()
+	 */
+	public double[][] makeState() {
+		double[][] result = new double[2][getSize()];
+		reset(result);
+		return result;
+	}
+
+	/**
+	 * @see ca.nengo.model.neuron.PopulationSpikeGenerator#reset(double[][])
+	 */
+	public void reset(double[][] state) {
+		for (int i = 0; i < myInitialVoltage.length; i++) {
+			state[0][i] = myInitialVoltage[i];
+			state[1][i] = myTauRef[i];
+		}
+	}
+
+	/**
+	 * @see ca.nengo.model.neuron.PopulationSpikeGenerator#run(float[], float, float, double[][], float[])
+	 */
+	public void run(float[] current, float startTime, float endTime, double[][] state, float[] spikes) {
+		float len = endTime - startTime;
+		int steps = (int) Math.ceil(len / myMaxTimeStep);
+		float dt = len / steps;
+		float spikeValue = 1f / len;
+
+		double[] voltage = state[0];
+		double[] timeSinceSpike = state[1];
+		float[] inverseTauRC = myInverseTauRC;
+		float[] tauRef = myTauRef;
+		int n = voltage.length;
+
+		for (int i = 0; i < n; i++) {
+			spikes[i] = 0;
+		}
+
+		for (int k = 0; k < steps; k++) {
+			for (int i = 0; i < n; i++) {
+				float v = (float) voltage[i];
+				float dV = inverseTauRC[i] * (current[i] - v);
+				float t = (float) timeSinceSpike[i] + dt;
+				if (t < tauRef[i]) {
+					dV = 0;
+				} else if (t < tauRef[i] + dt) {
+					dV *= (t - tauRef[i]) / dt;
+				}
+				float next = Math.max(0, v + dt*dV);
+
+				if (next >= Vth) {
+					float dSpike = (Vth - v) * dt / (next - v);
+					t = dt - dSpike;
+					next = 0;
+					spikes[i] = spikeValue;
+				}
+				voltage[i] = next;
+				timeSinceSpike[i] = t;
+			}
+		}
+	}
+
+}
@@ -32,6 +32,7 @@ import java.util.Properties;
 import ca.nengo.math.PDF;
 import ca.nengo.math.impl.IndicatorPDF;
 import ca.nengo.model.InstantaneousOutput;
+import ca.nengo.model.ProbeAware;
 import ca.nengo.model.Probeable;
 import ca.nengo.model.SimulationException;
 import ca.nengo.model.SimulationMode;
@@ -39,9 +40,12 @@ import ca.nengo.model.Units;
 import ca.nengo.model.impl.PreciseSpikeOutputImpl;
 import ca.nengo.model.impl.RealOutputImpl;
 import ca.nengo.model.impl.SpikeOutputImpl;
+import ca.nengo.model.neuron.ConstantRateSpikeGenerator;
 import ca.nengo.model.neuron.SpikeGenerator;
+import ca.nengo.util.Environment;
 import ca.nengo.util.TimeSeries;
 import ca.nengo.util.TimeSeries1D;
+import ca.nengo.util.impl.ProbedStates;
 import ca.nengo.util.impl.TimeSeries1DImpl;
 
 /**
@@ -53,9 +57,17 @@ import ca.nengo.util.impl.TimeSeries1DImpl;
  * of the model, although transformations may be needed if it is desired to
  * convert to more realistic parameter ranges. </p>
  *
+ * <p>In spiking modes the model is integrated with Euler steps of at most maxTimeStep
+ * by default. Alternatively (see setExact(...)) it can be advanced with the exact
+ * solution of the membrane equation for input that is constant between the given
+ * time points, V(t) = I + (V(0) - I)exp(-t/tauRC), with spike times found where this
+ * solution crosses threshold. This takes one exponential per run(...) (which is reused
+ * while the step length stays the same) plus one logarithm per spike, and records a single
+ * point of voltage history per run(...).</p>
+ *
  * @author Bryan Tripp
  */
-public class LIFSpikeGenerator implements SpikeGenerator, Probeable {
+public class LIFSpikeGenerator implements ConstantRateSpikeGenerator, ProbeAware {
 
 	private static final long serialVersionUID = 1L;
 
@@ -73,12 +85,22 @@ public class LIFSpikeGenerator implements SpikeGenerator, Probeable {
 
 	private float myPreviousVoltage; //for linear interpolation of when spike occurs
 
+	private boolean myExact;
+	private transient float myDecayInterval = -1; //interval for which myDecay was last calculated
+	private transient float myDecay; //exp(-myDecayInterval/myTauRC)
+
 	private float[] myTime;
 	private float[] myVoltageHistory;
+	private ProbedStates myProbedStates; //null until a state is probed
 
 	private SimulationMode myMode;
 	private SimulationMode[] mySupportedModes;
 
+	//outputs recycled in zero-allocation mode (two of each so that the last output is valid during the next step)
+	private transient SpikeOutputImpl[] mySpikeOutputs;
+	private transient RealOutputImpl[] myRateOutputs;
+	private transient int myOutputIndex;
+
 	private static final float[] ourNullTime = new float[0];
 	private static final float[] ourNullVoltageHistory = new float[0];
 	private static final float ourMaxTimeStepCorrection = 1.01f;
@@ -147,6 +169,7 @@ public class LIFSpikeGenerator implements SpikeGenerator, Probeable {
 	 */
 	public void setTauRC(float tauRC) {
 		myTauRC = tauRC;
+		myDecayInterval = -1;
 	}
 
 	/**
@@ -163,6 +186,30 @@ public class LIFSpikeGenerator implements SpikeGenerator, Probeable {
 		myTauRef = tauRef;
 	}
 
+	/**
+	 * @return Initial condition on V
+	 */
+	public float getInitialVoltage() {
+		return myInitialVoltage;
+	}
+
+	/**
+	 * @return True if spiking modes use the exact solution of the membrane equation rather than
+	 * 		Euler integration
+	 */
+	public boolean getExact() {
+		return myExact;
+	}
+
+	/**
+	 * @param exact True if spiking modes should use the exact solution of the membrane equation
+	 * 		(for input that is constant between time points) rather than Euler integration with
+	 * 		steps of at most maxTimeStep
+	 */
+	public void setExact(boolean exact) {
+		myExact = exact;
+	}
+
 	public void reset(boolean randomize) {
 		myTimeSinceLastSpike = myTauRef;
 		myVoltage = myInitialVoltage;
@@ -178,17 +225,54 @@ public class LIFSpikeGenerator implements SpikeGenerator, Probeable {
 		InstantaneousOutput result = null;
 
 		if (myMode.equals(SimulationMode.CONSTANT_RATE) || myMode.equals(SimulationMode.RATE)) {
-			result = new RealOutputImpl(new float[]{doConstantRateRun(time[0], current[0])}, Units.SPIKES_PER_S, time[time.length-1]);
+			float rate = doConstantRateRun(time[0], current[0]);
+			if (Environment.isZeroAllocation()) {
+				RealOutputImpl output = nextRateOutput();
+				output.getValues()[0] = rate;
+				output.setTime(time[time.length-1]);
+				result = output;
+			} else {
+				result = new RealOutputImpl(new float[]{rate}, Units.SPIKES_PER_S, time[time.length-1]);
+			}
 		} else if (myMode.equals(SimulationMode.PRECISE)) {
-			result = new PreciseSpikeOutputImpl(new float[]{doPreciseSpikingRun(time, current)}, Units.SPIKES, time[time.length-1]);
+			float spikeTime = myExact ? doExactRun(time, current) : doPreciseSpikingRun(time, current);
+			result = new PreciseSpikeOutputImpl(new float[]{spikeTime}, Units.SPIKES, time[time.length-1]);
 		} else {
 			//result = new SpikeOutputImpl(new boolean[]{doSpikingRun(time, current)}, Units.SPIKES, time[time.length-1]);
-			result = new SpikeOutputImpl(new boolean[]{doPreciseSpikingRun(time, current)>=0}, Units.SPIKES, time[time.length-1]);
+			boolean spike = (myExact ? doExactRun(time, current) : doPreciseSpikingRun(time, current)) >= 0;
+			if (Environment.isZeroAllocation()) {
+				SpikeOutputImpl output = nextSpikeOutput();
+				output.getValues()[0] = spike;
+				output.setTime(time[time.length-1]);
+				result = output;
+			} else {
+				result = new SpikeOutputImpl(new boolean[]{spike}, Units.SPIKES, time[time.length-1]);
+			}
 		}
 
 		return result;
 	}
 
+	private SpikeOutputImpl nextSpikeOutput() {
+		if (mySpikeOutputs == null) {
+			mySpikeOutputs = new SpikeOutputImpl[]{
+					new SpikeOutputImpl(new boolean[1], Units.SPIKES, 0),
+					new SpikeOutputImpl(new boolean[1], Units.SPIKES, 0)};
+		}
+		myOutputIndex = 1 - myOutputIndex;
+		return mySpikeOutputs[myOutputIndex];
+	}
+
+	private RealOutputImpl nextRateOutput() {
+		if (myRateOutputs == null) {
+			myRateOutputs = new RealOutputImpl[]{
+					new RealOutputImpl(new float[1], Units.SPIKES_PER_S, 0),
+					new RealOutputImpl(new float[1], Units.SPIKES_PER_S, 0)};
+		}
+		myOutputIndex = 1 - myOutputIndex;
+		return myRateOutputs[myOutputIndex];
+	}
+
 //	private boolean doSpikingRun(float[] time, float[] current) {
 //		if (time.length < 2) {
 //			throw new IllegalArgumentException("Arg time must have length at least 2");
@@ -248,17 +332,23 @@ public class LIFSpikeGenerator implements SpikeGenerator, Probeable {
 		int steps = (int) Math.ceil(len / myMaxTimeStep);
 		float dt = len / steps;
 
-		myTime = new float[steps];
-		myVoltageHistory = new float[steps];
+		boolean record = ProbedStates.isRecording(myProbedStates, "V");
+		if (!record) {
+			myTime = ourNullTime;
+			myVoltageHistory = ourNullVoltageHistory;
+		} else if (!Environment.isZeroAllocation() || myTime.length != steps) {
+			myTime = new float[steps];
+			myVoltageHistory = new float[steps];
+		}
 //		mySpikeTimes = new ArrayList(10);
 
 		int inputIndex = 0;
 
 		float spikeTimeFromLastTimeStep=-1;
 		for (int i = 0; i < steps; i++) {
-			myTime[i] = time[0] + i*dt;
+			float stepTime = time[0] + i*dt;
 
-			while (time[inputIndex+1] <= myTime[i]) {
+			while (time[inputIndex+1] <= stepTime) {
 				inputIndex++;
 			}
 			float I = current[inputIndex];
@@ -272,7 +362,10 @@ public class LIFSpikeGenerator implements SpikeGenerator, Probeable {
 			}
 			myPreviousVoltage = myVoltage;
 			myVoltage = Math.max(0, myVoltage + dt*dV);
-			myVoltageHistory[i] = myVoltage;
+			if (record) {
+				myTime[i] = stepTime;
+				myVoltageHistory[i] = myVoltage;
+			}
 
 			if (myVoltage >= Vth) {
 				float dSpike=(Vth-myPreviousVoltage)*dt/(myVoltage-myPreviousVoltage);
@@ -293,6 +386,76 @@ public class LIFSpikeGenerator implements SpikeGenerator, Probeable {
 		return myVoltage;
 	}
 
+	//advances with the exact solution for piecewise-constant current; returns time of last spike after time[0] or -1
+	private float doExactRun(float[] time, float[] current) {
+		if (time.length < 2) {
+			throw new IllegalArgumentException("Arg time must have length at least 2");
+		}
+		if (time.length != current.length) {
+			throw new IllegalArgumentException("Args time and current must have equal length");
+		}
+
+		float spikeTime = -1;
+		for (int j = 0; j < time.length - 1; j++) {
+			float I = current[j] * R;
+			float offset = time[j] - time[0];
+			float remaining = time[j+1] - time[j];
+
+			while (remaining > 0) {
+				float refractory = myTauRef - myTimeSinceLastSpike;
+				if (refractory >= remaining) {
+					myTimeSinceLastSpike += remaining;
+					break;
+				} else if (refractory > 0) {
+					myTimeSinceLastSpike = myTauRef;
+					offset += refractory;
+					remaining -= refractory;
+				}
+
+				if (I > Vth) {
+					float crossing = myVoltage >= Vth ? 0 : myTauRC * (float) Math.log((I - myVoltage) / (I - Vth));
+					if (crossing <= remaining) {
+						spikeTime = offset + crossing;
+						myPreviousVoltage = myVoltage;
+						myVoltage = 0;
+						myTimeSinceLastSpike = 0;
+						offset += crossing;
+						remaining -= crossing;
+						continue;
+					}
+				}
+
+				myPreviousVoltage = myVoltage;
+				myVoltage = Math.max(0, I + (myVoltage - I) * getDecay(remaining));
+				myTimeSinceLastSpike += remaining;
+				remaining = 0;
+			}
+		}
+
+		if (!ProbedStates.isRecording(myProbedStates, "V")) {
+			myTime = ourNullTime;
+			myVoltageHistory = ourNullVoltageHistory;
+		} else {
+			if (!Environment.isZeroAllocation() || myTime.length != 1) {
+				myTime = new float[1];
+				myVoltageHistory = new float[1];
+			}
+			myTime[0] = time[0];
+			myVoltageHistory[0] = myVoltage;
+		}
+
+		return spikeTime;
+	}
+
+	//membrane decay factor over the given interval (usually the same from one step to the next)
+	private float getDecay(float interval) {
+		if (interval != myDecayInterval) {
+			myDecay = (float) Math.exp(-interval / myTauRC);
+			myDecayInterval = interval;
+		}
+		return myDecay;
+	}
+
 	//Note that no voltage history is available after a constant-rate run.
 	private float doConstantRateRun(float time, float current) {
 		myTime = ourNullTime;
@@ -310,6 +473,15 @@ public class LIFSpikeGenerator implements SpikeGenerator, Probeable {
 		return current > 1 ? 1f / ( myTauRef - myTauRC * ((float) Math.log(1 - 1/current)) ) : 0;
 	}
 
+	/**
+	 * @see ca.nengo.model.neuron.ConstantRateSpikeGenerator#getConstantRates(float[], float[])
+	 */
+	public void getConstantRates(float[] currents, float[] rates) {
+		for (int i = 0; i < currents.length; i++) {
+			rates[i] = constantRateRun(currents[i]);
+		}
+	}
+
 	/**
 	 * @see Probeable#getHistory(String)
 	 */
@@ -334,6 +506,25 @@ public class LIFSpikeGenerator implements SpikeGenerator, Probeable {
 		return p;
 	}
 
+	/**
+	 * @see ca.nengo.model.ProbeAware#probeAdded(java.lang.String)
+	 */
+	public void probeAdded(String stateName) {
+		if (myProbedStates == null) {
+			myProbedStates = new ProbedStates();
+		}
+		myProbedStates.add(stateName);
+	}
+
+	/**
+	 * @see ca.nengo.model.ProbeAware#probeRemoved(java.lang.String)
+	 */
+	public void probeRemoved(String stateName) {
+		if (myProbedStates != null) {
+			myProbedStates.remove(stateName);
+		}
+	}
+
 	/**
 	 * @see ca.nengo.model.SimulationMode.ModeConfigurable#getMode()
 	 */
@@ -355,6 +546,9 @@ public class LIFSpikeGenerator implements SpikeGenerator, Probeable {
 		System.arraycopy(mySupportedModes, 0, result.mySupportedModes, 0, mySupportedModes.length);
 		result.myTime = myTime.clone();
 		result.myVoltageHistory = myVoltageHistory.clone();
+		result.mySpikeOutputs = null;
+		result.myRateOutputs = null;
+		result.myProbedStates = null;
 		return result;
 	}
 
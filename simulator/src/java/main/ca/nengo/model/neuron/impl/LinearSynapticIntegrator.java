@@ -30,7 +30,6 @@ a recipient may use your version of this file under either the MPL or the GPL Li
  */
 package ca.nengo.model.neuron.impl;
 
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -42,6 +41,7 @@ import ca.nengo.model.Units;
 import ca.nengo.model.impl.LinearExponentialTermination;
 import ca.nengo.model.neuron.ExpandableSynapticIntegrator;
 import ca.nengo.model.neuron.SynapticIntegrator;
+import ca.nengo.util.Environment;
 import ca.nengo.util.TimeSeries1D;
 import ca.nengo.util.impl.TimeSeries1DImpl;
 
@@ -70,6 +70,8 @@ public class LinearSynapticIntegrator implements ExpandableSynapticIntegrator {
 	private float myMaxTimeStep;
 	private Units myCurrentUnits;
 	private Map<String, LinearExponentialTermination> myTerminations;
+	private transient LinearExponentialTermination[] myTerminationArray; //null when terminations change
+	private transient TimeSeries1DImpl myResult; //recycled in zero-allocation mode
 
 	/**
 	 * @param maxTimeStep Maximum length of integration time step. Shorter steps may be used to better match
@@ -97,38 +99,52 @@ public class LinearSynapticIntegrator implements ExpandableSynapticIntegrator {
 		int steps = (int) Math.ceil(len / myMaxTimeStep);
 		float dt = len / steps;
 
-		float[] times = new float[steps+1];
-		float[] currents = new float[steps+1];
+		boolean recycle = Environment.isZeroAllocation() && myResult != null
+			&& myResult.getTimes().length == steps+1 && myResult.getUnits1D() == myCurrentUnits;
+		float[] times = recycle ? myResult.getTimes() : new float[steps+1];
+		float[] currents = recycle ? myResult.getValues1D() : new float[steps+1];
 
 		times[0] = startTime;
 		if (myTerminations.size() == 0) {
+			currents[0] = 0;
 			for (int i = 1; i <= steps; i++) {
 				times[i] = startTime + i * dt;
+				currents[i] = 0;
 			}
 		} else {
 			//Note: we leave out decay and real input integration at start time, to make total
 			//decay and integration times equal to simulation time (previously left integration out of
 			//end step, but some spike generators need accurate value at end time)
 
+			LinearExponentialTermination[] terminations = getTerminationArray();
+
 			times[0] = startTime;
-			currents[0] = update(myTerminations.values(), true, 0, 0);
+			currents[0] = update(terminations, true, 0, 0);
 
 			for (int i = 1; i <= steps; i++) {
 				times[i] = startTime + i * dt;
-				currents[i] = update(myTerminations.values(), false, dt, dt);
+				currents[i] = update(terminations, false, dt, dt);
 			}
 		}
 
-		return new TimeSeries1DImpl(times, currents, myCurrentUnits);
+		if (!recycle) {
+			myResult = new TimeSeries1DImpl(times, currents, myCurrentUnits);
+		}
+		return myResult;
+	}
+
+	private LinearExponentialTermination[] getTerminationArray() {
+		if (myTerminationArray == null) {
+			myTerminationArray = myTerminations.values().toArray(new LinearExponentialTermination[0]);
+		}
+		return myTerminationArray;
 	}
 
 	//update current in all Terminations
-	private static float update(Collection<LinearExponentialTermination> terminations, boolean spikes, float intTime, float decayTime) {
+	private static float update(LinearExponentialTermination[] terminations, boolean spikes, float intTime, float decayTime) {
 		float result = 0f;
 
-		Iterator<LinearExponentialTermination> it = terminations.iterator();
-		while (it.hasNext()) {
-			LinearExponentialTermination t = it.next();
+		for (LinearExponentialTermination t : terminations) {
 			float current = t.updateCurrent(spikes, intTime, decayTime);
 			if (!t.getModulatory()) {
                 result += current;
@@ -194,6 +210,7 @@ public class LinearSynapticIntegrator implements ExpandableSynapticIntegrator {
 		LinearExponentialTermination result = new LinearExponentialTermination(myNode, name, weights, tauPSC);
 		result.setModulatory(modulatory);
 		myTerminations.put(name, result);
+		myTerminationArray = null;
 
 		return result;
 	}
@@ -202,6 +219,7 @@ public class LinearSynapticIntegrator implements ExpandableSynapticIntegrator {
 	 * @see ca.nengo.model.neuron.ExpandableSynapticIntegrator#removeTermination(java.lang.String)
 	 */
 	public Termination removeTermination(String name) throws StructuralException {
+		myTerminationArray = null;
 		return myTerminations.remove(name);
 	}
 
@@ -231,6 +249,8 @@ public class LinearSynapticIntegrator implements ExpandableSynapticIntegrator {
 		for (LinearExponentialTermination oldTerm : myTerminations.values()) {
 			result.myTerminations.put(oldTerm.getName(), oldTerm.clone(result.myNode));
 		}
+		result.myTerminationArray = null;
+		result.myResult = null;
 
 		return result;
 	}
@@ -34,6 +34,7 @@ import ca.nengo.model.SimulationMode;
 import ca.nengo.model.Units;
 import ca.nengo.model.impl.RealOutputImpl;
 import ca.nengo.model.impl.SpikeOutputImpl;
+import ca.nengo.model.neuron.ConstantRateSpikeGenerator;
 import ca.nengo.model.neuron.SpikeGenerator;
 import ca.nengo.util.MU;
 
@@ -49,7 +50,7 @@ import ca.nengo.util.MU;
  * @author Bryan Tripp
  */
 
-public class RateFunctionSpikeGenerator implements SpikeGenerator {
+public class RateFunctionSpikeGenerator implements ConstantRateSpikeGenerator {
 
     private static final long serialVersionUID = 1L;
 
@@ -145,6 +146,17 @@ public class RateFunctionSpikeGenerator implements SpikeGenerator {
         return result;
     }
 
+    /**
+     * @see ca.nengo.model.neuron.ConstantRateSpikeGenerator#getConstantRates(float[], float[])
+     */
+    public void getConstantRates(float[] currents, float[] rates) {
+        float[] current = new float[1];
+        for (int i = 0; i < currents.length; i++) {
+            current[0] = currents[i];
+            rates[i] = myRateFunction.map(current);
+        }
+    }
+
     /**
      * @see ca.nengo.model.SimulationMode.ModeConfigurable#getMode()
      */
@@ -36,6 +36,7 @@ import ca.nengo.model.InstantaneousOutput;
 import ca.nengo.model.Node;
 import ca.nengo.model.Noise;
 import ca.nengo.model.Origin;
+import ca.nengo.model.ProbeAware;
 import ca.nengo.model.Probeable;
 import ca.nengo.model.RealOutput;
 import ca.nengo.model.SimulationException;
@@ -46,14 +47,17 @@ import ca.nengo.model.Termination;
 import ca.nengo.model.Units;
 import ca.nengo.model.impl.BasicOrigin;
 import ca.nengo.model.nef.NEFNode;
+import ca.nengo.model.neuron.ConstantRateSpikeGenerator;
 import ca.nengo.model.neuron.Neuron;
 import ca.nengo.model.neuron.SpikeGenerator;
 import ca.nengo.model.neuron.SynapticIntegrator;
+import ca.nengo.util.Environment;
 import ca.nengo.util.ScriptGenException;
 import ca.nengo.util.TimeSeries;
 import ca.nengo.util.TimeSeries1D;
 import ca.nengo.util.VisiblyMutable;
 import ca.nengo.util.VisiblyMutableUtils;
+import ca.nengo.util.impl.ProbedStates;
 import ca.nengo.util.impl.TimeSeries1DImpl;
 
 /**
@@ -61,7 +65,7 @@ import ca.nengo.util.impl.TimeSeries1DImpl;
  *
  * @author Bryan Tripp
  */
-public class SpikingNeuron implements Neuron, Probeable, NEFNode {
+public class SpikingNeuron implements Neuron, ProbeAware, NEFNode {
 
 	private static final long serialVersionUID = 1L;
 
@@ -76,6 +80,10 @@ public class SpikingNeuron implements Neuron, Probeable, NEFNode {
 	private BasicOrigin myCurrentOrigin;
 	private float myUnscaledCurrent;
 	private TimeSeries1D myCurrent;
+	private transient float[] myTimes; //of the last run
+	private transient float[] myGeneratorInput; //reused when "I" isn't recorded
+	private transient float[] myUnscaledCurrentBuffer;
+	private ProbedStates myProbedStates; //null until a state is probed
 	private String myName;
 	private float myScale;
 	private float myBias;
@@ -125,8 +133,29 @@ public class SpikingNeuron implements Neuron, Probeable, NEFNode {
 		TimeSeries1D current = myIntegrator.run(startTime, endTime);
 
 		float[] integratorOutput = current.getValues1D();
-		float[] generatorInput = new float[integratorOutput.length];
-		
+
+		myTimes = current.getTimes();
+
+		boolean record = ProbedStates.isRecording(myProbedStates, "I");
+		boolean recycle;
+		float[] generatorInput;
+		if (record) {
+			//in zero-allocation mode the integrator recycles its times, so we can recycle our series if it uses them
+			recycle = Environment.isZeroAllocation() && myCurrent.getTimes() == myTimes
+				&& myCurrent.getValues1D().length == integratorOutput.length;
+			generatorInput = recycle ? myCurrent.getValues1D() : new float[integratorOutput.length];
+		} else {
+			//the generator doesn't keep its input, so without a history a single buffer will do
+			if (myGeneratorInput == null || myGeneratorInput.length != integratorOutput.length) {
+				myGeneratorInput = new float[integratorOutput.length];
+			}
+			generatorInput = myGeneratorInput;
+			recycle = true;
+			if (myCurrent.getTimes().length > 0) {
+				myCurrent = new TimeSeries1DImpl(new float[0], new float[0], Units.UNK);
+			}
+		}
+
 		for (int i = 0; i < integratorOutput.length; i++) {
 			myUnscaledCurrent = (myRadialInput + integratorOutput[i]);
 			generatorInput[i] = myBias + myScale * myUnscaledCurrent;
@@ -135,10 +164,21 @@ public class SpikingNeuron implements Neuron, Probeable, NEFNode {
 			}
 		}
 
-		myCurrent = new TimeSeries1DImpl(current.getTimes(), generatorInput, Units.UNK);
+		if (!recycle) {
+			myCurrent = new TimeSeries1DImpl(myTimes, generatorInput, Units.UNK);
+		}
+
+		mySpikeOrigin.run(myTimes, generatorInput);
 
-		mySpikeOrigin.run(myCurrent.getTimes(), generatorInput);
-		myCurrentOrigin.setValues(startTime, endTime, new float[]{myUnscaledCurrent});
+		if (Environment.isZeroAllocation()) { //BasicOrigin copies values in this mode
+			if (myUnscaledCurrentBuffer == null) {
+				myUnscaledCurrentBuffer = new float[1];
+			}
+			myUnscaledCurrentBuffer[0] = myUnscaledCurrent;
+			myCurrentOrigin.setValues(startTime, endTime, myUnscaledCurrentBuffer);
+		} else {
+			myCurrentOrigin.setValues(startTime, endTime, new float[]{myUnscaledCurrent});
+		}
 	}
 
 	/**
@@ -194,7 +234,8 @@ public class SpikingNeuron implements Neuron, Probeable, NEFNode {
 
 	/**
 	 * Available states include "I" (net current into SpikeGenerator) and the states of the
-	 * SpikeGenerator.
+	 * SpikeGenerator. If Environment.isRecordingOnlyProbed(), the history of "I" is empty unless it
+	 * is probed.
 	 *
 	 * @see ca.nengo.model.Probeable#getHistory(java.lang.String)
 	 */
@@ -204,7 +245,7 @@ public class SpikingNeuron implements Neuron, Probeable, NEFNode {
 			result = myCurrent;
 		} else if (stateName.equals("rate")) {
 			InstantaneousOutput output = mySpikeOrigin.getValues();
-			float[] times = myCurrent.getTimes();
+			float[] times = getTimes();
 			float rate = 0;
 			if (output instanceof RealOutput) {
 				rate = ((RealOutput) output).getValues()[0];
@@ -213,7 +254,7 @@ public class SpikingNeuron implements Neuron, Probeable, NEFNode {
 			}
 			result = new TimeSeries1DImpl(new float[]{times[times.length-1]}, new float[]{rate}, Units.SPIKES_PER_S);
 		} else if (stateName.equals(CURRENT)) {
-			float[] times = myCurrent.getTimes();
+			float[] times = getTimes();
 			result = new TimeSeries1DImpl(new float[]{times[times.length-1]}, new float[]{myUnscaledCurrent}, Units.ACU);
 		} else if (myGenerator instanceof Probeable) {
 			result = ((Probeable) myGenerator).getHistory(stateName);
@@ -233,6 +274,50 @@ public class SpikingNeuron implements Neuron, Probeable, NEFNode {
 		return p;
 	}
 
+	/**
+	 * Also forwards to the SpikeGenerator, if it is ProbeAware and the state is one of its own.
+	 *
+	 * @see ca.nengo.model.ProbeAware#probeAdded(java.lang.String)
+	 */
+	public void probeAdded(String stateName) {
+		if (myProbedStates == null) {
+			myProbedStates = new ProbedStates();
+		}
+		myProbedStates.add(stateName);
+		if (isGeneratorState(stateName)) {
+			((ProbeAware) myGenerator).probeAdded(stateName);
+		}
+	}
+
+	/**
+	 * @see ca.nengo.model.ProbeAware#probeRemoved(java.lang.String)
+	 */
+	public void probeRemoved(String stateName) {
+		if (myProbedStates != null) {
+			myProbedStates.remove(stateName);
+		}
+		if (isGeneratorState(stateName)) {
+			((ProbeAware) myGenerator).probeRemoved(stateName);
+		}
+	}
+
+	/**
+	 * @return True if a Probe is connected to any state of this neuron (or of its SpikeGenerator)
+	 */
+	public boolean isProbed() {
+		return myProbedStates != null && myProbedStates.isAnyProbed();
+	}
+
+	//times of the last run (or of the recorded current, if deserialized since)
+	private float[] getTimes() {
+		return (myTimes != null) ? myTimes : myCurrent.getTimes();
+	}
+
+	private boolean isGeneratorState(String stateName) {
+		return myGenerator instanceof ProbeAware && !stateName.equals("I") && !stateName.equals("rate")
+			&& !stateName.equals(CURRENT);
+	}
+
 	/**
 	 * @see ca.nengo.model.Node#getName()
 	 */
@@ -329,6 +414,30 @@ public class SpikingNeuron implements Neuron, Probeable, NEFNode {
 		myRadialInput = value;
 	}
 
+	/**
+	 * Finds the output of this neuron in CONSTANT_RATE mode at many radial inputs at once, from the
+	 * generator's closed-form rates rather than by running the neuron at each input. The state of
+	 * the neuron isn't changed.
+	 *
+	 * @param radialInputs Radial inputs (see setRadialInput(float)) at which to find rates
+	 * @param rates Array into which the rate at each radial input is written (same length)
+	 * @return False if rates can't be found this way (if the generator isn't a
+	 * 		ConstantRateSpikeGenerator, or there is noise or synaptic input), in which case the
+	 * 		neuron has to be run at each input instead
+	 */
+	public boolean getConstantRates(float[] radialInputs, float[] rates) {
+		if ( !(myGenerator instanceof ConstantRateSpikeGenerator) || myNoise != null
+				|| myIntegrator.getTerminations().length > 0) {
+			return false;
+		}
+
+		for (int i = 0; i < radialInputs.length; i++) {
+			rates[i] = myBias + myScale * radialInputs[i];
+		}
+		((ConstantRateSpikeGenerator) myGenerator).getConstantRates(rates, rates);
+		return true;
+	}
+
 	/**
 	 * @see ca.nengo.model.Node#getDocumentation()
 	 */
@@ -372,6 +481,9 @@ public class SpikingNeuron implements Neuron, Probeable, NEFNode {
 	public SpikingNeuron clone() throws CloneNotSupportedException {
 		SpikingNeuron result = (SpikingNeuron) super.clone();
 		result.myCurrent = (TimeSeries1D) myCurrent.clone();
+		result.myGeneratorInput = null;
+		result.myUnscaledCurrentBuffer = null;
+		result.myProbedStates = null;
 
 		result.myCurrentOrigin = (BasicOrigin) myCurrentOrigin.clone();
 
@@ -136,14 +136,16 @@ public class PlasticEnsembleImpl extends EnsembleImpl implements TaskSpawner {
 
         if ((myPlasticityInterval <= 0 && myLearning) ||
                 (myLearning && endTime >= myLastPlasticityTime + myPlasticityInterval)) {
-            for (LearningTask task : myTasks) {
-                task.reset(false);
+            for (int i = 0; i < myTasks.size(); i++) { //indexed to avoid creating an iterator at each step
+                myTasks.get(i).reset(false);
             }
         }
     }
 
     public void setStates(float endTime) throws SimulationException {
-        if (myLastPlasticityTime < endTime) {
+        if (myLastPlasticityTime < endTime && myPlasticEnsembleTerminations.isEmpty()) { //avoid creating an iterator
+            myLastPlasticityTime = endTime;
+        } else if (myLastPlasticityTime < endTime) {
             for (PlasticEnsembleTermination pet : myPlasticEnsembleTerminations.values()) {
                 try {
                     Origin origin = this.getOrigin(pet.getOriginName());
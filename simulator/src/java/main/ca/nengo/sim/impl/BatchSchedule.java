@@ -0,0 +1,334 @@
+package ca.nengo.sim.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import ca.nengo.model.InstantaneousOutput;
+import ca.nengo.model.Node;
+import ca.nengo.model.Projection;
+import ca.nengo.model.RealOutput;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.Termination;
+import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.impl.RealOutputImpl;
+import ca.nengo.model.nef.impl.DecodedTermination;
+import ca.nengo.util.Probe;
+import ca.nengo.util.ThreadTask;
+import ca.nengo.util.impl.NodeThreadPool;
+
+/**
+ * Runs a network several steps at a time, trading a bounded lag on slow projections
+ * for fewer hand-offs between nodes.
+ *
+ * Nodes are grouped into clusters connected by fast projections. A projection is slow if
+ * it ends in a DecodedTermination with a time constant of at least a given minimum; all
+ * other projections are fast. Each cluster runs a whole batch of steps on its own
+ * (delivering its own projections, running its nodes, tasks and probes every step), and
+ * slow projections between clusters are delivered only once, at the start of each batch.
+ * A slow projection carries the mean of its origin's real-valued output over the previous
+ * batch (so that, for example, decoded spikes aren't lost between deliveries), so it lags
+ * by up to one batch, which is a small error when the batch is short compared to the
+ * terminations' time constants.
+ */
+public class BatchSchedule {
+
+	private Projection[] myBatchedProjections;
+	private Accumulator[] myAccumulators;
+	private Cluster[] myClusters;
+	private double[] myTimes;
+	private int mySteps;
+
+	/**
+	 * @param nodes Top-level nodes of the network
+	 * @param projections Top-level projections of the network
+	 * @param probes Probes on the network, each of which must target one of the nodes or a
+	 * 		neuron in one of the nodes
+	 * @param minTau Minimum time constant of a DecodedTermination for a projection into it
+	 * 		to be batched
+	 * @throws StructuralException if a probe or projection can't be attributed to a node
+	 */
+	public BatchSchedule(Node[] nodes, Projection[] projections, List<Probe> probes, float minTau)
+			throws StructuralException {
+
+		Map<Node, Integer> indices = new IdentityHashMap<Node, Integer>();
+		for (int i = 0; i < nodes.length; i++) {
+			indices.put(nodes[i], Integer.valueOf(i));
+		}
+
+		//union-find over nodes, joined by fast projections
+		int[] parents = new int[nodes.length];
+		for (int i = 0; i < parents.length; i++) {
+			parents[i] = i;
+		}
+		int[][] ends = new int[projections.length][];
+		for (int i = 0; i < projections.length; i++) {
+			ends[i] = new int[]{
+					getIndex(projections[i].getOrigin().getNode(), indices),
+					getIndex(projections[i].getTermination().getNode(), indices)};
+			if (!isSlow(projections[i], minTau)) {
+				parents[find(parents, ends[i][0])] = find(parents, ends[i][1]);
+			}
+		}
+
+		int[] clusterIndices = new int[nodes.length];
+		List<List<Node>> clusterNodes = new ArrayList<List<Node>>();
+		Map<Integer, Integer> roots = new HashMap<Integer, Integer>();
+		for (int i = 0; i < nodes.length; i++) {
+			Integer root = Integer.valueOf(find(parents, i));
+			Integer cluster = roots.get(root);
+			if (cluster == null) {
+				cluster = Integer.valueOf(clusterNodes.size());
+				roots.put(root, cluster);
+				clusterNodes.add(new ArrayList<Node>());
+			}
+			clusterIndices[i] = cluster.intValue();
+			clusterNodes.get(cluster.intValue()).add(nodes[i]);
+		}
+
+		int n = clusterNodes.size();
+		List<List<Projection>> clusterProjections = new ArrayList<List<Projection>>(n);
+		List<List<ThreadTask>> clusterTasks = new ArrayList<List<ThreadTask>>(n);
+		List<List<Probe>> clusterProbes = new ArrayList<List<Probe>>(n);
+		for (int i = 0; i < n; i++) {
+			clusterProjections.add(new ArrayList<Projection>());
+			clusterTasks.add(NodeThreadPool.collectTasks(clusterNodes.get(i).toArray(new Node[0])));
+			clusterProbes.add(new ArrayList<Probe>());
+		}
+
+		List<Projection> batched = new ArrayList<Projection>();
+		List<List<Accumulator>> clusterAccumulators = new ArrayList<List<Accumulator>>(n);
+		for (int i = 0; i < n; i++) {
+			clusterAccumulators.add(new ArrayList<Accumulator>());
+		}
+		for (int i = 0; i < projections.length; i++) {
+			int origin = clusterIndices[ends[i][0]];
+			if (origin == clusterIndices[ends[i][1]]) {
+				clusterProjections.get(origin).add(projections[i]);
+			} else {
+				batched.add(projections[i]);
+				clusterAccumulators.get(origin).add(new Accumulator(projections[i]));
+			}
+		}
+		myBatchedProjections = batched.toArray(new Projection[0]);
+		myAccumulators = new Accumulator[myBatchedProjections.length];
+		for (int i = 0, j = 0; i < n; i++) {
+			for (Accumulator accumulator : clusterAccumulators.get(i)) {
+				myAccumulators[j++] = accumulator;
+			}
+		}
+
+		Map<String, Node> names = new HashMap<String, Node>();
+		for (Node node : nodes) {
+			names.put(node.getName(), node);
+		}
+		for (Probe probe : probes) {
+			Object target = probe.isInEnsemble() ? names.get(probe.getEnsembleName()) : probe.getTarget();
+			Integer index = indices.get(target);
+			if (index == null) {
+				throw new StructuralException("Can't find the node of probe on " + probe.getStateName());
+			}
+			clusterProbes.get(clusterIndices[index.intValue()]).add(probe);
+		}
+
+		myClusters = new Cluster[n];
+		for (int i = 0; i < n; i++) {
+			myClusters[i] = new Cluster(clusterNodes.get(i).toArray(new Node[0]),
+					clusterProjections.get(i).toArray(new Projection[0]),
+					clusterTasks.get(i).toArray(new ThreadTask[0]),
+					clusterProbes.get(i).toArray(new Probe[0]),
+					clusterAccumulators.get(i).toArray(new Accumulator[0]));
+		}
+	}
+
+	/**
+	 * @param projection A projection
+	 * @param minTau Minimum time constant of a DecodedTermination for a projection into it
+	 * 		to be batched
+	 * @return True if the projection ends in a DecodedTermination with tau >= minTau
+	 */
+	public static boolean isSlow(Projection projection, float minTau) {
+		Termination termination = projection.getTermination();
+		if (termination instanceof NetworkImpl.TerminationWrapper) {
+			termination = ((NetworkImpl.TerminationWrapper) termination).getBaseTermination();
+		}
+		return termination instanceof DecodedTermination && termination.getTau() >= minTau;
+	}
+
+	/**
+	 * @return Number of groups of nodes that run independently within a batch
+	 */
+	public int getNumClusters() {
+		return myClusters.length;
+	}
+
+	/**
+	 * @return Projections that are delivered once per batch
+	 */
+	public Projection[] getBatchedProjections() {
+		return myBatchedProjections;
+	}
+
+	/**
+	 * Runs a batch of steps.
+	 *
+	 * @param times Step boundaries (step i runs from times[i] to times[i+1])
+	 * @param steps Number of steps in the batch
+	 * @param executor Runs the clusters concurrently (may be null, to run them in this thread)
+	 * @throws SimulationException if a node, projection or task can't be run
+	 */
+	public void run(double[] times, int steps, ExecutorService executor) throws SimulationException {
+		myTimes = times;
+		mySteps = steps;
+
+		for (Accumulator accumulator : myAccumulators) {
+			accumulator.deliver();
+		}
+
+		if (executor == null || myClusters.length == 1) {
+			for (Cluster cluster : myClusters) {
+				cluster.call();
+			}
+		} else {
+			try {
+				List<Future<Object>> results = executor.invokeAll(Arrays.asList(myClusters));
+				for (Future<Object> result : results) {
+					result.get();
+				}
+			} catch (InterruptedException e) {
+				throw new SimulationException(e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof SimulationException) {
+					throw (SimulationException) e.getCause();
+				}
+				throw new SimulationException(e.getCause());
+			}
+		}
+	}
+
+	private static int getIndex(Node node, Map<Node, Integer> indices) throws StructuralException {
+		Integer index = indices.get(node);
+		if (index == null) {
+			throw new StructuralException("Node " + (node == null ? null : node.getName()) + " is not in the network");
+		}
+		return index.intValue();
+	}
+
+	private static int find(int[] parents, int i) {
+		while (parents[i] != i) {
+			parents[i] = parents[parents[i]];
+			i = parents[i];
+		}
+		return i;
+	}
+
+	/**
+	 * Nodes connected by fast projections, with their projections, tasks and probes.
+	 */
+	private class Cluster implements Callable<Object> {
+
+		private Node[] myNodes;
+		private Projection[] myProjections;
+		private ThreadTask[] myTasks;
+		private Probe[] myProbes;
+		private Accumulator[] myAccumulators;
+
+		public Cluster(Node[] nodes, Projection[] projections, ThreadTask[] tasks, Probe[] probes,
+				Accumulator[] accumulators) {
+			myNodes = nodes;
+			myProjections = projections;
+			myTasks = tasks;
+			myProbes = probes;
+			myAccumulators = accumulators;
+		}
+
+		public Object call() throws SimulationException {
+			for (int step = 0; step < mySteps; step++) {
+				float startTime = (float) myTimes[step];
+				float endTime = (float) myTimes[step+1];
+
+				for (Projection projection : myProjections) {
+					InstantaneousOutput values = projection.getOrigin().getValues();
+					projection.getTermination().setValues(values);
+				}
+
+				for (Node node : myNodes) {
+					if (node instanceof NetworkImpl) {
+						((NetworkImpl) node).run(startTime, endTime, false);
+					} else {
+						node.run(startTime, endTime);
+					}
+				}
+
+				for (Accumulator accumulator : myAccumulators) {
+					accumulator.add();
+				}
+
+				for (ThreadTask task : myTasks) {
+					task.run(startTime, endTime);
+				}
+
+				for (Probe probe : myProbes) {
+					probe.collect(endTime);
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Sums the real-valued output of a batched projection's origin over a batch.
+	 */
+	private static class Accumulator {
+
+		private Projection myProjection;
+		private float[] mySum;
+		private int myCount;
+		private RealOutput myLast;
+
+		public Accumulator(Projection projection) {
+			myProjection = projection;
+		}
+
+		//called by the origin's cluster after each step
+		public void add() throws SimulationException {
+			InstantaneousOutput values = myProjection.getOrigin().getValues();
+			if (values instanceof RealOutput) {
+				float[] v = ((RealOutput) values).getValues();
+				if (mySum == null || mySum.length != v.length) {
+					mySum = new float[v.length];
+					myCount = 0;
+				}
+				for (int i = 0; i < v.length; i++) {
+					mySum[i] += v[i];
+				}
+				myCount++;
+				myLast = (RealOutput) values;
+			}
+		}
+
+		//called between batches; delivers the mean output since the last delivery
+		public void deliver() throws SimulationException {
+			if (myCount == 0) {
+				InstantaneousOutput values = myProjection.getOrigin().getValues();
+				myProjection.getTermination().setValues(values);
+			} else {
+				float[] mean = new float[mySum.length];
+				for (int i = 0; i < mean.length; i++) {
+					mean[i] = mySum[i] / myCount;
+					mySum[i] = 0;
+				}
+				myCount = 0;
+				myProjection.getTermination().setValues(new RealOutputImpl(mean, myLast.getUnits(), myLast.getTime()));
+			}
+		}
+	}
+}
@@ -36,14 +36,21 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.log4j.Logger;
 
 import ca.nengo.model.Ensemble;
 import ca.nengo.model.InstantaneousOutput;
 import ca.nengo.model.Network;
 import ca.nengo.model.Node;
+import ca.nengo.model.ProbeAware;
 import ca.nengo.model.Probeable;
 import ca.nengo.model.Projection;
 import ca.nengo.model.SimulationException;
+import ca.nengo.model.StructuralException;
 import ca.nengo.model.Termination;
 import ca.nengo.model.impl.NetworkImpl;
 import ca.nengo.model.plasticity.impl.PlasticEnsembleTermination;
@@ -65,6 +72,7 @@ import ca.nengo.util.impl.ProbeImpl;
  */
 public class LocalSimulator implements Simulator, java.io.Serializable {
     private static final long serialVersionUID = 1L;
+    private static Logger ourLogger = Logger.getLogger(LocalSimulator.class);
 
     private Projection[] myProjections;
     private Node[] myNodes;
@@ -74,8 +82,17 @@ public class LocalSimulator implements Simulator, java.io.Serializable {
     private List<Probe> myProbes;
     private Network myNetwork;
     private boolean myDisplayProgress;
+    private int myBatchSteps;
+    private float myBatchMinTau;
     private transient List<VisiblyMutable.Listener> myChangeListeners;
     private transient NodeThreadPool myNodeThreadPool;
+    private transient ExecutorService myBatchExecutor;
+    private transient int myBatchExecutorThreads;
+    private transient boolean myRunning;
+    private transient boolean myThreadPoolStale;
+    private transient Network myListenedNetwork;
+    private transient VisiblyMutable.Listener myNetworkListener;
+    private final Object myThreadPoolLock = new Object[0]; //guards thread pool state (an array so that it's serializable)
 
     /**
      * Collection of Simulator
@@ -86,6 +103,7 @@ public class LocalSimulator implements Simulator, java.io.Serializable {
         mySimulatorListeners = new ArrayList<SimulatorListener>(1);
         myChangeListeners = new ArrayList<Listener>(1);
         myDisplayProgress = true;
+        myBatchSteps = 1;
     }
 
     /**
@@ -112,6 +130,8 @@ public class LocalSimulator implements Simulator, java.io.Serializable {
         }
 
         myTasks = NodeThreadPool.collectTasks(myNodes).toArray(new ThreadTask[0]);
+        
+        invalidateThreadPool();
     }
 
     /**
@@ -146,8 +166,23 @@ public class LocalSimulator implements Simulator, java.io.Serializable {
     public synchronized void run(float startTime, float endTime, float stepSize, boolean topLevel)
             throws SimulationException {
     	
-    	 myNodeThreadPool = null;
-         myNodeThreadPool = new NodeThreadPool(myNetwork, myProbeTasks);
+    	 BatchSchedule batchSchedule = getBatchSchedule();
+    	 acquireThreadPool(batchSchedule);
+    	 
+    	 boolean completed = false;
+    	 try {
+    		 runSteps(batchSchedule, startTime, endTime, stepSize, topLevel);
+    		 completed = true;
+    	 } finally {
+    		 releaseThreadPool(completed);
+    		 if (topLevel) {
+    			 killChildThreadPools();
+    		 }
+    	 }
+    }
+    
+    private void runSteps(BatchSchedule batchSchedule, float startTime, float endTime, float stepSize, boolean topLevel)
+            throws SimulationException {
 
         //		float pre_time = System.nanoTime();
 
@@ -181,6 +216,11 @@ public class LocalSimulator implements Simulator, java.io.Serializable {
             thisStepSize=0.000001;
         }
 
+        if (batchSchedule != null) {
+            runBatched(batchSchedule, startTime, endTime, thisStepSize);
+            return;
+        }
+
         int c = 0;
         boolean interrupt=false;
         
@@ -207,13 +247,250 @@ public class LocalSimulator implements Simulator, java.io.Serializable {
         }
 
         fireSimulatorEvent(new SimulatorEvent(1f, SimulatorEvent.Type.FINISHED));
+    }
+
+    /**
+     * Makes sure there is a thread pool for the current network and settings (if multithreading), 
+     * reusing the one from the previous run if the network hasn't changed since. When batching, 
+     * the pool is an executor that runs groups of nodes; otherwise it is a NodeThreadPool. 
+     * 
+     * @param batchSchedule Schedule of the run if batching, otherwise null
+     */
+    private void acquireThreadPool(BatchSchedule batchSchedule) {
+        synchronized (myThreadPoolLock) {
+            if (myListenedNetwork != myNetwork) {
+                if (myListenedNetwork != null) {
+                    myListenedNetwork.removeChangeListener(myNetworkListener);
+                }
+                if (myNetworkListener == null) {
+                    myNetworkListener = new VisiblyMutable.Listener() {
+                        public void changed(VisiblyMutable.Event e) {
+                            invalidateThreadPool();
+                        }
+                    };
+                }
+                myNetwork.addChangeListener(myNetworkListener);
+                myListenedNetwork = myNetwork;
+                myThreadPoolStale = true;
+            }
+
+            if (myNodeThreadPool != null && (myThreadPoolStale || !myNodeThreadPool.isCurrent() 
+                    || !NodeThreadPool.isMultithreading())) {
+                myNodeThreadPool.kill();
+                myNodeThreadPool = null;
+            }
+            if (myNodeThreadPool == null && NodeThreadPool.isMultithreading() && batchSchedule == null) {
+                myNodeThreadPool = new NodeThreadPool(myNetwork, myProbeTasks);
+            }
+
+            int batchThreads = batchSchedule != null && NodeThreadPool.isMultithreading() && batchSchedule.getNumClusters() > 1 
+                    ? Math.min(NodeThreadPool.getNumJavaThreads(), batchSchedule.getNumClusters()) : 0;
+            if (myBatchExecutor != null && (myThreadPoolStale || myBatchExecutorThreads != batchThreads)) {
+                myBatchExecutor.shutdown();
+                myBatchExecutor = null;
+            }
+            if (myBatchExecutor == null && batchThreads > 0) {
+                myBatchExecutor = Executors.newFixedThreadPool(batchThreads, new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "LocalSimulator batch");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+                myBatchExecutorThreads = batchThreads;
+            }
+            myThreadPoolStale = false;
+            myRunning = true;
+        }
+    }
+
+    /**
+     * Ends a run. The thread pool is kept for the next run unless the run failed (in which
+     * case its threads may have stopped).
+     */
+    private void releaseThreadPool(boolean completed) {
+        synchronized (myThreadPoolLock) {
+            myRunning = false;
+            if (!completed || myThreadPoolStale) {
+                killIdleThreadPool();
+            }
+        }
+    }
 
+    /**
+     * Marks the thread pool as out of date, killing it now if no run is in progress.
+     */
+    private void invalidateThreadPool() {
+        synchronized (myThreadPoolLock) {
+            myThreadPoolStale = true;
+            killIdleThreadPool();
+        }
+    }
+
+    /**
+     * Kills this simulator's thread pools if they aren't being used by a run. The pools are otherwise
+     * kept between runs, until the network changes or close() is called.
+     */
+    public void killIdleThreadPool() {
+        synchronized (myThreadPoolLock) {
+            if (!myRunning && myNodeThreadPool != null) {
+                myNodeThreadPool.kill();
+                myNodeThreadPool = null;
+            }
+            if (!myRunning && myBatchExecutor != null) {
+                myBatchExecutor.shutdown();
+                myBatchExecutor = null;
+            }
+        }
+    }
 
-        if(myNodeThreadPool != null){
-            myNodeThreadPool.kill();
-            myNodeThreadPool = null;
+    /**
+     * Kills the idle thread pools of the simulators of nested networks (at any depth). These
+     * are made when a nested network is run on its own simulator (e.g. one step at a time by
+     * this simulator), and are only useful until this simulator's run ends.
+     */
+    private void killChildThreadPools() {
+        for (Node node : myNodes) {
+            if (node instanceof Network && ((Network) node).getSimulator() instanceof LocalSimulator) {
+                LocalSimulator child = (LocalSimulator) ((Network) node).getSimulator();
+                child.killIdleThreadPool();
+                child.killChildThreadPools();
+            }
         }
+    }
 
+    /**
+     * Releases resources kept between runs: kills the idle thread pool (whose threads refer to the
+     * network) and stops listening for changes to the network. The simulators of nested networks
+     * are closed too. This should be called when the simulator is no longer needed. It can still 
+     * be run afterwards, in which case a new thread pool is made.
+     */
+    public void close() {
+        synchronized (myThreadPoolLock) {
+            killIdleThreadPool();
+            if (myListenedNetwork != null && !myRunning) {
+                myListenedNetwork.removeChangeListener(myNetworkListener);
+                myListenedNetwork = null;
+            }
+        }
+        if (myNodes != null) {
+            for (Node node : myNodes) {
+                if (node instanceof Network && ((Network) node).getSimulator() instanceof LocalSimulator) {
+                    ((LocalSimulator) ((Network) node).getSimulator()).close();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The thread pool kept from the last run, or null if there is none
+     */
+    public NodeThreadPool getNodeThreadPool() {
+        synchronized (myThreadPoolLock) {
+            return myNodeThreadPool;
+        }
+    }
+
+    /**
+     * @return The executor kept from the last batched run to run groups of nodes concurrently, 
+     * 		or null if there is none
+     */
+    public ExecutorService getBatchExecutor() {
+        synchronized (myThreadPoolLock) {
+            return myBatchExecutor;
+        }
+    }
+
+    /**
+     * Runs the network a batch of steps at a time, with slow projections between groups of 
+     * nodes delivered once per batch (see setBatching()).
+     */
+    private void runBatched(BatchSchedule schedule, float startTime, float endTime, double stepSize)
+            throws SimulationException {
+
+        ExecutorService executor = getBatchExecutor();
+
+        double[] times = new double[myBatchSteps + 1];
+        double time = startTime;
+        int c = 0;
+        boolean interrupt = false;
+
+        while (time < endTime && !interrupt) {
+            times[0] = time;
+            int steps = 0;
+            while (steps < myBatchSteps && time < endTime) {
+                if (time + 1.5*stepSize > endTime) { //fudge step size to hit end exactly
+                    stepSize = endTime - time;
+                }
+                time += stepSize;
+                times[++steps] = time;
+            }
+
+            if (c / 100 != (c + steps) / 100 && myDisplayProgress) {
+                System.out.println("Step " + (c + steps) + " " + time);
+            }
+            c += steps;
+
+            myNetwork.fireStepListeners((float) times[0]);
+            schedule.run(times, steps, executor);
+
+            SimulatorEvent event = new SimulatorEvent(((float) time - startTime) / (endTime - startTime),
+                    SimulatorEvent.Type.STEP_TAKEN);
+            fireSimulatorEvent(event);
+            if (event.getInterrupt()) interrupt = true;
+        }
+
+        fireSimulatorEvent(new SimulatorEvent(1f, SimulatorEvent.Type.FINISHED));
+    }
+
+    private BatchSchedule getBatchSchedule() {
+        if (myBatchSteps <= 1) {
+            return null;
+        }
+
+        try {
+            return new BatchSchedule(myNodes, myProjections, myProbes, myBatchMinTau);
+        } catch (StructuralException e) {
+            ourLogger.warn("Running one step at a time: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Sets up multi-step batching, which runs groups of nodes several steps at a time. Nodes 
+     * connected by projections into DecodedTerminations with tau >= minTau are put in separate 
+     * groups where possible; those projections are then delivered only once per batch, so they lag 
+     * by up to steps-1 steps. Within a group, everything runs every step as usual. Groups run 
+     * concurrently if multithreading is on, on an executor that is kept between runs like the 
+     * NodeThreadPool (see close()). Step listeners are notified once per batch, before it runs, with 
+     * its start time. A change that a listener makes reaches other groups through batched projections 
+     * only when they are next delivered, so it can take up to about two batches (2*steps-1 steps) 
+     * to affect them. 
+     * 
+     * @param steps Number of steps per batch (1 to run one step at a time, the default)
+     * @param minTau Minimum time constant of a DecodedTermination for a projection into it 
+     * 		to be batched (should be large compared to steps * step size)
+     */
+    public void setBatching(int steps, float minTau) {
+        if (steps < 1) {
+            throw new IllegalArgumentException("Steps per batch must be at least 1");
+        }
+        myBatchSteps = steps;
+        myBatchMinTau = minTau;
+    }
+
+    /**
+     * @return Number of steps per batch (see setBatching())
+     */
+    public int getBatchSteps() {
+        return myBatchSteps;
+    }
+
+    /**
+     * @return Minimum time constant of a batched DecodedTermination (see setBatching())
+     */
+    public float getBatchMinTau() {
+        return myBatchMinTau;
     }
 
     public void step(float startTime, float endTime)
@@ -221,7 +498,7 @@ public class LocalSimulator implements Simulator, java.io.Serializable {
 
     	myNetwork.fireStepListeners(startTime);
     	
-        if(NodeThreadPool.isMultithreading() && myNodeThreadPool != null){
+        if(NodeThreadPool.isMultithreading() && myNodeThreadPool != null && myRunning){
             myNodeThreadPool.step(startTime, endTime);
         }else{
             for (Projection myProjection : myProjections) {
@@ -242,9 +519,8 @@ public class LocalSimulator implements Simulator, java.io.Serializable {
                 myTask.run(startTime, endTime);
             }
             
-            Iterator<Probe> it = myProbes.iterator();
-            while (it.hasNext()) {
-                it.next().collect(endTime);
+            for (int i = 0; i < myProbes.size(); i++) {
+                myProbes.get(i).collect(endTime);
             }
         }
     }
@@ -316,6 +592,10 @@ public class LocalSimulator implements Simulator, java.io.Serializable {
         
         myProbeTasks.add(result.getProbeTask());
         myProbes.add(result);
+        if (target instanceof ProbeAware) {
+            ((ProbeAware) target).probeAdded(state);
+        }
+        invalidateThreadPool();
 
         fireVisibleChangeEvent();
         return result;
@@ -332,6 +612,10 @@ public class LocalSimulator implements Simulator, java.io.Serializable {
         if (!myProbeTasks.remove(probe.getProbeTask())) {
             throw new SimulationException("Probe could not be removed");
         }
+        if (probe.getTarget() instanceof ProbeAware) {
+            ((ProbeAware) probe.getTarget()).probeRemoved(probe.getStateName());
+        }
+        invalidateThreadPool();
         
         fireVisibleChangeEvent();
     }
@@ -44,6 +44,25 @@ public abstract class Environment {
 	 */
 	public static String WORKING_DIRECTORY = "working-directory";	
 	
+	/**
+	 * Name of system property that sets the initial value of isZeroAllocation()
+	 */
+	public static String ZERO_ALLOCATION = "zero-allocation";
+	
+	/**
+	 * Name of system property that sets the initial value of isRecordingOnlyProbed()
+	 */
+	public static String RECORD_ONLY_PROBED = "record-only-probed";
+	
+	/**
+	 * Name of system property that sets the initial value of isParallelFunctions()
+	 */
+	public static String PARALLEL_FUNCTIONS = "parallel-functions";
+	
+	private static volatile boolean ourZeroAllocation = Boolean.getBoolean(ZERO_ALLOCATION);
+	private static volatile boolean ourRecordingOnlyProbed = Boolean.getBoolean(RECORD_ONLY_PROBED);
+	private static volatile boolean ourParallelFunctions = Boolean.getBoolean(PARALLEL_FUNCTIONS);
+	
 	
 	/**
 	 * @return True if the system is running within a user interface (default is false; 
@@ -58,4 +77,68 @@ public abstract class Environment {
 		System.setProperty(USER_INTERFACE, inUI ? "true" : "false");
 	}
 
+	/**
+	 * In steady-state zero-allocation mode, the step path of the simulation (DecodedOrigin, 
+	 * DecodedTermination, SpikingNeuron, LinearSynapticIntegrator, LIFSpikeGenerator, etc.) 
+	 * recycles its buffers and output objects instead of creating new ones at each step, so 
+	 * that long simulations don't trigger garbage collection. Output objects are double-buffered, 
+	 * so the InstantaneousOutput obtained from an Origin is only valid until the end of the 
+	 * following step (copy it if it must be kept longer). 
+	 * 
+	 * @return True if steady-state zero-allocation mode is on (default is false; can be 
+	 * 		configured with system property "zero-allocation" = "true")
+	 */
+	public static boolean isZeroAllocation() {
+		return ourZeroAllocation;
+	}
+	
+	/**
+	 * @param zeroAllocation True to turn on steady-state zero-allocation mode (see isZeroAllocation())
+	 */
+	public static void setZeroAllocation(boolean zeroAllocation) {
+		ourZeroAllocation = zeroAllocation;
+	}
+
+	/**
+	 * When this is on, ProbeAware objects (e.g. SpikingNeuron, LIFSpikeGenerator, ALIFSpikeGenerator, 
+	 * IzhikevichSpikeGenerator) only record histories of states that have Probes connected through 
+	 * a Simulator, and return empty histories for other states. Ensembles, NetworkArrays and 
+	 * ProbeableOrigins pass Probes on to the objects whose histories they read. It is off by default 
+	 * because other code may read histories without a Probe, and would then get empty histories. 
+	 * 
+	 * @return True if only probed state histories are recorded (default is false; can be 
+	 * 		configured with system property "record-only-probed" = "true")
+	 */
+	public static boolean isRecordingOnlyProbed() {
+		return ourRecordingOnlyProbed;
+	}
+	
+	/**
+	 * @param recordingOnlyProbed True if only probed state histories should be recorded (see 
+	 * 		isRecordingOnlyProbed())
+	 */
+	public static void setRecordingOnlyProbed(boolean recordingOnlyProbed) {
+		ourRecordingOnlyProbed = recordingOnlyProbed;
+	}
+
+	/**
+	 * While a model is built, target Functions (e.g. of decoded origins) are evaluated from several
+	 * threads only if they are known to be stateless (see ThreadSafeFunctions). When this is on,
+	 * all Functions are, so user-defined Functions must then be safe to call concurrently.
+	 * 
+	 * @return True if all Functions may be evaluated from several threads (default is false; can
+	 * 		be configured with system property "parallel-functions" = "true")
+	 */
+	public static boolean isParallelFunctions() {
+		return ourParallelFunctions;
+	}
+	
+	/**
+	 * @param parallelFunctions True if all Functions may be evaluated from several threads (see 
+	 * 		isParallelFunctions())
+	 */
+	public static void setParallelFunctions(boolean parallelFunctions) {
+		ourParallelFunctions = parallelFunctions;
+	}
+
 }
@@ -0,0 +1,217 @@
+package ca.nengo.util.impl;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import ca.nengo.model.InstantaneousOutput;
+import ca.nengo.model.Network;
+import ca.nengo.model.Node;
+import ca.nengo.model.Origin;
+import ca.nengo.model.Projection;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.Termination;
+import ca.nengo.model.impl.NetworkImpl;
+
+/**
+ * Orders the projections and nodes of a step by their actual dependencies, so that threads
+ * don't have to wait for every projection before running any node.
+ *
+ * Within a step, each projection carries its origin's output from the previous step. So a
+ * node can run as soon as every projection into it has been delivered (its inputs are set)
+ * and every projection out of it has been delivered (its previous output has been read).
+ * Projections have no dependencies within a step. Work items (projections, then nodes) are
+ * published to a shared queue as they become ready, and any thread can take the next one.
+ * If a thread fails to run an item, the step is aborted, and threads waiting for items
+ * that will now never be published throw an exception instead of waiting forever.
+ */
+public class DependencySchedule {
+
+	private Node[] myNodes;
+	private Projection[] myProjections;
+
+	//indices of nodes that wait on each projection
+	private int[][] myDependents;
+	private int[] myNumDependencies;
+
+	private AtomicIntegerArray myRemaining;
+	private AtomicIntegerArray myQueue;
+	private AtomicInteger myHead;
+	private AtomicInteger myTail;
+	private volatile Throwable myFailure;
+
+	/**
+	 * @param nodes Nodes that are run each step
+	 * @param projections Projections that are delivered each step
+	 * @throws StructuralException if a projection connects to a node that isn't among the
+	 * 		given nodes or a Network made of them
+	 */
+	public DependencySchedule(Node[] nodes, Projection[] projections) throws StructuralException {
+		myNodes = nodes;
+		myProjections = projections;
+
+		Map<Node, Integer> indices = new IdentityHashMap<Node, Integer>();
+		for (int i = 0; i < nodes.length; i++) {
+			indices.put(nodes[i], Integer.valueOf(i));
+		}
+
+		myDependents = new int[projections.length][];
+		myNumDependencies = new int[nodes.length];
+		for (int i = 0; i < projections.length; i++) {
+			List<Integer> dependents = new ArrayList<Integer>();
+			addNodes(getNode(projections[i].getOrigin()), indices, dependents);
+			addNodes(getNode(projections[i].getTermination()), indices, dependents);
+
+			myDependents[i] = new int[dependents.size()];
+			for (int j = 0; j < myDependents[i].length; j++) {
+				myDependents[i][j] = dependents.get(j).intValue();
+				myNumDependencies[myDependents[i][j]]++;
+			}
+		}
+
+		myRemaining = new AtomicIntegerArray(nodes.length);
+		myQueue = new AtomicIntegerArray(projections.length + nodes.length);
+		myHead = new AtomicInteger();
+		myTail = new AtomicInteger();
+	}
+
+	/**
+	 * @return Number of work items (projections and nodes) in a step
+	 */
+	public int getNumItems() {
+		return myProjections.length + myNodes.length;
+	}
+
+	/**
+	 * @param node A node run by this schedule
+	 * @return The number of projections that must be delivered before the node can run
+	 */
+	public int getNumDependencies(int node) {
+		return myNumDependencies[node];
+	}
+
+	/**
+	 * Prepares for a new step. Must be called while no threads are taking work.
+	 */
+	public void reset() {
+		int n = getNumItems();
+		for (int i = 0; i < n; i++) {
+			myQueue.set(i, -1);
+		}
+		myHead.set(0);
+		myTail.set(0);
+		myFailure = null;
+
+		for (int i = 0; i < myProjections.length; i++) {
+			publish(i);
+		}
+		for (int i = 0; i < myNodes.length; i++) {
+			myRemaining.set(i, myNumDependencies[i]);
+			if (myNumDependencies[i] == 0) {
+				publish(myProjections.length + i);
+			}
+		}
+	}
+
+	/**
+	 * Delivers projections and runs nodes from the shared queue until every item in the step
+	 * has been taken. Called concurrently by all threads of a pool.
+	 *
+	 * @param startTime Simulation time at which running starts
+	 * @param endTime Simulation time at which running ends
+	 * @throws SimulationException if a projection or node can't be run, by this or another thread
+	 */
+	public void run(float startTime, float endTime) throws SimulationException {
+		int n = getNumItems();
+		for (int index = myHead.getAndIncrement(); index < n; index = myHead.getAndIncrement()) {
+			int item = take(index);
+
+			try {
+				if (item < myProjections.length) {
+					InstantaneousOutput values = myProjections[item].getOrigin().getValues();
+					myProjections[item].getTermination().setValues(values);
+
+					int[] dependents = myDependents[item];
+					for (int i = 0; i < dependents.length; i++) {
+						if (myRemaining.decrementAndGet(dependents[i]) == 0) {
+							publish(myProjections.length + dependents[i]);
+						}
+					}
+				} else {
+					myNodes[item - myProjections.length].run(startTime, endTime);
+				}
+			} catch (SimulationException e) {
+				myFailure = e;
+				throw e;
+			} catch (RuntimeException e) {
+				myFailure = e;
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * @return True if a thread has failed to run an item since the last reset()
+	 */
+	public boolean isAborted() {
+		return myFailure != null;
+	}
+
+	private void publish(int item) {
+		myQueue.set(myTail.getAndIncrement(), item);
+	}
+
+	//waits until an item has been published to the given queue position, or the step is aborted
+	private int take(int index) throws SimulationException {
+		int item = myQueue.get(index);
+		for (int spins = 0; item < 0; spins++) {
+			Throwable failure = myFailure;
+			if (failure != null) {
+				throw new SimulationException("Step aborted because another thread failed", failure);
+			}
+			if (spins > 1000) {
+				Thread.yield();
+			}
+			item = myQueue.get(index);
+		}
+		return item;
+	}
+
+	private static Node getNode(Origin origin) {
+		while (origin instanceof NetworkImpl.OriginWrapper) {
+			origin = ((NetworkImpl.OriginWrapper) origin).getWrappedOrigin();
+		}
+		return origin.getNode();
+	}
+
+	private static Node getNode(Termination termination) {
+		if (termination instanceof NetworkImpl.TerminationWrapper) {
+			termination = ((NetworkImpl.TerminationWrapper) termination).getBaseTermination();
+		}
+		return termination.getNode();
+	}
+
+	//adds the index of the node, or of all the run nodes in it if it's a Network
+	private static void addNodes(Node node, Map<Node, Integer> indices, List<Integer> result) throws StructuralException {
+		Integer index = indices.get(node);
+		if (index != null) {
+			result.add(index);
+		} else if (node instanceof Network) {
+			List<Node> nodes = NodeThreadPool.collectNodes(new Node[]{node}, true);
+			for (Node n : nodes) {
+				index = indices.get(n);
+				if (index == null) {
+					throw new StructuralException("Node " + n.getName() + " is not run by this schedule");
+				}
+				result.add(index);
+			}
+		} else {
+			throw new StructuralException("Node " + (node == null ? null : node.getName()) + " is not run by this schedule");
+		}
+	}
+
+}
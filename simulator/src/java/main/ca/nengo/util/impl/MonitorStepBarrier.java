@@ -0,0 +1,98 @@
+package ca.nengo.util.impl;
+
+/**
+ * A StepBarrier that blocks on a single monitor with wait/notifyAll. Waiting threads
+ * use no CPU, but each phase costs several context switches.
+ */
+public class MonitorStepBarrier implements StepBarrier {
+
+	private final Object myLock = new Object();
+	private int myNumThreads;
+
+	private volatile int numThreadsComplete;
+	private volatile int numThreadsWaiting;
+	private volatile boolean threadsRunning;
+
+	/**
+	 * @see ca.nengo.util.impl.StepBarrier#initialize(java.lang.Thread[])
+	 */
+	public void initialize(Thread[] threads) {
+		myNumThreads = threads.length;
+		numThreadsComplete = 0;
+		numThreadsWaiting = 0;
+		threadsRunning = false;
+	}
+
+	/**
+	 * @see ca.nengo.util.impl.StepBarrier#startPhase()
+	 */
+	public void startPhase() throws InterruptedException {
+		synchronized(myLock){
+
+			numThreadsComplete = 0;
+			threadsRunning = true;
+			myLock.notifyAll();  //release all the threads from the threadWait() loop
+
+			while(threadsRunning || numThreadsWaiting < myNumThreads)
+				myLock.wait();  //we don't want the stepthread to be able to continue (and start threads) until all the threads are waiting to be started
+		}
+	}
+
+	/**
+	 * @see ca.nengo.util.impl.StepBarrier#threadWait()
+	 */
+	public void threadWait() throws InterruptedException {
+		synchronized(myLock){
+			numThreadsWaiting++;
+			if(numThreadsWaiting == myNumThreads)
+				myLock.notifyAll(); //all the threads are done the step and in a waiting state, so free the stepthread
+
+			while(!threadsRunning) {
+				myLock.wait();
+			}
+		}
+	}
+
+	/**
+	 * @see ca.nengo.util.impl.StepBarrier#threadFinished()
+	 */
+	public void threadFinished() throws InterruptedException {
+		synchronized(myLock){
+			numThreadsComplete++;
+
+			if(numThreadsComplete == myNumThreads){
+				threadsRunning = false;
+				numThreadsWaiting=0;
+				myLock.notifyAll(); //this is to move the threads into the threadwait loop
+			}
+			else{
+				while(threadsRunning) //threads wait here when they are finished, but others are still running (i.e. wait here until end of one step)
+					myLock.wait();
+			}
+
+			threadWait(); //threads wait here when they're all finished (i.e. wait here between steps)
+		}
+	}
+
+	/**
+	 * @see ca.nengo.util.impl.StepBarrier#release()
+	 */
+	public void release() {
+		synchronized(myLock){
+			myLock.notifyAll();
+		}
+	}
+
+	/**
+	 * Makes MonitorStepBarriers.
+	 */
+	public static class Factory implements StepBarrier.Factory {
+
+		/**
+		 * @see ca.nengo.util.impl.StepBarrier.Factory#make()
+		 */
+		public StepBarrier make() {
+			return new MonitorStepBarrier();
+		}
+	}
+}
@@ -1,6 +1,5 @@
 package ca.nengo.util.impl;
 
-import java.util.Date;
 
 import ca.nengo.model.InstantaneousOutput;
 import ca.nengo.model.Node;
@@ -35,6 +34,10 @@ public class NodeThread extends Thread {
 	private double myAverageTimeOnNodesPerStep;
 	private double myAverageTimeOnTasksPerStep;
 
+	private double myAverageBarrierWaitAfterProjectionsPerStep;
+	private double myAverageBarrierWaitAfterNodesPerStep;
+	private double myAverageBarrierWaitAfterTasksPerStep;
+
 	private int myNumSteps;
 
 	public NodeThread(NodeThreadPool nodePool, Node[] nodes,
@@ -73,11 +76,20 @@ public class NodeThread extends Thread {
 		}
 	}
 
-	public void finished() {
+	/**
+	 * Signals the pool that this thread is done a phase, and waits for the next phase to start.
+	 * 
+	 * @return Time spent waiting at the barrier for the other threads to finish the phase (ms), 
+	 * 		if collecting timings, otherwise 0. This excludes the time between the end of the 
+	 * 		phase and the start of the next one (e.g. between steps).
+	 */
+	public double finished() {
+		long waitStart = myCollectTimings ? System.nanoTime() : 0;
 		try {
 			myNodeThreadPool.threadFinished();
 		} catch (Exception e) {
 		}
+		return myCollectTimings ? Math.max(0, myNodeThreadPool.getPhaseEndTime() - waitStart) / 1e6 : 0;
 	}
 
 	// might have to make these protected?
@@ -93,6 +105,10 @@ public class NodeThread extends Thread {
 	
 	protected void runNodes(float startTime, float endTime) throws SimulationException{
 		
+		if (myNodeThreadPool.isStealingNodes()) {
+			stealNodes(startTime, endTime);
+			return;
+		}
 		
 		for (int i = myStartIndexInNodes; i < myEndIndexInNodes; i++) {
 			
@@ -101,6 +117,19 @@ public class NodeThread extends Thread {
 		
 	}
 	
+	/**
+	 * Runs nodes from the pool's shared queue until it is empty, recording the run time of each.
+	 */
+	protected void stealNodes(float startTime, float endTime) throws SimulationException{
+		
+		Node[] nodes = myNodeThreadPool.getNodes();
+		for (int i = myNodeThreadPool.nextNode(); i < nodes.length; i = myNodeThreadPool.nextNode()) {
+			long runTime = System.nanoTime();
+			nodes[i].run(startTime, endTime);
+			myNodeThreadPool.addNodeRunTime(i, System.nanoTime() - runTime);
+		}
+	}
+	
 	protected void runTasks(float startTime, float endTime) throws SimulationException {
 		
 		for (int i = myStartIndexInTasks; i < myEndIndexInTasks; i++) {
@@ -114,51 +143,65 @@ public class NodeThread extends Thread {
 
 			waitForPool();
 
-			while (true) {
+			// The pool interrupts its threads when it is killed, which releases them from the barrier. 
+			// They must then stop, rather than run another phase.
+			while (!myNodeThreadPool.getRunFinished()) {
 				startTime = myNodeThreadPool.getStartTime();
 				endTime = myNodeThreadPool.getEndTime();
 				
 				long projectionInterval, nodeInterval, taskInterval;
+				double projectionWait, nodeWait, taskWait;
+				
+				// With a dependency schedule, projections and nodes are run together in one phase
+				// (and timed as projections), with no barrier between them.
+				DependencySchedule schedule = myNodeThreadPool.getSchedule();
 				
-				projectionInterval = myCollectTimings ? new Date().getTime() : 0;
+				projectionInterval = myCollectTimings ? System.currentTimeMillis() : 0;
 				
-				runProjections(startTime, endTime);
+				if (schedule != null) {
+					schedule.run(startTime, endTime);
+				} else {
+					runProjections(startTime, endTime);
+				}
 				
-				projectionInterval = myCollectTimings ? new Date().getTime() - projectionInterval : 0;
+				projectionInterval = myCollectTimings ? System.currentTimeMillis() - projectionInterval : 0;
 
-				finished();
+				projectionWait = finished();
+				if (myNodeThreadPool.getRunFinished()) break;
 				
-				nodeInterval = myCollectTimings ? new Date().getTime() : 0;
+				nodeInterval = myCollectTimings ? System.currentTimeMillis() : 0;
 
-				runNodes(startTime, endTime);
+				if (schedule == null) {
+					runNodes(startTime, endTime);
+				}
 				
-				nodeInterval = myCollectTimings ? new Date().getTime() - nodeInterval : 0;
+				nodeInterval = myCollectTimings ? System.currentTimeMillis() - nodeInterval : 0;
 
-				finished();
+				nodeWait = schedule == null ? finished() : 0;
+				if (myNodeThreadPool.getRunFinished()) break;
 				
-				taskInterval = myCollectTimings ? new Date().getTime() : 0;
+				taskInterval = myCollectTimings ? System.currentTimeMillis() : 0;
 
                 runTasks(startTime, endTime);
                 
-                taskInterval = myCollectTimings ? new Date().getTime() - taskInterval : 0;
+                taskInterval = myCollectTimings ? System.currentTimeMillis() - taskInterval : 0;
 
-                finished();
+                taskWait = finished();
+                if (myNodeThreadPool.getRunFinished()) break;
                 
                 if(myCollectTimings){
 	                myAverageTimeOnProjectionsPerStep = (myAverageTimeOnProjectionsPerStep * myNumSteps + projectionInterval) / (myNumSteps + 1);
 	                myAverageTimeOnNodesPerStep = (myAverageTimeOnNodesPerStep * myNumSteps + nodeInterval) / (myNumSteps + 1);
 	                myAverageTimeOnTasksPerStep = (myAverageTimeOnTasksPerStep * myNumSteps + taskInterval) / (myNumSteps + 1);
+	                myAverageBarrierWaitAfterProjectionsPerStep = (myAverageBarrierWaitAfterProjectionsPerStep * myNumSteps + projectionWait) / (myNumSteps + 1);
+	                myAverageBarrierWaitAfterNodesPerStep = (myAverageBarrierWaitAfterNodesPerStep * myNumSteps + nodeWait) / (myNumSteps + 1);
+	                myAverageBarrierWaitAfterTasksPerStep = (myAverageBarrierWaitAfterTasksPerStep * myNumSteps + taskWait) / (myNumSteps + 1);
 	                
 	                myNumSteps++;
                 }
-                
-				// This is the means of getting out of the loop. The pool will interrupt
-				// this thread at the appropriate time.
-				if (Thread.currentThread().isInterrupted() || myNodeThreadPool.getRunFinished()) {
-					kill();
-					return;
-				}
 			}
+			
+			kill();
 		} catch (SimulationException e) {
 		}
 	}
@@ -170,6 +213,9 @@ public class NodeThread extends Thread {
 			timingOutput.append("Average time processing projections per step: " + myAverageTimeOnProjectionsPerStep + " ms\n");
 			timingOutput.append("Average time processing nodes per step: " + myAverageTimeOnNodesPerStep + " ms\n");
 			timingOutput.append("Average time processing tasks per step: " + myAverageTimeOnTasksPerStep + " ms\n");
+			timingOutput.append("Average barrier wait after projections per step: " + myAverageBarrierWaitAfterProjectionsPerStep + " ms\n");
+			timingOutput.append("Average barrier wait after nodes per step: " + myAverageBarrierWaitAfterNodesPerStep + " ms\n");
+			timingOutput.append("Average barrier wait after tasks per step: " + myAverageBarrierWaitAfterTasksPerStep + " ms\n");
 			
 			System.out.print(timingOutput.toString());
 		}
@@ -190,4 +236,16 @@ public class NodeThread extends Thread {
 	public double getMyAverageTimeOnTasksPerStep() {
 		return myAverageTimeOnTasksPerStep;
 	}
+
+	public double getMyAverageBarrierWaitAfterProjectionsPerStep() {
+		return myAverageBarrierWaitAfterProjectionsPerStep;
+	}
+
+	public double getMyAverageBarrierWaitAfterNodesPerStep() {
+		return myAverageBarrierWaitAfterNodesPerStep;
+	}
+
+	public double getMyAverageBarrierWaitAfterTasksPerStep() {
+		return myAverageBarrierWaitAfterTasksPerStep;
+	}
 }
@@ -3,13 +3,18 @@ package ca.nengo.util.impl;
 //import ca.nengo.model.InstantaneousOutput;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Date;
+import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.log4j.Logger;
+
+import ca.nengo.model.Ensemble;
 import ca.nengo.model.Network;
 import ca.nengo.model.Node;
 import ca.nengo.model.Projection;
+import ca.nengo.model.StructuralException;
 import ca.nengo.model.impl.NetworkArrayImpl;
 import ca.nengo.util.TaskSpawner;
 import ca.nengo.util.ThreadTask;
@@ -21,8 +26,11 @@ import ca.nengo.util.ThreadTask;
  * @author Eric Crawford
  */
 public class NodeThreadPool {
+	private static Logger ourLogger = Logger.getLogger(NodeThreadPool.class);
+
 	protected static final int maxNumJavaThreads = 100;
 	protected static final int defaultNumJavaThreads = 8;
+	protected static final int defaultRebalanceInterval = 100;
 
 
 	// numThreads can change throughout a simulation run. Therefore, it should not be used during a run,
@@ -30,24 +38,41 @@ public class NodeThreadPool {
 	protected static int myNumJavaThreads = defaultNumJavaThreads;
 	protected int myNumThreads;
 	protected NodeThread[] myThreads;
-	protected Object myLock;
+	protected StepBarrier myBarrier;
 
 	protected Node[] myNodes;
 	protected Projection[] myProjections;
     protected ThreadTask[] myTasks;
 
-	protected volatile int numThreadsComplete;
-	protected volatile int numThreadsWaiting;
+	protected static StepBarrier.Factory myBarrierFactory = new MonitorStepBarrier.Factory();
+
+	protected static boolean myWorkStealing;
+	protected boolean myStealingNodes;
+	protected AtomicInteger myNextNode;
+	protected long[] myNodeRunTimes;
+	protected int myNumStealingSteps;
+
+	protected static boolean myDependencyScheduling;
+	protected DependencySchedule mySchedule;
 
-	protected volatile boolean threadsRunning;
 	protected volatile boolean runFinished;
 	protected float myStartTime;
 	protected float myEndTime;
 	
+	// settings this pool was created with (see isCurrent())
+	protected int myCreatedNumJavaThreads;
+	protected boolean myCreatedUseGPU;
+	protected StepBarrier.Factory myCreatedBarrierFactory;
+	protected boolean myCreatedWorkStealing;
+	protected boolean myCreatedDependencyScheduling;
+	protected boolean myCreatedCollectTimings;
+	
 	protected static boolean myCollectTimings;
 	protected long myRunStartTime;
 	protected double myAverageTimePerStep;
 	protected int myNumSteps;
+	protected double[] myAveragePhaseTimes;
+	protected volatile long myPhaseEndTime;
 	
 	public static int getNumJavaThreads(){
 		return myNumJavaThreads;
@@ -78,6 +103,72 @@ public class NodeThreadPool {
 	public static void setCollectTimings(boolean collectTimings) {
 		myCollectTimings = collectTimings;
 	}
+
+	/**
+	 * @return Factory for the barriers that separate the phases of each step
+	 */
+	public static StepBarrier.Factory getBarrierFactory() {
+		return myBarrierFactory;
+	}
+
+	/**
+	 * @param factory Factory for the barriers that separate the phases of each step (takes
+	 * 		effect for pools created afterwards). Defaults to MonitorStepBarrier.Factory.
+	 */
+	public static void setBarrierFactory(StepBarrier.Factory factory) {
+		myBarrierFactory = factory;
+	}
+
+	/**
+	 * @return True if threads claim nodes from a shared queue during the node phase, rather 
+	 * 		than each running a fixed slice of the nodes
+	 */
+	public static boolean isWorkStealing() {
+		return myWorkStealing;
+	}
+
+	/**
+	 * @param workStealing True if threads should claim nodes from a shared queue during the node 
+	 * 		phase, so that threads that finish early take work from busy ones (takes effect for pools 
+	 * 		created afterwards). In this mode the queue is ordered by measured run time, most expensive 
+	 * 		first, and reordered periodically. 
+	 */
+	public static void setWorkStealing(boolean workStealing) {
+		myWorkStealing = workStealing;
+	}
+
+	/**
+	 * @return True if projections and nodes are run in dependency order rather than in two 
+	 * 		separate phases
+	 */
+	public static boolean isDependencyScheduling() {
+		return myDependencyScheduling;
+	}
+
+	/**
+	 * @param dependencyScheduling True if projections and nodes should be run together in one phase, 
+	 * 		each node starting as soon as the projections into and out of it have been delivered (takes 
+	 * 		effect for pools created afterwards). Not used with the GPU or if some projection can't 
+	 * 		be traced to the nodes it connects; see DependencySchedule. 
+	 */
+	public static void setDependencyScheduling(boolean dependencyScheduling) {
+		myDependencyScheduling = dependencyScheduling;
+	}
+
+	/**
+	 * @return Schedule for running projections and nodes in dependency order, or null if this 
+	 * 		pool runs them in separate phases
+	 */
+	public DependencySchedule getSchedule() {
+		return mySchedule;
+	}
+
+	/**
+	 * @return The barrier that separates the phases of each step in this pool
+	 */
+	public StepBarrier getBarrier() {
+		return myBarrier;
+	}
 	
 	public float getStartTime(){
 		return myStartTime;
@@ -114,7 +205,7 @@ public class NodeThreadPool {
 	 */
 	protected void initialize(Network network, List<ThreadTask> threadTasks){
 		
-		myLock = new Object();
+		myBarrier = myBarrierFactory.make();
 		
 		Node[] nodes = network.getNodes();
 		Projection[] projections = network.getProjections();
@@ -128,13 +219,17 @@ public class NodeThreadPool {
 		myProjections = projList.toArray(new Projection[0]);
 		myTasks = taskList.toArray(new ThreadTask[0]);
 		
-		threadsRunning = false;
 		runFinished = false;
-		numThreadsWaiting = 0;
-		numThreadsComplete = 0;
 		
 		boolean useGPU = NEFGPUInterface.getUseGPU();
 		
+		myCreatedNumJavaThreads = myNumJavaThreads;
+		myCreatedUseGPU = useGPU;
+		myCreatedBarrierFactory = myBarrierFactory;
+		myCreatedWorkStealing = myWorkStealing;
+		myCreatedDependencyScheduling = myDependencyScheduling;
+		myCreatedCollectTimings = myCollectTimings;
+		
 		if(useGPU){
 			myNumThreads = myNumJavaThreads + 1;
 	    }else{
@@ -162,30 +257,41 @@ public class NodeThreadPool {
 			myThreads[myNumJavaThreads] = gpuThread;
 			
 			gpuThread.setPriority(Thread.MAX_PRIORITY);
-			gpuThread.start();
 		}
 		
 		//In the remaining nodes (non-GPU nodes), DO break down the NetworkArrays, we don't want to call the 
 		// "run" method of nodes which are members of classes which derive from the NetworkImpl class since 
 		// NetworkImpls create their own LocalSimulators when run.
 		myNodes = collectNodes(myNodes, true).toArray(new Node[0]);
+		
+		// Reorder the nodes so that each thread's contiguous slice has about the same estimated cost.
+		int[] nodeBounds = partitionNodes(myNodes, myNumJavaThreads);
+		
+		// A dependency schedule takes the place of work stealing (both share out nodes dynamically).
+		mySchedule = null;
+		if(myDependencyScheduling && !useGPU){
+			try {
+				mySchedule = new DependencySchedule(myNodes, myProjections);
+			} catch (StructuralException e) {
+				ourLogger.warn("Running projections and nodes in separate phases: " + e.getMessage());
+			}
+		}
+		myStealingNodes = myWorkStealing && mySchedule == null;
+		myNextNode = new AtomicInteger(myNodes.length);
+		myNodeRunTimes = new long[myNodes.length];
 
-		int nodesPerJavaThread = (int) Math.ceil((float) myNodes.length / (float) myNumJavaThreads);
 		int projectionsPerJavaThread = (int) Math.ceil((float) myProjections.length / (float) myNumJavaThreads);
         int tasksPerJavaThread = (int) Math.ceil((float) myTasks.length / (float) myNumJavaThreads);
 
-		int nodeOffset = 0, projectionOffset = 0, taskOffset = 0;
+		int projectionOffset = 0, taskOffset = 0;
 		int nodeStartIndex, nodeEndIndex, projectionStartIndex, projectionEndIndex, taskStartIndex, taskEndIndex;
 
 		
-		// Evenly distribute projections, nodes and tasks to the java threads.
+		// Distribute nodes by cost, and projections and tasks evenly, to the java threads.
 		for(int i = 0; i < myNumJavaThreads; i++){
 
-			nodeStartIndex = nodeOffset;
-			nodeEndIndex = myNodes.length - nodeOffset >= nodesPerJavaThread ?
-					nodeOffset + nodesPerJavaThread : myNodes.length;
-
-			nodeOffset += nodesPerJavaThread;
+			nodeStartIndex = nodeBounds[i];
+			nodeEndIndex = nodeBounds[i+1];
 
 			projectionStartIndex = projectionOffset;
 			projectionEndIndex = myProjections.length - projectionOffset >= projectionsPerJavaThread ?
@@ -207,11 +313,19 @@ public class NodeThreadPool {
 			myThreads[i].setName("JavaThread" + i);
 
 			myThreads[i].setPriority(Thread.MAX_PRIORITY);
+		}
+		
+		// The barrier must know all the threads before any of them starts waiting on it.
+		// The threads are daemons so that an idle pool that is kept for reuse doesn't keep the JVM running.
+		myBarrier.initialize(myThreads);
+		for(int i = 0; i < myThreads.length; i++){
+			myThreads[i].setDaemon(true);
 			myThreads[i].start();
 		}
 		
-		myRunStartTime = myCollectTimings ? new Date().getTime() : 0;
+		myRunStartTime = myCollectTimings ? System.currentTimeMillis() : 0;
 		myAverageTimePerStep = 0;
+		myAveragePhaseTimes = new double[3];
 		myNumSteps = 0;
 	}
 
@@ -228,29 +342,43 @@ public class NodeThreadPool {
 		myEndTime = endTime;
 		
 		
-		long stepInterval = myCollectTimings ? new Date().getTime() : 0;
+		long stepInterval = myCollectTimings ? System.currentTimeMillis() : 0;
 		
 		try
 		{
 			int oldPriority = Thread.currentThread().getPriority();
 			Thread.currentThread().setPriority(Thread.MAX_PRIORITY);
 
-			// start the projection processing, wait for it to finish
-			startThreads();
-
-			// start the node processing, wait for it to finish
-			startThreads();
+			if(mySchedule != null){
+				// start the projection and node processing, wait for it to finish
+				mySchedule.reset();
+				startThreads(0);
+			}else{
+				// start the projection processing, wait for it to finish
+				startThreads(0);
+
+				// start the node processing, wait for it to finish
+				if(myStealingNodes){
+					myNextNode.set(0);
+				}
+				startThreads(1);
+			}
 
 			// start the task processing, wait for it to finish
-			startThreads();
+			startThreads(2);
 
 			Thread.currentThread().setPriority(oldPriority);
 		}
 		catch(Exception e)
 		{}
 		
+		if(myStealingNodes && ++myNumStealingSteps % defaultRebalanceInterval == 0){
+			sortByCost(myNodes, myNodeRunTimes);
+			Arrays.fill(myNodeRunTimes, 0);
+		}
+		
 		if(myCollectTimings){
-			stepInterval = new Date().getTime() - stepInterval;
+			stepInterval = System.currentTimeMillis() - stepInterval;
 			myAverageTimePerStep = (myAverageTimePerStep * myNumSteps + stepInterval) / (myNumSteps + 1);
             
             myNumSteps++;
@@ -258,63 +386,100 @@ public class NodeThreadPool {
 	}
 
 	/**
-	 * Tells the threads to run for one phase (projections, nodes or tasks). 
-	 * The threads should be waiting on myLock at the time this is called.
+	 * @return True if this pool was created with the current static settings (number of threads, 
+	 * 		GPU use, barrier, node scheduling and timings), so that it can be reused for another run 
+	 * 		of an unchanged network
+	 */
+	public boolean isCurrent(){
+		return !runFinished
+				&& myCreatedNumJavaThreads == myNumJavaThreads
+				&& myCreatedUseGPU == NEFGPUInterface.getUseGPU()
+				&& myCreatedBarrierFactory == myBarrierFactory
+				&& myCreatedWorkStealing == myWorkStealing
+				&& myCreatedDependencyScheduling == myDependencyScheduling
+				&& myCreatedCollectTimings == myCollectTimings;
+	}
+
+	/**
+	 * @return True if this pool's threads claim nodes from a shared queue during the node phase
+	 */
+	public boolean isStealingNodes(){
+		return myStealingNodes;
+	}
+
+	/**
+	 * Called by the threads in this pool during the node phase in work-stealing mode.
 	 * 
+	 * @return Index in getNodes() of the next node to run, or getNodes().length if there are none left
+	 */
+	public int nextNode(){
+		int index = myNextNode.getAndIncrement();
+		return index < myNodes.length ? index : myNodes.length;
+	}
+
+	/**
+	 * Called by the threads in this pool after running a node in work-stealing mode.
+	 * 
+	 * @param index Index of the node in getNodes()
+	 * @param runTime Time taken to run the node (ns)
+	 */
+	public void addNodeRunTime(int index, long runTime){
+		myNodeRunTimes[index] += runTime;
+	}
+
+	/**
+	 * @return The nodes run by this pool's java threads
+	 */
+	public Node[] getNodes(){
+		return myNodes;
+	}
+
+	/**
+	 * Tells the threads to run for one phase (projections, nodes or tasks), and waits
+	 * for them all to finish it.
+	 * 
+	 * @param phase Index of the phase (0: projections, 1: nodes, 2: tasks), used for timings
 	 * @author Eric Crawford
 	 */
-	private void startThreads() throws InterruptedException {
-		synchronized(myLock){
-			
-			numThreadsComplete = 0;
-			threadsRunning = true;
-			myLock.notifyAll();  //release all the threads from the threadWait() loop
-			
-			while(threadsRunning || numThreadsWaiting < myThreads.length) 
-				myLock.wait();  //we don't want the stepthread to be able to continue (and start threads) until all the threads are waiting to be started
+	private void startThreads(int phase) throws InterruptedException {
+		long phaseInterval = myCollectTimings ? System.nanoTime() : 0;
+		
+		myBarrier.startPhase();
+		
+		if(myCollectTimings){
+			myPhaseEndTime = System.nanoTime();
+			phaseInterval = myPhaseEndTime - phaseInterval;
+			myAveragePhaseTimes[phase] = (myAveragePhaseTimes[phase] * myNumSteps + phaseInterval / 1e6) / (myNumSteps + 1);
 		}
 	}
 
 	/**
-	 * Called by the threads in this node pool. Called once they finish a phase (projections, nodes or tasks).
-	 * Forces them to wait on myLock.
+	 * Called by the threads in this node pool before their first phase. 
+	 * Returns when the first phase starts.
 	 * 
 	 * @author Eric Crawford
 	 */
 	public void threadWait() throws InterruptedException{
-		synchronized(myLock){
-			numThreadsWaiting++;
-			if(numThreadsWaiting == myThreads.length)
-				myLock.notifyAll(); //all the threads are done the step and in a waiting state, so free the stepthread
-			
-			while(!threadsRunning) {
-                myLock.wait();
-            }
-		}
+		myBarrier.threadWait();
 	}
 
 	/**
 	 * Called by the threads in this pool to signal that they are done a phase. 
+	 * Returns when the next phase starts.
 	 * 
 	 * @author Eric Crawford
 	 */
 	public void threadFinished() throws InterruptedException{
-		
-		synchronized(myLock){
-			numThreadsComplete++;
+		myBarrier.threadFinished();
+	}
 
-			if(numThreadsComplete == myThreads.length){
-				threadsRunning = false;
-				numThreadsWaiting=0;
-				myLock.notifyAll(); //this is to move the threads into the threadwait loop
-			}
-			else{
-				while(threadsRunning) //threads wait here when they are finished, but others are still running (i.e. wait here until end of one step)
-					myLock.wait();
-			}
-	
-			threadWait(); //threads wait here when they're all finished (i.e. wait here between steps)
-		}
+	/**
+	 * @return Time (System.nanoTime()) at which the stepping thread saw every thread finish 
+	 * 		the most recent phase, if collecting timings. Threads read this after threadFinished() 
+	 * 		returns, to time their wait at the barrier without the idle time before the next phase.
+	 */
+	public long getPhaseEndTime(){
+		return myPhaseEndTime;
 	}
 
 	/**
@@ -324,30 +489,111 @@ public class NodeThreadPool {
 	 * @author Eric Crawford
 	 */
 	public void kill(){
-		synchronized(myLock)
-		{
-			runFinished = true;
+		runFinished = true;
 
-			for(int i = 0; i < myThreads.length; i++){
-				myThreads[i].interrupt();
-			}
+		for(int i = 0; i < myThreads.length; i++){
+			myThreads[i].interrupt();
+		}
+		
+		if(myCollectTimings){
+			StringBuffer timingOutput = new StringBuffer();
+			timingOutput.append("Timings for NodeThreadPool:\n");
+			timingOutput.append("Barrier: " + myBarrier.getClass().getSimpleName() + "\n");
 			
-			if(myCollectTimings){
-				StringBuffer timingOutput = new StringBuffer();
-				timingOutput.append("Timings for NodeThreadPool:\n");
-				
-				long approxRunTime = new Date().getTime() - myRunStartTime;
-				timingOutput.append("Approximate total run time: " + approxRunTime + " ms\n");
-				
-				timingOutput.append("Average time per step: " + myAverageTimePerStep + " ms\n");
-				
-				System.out.print(timingOutput.toString());
-			}
+			long approxRunTime = System.currentTimeMillis() - myRunStartTime;
+			timingOutput.append("Approximate total run time: " + approxRunTime + " ms\n");
+			
+			timingOutput.append("Average time per step: " + myAverageTimePerStep + " ms\n");
+			timingOutput.append("Average time per step in projection phase: " + myAveragePhaseTimes[0] + " ms\n");
+			timingOutput.append("Average time per step in node phase: " + myAveragePhaseTimes[1] + " ms\n");
+			timingOutput.append("Average time per step in task phase: " + myAveragePhaseTimes[2] + " ms\n");
+			
+			System.out.print(timingOutput.toString());
+		}
 
-			myLock.notifyAll();
+		myBarrier.release();
+	}
+	
+	/**
+	 * Reorders nodes so that when the returned bounds are used to give each thread a contiguous
+	 * slice, the slices have about the same estimated cost. Each node (most expensive first)
+	 * goes to the thread with the least total cost so far.
+	 * 
+	 * @param nodes Nodes to reorder (in place)
+	 * @param numThreads Number of threads
+	 * @return Slice boundaries (thread i gets nodes[bounds[i]] to nodes[bounds[i+1]-1])
+	 */
+	public static int[] partitionNodes(Node[] nodes, int numThreads){
+		long[] costs = new long[nodes.length];
+		for(int i = 0; i < nodes.length; i++){
+			costs[i] = estimateCost(nodes[i]);
+		}
+		sortByCost(nodes, costs);
+		
+		long[] loads = new long[numThreads];
+		int[] owners = new int[nodes.length];
+		int[] counts = new int[numThreads];
+		for(int i = 0; i < nodes.length; i++){
+			int least = 0;
+			for(int j = 1; j < numThreads; j++){
+				if(loads[j] < loads[least]) least = j;
+			}
+			loads[least] += costs[i];
+			owners[i] = least;
+			counts[least]++;
+		}
+		
+		int[] bounds = new int[numThreads + 1];
+		for(int j = 0; j < numThreads; j++){
+			bounds[j+1] = bounds[j] + counts[j];
 		}
 		
+		Node[] sorted = nodes.clone();
+		int[] next = bounds.clone();
+		for(int i = 0; i < sorted.length; i++){
+			nodes[next[owners[i]]++] = sorted[i];
+		}
 		
+		return bounds;
+	}
+
+	/**
+	 * @param node A node to be run by the pool
+	 * @return Relative cost of running the node for a step (number of neurons for an Ensemble, 
+	 * 		otherwise 1)
+	 */
+	public static long estimateCost(Node node){
+		if(node instanceof Ensemble){
+			return Math.max(1, ((Ensemble) node).getNodes().length);
+		}
+		return 1;
+	}
+
+	/**
+	 * Sorts nodes in place in descending order of cost. The costs are sorted along with them.
+	 * 
+	 * @param nodes Nodes to sort
+	 * @param costs Cost of each node (e.g. accumulated run time)
+	 */
+	protected static void sortByCost(Node[] nodes, final long[] costs){
+		Integer[] order = new Integer[nodes.length];
+		for(int i = 0; i < order.length; i++){
+			order[i] = Integer.valueOf(i);
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				long ca = costs[a.intValue()];
+				long cb = costs[b.intValue()];
+				return ca > cb ? -1 : (ca < cb ? 1 : 0);
+			}
+		});
+		
+		Node[] unsortedNodes = nodes.clone();
+		long[] unsortedCosts = costs.clone();
+		for(int i = 0; i < order.length; i++){
+			nodes[i] = unsortedNodes[order[i].intValue()];
+			costs[i] = unsortedCosts[order[i].intValue()];
+		}
 	}
 	
     /**
@@ -0,0 +1,75 @@
+package ca.nengo.util.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a computation over a range of indices, split into contiguous pieces over threads if there
+ * is enough work to make starting them worthwhile. This is meant for one-off computations while
+ * building a model (e.g. activities and decoders); simulations are run by NodeThreadPool.
+ */
+public class ParallelRange {
+
+	/**
+	 * Approximate number of multiply-adds per thread below which threads aren't worth starting
+	 */
+	public static final long MIN_WORK_PER_THREAD = 1 << 18;
+
+	/**
+	 * A computation over a range of indices.
+	 */
+	public interface Task {
+		/**
+		 * @param start First index
+		 * @param end One past the last index
+		 */
+		public void run(int start, int end);
+	}
+
+	/**
+	 * Runs a task over indices [0, n), in this thread or split over several.
+	 *
+	 * @param n Number of indices
+	 * @param work Approximate total number of multiply-adds
+	 * @param numThreads Maximum number of threads to use
+	 * @param task Computation over a range of indices
+	 */
+	public static void run(int n, long work, int numThreads, final Task task) {
+		int threads = (int) Math.min(Math.min(numThreads, n), work / MIN_WORK_PER_THREAD);
+		if (threads <= 1) {
+			task.run(0, n);
+			return;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> futures = new ArrayList<Future<?>>(threads);
+			for (int t = 0; t < threads; t++) {
+				final int start = (int) ((long) n * t / threads);
+				final int end = (int) ((long) n * (t+1) / threads);
+				futures.add(executor.submit(new Runnable() {
+					public void run() {
+						task.run(start, end);
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+}
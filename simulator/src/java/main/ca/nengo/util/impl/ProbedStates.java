@@ -0,0 +1,79 @@
+package ca.nengo.util.impl;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+import ca.nengo.util.Environment;
+
+/**
+ * Counts the Probes connected to each state of a ProbeAware object, to decide whether its state
+ * histories need to be recorded.
+ */
+public class ProbedStates implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private Map<String, Integer> myCounts;
+
+	/**
+	 * Starts with no probed states.
+	 */
+	public ProbedStates() {
+		myCounts = new HashMap<String, Integer>(4);
+	}
+
+	/**
+	 * @param stateName Name of a state to which a Probe has been connected
+	 */
+	public void add(String stateName) {
+		Integer count = myCounts.get(stateName);
+		myCounts.put(stateName, Integer.valueOf(count == null ? 1 : count.intValue() + 1));
+	}
+
+	/**
+	 * @param stateName Name of a state from which a Probe has been disconnected
+	 */
+	public void remove(String stateName) {
+		Integer count = myCounts.get(stateName);
+		if (count == null || count.intValue() <= 1) {
+			myCounts.remove(stateName);
+		} else {
+			myCounts.put(stateName, Integer.valueOf(count.intValue() - 1));
+		}
+	}
+
+	/**
+	 * @param stateName Name of a state
+	 * @return True if at least one Probe is connected to the state
+	 */
+	public boolean isProbed(String stateName) {
+		return myCounts.containsKey(stateName);
+	}
+
+	/**
+	 * @return True if at least one Probe is connected to any state
+	 */
+	public boolean isAnyProbed() {
+		return !myCounts.isEmpty();
+	}
+
+	/**
+	 * @param states Probed states of an object (may be null if none have been probed)
+	 * @param stateName Name of a state
+	 * @return True if the history of the given state should be recorded
+	 */
+	public static boolean isRecording(ProbedStates states, String stateName) {
+		return !Environment.isRecordingOnlyProbed() || (states != null && states.isProbed(stateName));
+	}
+
+	/**
+	 * @param states Probed states of an object (may be null if none have been probed)
+	 * @return True if histories of the object's states should be recorded (for objects that record
+	 * 		all their states together)
+	 */
+	public static boolean isRecording(ProbedStates states) {
+		return !Environment.isRecordingOnlyProbed() || (states != null && states.isAnyProbed());
+	}
+
+}
@@ -0,0 +1,214 @@
+package ca.nengo.util.impl;
+
+import ca.nengo.math.PDFTools;
+import ca.nengo.util.VectorGenerator;
+
+/**
+ * <p>Generates quasi-random (low-discrepancy) vectors distributed on or in a hypersphere. These cover
+ * the hypersphere more evenly than the pseudo-random vectors of RandomHypersphereVG, so that fewer
+ * evaluation points are needed for the same decoding accuracy (which shrinks the activity matrix and
+ * the time needed to find decoders), and there are fewer gaps between encoders.</p>
+ *
+ * <p>Vectors come from a scrambled Halton sequence (a prime base per coordinate, with digits permuted
+ * by a random multiplier, and a random shift), which works in any number of dimensions. The coordinates
+ * are mapped to normally distributed values, which are normalized to lie on the surface, and scaled by
+ * one more coordinate to fill the volume. In one dimension, surface vectors alternate between the two
+ * ends of the interval, and in two dimensions, surface vectors come from a one-dimensional sequence of
+ * angles. The randomization is drawn from PDFTools, so it follows PDFTools.setSeed(...).</p>
+ */
+public class QuasiRandomHypersphereVG implements VectorGenerator, java.io.Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final double MIN_COORDINATE = 1e-10; //keeps normal quantiles finite
+
+	//coefficients of the inverse normal CDF approximation
+	private static final double P_LOW = .02425;
+	private static final double[] A = new double[]{-3.969683028665376e+01, 2.209460984245205e+02,
+		-2.759285104469687e+02, 1.383577518672690e+02, -3.066479806614716e+01, 2.506628277459239e+00};
+	private static final double[] B = new double[]{-5.447609879822406e+01, 1.615858368580409e+02,
+		-1.556989798598866e+02, 6.680131188771972e+01, -1.328068155288572e+01};
+	private static final double[] C = new double[]{-7.784894002430293e-03, -3.223964580411365e-01,
+		-2.400758277161838e+00, -2.549732539343734e+00, 4.374664141464968e+00, 2.938163982698783e+00};
+	private static final double[] D = new double[]{7.784695709041462e-03, 3.224671290700398e-01,
+		2.445134137142996e+00, 3.754408661907416e+00};
+
+	private boolean mySurface;
+	private float myRadius;
+
+	/**
+	 * @param surface If true, vectors are generated on surface of hypersphere; if false, throughout
+	 * 		volume of hypersphere
+	 * @param radius Radius of hypersphere
+	 */
+	public QuasiRandomHypersphereVG(boolean surface, float radius) {
+		setOnSurface(surface);
+		setRadius(radius);
+	}
+
+	/**
+	 * Uses default settings (on surface; radius 1)
+	 */
+	public QuasiRandomHypersphereVG() {
+		this(true, 1);
+	}
+
+	/**
+	 * @return True if generated vectors are on surface of hypersphere
+	 */
+	public boolean getOnSurface() {
+		return mySurface;
+	}
+
+	/**
+	 * @param onSurface True if generated vectors are on surface of hypersphere
+	 */
+	public void setOnSurface(boolean onSurface) {
+		mySurface = onSurface;
+	}
+
+	/**
+	 * @return Radius of hypersphere
+	 */
+	public float getRadius() {
+		return myRadius;
+	}
+
+	/**
+	 * @param radius Radius of hypersphere
+	 */
+	public void setRadius(float radius) {
+		if (radius <= 0) {
+			throw new IllegalArgumentException(radius + " is not a valid radius (must be > 0)");
+		}
+		myRadius = radius;
+	}
+
+	/**
+	 * @see ca.nengo.util.VectorGenerator#genVectors(int, int)
+	 */
+	public float[][] genVectors(int number, int dimension) {
+		float[][] result = new float[number][dimension];
+
+		if (dimension == 1 && mySurface) {
+			float sign = PDFTools.random() > .5 ? 1 : -1;
+			for (int i = 0; i < number; i++) {
+				result[i][0] = (i % 2 == 0) ? sign * myRadius : -sign * myRadius;
+			}
+		} else if (dimension == 1) {
+			Sequence sequence = new Sequence(1);
+			for (int i = 0; i < number; i++) {
+				result[i][0] = (float) (2 * sequence.get(i, 0) - 1) * myRadius;
+			}
+		} else if (dimension == 2 && mySurface) {
+			Sequence sequence = new Sequence(1);
+			for (int i = 0; i < number; i++) {
+				double angle = 2 * Math.PI * sequence.get(i, 0);
+				result[i][0] = (float) Math.cos(angle) * myRadius;
+				result[i][1] = (float) Math.sin(angle) * myRadius;
+			}
+		} else {
+			Sequence sequence = new Sequence(mySurface ? dimension : dimension + 1);
+			double[] vector = new double[dimension];
+			for (int i = 0; i < number; i++) {
+				double normSquared = 0;
+				for (int j = 0; j < dimension; j++) {
+					vector[j] = inverseNormal(sequence.get(i, j));
+					normSquared += vector[j] * vector[j];
+				}
+
+				double scale = myRadius / Math.sqrt(normSquared);
+				if (!mySurface) {
+					scale *= Math.pow(sequence.get(i, dimension), 1d / dimension);
+				}
+				for (int j = 0; j < dimension; j++) {
+					result[i][j] = (float) (vector[j] * scale);
+				}
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * A randomly scrambled and shifted Halton sequence, with coordinates in (0, 1).
+	 */
+	private static class Sequence {
+
+		private final int[] myBases;
+		private final int[] myMultipliers;
+		private final double[] myShifts;
+
+		public Sequence(int dimension) {
+			myBases = getPrimes(dimension);
+			myMultipliers = new int[dimension];
+			myShifts = new double[dimension];
+			for (int j = 0; j < dimension; j++) {
+				myMultipliers[j] = 1 + (int) Math.floor(PDFTools.random() * (myBases[j] - 1));
+				myShifts[j] = PDFTools.random();
+			}
+		}
+
+		/**
+		 * @param index Index of a point in the sequence (from 0)
+		 * @param j Coordinate
+		 * @return Value of the coordinate
+		 */
+		public double get(int index, int j) {
+			int base = myBases[j];
+			long i = index + 1; //the first Halton point is at the origin
+			double result = 0;
+			double f = 1d / base;
+			while (i > 0) {
+				int digit = (int) (i % base);
+				result += ((myMultipliers[j] * digit) % base) * f;
+				i /= base;
+				f /= base;
+			}
+
+			result += myShifts[j];
+			if (result >= 1) {
+				result -= 1;
+			}
+			return Math.min(Math.max(result, MIN_COORDINATE), 1 - MIN_COORDINATE);
+		}
+
+		private static int[] getPrimes(int n) {
+			int[] result = new int[n];
+			int count = 0;
+			for (int candidate = 2; count < n; candidate++) {
+				boolean prime = true;
+				for (int k = 0; k < count && result[k] * result[k] <= candidate; k++) {
+					if (candidate % result[k] == 0) {
+						prime = false;
+						break;
+					}
+				}
+				if (prime) {
+					result[count++] = candidate;
+				}
+			}
+			return result;
+		}
+	}
+
+	//inverse of the standard normal CDF (Acklam's rational approximation; relative error < 1.2e-9)
+	private static double inverseNormal(double p) {
+		double q, r;
+		if (p < P_LOW) {
+			q = Math.sqrt(-2 * Math.log(p));
+			return (((((C[0]*q + C[1])*q + C[2])*q + C[3])*q + C[4])*q + C[5])
+				/ ((((D[0]*q + D[1])*q + D[2])*q + D[3])*q + 1);
+		} else if (p > 1 - P_LOW) {
+			q = Math.sqrt(-2 * Math.log(1 - p));
+			return -(((((C[0]*q + C[1])*q + C[2])*q + C[3])*q + C[4])*q + C[5])
+				/ ((((D[0]*q + D[1])*q + D[2])*q + D[3])*q + 1);
+		} else {
+			q = p - .5;
+			r = q * q;
+			return (((((A[0]*r + A[1])*r + A[2])*r + A[3])*r + A[4])*r + A[5])*q
+				/ (((((B[0]*r + B[1])*r + B[2])*r + B[3])*r + B[4])*r + 1);
+		}
+	}
+
+}
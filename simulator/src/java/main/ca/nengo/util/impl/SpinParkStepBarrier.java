@@ -0,0 +1,170 @@
+package ca.nengo.util.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A StepBarrier in which waiting threads spin for a bounded number of iterations
+ * before parking. Phases are numbered; a thread that finishes a phase waits until the
+ * phase number changes, and the stepping thread waits until every thread has checked in.
+ * With short phases and at least as many cores as threads, most waits end while spinning,
+ * which avoids the context switches of MonitorStepBarrier. Spinning uses CPU, so this
+ * barrier should not be used with more threads than available cores.
+ */
+public class SpinParkStepBarrier implements StepBarrier {
+
+	/**
+	 * Default number of spin iterations before a waiting thread parks
+	 */
+	public static final int DEFAULT_SPINS = 10000;
+
+	private final int mySpins;
+	private Thread[] myThreads;
+
+	private volatile int myPhase;
+	private final AtomicInteger myRemaining = new AtomicInteger();
+	private final AtomicInteger myParked = new AtomicInteger();
+	private volatile Thread myStepThread;
+	private volatile boolean myStepThreadParked;
+	private volatile boolean myReleased;
+
+	/**
+	 * Uses DEFAULT_SPINS.
+	 */
+	public SpinParkStepBarrier() {
+		this(DEFAULT_SPINS);
+	}
+
+	/**
+	 * @param spins Number of times a waiting thread checks the barrier before parking
+	 */
+	public SpinParkStepBarrier(int spins) {
+		mySpins = spins;
+	}
+
+	/**
+	 * @return Number of times a waiting thread checks the barrier before parking
+	 */
+	public int getSpins() {
+		return mySpins;
+	}
+
+	/**
+	 * @see ca.nengo.util.impl.StepBarrier#initialize(java.lang.Thread[])
+	 */
+	public void initialize(Thread[] threads) {
+		myThreads = threads.clone();
+		myPhase = 0;
+		myRemaining.set(0);
+		myParked.set(0);
+		myReleased = false;
+	}
+
+	/**
+	 * @see ca.nengo.util.impl.StepBarrier#startPhase()
+	 */
+	public void startPhase() throws InterruptedException {
+		myStepThread = Thread.currentThread();
+		myRemaining.set(myThreads.length);
+		myPhase++;
+
+		//a thread increments myParked before its last check of myPhase, so if we see zero here
+		//any thread that parks later will see the new phase first
+		if (myParked.get() > 0) {
+			for (int i = 0; i < myThreads.length; i++) {
+				LockSupport.unpark(myThreads[i]);
+			}
+		}
+
+		for (int i = 0; myRemaining.get() > 0; i++) {
+			checkInterrupt();
+			if (i >= mySpins) {
+				myStepThreadParked = true;
+				if (myRemaining.get() > 0) {
+					LockSupport.park(this);
+				}
+				myStepThreadParked = false;
+			}
+		}
+	}
+
+	/**
+	 * @see ca.nengo.util.impl.StepBarrier#threadWait()
+	 */
+	public void threadWait() throws InterruptedException {
+		awaitPhaseAfter(0);
+	}
+
+	/**
+	 * @see ca.nengo.util.impl.StepBarrier#threadFinished()
+	 */
+	public void threadFinished() throws InterruptedException {
+		//the phase can't advance until this thread has checked in, so read it first
+		int phase = myPhase;
+		if (myRemaining.decrementAndGet() == 0 && myStepThreadParked) {
+			LockSupport.unpark(myStepThread);
+		}
+		awaitPhaseAfter(phase);
+	}
+
+	/**
+	 * @see ca.nengo.util.impl.StepBarrier#release()
+	 */
+	public void release() {
+		myReleased = true;
+		for (int i = 0; myThreads != null && i < myThreads.length; i++) {
+			LockSupport.unpark(myThreads[i]);
+		}
+		if (myStepThread != null) {
+			LockSupport.unpark(myStepThread);
+		}
+	}
+
+	private void awaitPhaseAfter(int phase) throws InterruptedException {
+		for (int i = 0; myPhase == phase && !myReleased; i++) {
+			checkInterrupt();
+			if (i >= mySpins) {
+				myParked.incrementAndGet();
+				if (myPhase == phase && !myReleased) {
+					LockSupport.park(this);
+				}
+				myParked.decrementAndGet();
+			}
+		}
+	}
+
+	private static void checkInterrupt() throws InterruptedException {
+		if (Thread.interrupted()) {
+			throw new InterruptedException();
+		}
+	}
+
+	/**
+	 * Makes SpinParkStepBarriers.
+	 */
+	public static class Factory implements StepBarrier.Factory {
+
+		private int mySpins;
+
+		/**
+		 * Uses DEFAULT_SPINS.
+		 */
+		public Factory() {
+			this(DEFAULT_SPINS);
+		}
+
+		/**
+		 * @param spins Number of times a waiting thread checks the barrier before parking
+		 */
+		public Factory(int spins) {
+			mySpins = spins;
+		}
+
+		/**
+		 * @see ca.nengo.util.impl.StepBarrier.Factory#make()
+		 */
+		public StepBarrier make() {
+			return new SpinParkStepBarrier(mySpins);
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package ca.nengo.util.impl;
+
+/**
+ * Synchronizes the phases (projections, nodes, tasks) of a NodeThreadPool step.
+ * The stepping thread calls startPhase() once per phase; the pool's threads call
+ * threadWait() once before their first phase and threadFinished() at the end of each
+ * phase. No thread may begin a phase until every thread has finished the previous one.
+ */
+public interface StepBarrier {
+
+	/**
+	 * @param threads The threads that will run phases (called once, before the threads start)
+	 */
+	public void initialize(Thread[] threads);
+
+	/**
+	 * Called by the stepping thread. Releases all threads into the next phase and returns
+	 * once they have all finished it.
+	 *
+	 * @throws InterruptedException if the stepping thread is interrupted while waiting
+	 */
+	public void startPhase() throws InterruptedException;
+
+	/**
+	 * Called by each thread before its first phase. Returns when the first phase starts.
+	 *
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	public void threadWait() throws InterruptedException;
+
+	/**
+	 * Called by each thread when it finishes a phase. Returns when the next phase starts.
+	 *
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	public void threadFinished() throws InterruptedException;
+
+	/**
+	 * Wakes any waiting threads so that the pool can shut down.
+	 */
+	public void release();
+
+	/**
+	 * Creates a new StepBarrier for each NodeThreadPool.
+	 */
+	public static interface Factory {
+
+		/**
+		 * @return A new StepBarrier
+		 */
+		public StepBarrier make();
+	}
+}
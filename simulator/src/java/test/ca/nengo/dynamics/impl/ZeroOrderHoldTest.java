@@ -0,0 +1,84 @@
+package ca.nengo.dynamics.impl;
+
+import ca.nengo.model.Units;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for ZeroOrderHold.
+ */
+public class ZeroOrderHoldTest extends TestCase {
+
+	public void testFirstOrder() {
+		float tau = .01f;
+		float dt = .001f;
+		LTISystem system = new SimpleLTISystem(new float[]{-1f/tau}, new float[][]{new float[]{1f}},
+				new float[][]{new float[]{1f/tau}}, new float[1], new Units[]{Units.UNK});
+		ZeroOrderHold hold = new ZeroOrderHold(system, dt);
+
+		//unit-area PSC filter, so the step response is 1 - e^(-t/tau)
+		float[] x = new float[1];
+		for (int i = 1; i <= 20; i++) {
+			float y = hold.step(x, 1f, null);
+			assertEquals(1 - Math.exp(-i*dt/tau), y, 1e-5);
+		}
+	}
+
+	public void testSingularDynamics() {
+		LTISystem system = new LTISystem(new float[][]{new float[]{0f}}, new float[][]{new float[]{2f}},
+				new float[][]{new float[]{1f}}, new float[][]{new float[]{.5f}}, new float[1], new Units[]{Units.UNK});
+		ZeroOrderHold hold = new ZeroOrderHold(system, .1f);
+
+		float[] x = new float[]{1f};
+		assertEquals(1f + .2f*3f + .5f*3f, hold.step(x, 3f, null), 1e-5);
+		assertEquals(1.6f, x[0], 1e-5);
+	}
+
+	public void testSecondOrder() {
+		//second-order PSC with time constants .005 and .02 and unit DC gain
+		float tau1 = .005f;
+		float tau2 = .02f;
+		float p = 1f / (tau1*tau2);
+		LTISystem system = CanonicalModel.getRealization(new float[]{0f, p}, new float[]{(tau1+tau2)*p, p}, 0f);
+		float dt = .001f;
+		ZeroOrderHold hold = new ZeroOrderHold(system, dt);
+
+		float[] x = new float[2];
+		double[] fine = new double[2];
+		float[][] A = system.getA(0);
+		float[][] B = system.getB(0);
+		float[][] C = system.getC(0);
+		int substeps = 1000;
+		double h = dt / substeps;
+		float y = 0;
+		for (int i = 0; i < 50; i++) {
+			y = hold.step(x, 1f, null);
+			for (int j = 0; j < substeps; j++) {
+				double d0 = A[0][0]*fine[0] + A[0][1]*fine[1] + B[0][0];
+				double d1 = A[1][0]*fine[0] + A[1][1]*fine[1] + B[1][0];
+				fine[0] += d0 * h;
+				fine[1] += d1 * h;
+			}
+			assertEquals(C[0][0]*fine[0] + C[0][1]*fine[1], y, 1e-3);
+		}
+		assertTrue(y > .5f && y < 1f); //on the way to steady state
+	}
+
+	public void testHigherOrder() {
+		//poles at -100, -200 and -300, unit DC gain
+		LTISystem system = CanonicalModel.getRealization(new float[]{0f, 0f, 6e6f}, new float[]{600f, 110000f, 6e6f}, 0f);
+		ZeroOrderHold whole = new ZeroOrderHold(system, .002f);
+		ZeroOrderHold half = new ZeroOrderHold(system, .001f);
+
+		//with constant input, two half steps should match one whole step
+		float[] x1 = new float[3];
+		float[] x2 = new float[3];
+		float[] buffer = new float[3];
+		for (int i = 0; i < 10; i++) {
+			float y1 = whole.step(x1, 1f, buffer);
+			half.step(x2, 1f, buffer);
+			float y2 = half.step(x2, 1f, buffer);
+			assertEquals(y1, y2, 1e-4);
+		}
+	}
+
+}
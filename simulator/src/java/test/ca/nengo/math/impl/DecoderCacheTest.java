@@ -0,0 +1,128 @@
+package ca.nengo.math.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import ca.nengo.math.Function;
+import ca.nengo.math.LinearApproximator;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for DecoderCache.
+ */
+public class DecoderCacheTest extends TestCase {
+
+	private File myDirectory;
+	private DecoderCache myCache;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		myDirectory = File.createTempFile("decoders", "");
+		myDirectory.delete();
+		myCache = new DecoderCache(myDirectory);
+	}
+
+	protected void tearDown() throws Exception {
+		myCache.clear();
+		myDirectory.delete();
+		super.tearDown();
+	}
+
+	public void testKey() {
+		float[][] a = new float[][]{new float[]{1, 2}, new float[]{3, 4}};
+		float[][] b = new float[][]{new float[]{1, 2}, new float[]{3, 4}};
+		String key = new DecoderCache.Key("test").add(a).add(.1f).getHash();
+		assertEquals(key, new DecoderCache.Key("test").add(b).add(.1f).getHash());
+
+		b[1][1] = 4.0001f;
+		assertFalse(key.equals(new DecoderCache.Key("test").add(b).add(.1f).getHash()));
+		assertFalse(key.equals(new DecoderCache.Key("other").add(a).add(.1f).getHash()));
+		assertFalse(key.equals(new DecoderCache.Key("test").add(a).add(.2f).getHash()));
+	}
+
+	public void testGammaInverse() {
+		float[][] values = new float[][]{new float[]{1, 2, 3}, new float[]{4, 5, 6}};
+		double[][] gammaInverse = new double[][]{new double[]{1.5, -Math.PI}, new double[]{1e-20, 7}};
+
+		assertFalse(myCache.hasGammaInverse("a"));
+		assertNull(myCache.getGammaInverse("a"));
+		myCache.putGammaInverse("a", values, gammaInverse);
+		assertTrue(myCache.hasGammaInverse("a"));
+
+		Object[] cached = myCache.getGammaInverse("a");
+		float[][] cachedValues = (float[][]) cached[0];
+		double[][] cachedInverse = (double[][]) cached[1];
+		for (int i = 0; i < values.length; i++) {
+			for (int j = 0; j < values[i].length; j++) {
+				assertEquals(values[i][j], cachedValues[i][j]);
+			}
+			for (int j = 0; j < gammaInverse[i].length; j++) {
+				assertEquals(gammaInverse[i][j], cachedInverse[i][j]);
+			}
+		}
+	}
+
+	public void testDecoders() {
+		float[][] decoders = new float[][]{new float[]{1, 2}, new float[]{3, 4}, new float[]{5, 6}};
+		assertNull(myCache.getDecoders("b"));
+		myCache.putDecoders("b", decoders);
+		float[][] cached = myCache.getDecoders("b");
+		assertEquals(3, cached.length);
+		assertEquals(6f, cached[2][1]);
+	}
+
+	public void testCachedApproximator() throws IOException {
+		Random random = new Random(1);
+		float[][] evalPoints = new float[100][];
+		for (int k = 0; k < evalPoints.length; k++) {
+			evalPoints[k] = new float[]{2 * random.nextFloat() - 1};
+		}
+		float[][] values = new float[30][evalPoints.length];
+		for (int i = 0; i < values.length; i++) {
+			float intercept = 1.8f * random.nextFloat() - .9f;
+			for (int k = 0; k < evalPoints.length; k++) {
+				values[i][k] = Math.max(0, 100 * (evalPoints[k][0] - intercept));
+			}
+		}
+		Function[] targets = new Function[]{new PostfixFunction("x0", 1), new PostfixFunction("x0*x0", 1)};
+
+		WeightedCostApproximator.Factory factory = new WeightedCostApproximator.Factory(.1f, true);
+		factory.setCache(myCache);
+		LinearApproximator first = factory.getApproximator(evalPoints, values);
+		float[][] decoders = first.findCoefficients(targets);
+		float[] single = first.findCoefficients(targets[1]);
+
+		//a new approximator from the same values should reuse the noise, pseudoinverse and decoders
+		LinearApproximator second = factory.getApproximator(evalPoints, values);
+		float[][] cachedDecoders = second.findCoefficients(targets);
+		float[] cachedSingle = second.findCoefficients(targets[1]);
+		for (int i = 0; i < values.length; i++) {
+			assertEquals(decoders[i][0], cachedDecoders[i][0]);
+			assertEquals(decoders[i][1], cachedDecoders[i][1]);
+			assertEquals(single[i], cachedSingle[i]);
+		}
+
+		String key = ((WeightedCostApproximator) first).getCacheKey();
+		assertEquals(key, ((WeightedCostApproximator) second).getCacheKey());
+		assertTrue(myCache.hasGammaInverse(key));
+
+		//different values aren't
+		values[0][0] += 1;
+		LinearApproximator third = factory.getApproximator(evalPoints, values);
+		assertFalse(key.equals(((WeightedCostApproximator) third).getCacheKey()));
+		assertEquals(values.length, third.findCoefficients(targets).length);
+		values[0][0] -= 1;
+
+		//nor are those of a different pseudoinverse method
+		boolean randomized = WeightedCostApproximator.getUseRandomizedSVD();
+		try {
+			WeightedCostApproximator.setUseRandomizedSVD(!randomized);
+			LinearApproximator fourth = factory.getApproximator(evalPoints, values);
+			assertFalse(key.equals(((WeightedCostApproximator) fourth).getCacheKey()));
+		} finally {
+			WeightedCostApproximator.setUseRandomizedSVD(randomized);
+		}
+	}
+
+}
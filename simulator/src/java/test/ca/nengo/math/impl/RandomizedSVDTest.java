@@ -0,0 +1,133 @@
+package ca.nengo.math.impl;
+
+import java.util.Random;
+
+import Jama.Matrix;
+import Jama.SingularValueDecomposition;
+import ca.nengo.math.Function;
+import ca.nengo.math.LinearApproximator;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for RandomizedSVD.
+ */
+public class RandomizedSVDTest extends TestCase {
+
+	public void testSingularValues() {
+		double[][] gamma = getGamma(300, 500, new Random(1));
+		double[] expected = new Matrix(gamma).svd().getSingularValues();
+
+		RandomizedSVD svd = new RandomizedSVD(gamma, 20, 2);
+		double[] actual = svd.getSingularValues();
+		assertEquals(20 + RandomizedSVD.OVERSAMPLING, actual.length);
+		for (int i = 0; i < 20; i++) {
+			assertEquals(expected[i], actual[i], 1e-6 * expected[i]);
+		}
+	}
+
+	public void testPseudoInverse() {
+		double[][] gamma = getGamma(300, 500, new Random(2));
+		int nSV = 20;
+
+		SingularValueDecomposition full = new Matrix(gamma).svd();
+		Matrix sInv = full.getS().inverse();
+		for (int j = nSV; j < gamma.length; j++) {
+			sInv.set(j, j, 0d);
+		}
+		double[][] expected = full.getV().times(sInv).times(full.getU().transpose()).getArray();
+
+		RandomizedSVD svd = new RandomizedSVD(gamma, nSV, 2);
+		assertEquals(nSV, svd.getRank(0, nSV));
+		double[][] actual = svd.pseudoInverse(0, nSV);
+
+		double scale = 0;
+		for (double[] row : expected) {
+			for (double element : row) {
+				scale = Math.max(scale, Math.abs(element));
+			}
+		}
+		for (int i = 0; i < expected.length; i++) {
+			for (int j = 0; j < expected.length; j++) {
+				assertEquals(expected[i][j], actual[i][j], 1e-4 * scale);
+				assertEquals(actual[i][j], actual[j][i], 0);
+			}
+		}
+	}
+
+	public void testRankDeficient() {
+		double[][] gamma = getGamma(100, 5, new Random(3));
+		RandomizedSVD svd = new RandomizedSVD(gamma, 20, 1);
+		assertTrue(svd.getRank(1, 20) <= 5);
+		double[][] inverse = svd.pseudoInverse(1, 20);
+		for (double[] row : inverse) {
+			for (double element : row) {
+				assertFalse(Double.isNaN(element) || Double.isInfinite(element));
+			}
+		}
+	}
+
+	public void testWeightedCostApproximator() {
+		boolean use = WeightedCostApproximator.getUseRandomizedSVD();
+		try {
+			float[][] evalPoints = new float[500][];
+			for (int i = 0; i < evalPoints.length; i++) {
+				evalPoints[i] = new float[]{-1f + 2f * i / (evalPoints.length - 1)};
+			}
+			float[][] values = getTuningCurves(300, evalPoints, new Random(4));
+			Function target = new PostfixFunction("x0*x0", 1);
+			WeightedCostApproximator.Factory factory = new WeightedCostApproximator.Factory(0f, 20, true);
+
+			WeightedCostApproximator.setUseRandomizedSVD(true);
+			float randomized = getRMSError(factory.getApproximator(evalPoints, values), target);
+			WeightedCostApproximator.setUseRandomizedSVD(false);
+			float full = getRMSError(factory.getApproximator(evalPoints, values), target);
+
+			//decoders differ slightly where the truncation splits nearly equal singular values
+			assertEquals(full, randomized, .01f * full);
+		} finally {
+			WeightedCostApproximator.setUseRandomizedSVD(use);
+		}
+	}
+
+	private static float getRMSError(LinearApproximator approximator, Function target) {
+		float[] coefficients = approximator.findCoefficients(target);
+		float[][] evalPoints = approximator.getEvalPoints();
+		float[][] values = approximator.getValues();
+		double sum = 0;
+		for (int k = 0; k < evalPoints.length; k++) {
+			float estimate = 0;
+			for (int i = 0; i < coefficients.length; i++) {
+				estimate += coefficients[i] * values[i][k];
+			}
+			float error = estimate - target.map(evalPoints[k]);
+			sum += error * error;
+		}
+		return (float) Math.sqrt(sum / evalPoints.length);
+	}
+
+	private static double[][] getGamma(int n, int numPoints, Random random) {
+		float[][] evalPoints = new float[numPoints][];
+		for (int i = 0; i < numPoints; i++) {
+			evalPoints[i] = new float[]{2 * random.nextFloat() - 1};
+		}
+		float[][] values = getTuningCurves(n, evalPoints, random);
+		float[] weights = new float[numPoints];
+		java.util.Arrays.fill(weights, 1f);
+		return WeightedCostApproximator.findGamma(values, weights, 1);
+	}
+
+	//rectified linear tuning curves with random gains, intercepts and directions
+	private static float[][] getTuningCurves(int n, float[][] evalPoints, Random random) {
+		float[][] result = new float[n][evalPoints.length];
+		for (int i = 0; i < n; i++) {
+			float encoder = random.nextBoolean() ? 1 : -1;
+			float intercept = 1.9f * random.nextFloat() - .95f;
+			float gain = 50 + 100 * random.nextFloat();
+			for (int k = 0; k < evalPoints.length; k++) {
+				result[i][k] = Math.max(0, gain * (encoder * evalPoints[k][0] - intercept));
+			}
+		}
+		return result;
+	}
+
+}
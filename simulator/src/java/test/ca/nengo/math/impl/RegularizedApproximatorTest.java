@@ -0,0 +1,159 @@
+package ca.nengo.math.impl;
+
+import java.util.Random;
+
+import ca.nengo.TestUtil;
+import ca.nengo.math.Function;
+import ca.nengo.math.LinearApproximator;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for RegularizedApproximator.
+ */
+public class RegularizedApproximatorTest extends TestCase {
+
+	public void testFindCoefficients() {
+		float[] frequencies = new float[]{1, 5, 8};
+		float[] amplitudes = new float[]{.1f, .2f, .3f};
+		float[] phases = new float[]{0, -1, 1};
+
+		float[][] evalPoints = new float[100][];
+		for (int i = 0; i < evalPoints.length; i++) {
+			evalPoints[i] = new float[]{(float) i / (float) evalPoints.length};
+		}
+
+		Function target = new FourierFunction(frequencies, amplitudes, phases);
+		float[][] values = new float[frequencies.length][];
+		for (int i = 0; i < frequencies.length; i++) {
+			Function component = new FourierFunction(new float[]{frequencies[i]}, new float[]{1}, new float[]{phases[i]});
+			values[i] = new float[evalPoints.length];
+			for (int j = 0; j < evalPoints.length; j++) {
+				values[i][j] = component.map(evalPoints[j]);
+			}
+		}
+
+		LinearApproximator approximator = new RegularizedApproximator.Factory(0f, true).getApproximator(evalPoints, values);
+		float[] coefficients = approximator.findCoefficients(target);
+		for (int i = 0; i < amplitudes.length; i++) {
+			TestUtil.assertClose(amplitudes[i], coefficients[i], .0001f);
+		}
+	}
+
+	public void testSimilarToWeightedCost() {
+		float[][] evalPoints = getEvalPoints(200);
+		float[][] values = getTuningCurves(100, evalPoints, new Random(1));
+		Function target = new PostfixFunction("x0*x0", 1);
+
+		float noise = .1f;
+		LinearApproximator regularized = new RegularizedApproximator.Factory(noise, true).getApproximator(evalPoints, values);
+		LinearApproximator weighted = new WeightedCostApproximator.Factory(noise, true).getApproximator(evalPoints, values);
+		float regularizedError = getRMSError(regularized, target);
+		float weightedError = getRMSError(weighted, target);
+
+		assertTrue(regularizedError < .05f);
+		assertTrue(regularizedError < 2 * weightedError + .005f);
+
+		//same regularization means decoders of similar size
+		float ratio = norm(regularized.findCoefficients(target)) / norm(weighted.findCoefficients(target));
+		assertTrue(ratio > .5f && ratio < 2f);
+	}
+
+	public void testConjugateGradients() {
+		int threads = WeightedCostApproximator.getNumThreads();
+		try {
+			WeightedCostApproximator.setNumThreads(4);
+
+			float[][] evalPoints = getEvalPoints(300);
+			float[][] values = getTuningCurves(800, evalPoints, new Random(2));
+			Function target = new PostfixFunction("sin(3*x0)", 1);
+
+			RegularizedApproximator.Factory factory = new RegularizedApproximator.Factory(.1f, true);
+			float[] cholesky = factory.getApproximator(evalPoints, values).findCoefficients(target);
+			factory.setCGThreshold(0);
+			float[] cg = factory.getApproximator(evalPoints, values).findCoefficients(target);
+
+			float scale = norm(cholesky);
+			for (int i = 0; i < cholesky.length; i++) {
+				assertEquals(cholesky[i], cg[i], 1e-3 * scale);
+			}
+		} finally {
+			WeightedCostApproximator.setNumThreads(threads);
+		}
+	}
+
+	public void testFindCoefficientsBatch() {
+		float[][] evalPoints = getEvalPoints(200);
+		float[][] values = getTuningCurves(100, evalPoints, new Random(4));
+		Function[] targets = new Function[]{new PostfixFunction("x0", 1), new PostfixFunction("x0*x0", 1)};
+
+		LinearApproximator approximator = new RegularizedApproximator.Factory(.1f, true).getApproximator(evalPoints, values);
+		float[][] coefficients = approximator.findCoefficients(targets);
+		for (int d = 0; d < targets.length; d++) {
+			float[] single = approximator.findCoefficients(targets[d]);
+			for (int i = 0; i < single.length; i++) {
+				assertEquals(single[i], coefficients[i][d], 1e-6f);
+			}
+		}
+	}
+
+	public void testSingular() {
+		float[][] evalPoints = getEvalPoints(50);
+		float[][] values = getTuningCurves(10, evalPoints, new Random(3));
+		values[1] = values[0].clone();
+
+		RegularizedApproximator approximator = (RegularizedApproximator) new RegularizedApproximator.Factory(0f, true)
+			.getApproximator(evalPoints, values);
+		assertTrue(approximator.getRidge() > 0);
+		float[] coefficients = approximator.findCoefficients(new PostfixFunction("x0", 1));
+		for (float c : coefficients) {
+			assertFalse(Float.isNaN(c));
+		}
+	}
+
+	private static float[][] getEvalPoints(int n) {
+		float[][] result = new float[n][];
+		for (int i = 0; i < n; i++) {
+			result[i] = new float[]{-1f + 2f * i / (n-1)};
+		}
+		return result;
+	}
+
+	//rectified linear tuning curves with random gains, intercepts and directions
+	private static float[][] getTuningCurves(int n, float[][] evalPoints, Random random) {
+		float[][] result = new float[n][evalPoints.length];
+		for (int i = 0; i < n; i++) {
+			float encoder = random.nextBoolean() ? 1 : -1;
+			float intercept = 1.9f * random.nextFloat() - .95f;
+			float gain = 50 + 100 * random.nextFloat();
+			for (int k = 0; k < evalPoints.length; k++) {
+				result[i][k] = Math.max(0, gain * (encoder * evalPoints[k][0] - intercept));
+			}
+		}
+		return result;
+	}
+
+	private static float getRMSError(LinearApproximator approximator, Function target) {
+		float[] coefficients = approximator.findCoefficients(target);
+		float[][] evalPoints = approximator.getEvalPoints();
+		float[][] values = approximator.getValues();
+		double sum = 0;
+		for (int k = 0; k < evalPoints.length; k++) {
+			float estimate = 0;
+			for (int i = 0; i < coefficients.length; i++) {
+				estimate += coefficients[i] * values[i][k];
+			}
+			float error = estimate - target.map(evalPoints[k]);
+			sum += error * error;
+		}
+		return (float) Math.sqrt(sum / evalPoints.length);
+	}
+
+	private static float norm(float[] vector) {
+		double sum = 0;
+		for (float v : vector) {
+			sum += v * v;
+		}
+		return (float) Math.sqrt(sum);
+	}
+
+}
@@ -0,0 +1,87 @@
+package ca.nengo.math.impl;
+
+import junit.framework.TestCase;
+import ca.nengo.math.Function;
+import ca.nengo.util.Environment;
+
+/**
+ * Unit tests for ThreadSafeFunctions.
+ */
+public class ThreadSafeFunctionsTest extends TestCase {
+
+	public void testIsThreadSafe() {
+		assertTrue(ThreadSafeFunctions.isThreadSafe(new IdentityFunction(2, 0)));
+		assertTrue(ThreadSafeFunctions.isThreadSafe(new ConstantFunction(1, 1)));
+		assertTrue(ThreadSafeFunctions.isThreadSafe(new SimpleFunctions.Sin()));
+		assertTrue(ThreadSafeFunctions.isThreadSafe(new PostfixFunction("x0*x1", 2)));
+		assertTrue(ThreadSafeFunctions.isThreadSafe(new PostfixFunction("sin(x0)", 1)));
+
+		assertFalse(ThreadSafeFunctions.isThreadSafe(new FixedSignalFunction(new float[][]{{1, 2}}, 0)));
+		assertFalse(ThreadSafeFunctions.isThreadSafe(new CountingFunction()));
+		assertFalse(ThreadSafeFunctions.isThreadSafe(new IdentityFunction(1, 0) {
+			private static final long serialVersionUID = 1L;
+		}));
+	}
+
+	public void testIsParallelizable() {
+		Function[] safe = new Function[]{new IdentityFunction(1, 0), new ConstantFunction(1, 0)};
+		Function[] unsafe = new Function[]{new IdentityFunction(1, 0), new CountingFunction()};
+
+		boolean parallelFunctions = Environment.isParallelFunctions();
+		try {
+			Environment.setParallelFunctions(false);
+			assertTrue(ThreadSafeFunctions.isParallelizable(safe));
+			assertFalse(ThreadSafeFunctions.isParallelizable(unsafe));
+
+			Environment.setParallelFunctions(true);
+			assertTrue(ThreadSafeFunctions.isParallelizable(unsafe));
+		} finally {
+			Environment.setParallelFunctions(parallelFunctions);
+		}
+	}
+
+	public void testSequentialEvaluation() {
+		int n = 20000; //enough work to use several threads if the functions were thread-safe
+		float[][] points = new float[n][];
+		for (int i = 0; i < n; i++) {
+			points[i] = new float[]{i};
+		}
+
+		CountingFunction a = new CountingFunction();
+		CountingFunction b = new CountingFunction();
+		a.myOther = b;
+		b.myOther = a;
+		float[][] values = WeightedCostApproximator.evaluate(new Function[]{a, b}, points, 4);
+
+		//each point is evaluated by every function before the next
+		assertEquals(n, a.myCalls);
+		assertEquals(n, b.myCalls);
+		assertFalse(a.myOutOfOrder || b.myOutOfOrder);
+		assertEquals(n - 1f, values[1][n-1]);
+	}
+
+	//records whether it's called from another thread, or at a point that another function hasn't reached
+	private static class CountingFunction extends AbstractFunction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Thread myThread = Thread.currentThread();
+		private CountingFunction myOther;
+		private int myCalls;
+		private boolean myOutOfOrder;
+
+		public CountingFunction() {
+			super(1);
+		}
+
+		@Override
+		public float map(float[] from) {
+			if (Thread.currentThread() != myThread || (myOther != null && Math.abs(myOther.myCalls - myCalls) > 1)) {
+				myOutOfOrder = true;
+			}
+			myCalls++;
+			return from[0];
+		}
+	}
+
+}
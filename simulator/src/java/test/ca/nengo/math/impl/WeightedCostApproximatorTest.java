@@ -3,6 +3,8 @@
  */
 package ca.nengo.math.impl;
 
+import java.util.Random;
+
 import ca.nengo.TestUtil;
 import ca.nengo.math.Function;
 import ca.nengo.math.LinearApproximator;
@@ -105,6 +107,80 @@ public class WeightedCostApproximatorTest extends TestCase {
 		
 	}
 	
+	/*
+	 * Test method for 'ca.nengo.math.impl.WeightedCostApproximator.findGamma(float[][], float[], int)'
+	 */
+	public void testFindGamma() {
+		Random random = new Random(1);
+		float[][] values = new float[150][]; //more than two tiles, with a partial one
+		for (int i = 0; i < values.length; i++) {
+			values[i] = new float[700]; //more than one pass over each tile
+			for (int k = 0; k < values[i].length; k++) {
+				values[i][k] = random.nextFloat();
+			}
+		}
+		float[] weights = new float[values[0].length];
+		for (int k = 0; k < weights.length; k++) {
+			weights[k] = random.nextFloat() / weights.length;
+		}
+
+		double[][] gamma = WeightedCostApproximator.findGamma(values, weights, 4);
+		double[][] serial = WeightedCostApproximator.findGamma(values, weights, 1);
+		for (int i = 0; i < values.length; i++) {
+			for (int j = 0; j < values.length; j++) {
+				double expected = 0;
+				for (int k = 0; k < weights.length; k++) {
+					expected += values[i][k] * values[j][k] * weights[k];
+				}
+				assertEquals(expected, gamma[i][j], 1e-5);
+				assertEquals(gamma[i][j], gamma[j][i]);
+				assertEquals(gamma[i][j], serial[i][j]);
+			}
+		}
+	}
+	
+	/*
+	 * Test method for 'ca.nengo.math.impl.WeightedCostApproximator.findCoefficients(Function[])'
+	 */
+	public void testFindCoefficientsBatch() {
+		int threads = WeightedCostApproximator.getNumThreads();
+		try {
+			WeightedCostApproximator.setNumThreads(4);
+
+			Random random = new Random(2);
+			float[][] evalPoints = new float[2000][];
+			for (int k = 0; k < evalPoints.length; k++) {
+				evalPoints[k] = new float[]{2 * random.nextFloat() - 1};
+			}
+			float[][] values = new float[200][evalPoints.length];
+			for (int i = 0; i < values.length; i++) {
+				float encoder = random.nextBoolean() ? 1 : -1;
+				float intercept = 1.8f * random.nextFloat() - .9f;
+				for (int k = 0; k < evalPoints.length; k++) {
+					values[i][k] = Math.max(0, 100 * (encoder * evalPoints[k][0] - intercept));
+				}
+			}
+
+			Function[] targets = new Function[8];
+			for (int d = 0; d < targets.length; d++) {
+				targets[d] = new PostfixFunction("sin(" + (d+1) + "*x0)", 1);
+			}
+
+			LinearApproximator approximator = new WeightedCostApproximator.Factory(.1f, true).getApproximator(evalPoints, values);
+			float[][] coefficients = approximator.findCoefficients(targets);
+			assertEquals(values.length, coefficients.length);
+			for (int d = 0; d < targets.length; d++) {
+				float[] single = approximator.findCoefficients(targets[d]);
+				float scale = Math.max(MU.max(single), -MU.min(single));
+				for (int i = 0; i < values.length; i++) {
+					assertEquals(single[i], coefficients[i][d], 1e-3 * scale);
+				}
+			}
+		} finally {
+			WeightedCostApproximator.setNumThreads(threads);
+		}
+	}
+
 	public static void main(String[] args)
 	{
 		WeightedCostApproximatorTest t = new WeightedCostApproximatorTest();
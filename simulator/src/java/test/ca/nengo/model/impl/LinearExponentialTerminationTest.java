@@ -10,6 +10,7 @@ import org.apache.log4j.Logger;
 import ca.nengo.TestUtil;
 import ca.nengo.model.InstantaneousOutput;
 import ca.nengo.model.SimulationException;
+import ca.nengo.model.SpikeOutput;
 import ca.nengo.model.StructuralException;
 import ca.nengo.model.Units;
 
@@ -192,6 +193,24 @@ public class LinearExponentialTerminationTest extends TestCase {
 
     }
 
+    public void testSparseSpikes() throws SimulationException {
+        int n = 200;
+        float[] weights = new float[n];
+        boolean[] spikes = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            weights[i] = (float) Math.sin(i);
+            spikes[i] = (i % 7 == 3);
+        }
+
+        LinearExponentialTermination sparse = new LinearExponentialTermination(null, "sparse", weights, .005f);
+        LinearExponentialTermination dense = new LinearExponentialTermination(null, "dense", weights, .005f);
+        float[] sparseCurrents = getCurrents(sparse, new SpikeOutputImpl(spikes, Units.SPIKES, 0), .01f, 5);
+        float[] denseCurrents = getCurrents(dense, new DenseSpikeOutput(spikes), .01f, 5);
+        for (int i = 0; i < sparseCurrents.length; i++) {
+            assertClose(denseCurrents[i], sparseCurrents[i], .0001f);
+        }
+    }
+
     public void testGetWeights()
     {
         float[] weights = new float[]{1.0f, 1.0f, 1.0f, 1.0f};
@@ -253,6 +272,38 @@ public class LinearExponentialTerminationTest extends TestCase {
         assertTrue(value > target - tolerance && value < target + tolerance);
     }
 
+    //a spike output that doesn't list its spikes
+    private static class DenseSpikeOutput implements SpikeOutput {
+
+        private static final long serialVersionUID = 1L;
+
+        private boolean[] myValues;
+
+        public DenseSpikeOutput(boolean[] values) {
+            myValues = values;
+        }
+
+        public boolean[] getValues() {
+            return myValues;
+        }
+
+        public int getDimension() {
+            return myValues.length;
+        }
+
+        public Units getUnits() {
+            return Units.SPIKES;
+        }
+
+        public float getTime() {
+            return 0;
+        }
+
+        public SpikeOutput clone() {
+            return this;
+        }
+    }
+
 
 
 }
@@ -0,0 +1,93 @@
+package ca.nengo.model.impl;
+
+import ca.nengo.math.Function;
+import ca.nengo.math.impl.PostfixFunction;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.nef.impl.DecodedOrigin;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.model.nef.impl.NEFEnsembleImpl;
+import ca.nengo.model.neuron.Neuron;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for NetworkArrayImpl.
+ */
+public class NetworkArrayImplTest extends TestCase {
+
+	public void testSharedTemplate() throws Exception {
+		NEFEnsembleImpl template = (NEFEnsembleImpl) new NEFEnsembleFactoryImpl().make("0", 50, 1);
+		NetworkArrayImpl array = new NetworkArrayImpl("array", template, 3);
+
+		NEFEnsembleImpl[] nodes = getNodes(array);
+		assertEquals(3, nodes.length);
+		assertTrue(nodes[0] == template);
+		assertEquals("2", nodes[2].getName());
+		for (NEFEnsembleImpl node : nodes) {
+			assertTrue(node.isSharingApproximators(template));
+		}
+		assertEquals(3, array.getOrigin("X").getDimensions());
+
+		Function[] functions = new Function[]{new PostfixFunction("x0*x0", 1)};
+		array.addDecodedOrigin("square", functions, Neuron.AXON);
+		float[][] expected = ((DecodedOrigin) template.getOrigin("square")).getDecoders();
+		for (NEFEnsembleImpl node : nodes) {
+			float[][] decoders = ((DecodedOrigin) node.getOrigin("square")).getDecoders();
+			for (int i = 0; i < expected.length; i++) {
+				assertEquals(expected[i][0], decoders[i][0], 0f);
+			}
+		}
+
+		//copies aren't shared between nodes
+		float[][] decoders = ((DecodedOrigin) nodes[1].getOrigin("square")).getDecoders();
+		assertTrue(decoders != ((DecodedOrigin) nodes[2].getOrigin("square")).getDecoders());
+	}
+
+	public void testCopyOnWrite() throws StructuralException {
+		NEFEnsembleImpl template = (NEFEnsembleImpl) new NEFEnsembleFactoryImpl().make("0", 50, 1);
+		NetworkArrayImpl array = new NetworkArrayImpl("array", template, 3);
+		NEFEnsembleImpl[] nodes = getNodes(array);
+
+		nodes[2].setRadii(new float[]{2});
+		assertFalse(nodes[2].isSharingApproximators(template));
+		assertTrue(nodes[1].isSharingApproximators(template));
+
+		Function[] functions = new Function[]{new PostfixFunction("x0*x0", 1)};
+		array.addDecodedOrigin("square", functions, Neuron.AXON);
+		float[][] shared = ((DecodedOrigin) nodes[1].getOrigin("square")).getDecoders();
+		float[][] changed = ((DecodedOrigin) nodes[2].getOrigin("square")).getDecoders();
+		boolean different = false;
+		for (int i = 0; i < shared.length; i++) {
+			different |= Math.abs(shared[i][0] - changed[i][0]) > 1e-6f;
+		}
+		assertTrue(different);
+
+		template.releaseMemory();
+		assertFalse(template.isSharingApproximators(nodes[1]));
+		assertTrue(nodes[1].isSharingApproximators(nodes[1]));
+	}
+
+	public void testUnsharing() throws StructuralException {
+		NEFEnsembleImpl template = (NEFEnsembleImpl) new NEFEnsembleFactoryImpl().make("0", 50, 1);
+		NetworkArrayImpl array = new NetworkArrayImpl("array", template, 3);
+		NEFEnsembleImpl[] nodes = getNodes(array);
+
+		//an approximator made without reuse replaces the shared one, so mustn't be seen by other nodes
+		nodes[1].setReuseApproximators(false);
+		nodes[1].addDecodedOrigin("square", new Function[]{new PostfixFunction("x0*x0", 1)}, Neuron.AXON);
+		assertFalse(nodes[1].isSharingApproximators(template));
+		assertTrue(nodes[2].isSharingApproximators(template));
+
+		nodes[2].setEvalPoints(new float[][]{{-.5f}, {0}, {.5f}});
+		assertFalse(nodes[2].isSharingApproximators(template));
+		assertTrue(template.isSharingApproximators(nodes[0]));
+	}
+
+	private static NEFEnsembleImpl[] getNodes(NetworkArrayImpl array) throws StructuralException {
+		NEFEnsembleImpl[] result = new NEFEnsembleImpl[array.getNodes().length];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = (NEFEnsembleImpl) array.getNode(String.valueOf(i));
+		}
+		return result;
+	}
+
+}
@@ -10,9 +10,11 @@ import java.util.List;
 import ca.nengo.TestUtil;
 import ca.nengo.math.Function;
 import ca.nengo.math.impl.ConstantFunction;
+import ca.nengo.math.impl.IndicatorPDF;
 import ca.nengo.model.Ensemble;
 import ca.nengo.model.Node;
 import ca.nengo.model.Origin;
+import ca.nengo.model.Probeable;
 import ca.nengo.model.SimulationException;
 import ca.nengo.model.SimulationMode;
 import ca.nengo.model.StructuralException;
@@ -21,7 +23,10 @@ import ca.nengo.model.Units;
 import ca.nengo.model.impl.NetworkImpl;
 import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
 import ca.nengo.model.nef.impl.NEFEnsembleImpl;
+import ca.nengo.model.neuron.impl.LIFNeuronFactory;
 import ca.nengo.model.neuron.impl.SpikingNeuron;
+import ca.nengo.sim.impl.LocalSimulator;
+import ca.nengo.util.Environment;
 import ca.nengo.util.Probe;
 import ca.nengo.util.ScriptGenException;
 import ca.nengo.util.SpikePattern;
@@ -269,6 +274,57 @@ public class NetworkImplTest extends TestCase {
 			fail("Origin not unexposed correctly");
 	}
 	
+	public void testProbeExposedState() throws StructuralException, SimulationException {
+		boolean recordOnlyProbed = Environment.isRecordingOnlyProbed();
+		try {
+			Environment.setRecordingOnlyProbed(true);
+
+			NetworkImpl inner = new NetworkImpl();
+			inner.setName("inner");
+			Node neuron = new LIFNeuronFactory(.02f, .002f, new IndicatorPDF(200f), new IndicatorPDF(-.9f)).make("neuron");
+			inner.addNode(neuron);
+			inner.exposeState((Probeable) neuron, "V", "voltage");
+			myNetwork.addNode(inner);
+
+			LocalSimulator simulator = (LocalSimulator) myNetwork.getSimulator();
+			Probe probe = simulator.addProbe("inner", "voltage", true);
+			myNetwork.run(0, .01f);
+			assertTrue(((Probeable) neuron).getHistory("V").getTimes().length > 0);
+			assertTrue(probe.getData().getTimes().length > 0);
+
+			simulator.removeProbe(probe);
+			myNetwork.run(.01f, .02f);
+			assertEquals(0, ((Probeable) neuron).getHistory("V").getTimes().length);
+		} finally {
+			Environment.setRecordingOnlyProbed(recordOnlyProbed);
+		}
+	}
+
+	public void testProbeEnsembleState() throws StructuralException, SimulationException {
+		boolean recordOnlyProbed = Environment.isRecordingOnlyProbed();
+		try {
+			Environment.setRecordingOnlyProbed(true);
+
+			NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+			myNetwork.addNode(ef.make("a", 10, 1));
+			myNetwork.addNode(new NetworkArrayImpl("array", (NEFEnsembleImpl) ef.make("b", 10, 1), 2));
+
+			LocalSimulator simulator = (LocalSimulator) myNetwork.getSimulator();
+			Probe ensembleProbe = simulator.addProbe("a", "V", true);
+			Probe arrayProbe = simulator.addProbe("array", "V", true);
+			myNetwork.run(0, .01f);
+			assertTrue(ensembleProbe.getData().getTimes().length > 0);
+			assertTrue(arrayProbe.getData().getTimes().length > 0);
+
+			simulator.removeProbe(ensembleProbe);
+			myNetwork.run(.01f, .02f);
+			Node neuron = ((Ensemble) myNetwork.getNode("a")).getNodes()[0];
+			assertEquals(0, ((Probeable) neuron).getHistory("V").getTimes().length);
+		} finally {
+			Environment.setRecordingOnlyProbed(recordOnlyProbed);
+		}
+	}
+
 	public void testExposeOrigin() throws StructuralException
 	{
 		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
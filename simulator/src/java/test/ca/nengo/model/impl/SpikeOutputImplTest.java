@@ -44,4 +44,23 @@ public class SpikeOutputImplTest extends TestCase {
 		assertEquals(1, mySpikeOutput.getDimension());
 	}
 
+	public void testGetSpikeIndices() {
+		SpikeOutputImpl output = new SpikeOutputImpl(new boolean[]{false, true, false, true, true}, Units.SPIKES, 0);
+		int[] indices = output.getSpikeIndices();
+		assertEquals(3, indices.length);
+		assertEquals(1, indices[0]);
+		assertEquals(3, indices[1]);
+		assertEquals(4, indices[2]);
+		assertSame(indices, output.getSpikeIndices());
+
+		//values changed in place must be followed by setTime()
+		output.getValues()[3] = false;
+		output.setTime(1);
+		indices = output.getSpikeIndices();
+		assertEquals(2, indices.length);
+		assertEquals(4, indices[1]);
+
+		assertEquals(0, new SpikeOutputImpl(new boolean[4], Units.SPIKES, 0).getSpikeIndices().length);
+	}
+
 }
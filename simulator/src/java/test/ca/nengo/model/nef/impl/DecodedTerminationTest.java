@@ -0,0 +1,67 @@
+package ca.nengo.model.nef.impl;
+
+import junit.framework.TestCase;
+import ca.nengo.dynamics.DynamicalSystem;
+import ca.nengo.dynamics.LinearSystem;
+import ca.nengo.dynamics.impl.EulerIntegrator;
+import ca.nengo.dynamics.impl.SimpleLTISystem;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.RealOutputImpl;
+import ca.nengo.util.MU;
+import ca.nengo.util.TimeSeries;
+
+/**
+ * Unit tests for DecodedTermination.
+ */
+public class DecodedTerminationTest extends TestCase {
+
+	private static final float TAU = .01f;
+
+	public void testExactSolution() throws StructuralException, SimulationException {
+		DecodedTermination termination = new DecodedTermination(null, "test", MU.I(1), makeDynamics(), new EulerIntegrator(TAU / 10f));
+		termination.setValues(new RealOutputImpl(new float[]{1f}, Units.UNK, 0));
+
+		//step sizes found from float times vary by round-off, and the step size may also change
+		float time = 0;
+		for (int i = 1; i <= 100; i++) {
+			float endTime = (i < 50) ? i * .001f : .049f + (i - 49) * .0005f;
+			termination.run(time, endTime);
+			time = endTime;
+			assertEquals(1 - Math.exp(-time / TAU), termination.getOutput()[0], 1e-4);
+		}
+	}
+
+	public void testOtherIntegrator() throws StructuralException, SimulationException {
+		CountingIntegrator integrator = new CountingIntegrator();
+		DecodedTermination termination = new DecodedTermination(null, "test", MU.I(1), makeDynamics(), integrator);
+		termination.setValues(new RealOutputImpl(new float[]{1f}, Units.UNK, 0));
+
+		termination.run(0, .001f);
+		termination.run(.001f, .002f);
+		assertEquals(2, integrator.myCalls); //not replaced with the exact solution
+	}
+
+	private static LinearSystem makeDynamics() {
+		return new SimpleLTISystem(new float[]{-1f/TAU}, new float[][]{new float[]{1f}},
+				new float[][]{new float[]{1f/TAU}}, new float[1], new Units[]{Units.UNK});
+	}
+
+	private static class CountingIntegrator extends EulerIntegrator {
+
+		private static final long serialVersionUID = 1L;
+
+		private int myCalls;
+
+		public CountingIntegrator() {
+			super(TAU / 10f);
+		}
+
+		public TimeSeries integrate(DynamicalSystem system, TimeSeries input) {
+			myCalls++;
+			return super.integrate(system, input);
+		}
+	}
+
+}
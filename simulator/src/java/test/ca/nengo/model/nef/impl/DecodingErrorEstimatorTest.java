@@ -0,0 +1,119 @@
+package ca.nengo.model.nef.impl;
+
+import ca.nengo.math.Function;
+import ca.nengo.math.PDFTools;
+import ca.nengo.math.impl.AbstractFunction;
+import ca.nengo.math.impl.WeightedCostApproximator;
+import ca.nengo.math.impl.PostfixFunction;
+import ca.nengo.model.SimulationMode;
+import ca.nengo.model.neuron.Neuron;
+import ca.nengo.util.MU;
+import ca.nengo.util.impl.RandomHypersphereVG;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for DecodingErrorEstimator.
+ */
+public class DecodingErrorEstimatorTest extends TestCase {
+
+	private NEFEnsembleImpl myEnsemble;
+	private DecodedOrigin myOrigin;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		NEFEnsembleFactoryImpl factory = new NEFEnsembleFactoryImpl();
+		factory.beQuiet();
+		myEnsemble = (NEFEnsembleImpl) factory.make("test", 50, new float[]{1, 2});
+		myOrigin = (DecodedOrigin) myEnsemble.addDecodedOrigin("product",
+				new Function[]{new PostfixFunction("x0*x1", 2), new PostfixFunction("x1", 2)}, Neuron.AXON);
+	}
+
+	public void testEstimate() throws Exception {
+		PDFTools.setSeed(5);
+		float[] mse = new DecodingErrorEstimator(myOrigin).estimate(600).getMeanSquaredError();
+
+		//same points, found by running the origin
+		PDFTools.setSeed(5);
+		float[][] input = new RandomHypersphereVG(false, 1, 0).genVectors(600, 2);
+		for (int i = 0; i < input.length; i++) {
+			input[i] = MU.prodElementwise(input[i], myEnsemble.getRadii());
+		}
+		float[][] ideal = NEFUtil.getOutput(myOrigin, input, SimulationMode.DIRECT);
+		float[][] actual = NEFUtil.getOutput(myOrigin, input, SimulationMode.CONSTANT_RATE);
+		float[][] error = MU.transpose(MU.difference(actual, ideal));
+		for (int d = 0; d < error.length; d++) {
+			float expected = MU.prod(error[d], error[d]) / error[d].length;
+			assertEquals(expected, mse[d], 1e-4f * expected);
+		}
+	}
+
+	public void testGetError() throws Exception {
+		float[] error = myOrigin.getError(100); //runs the origin
+		assertEquals(2, error.length);
+		assertTrue(error[0] > 0 && error[1] > 0);
+
+		error = myOrigin.estimateError(100).getMeanSquaredError();
+		assertEquals(2, error.length);
+		assertTrue(error[0] > 0 && error[1] > 0);
+	}
+
+	public void testAdaptive() throws Exception {
+		DecodingErrorEstimator.Estimate estimate = myOrigin.estimateError(.1f, 100000);
+		assertTrue(estimate.getSamples() >= DecodingErrorEstimator.BLOCK_SIZE);
+		assertTrue(estimate.getSamples() < 100000);
+		assertTrue(estimate.isWithin(.1f));
+		for (int d = 0; d < 2; d++) {
+			assertTrue(estimate.getConfidenceInterval()[d] > 0);
+		}
+
+		estimate = new DecodingErrorEstimator(myOrigin).estimate(1e-6f, 10, 300);
+		assertEquals(300, estimate.getSamples());
+		assertFalse(estimate.isWithin(1e-6f));
+	}
+
+	public void testStatefulFunctions() throws Exception {
+		NEFEnsembleFactoryImpl factory = new NEFEnsembleFactoryImpl();
+		factory.beQuiet();
+		NEFEnsembleImpl ensemble = (NEFEnsembleImpl) factory.make("big", 300, 1);
+
+		//enough work per block to use several threads if the function were thread-safe
+		ThreadFunction function = new ThreadFunction();
+		Function[] functions = new Function[8];
+		for (int d = 0; d < functions.length; d++) {
+			functions[d] = function;
+		}
+		DecodedOrigin origin = (DecodedOrigin) ensemble.addDecodedOrigin("stateful", functions, Neuron.AXON);
+
+		int numThreads = WeightedCostApproximator.getNumThreads();
+		try {
+			WeightedCostApproximator.setNumThreads(4);
+			new DecodingErrorEstimator(origin).estimate(DecodingErrorEstimator.BLOCK_SIZE);
+			assertFalse(function.myOtherThread);
+		} finally {
+			WeightedCostApproximator.setNumThreads(numThreads);
+		}
+	}
+
+	//records whether it's called from a thread other than the one that made it
+	private static class ThreadFunction extends AbstractFunction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Thread myThread = Thread.currentThread();
+		private volatile boolean myOtherThread;
+
+		public ThreadFunction() {
+			super(1);
+		}
+
+		@Override
+		public float map(float[] from) {
+			if (Thread.currentThread() != myThread) {
+				myOtherThread = true;
+			}
+			return from[0];
+		}
+	}
+
+}
@@ -0,0 +1,137 @@
+package ca.nengo.model.nef.impl;
+
+import java.util.List;
+import java.util.concurrent.Future;
+
+import ca.nengo.math.LinearApproximator;
+import ca.nengo.math.PDFTools;
+import ca.nengo.math.impl.IndicatorPDF;
+import ca.nengo.math.impl.WeightedCostApproximator;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.neuron.Neuron;
+import ca.nengo.model.neuron.impl.LIFNeuronFactory;
+import ca.nengo.util.MU;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for NEFEnsembleFactoryImpl.
+ */
+public class NEFEnsembleFactoryImplTest extends TestCase {
+
+	public void testMakeAll() throws Exception {
+		NEFEnsembleFactoryImpl factory = new NEFEnsembleFactoryImpl();
+		factory.beQuiet();
+		String[] names = new String[]{"a", "b", "c", "d", "e"};
+		NEFEnsemble[] ensembles = factory.makeAll(names, 30, 2);
+
+		assertEquals(names.length, ensembles.length);
+		for (int i = 0; i < names.length; i++) {
+			assertEquals(names[i], ensembles[i].getName());
+			assertEquals(30, ensembles[i].getNodes().length);
+			assertEquals(2, ensembles[i].getDimension());
+			assertEquals(2, ensembles[i].getOrigin(NEFEnsemble.X).getDimensions());
+			assertTrue(ensembles[i].getEnsembleFactory() == factory);
+		}
+	}
+
+	public void testMakeAllFutures() throws Exception {
+		NEFEnsembleFactoryImpl factory = new NEFEnsembleFactoryImpl();
+		factory.beQuiet();
+		List<Future<NEFEnsemble>> futures = factory.makeAll(new String[]{"a", "b"}, new int[]{10, 20},
+				new float[][]{new float[]{1}, new float[]{2, 3}});
+
+		NEFEnsemble b = futures.get(1).get();
+		assertEquals(20, b.getNodes().length);
+		assertEquals(2, b.getDimension());
+		assertEquals(10, futures.get(0).get().getNodes().length);
+
+		try {
+			factory.makeAll(new String[]{"a"}, new int[]{10, 20}, new float[][]{new float[]{1}});
+			fail("Should have thrown exception");
+		} catch (StructuralException e) {} // exception is expected
+	}
+
+	public void testRegenerateSilentNodes() throws StructuralException {
+		NEFEnsembleFactoryImpl factory = new NEFEnsembleFactoryImpl();
+		factory.setApproximatorFactory(new SingularFactory());
+		//about a quarter of these neurons don't fire anywhere in the represented space
+		factory.setNodeFactory(new LIFNeuronFactory(.02f, .002f, new IndicatorPDF(200f, 400f), new IndicatorPDF(-.9f, 1.5f)));
+
+		NEFEnsembleImpl ensemble = (NEFEnsembleImpl) factory.make("test", 50, 1);
+		assertEquals(50, ensemble.getNodes().length);
+		float[][] outputs = ensemble.getConstantOutputs(ensemble.getEvalPoints(), Neuron.AXON);
+		for (float[] output : outputs) {
+			assertTrue(MU.max(output) > 0);
+		}
+	}
+
+	public void testMakeAllReproducible() throws StructuralException {
+		String[] names = new String[]{"a", "b", "c", "d"};
+		float[][][] encoders = new float[2][][];
+		float[][][] decoders = new float[2][][]; //depend on noise drawn on the pool threads
+		for (int run = 0; run < 2; run++) {
+			PDFTools.setSeed(7);
+			NEFEnsembleFactoryImpl factory = new NEFEnsembleFactoryImpl();
+			factory.beQuiet();
+			factory.setApproximatorFactory(new SingularFactory());
+			factory.setNodeFactory(new LIFNeuronFactory(.02f, .002f, new IndicatorPDF(200f, 400f), new IndicatorPDF(-.9f, 1.5f)));
+
+			NEFEnsemble[] ensembles = factory.makeAll(names, 30, 1);
+			encoders[run] = new float[names.length][];
+			decoders[run] = new float[names.length][];
+			for (int i = 0; i < names.length; i++) {
+				encoders[run][i] = MU.transpose(((NEFEnsembleImpl) ensembles[i]).getEncoders())[0];
+				decoders[run][i] = MU.transpose(((DecodedOrigin) ensembles[i].getOrigin(NEFEnsemble.X)).getDecoders())[0];
+			}
+		}
+
+		for (int i = 0; i < names.length; i++) {
+			for (int j = 0; j < encoders[0][i].length; j++) {
+				assertEquals(encoders[0][i][j], encoders[1][i][j], 0f);
+				assertEquals(decoders[0][i][j], decoders[1][i][j], 0f);
+			}
+		}
+	}
+
+	public void testMakeAllError() {
+		NEFEnsembleFactoryImpl factory = new NEFEnsembleFactoryImpl();
+		factory.beQuiet();
+		factory.setApproximatorFactory(new WeightedCostApproximator.Factory(.1f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public LinearApproximator getApproximator(float[][] evalPoints, float[][] values) {
+				throw new IllegalStateException("Test");
+			}
+		});
+
+		try {
+			factory.makeAll(new String[]{"a", "b"}, 10, 1);
+			fail("Should have thrown exception");
+		} catch (StructuralException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+	}
+
+	//fails like a pseudoinverse of a singular matrix if any node is silent
+	private static class SingularFactory extends WeightedCostApproximator.Factory {
+
+		private static final long serialVersionUID = 1L;
+
+		public SingularFactory() {
+			super(.1f, true);
+		}
+
+		@Override
+		public LinearApproximator getApproximator(float[][] evalPoints, float[][] values) {
+			for (float[] row : values) {
+				if (MU.max(row) <= 0) {
+					throw new RuntimeException("Matrix is singular.");
+				}
+			}
+			return super.getApproximator(evalPoints, values);
+		}
+	}
+
+}
@@ -3,6 +3,8 @@
  */
 package ca.nengo.model.nef.impl;
 
+import java.util.Random;
+
 import ca.nengo.math.Function;
 import ca.nengo.math.impl.AbstractFunction;
 //import ca.nengo.math.impl.ConstantFunction;
@@ -20,6 +22,7 @@ import ca.nengo.model.nef.impl.BiasOrigin;
 //import ca.nengo.model.nef.impl.DecodedOrigin;
 //import ca.nengo.model.nef.impl.DecodedTermination;
 import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.model.neuron.Neuron;
 import ca.nengo.model.neuron.impl.SpikingNeuron;
 import ca.nengo.plot.Plotter;
 import ca.nengo.util.MU;
@@ -243,6 +246,25 @@ public class NEFEnsembleImplTest extends TestCase {
 		System.out.println(System.currentTimeMillis() - startTime);
 	}
 	
+	public void testGetConstantOutputs() throws StructuralException, SimulationException {
+		NEFEnsembleFactory ef = new NEFEnsembleFactoryImpl();
+		NEFEnsembleImpl ensemble = (NEFEnsembleImpl) ef.make("test", 300, new float[]{1f, 2f});
+		float[][] evalPoints = new float[400][];
+		Random random = new Random(1);
+		for (int k = 0; k < evalPoints.length; k++) {
+			evalPoints[k] = new float[]{2 * random.nextFloat() - 1, 4 * random.nextFloat() - 2};
+		}
+
+		//closed-form rates should match running each neuron at each point
+		float[][] outputs = ensemble.getConstantOutputs(evalPoints, Neuron.AXON);
+		for (int i = 0; i < outputs.length; i += 7) {
+			float[] expected = ensemble.getConstantOutput(i, evalPoints, Neuron.AXON);
+			for (int k = 0; k < evalPoints.length; k++) {
+				assertEquals(expected[k], outputs[i][k]);
+			}
+		}
+	}
+
 	public static void main(String[] args) {
 		NEFEnsembleImplTest test = new NEFEnsembleImplTest();
 		try {
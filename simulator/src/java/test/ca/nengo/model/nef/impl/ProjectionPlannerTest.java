@@ -0,0 +1,116 @@
+package ca.nengo.model.nef.impl;
+
+import junit.framework.TestCase;
+import ca.nengo.math.Function;
+import ca.nengo.math.PDFTools;
+import ca.nengo.math.impl.ConstantFunction;
+import ca.nengo.model.Network;
+import ca.nengo.model.Projection;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.EnsembleTermination;
+import ca.nengo.model.impl.FunctionInput;
+import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.neuron.Neuron;
+import ca.nengo.sim.impl.LocalSimulator;
+import ca.nengo.util.MU;
+import ca.nengo.util.Probe;
+
+/**
+ * Unit tests for ProjectionPlanner.
+ */
+public class ProjectionPlannerTest extends TestCase {
+
+	protected void tearDown() throws Exception {
+		PDFTools.setSeed(System.currentTimeMillis());
+		super.tearDown();
+	}
+
+	public void testCosts() {
+		assertEquals(201, ProjectionPlanner.getDecodedCost(100, 1, 1, 100));
+		assertEquals(10000, ProjectionPlanner.getFusedCost(100, 100));
+		assertEquals(20*16 + 16*16 + 16*20, ProjectionPlanner.getDecodedCost(20, 16, 16, 20));
+	}
+
+	public void testPlan() throws StructuralException {
+		NEFEnsembleFactoryImpl factory = new NEFEnsembleFactoryImpl();
+		Network network = new NetworkImpl();
+
+		NEFEnsemble a = factory.make("A", 20, 16);
+		NEFEnsemble b = factory.make("B", 20, 16);
+		NEFEnsemble c = factory.make("C", 100, 1);
+		NEFEnsemble d = factory.make("D", 100, 1);
+		network.addNode(a);
+		network.addNode(b);
+		network.addNode(c);
+		network.addNode(d);
+
+		b.addDecodedTermination("A", MU.I(16), .005f, false);
+		d.addDecodedTermination("C", MU.I(1), .005f, false);
+		d.addDecodedTermination("mod", MU.I(1), .005f, true);
+		Projection highD = network.addProjection(a.getOrigin(NEFEnsemble.X), b.getTermination("A"));
+		Projection lowD = network.addProjection(c.getOrigin(NEFEnsemble.X), d.getTermination("C"));
+		Projection modulatory = network.addProjection(c.getOrigin(NEFEnsemble.X), d.getTermination("mod"));
+
+		assertTrue(ProjectionPlanner.shouldFuse(highD));
+		assertTrue(ProjectionPlanner.canFuse(lowD));
+		assertFalse(ProjectionPlanner.shouldFuse(lowD));
+		assertFalse(ProjectionPlanner.canFuse(modulatory));
+
+		assertEquals(1, ProjectionPlanner.plan(network));
+		assertTrue(b.getTermination("A") instanceof EnsembleTermination);
+		assertTrue(d.getTermination("C") instanceof DecodedTermination);
+		assertEquals(3, network.getProjections().length);
+		for (Projection projection : network.getProjections()) {
+			if (projection.getTermination().getNode() == b) {
+				assertSame(a.getOrigin(Neuron.AXON), projection.getOrigin());
+			}
+		}
+	}
+
+	public void testFusedMatchesDecoded() throws StructuralException, SimulationException {
+		float[][] transform = new float[][]{new float[]{-1f}};
+		float decoded = mean(simulate(transform, false), 150);
+		float fused = mean(simulate(transform, true), 150);
+		assertEquals(-.5f, decoded, .1f);
+		assertEquals(decoded, fused, .05f);
+	}
+
+	//the same network is built each time, with the projection from A to B optionally fused
+	private float[][] simulate(float[][] transform, boolean fuse) throws StructuralException, SimulationException {
+		PDFTools.setSeed(1);
+		NEFEnsembleFactoryImpl factory = new NEFEnsembleFactoryImpl();
+		Network network = new NetworkImpl();
+
+		FunctionInput input = new FunctionInput("input", new Function[]{new ConstantFunction(1, .5f)}, Units.UNK);
+		NEFEnsemble a = factory.make("A", 100, 1);
+		NEFEnsemble b = factory.make("B", 100, 1);
+		network.addNode(input);
+		network.addNode(a);
+		network.addNode(b);
+
+		a.addDecodedTermination("input", MU.I(1), .005f, false);
+		b.addDecodedTermination("A", transform, .01f, false);
+		network.addProjection(input.getOrigin(FunctionInput.ORIGIN_NAME), a.getTermination("input"));
+		Projection projection = network.addProjection(a.getOrigin(NEFEnsemble.X), b.getTermination("A"));
+		if (fuse) {
+			ProjectionPlanner.fuse(projection);
+		}
+
+		((LocalSimulator) network.getSimulator()).setDisplayProgress(false);
+		Probe probe = network.getSimulator().addProbe("B", NEFEnsemble.X, true);
+		network.run(0, .3f);
+		return probe.getData().getValues();
+	}
+
+	private static float mean(float[][] values, int from) {
+		float sum = 0;
+		for (int i = from; i < values.length; i++) {
+			sum += values[i][0];
+		}
+		return sum / (values.length - from);
+	}
+
+}
@@ -0,0 +1,226 @@
+package ca.nengo.model.nef.impl;
+
+import junit.framework.TestCase;
+import ca.nengo.math.Function;
+import ca.nengo.math.impl.IdentityFunction;
+import ca.nengo.math.impl.IndicatorPDF;
+import ca.nengo.math.impl.WeightedCostApproximator;
+import ca.nengo.model.InstantaneousOutput;
+import ca.nengo.model.RealOutput;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.SimulationMode;
+import ca.nengo.model.SpikeOutput;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.impl.RealOutputImpl;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.NEFNode;
+import ca.nengo.model.neuron.Neuron;
+import ca.nengo.model.neuron.impl.ALIFNeuronFactory;
+import ca.nengo.model.neuron.impl.LIFNeuronFactory;
+import ca.nengo.sim.Simulator;
+import ca.nengo.util.Environment;
+import ca.nengo.util.MU;
+import ca.nengo.util.Probe;
+import ca.nengo.util.impl.RandomHypersphereVG;
+
+/**
+ * Unit tests for VectorizedNEFEnsembleImpl.
+ */
+public class VectorizedNEFEnsembleImplTest extends TestCase {
+
+	private NEFEnsembleImpl myReference;
+	private VectorizedNEFEnsembleImpl myVectorized;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		int n = 50;
+		LIFNeuronFactory factory = new LIFNeuronFactory(.02f, .002f, new IndicatorPDF(100, 200), new IndicatorPDF(-.9f, .9f));
+		NEFNode[] nodes = new NEFNode[n];
+		NEFNode[] copies = new NEFNode[n];
+		for (int i = 0; i < n; i++) {
+			nodes[i] = (NEFNode) factory.make("node" + i);
+			copies[i] = (NEFNode) nodes[i].clone();
+		}
+		float[][] encoders = new RandomHypersphereVG(true, 1, 0).genVectors(n, 2);
+		float[][] evalPoints = new RandomHypersphereVG(false, 1, 0).genVectors(200, 2);
+		float[] radii = new float[]{1.5f, 1.5f};
+
+		myReference = new NEFEnsembleImpl("reference", nodes, MU.clone(encoders),
+				new WeightedCostApproximator.Factory(.1f), evalPoints, radii);
+		myVectorized = new VectorizedNEFEnsembleImpl("vectorized", copies, MU.clone(encoders),
+				new WeightedCostApproximator.Factory(.1f), evalPoints, radii);
+
+		Function[] functions = new Function[]{new IdentityFunction(2, 0), new IdentityFunction(2, 1)};
+		DecodedOrigin o = (DecodedOrigin) myReference.addDecodedOrigin(NEFEnsemble.X, functions, Neuron.AXON);
+		DecodedOrigin vo = (DecodedOrigin) myVectorized.addDecodedOrigin(NEFEnsemble.X, functions, Neuron.AXON);
+		vo.setDecoders(MU.clone(o.getDecoders()));
+
+		myReference.addDecodedTermination("input", MU.I(2), .005f, false);
+		myVectorized.addDecodedTermination("input", MU.I(2), .005f, false);
+	}
+
+	public void testIsVectorized() throws StructuralException {
+		assertTrue(myVectorized.isVectorized());
+		myVectorized.setMode(SimulationMode.RATE);
+		assertFalse(myVectorized.isVectorized());
+		myVectorized.setMode(SimulationMode.DEFAULT);
+		assertTrue(myVectorized.isVectorized());
+	}
+
+	public void testProbedNeuron() throws StructuralException, SimulationException {
+		NetworkImpl network = new NetworkImpl();
+		network.addNode(myVectorized);
+		float[] encoder = myVectorized.getEncoders()[3]; //drive the probed neuron along its encoder, so that it fires
+		myVectorized.getTermination("input").setValues(new RealOutputImpl(MU.prod(encoder, 1.5f), Units.UNK, 0));
+
+		Simulator simulator = network.getSimulator();
+		Probe probe = simulator.addProbe("vectorized", 3, "V", true);
+		assertFalse(myVectorized.isVectorized());
+		network.run(0, .05f);
+
+		float[] voltage = MU.transpose(probe.getData().getValues())[0];
+		assertTrue(voltage.length > 0);
+		assertTrue(MU.max(voltage) > MU.min(voltage));
+
+		simulator.removeProbe(probe);
+		assertTrue(myVectorized.isVectorized());
+	}
+
+	public void testSeparateSpikeOutputs() throws StructuralException, SimulationException {
+		boolean zeroAllocation = Environment.isZeroAllocation();
+		try {
+			for (int mode = 0; mode < 2; mode++) {
+				Environment.setZeroAllocation(mode == 1);
+				myVectorized.run(mode * .001f, (mode+1) * .001f);
+				InstantaneousOutput a = myVectorized.getNodes()[0].getOrigin(Neuron.AXON).getValues();
+				InstantaneousOutput b = myVectorized.getNodes()[1].getOrigin(Neuron.AXON).getValues();
+				assertTrue(a != b);
+			}
+		} finally {
+			Environment.setZeroAllocation(zeroAllocation);
+		}
+	}
+
+	public void testALIF() throws StructuralException, SimulationException {
+		NEFEnsembleFactoryImpl factory = new NEFEnsembleFactoryImpl();
+		factory.beQuiet();
+		factory.setVectorized(true);
+		factory.setNodeFactory(new ALIFNeuronFactory(new IndicatorPDF(200, 400), new IndicatorPDF(-.9f, .9f),
+				new IndicatorPDF(.1f, .5f), .0005f, .02f, .2f));
+		VectorizedNEFEnsembleImpl ensemble = (VectorizedNEFEnsembleImpl) factory.make("alif", 30, 1);
+		assertTrue(ensemble.isVectorized());
+
+		ensemble.addDecodedTermination("input", MU.I(1), .005f, false);
+		ensemble.getTermination("input").setValues(new RealOutputImpl(new float[]{.8f}, Units.UNK, 0));
+		int spikes = 0;
+		for (int step = 0; step < 100; step++) {
+			ensemble.run(step * .001f, (step+1) * .001f);
+			for (boolean spike : ((SpikeOutput) ensemble.getOrigin(Neuron.AXON).getValues()).getValues()) {
+				if (spike) spikes++;
+			}
+		}
+		assertTrue(spikes > 0);
+	}
+
+	public void testMatchesNEFEnsembleImpl() throws StructuralException, SimulationException {
+		RealOutput input = new RealOutputImpl(new float[]{.7f, -.4f}, Units.UNK, 0);
+		myReference.getTermination("input").setValues(input);
+		myVectorized.getTermination("input").setValues(input);
+
+		int referenceSpikes = 0;
+		int vectorizedSpikes = 0;
+		int mismatches = 0;
+		float dt = .001f;
+		for (int step = 0; step < 200; step++) {
+			myReference.run(step * dt, (step+1) * dt);
+			myVectorized.run(step * dt, (step+1) * dt);
+
+			boolean[] a = ((SpikeOutput) myReference.getOrigin(Neuron.AXON).getValues()).getValues();
+			boolean[] b = ((SpikeOutput) myVectorized.getOrigin(Neuron.AXON).getValues()).getValues();
+			for (int i = 0; i < a.length; i++) {
+				if (a[i]) referenceSpikes++;
+				if (b[i]) vectorizedSpikes++;
+				if (a[i] != b[i]) mismatches++;
+			}
+		}
+
+		assertTrue(referenceSpikes > 0);
+		assertTrue(Math.abs(referenceSpikes - vectorizedSpikes) <= referenceSpikes / 100 + 1);
+		assertTrue(mismatches <= referenceSpikes / 50 + 2);
+	}
+
+	public void testCompact() throws StructuralException, SimulationException, CloneNotSupportedException {
+		myVectorized.setCompact(true);
+		assertTrue(myVectorized.getCompact());
+		assertTrue(myVectorized.isVectorized());
+
+		RealOutput input = new RealOutputImpl(new float[]{.7f, -.4f}, Units.UNK, 0);
+		myReference.getTermination("input").setValues(input);
+		myVectorized.getTermination("input").setValues(input);
+
+		int referenceSpikes = 0;
+		int compactSpikes = 0;
+		float dt = .001f;
+		for (int step = 0; step < 200; step++) {
+			myReference.run(step * dt, (step+1) * dt);
+			myVectorized.run(step * dt, (step+1) * dt);
+
+			for (boolean spike : ((SpikeOutput) myReference.getOrigin(Neuron.AXON).getValues()).getValues()) {
+				if (spike) referenceSpikes++;
+			}
+			for (boolean spike : ((SpikeOutput) myVectorized.getOrigin(Neuron.AXON).getValues()).getValues()) {
+				if (spike) compactSpikes++;
+			}
+		}
+
+		assertTrue(referenceSpikes > 0);
+		assertTrue(Math.abs(referenceSpikes - compactSpikes) <= referenceSpikes / 50 + 2);
+
+		VectorizedNEFEnsembleImpl copy = myVectorized.clone();
+		assertTrue(copy.getCompact());
+		assertTrue(copy.isVectorized());
+	}
+
+	public void testDecodedOutput() throws StructuralException, SimulationException {
+		RealOutput input = new RealOutputImpl(new float[]{.5f, .5f}, Units.UNK, 0);
+		myVectorized.getTermination("input").setValues(input);
+
+		float[] sum = new float[2];
+		float dt = .001f;
+		int steps = 500;
+		for (int step = 0; step < steps; step++) {
+			myVectorized.run(step * dt, (step+1) * dt);
+			if (step >= 100) {
+				float[] x = ((RealOutput) myVectorized.getOrigin(NEFEnsemble.X).getValues()).getValues();
+				sum = MU.sum(sum, x);
+			}
+		}
+
+		assertEquals(.5f, sum[0] / (steps - 100), .15f);
+		assertEquals(.5f, sum[1] / (steps - 100), .15f);
+	}
+
+	public void testReset() throws StructuralException, SimulationException {
+		RealOutput input = new RealOutputImpl(new float[]{1f, 0f}, Units.UNK, 0);
+		myVectorized.getTermination("input").setValues(input);
+		for (int step = 0; step < 20; step++) {
+			myVectorized.run(step * .001f, (step+1) * .001f);
+		}
+
+		myVectorized.reset(false);
+		myVectorized.getTermination("input").setValues(input);
+		myReference.getTermination("input").setValues(input);
+		for (int step = 0; step < 20; step++) {
+			myVectorized.run(step * .001f, (step+1) * .001f);
+			myReference.run(step * .001f, (step+1) * .001f);
+		}
+
+		float[] a = ((RealOutput) myReference.getOrigin(NEFEnsemble.X).getValues()).getValues();
+		float[] b = ((RealOutput) myVectorized.getOrigin(NEFEnsemble.X).getValues()).getValues();
+		assertEquals(a[0], b[0], 1f);
+	}
+
+}
@@ -0,0 +1,59 @@
+package ca.nengo.model.neuron.impl;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for ALIFRateTable.
+ */
+public class ALIFRateTableTest extends TestCase {
+
+	public void testGetRate() {
+		float tauRef = .002f;
+		float tauRC = .02f;
+		float adaptation = .1f * .2f;
+		ALIFRateTable table = new ALIFRateTable(tauRef, tauRC, adaptation);
+		assertTrue(table.getSize() < 5000);
+
+		assertEquals(0f, table.getRate(.5f));
+		assertEquals(0f, table.getRate(1f));
+
+		//rates at currents found from the closed-form inverse
+		for (int i = 1; i < 495; i++) {
+			double rate = i;
+			double current = 1 / (1 - Math.exp((tauRef - 1 / rate) / tauRC)) + adaptation * rate;
+			assertEquals(rate, table.getRate((float) current), .02 + 1e-6 * current * rate);
+		}
+
+		//beyond the table
+		double rate = 497;
+		double current = 1 / (1 - Math.exp((tauRef - 1 / rate) / tauRC)) + adaptation * rate;
+		assertEquals(rate, table.getRate((float) current), .1);
+		assertTrue(table.getRate(1e6f) < 1 / tauRef);
+	}
+
+	public void testMonotonic() {
+		ALIFRateTable table = new ALIFRateTable(.001f, .01f, .5f * .1f);
+		float[] currents = new float[2000];
+		for (int i = 0; i < currents.length; i++) {
+			currents[i] = .5f + i * .02f;
+		}
+		float[] rates = new float[currents.length];
+		table.getRates(currents, rates);
+		for (int i = 1; i < rates.length; i++) {
+			assertTrue(rates[i] >= rates[i-1]);
+		}
+	}
+
+	public void testMatchesSpikeGenerator() {
+		ALIFSpikeGenerator generator = new ALIFSpikeGenerator(.002f, .02f, .2f, .1f);
+		float rate = generator.getAdaptedRate(10);
+		float onset = generator.getOnsetRate(10 - .2f * .1f * rate);
+		assertEquals(onset, rate, .05f);
+
+		generator.setIncN(.3f);
+		float adapted = generator.getAdaptedRate(10);
+		assertTrue(adapted < rate);
+		assertEquals(generator.getOnsetRate(10 - .2f * .3f * adapted), adapted, .05f);
+	}
+
+}
@@ -0,0 +1,69 @@
+package ca.nengo.model.neuron.impl;
+
+import java.util.Random;
+
+/**
+ * Compares spike-train statistics and throughput of LIFPopulationSpikeGenerator and
+ * FixedPointLIFPopulation.
+ */
+public class FixedPointLIFPopulationBenchmark {
+
+	/**
+	 * @param args Optional number of neurons (default 100000)
+	 */
+	public static void main(String[] args) {
+		int n = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+		float length = 1f;
+		float dt = .001f;
+		float maxTimeStep = FixedPointLIFPopulationTest.MAX_TIME_STEP;
+
+		float[] current = new float[n];
+		Random random = new Random(1);
+		for (int i = 0; i < n; i++) {
+			current[i] = 3f * random.nextFloat();
+		}
+
+		int[][] counts = new int[2][];
+		float[][] cv = new float[2][];
+		FixedPointLIFPopulationTest.run(FixedPointLIFPopulationTest.makeReference(n), current, .1f, dt, counts, cv, 0); //warm up
+		FixedPointLIFPopulationTest.run(FixedPointLIFPopulationTest.makeFixedPoint(n), current, .1f, dt, counts, cv, 1);
+		long referenceTime = FixedPointLIFPopulationTest.run(FixedPointLIFPopulationTest.makeReference(n), current, length, dt, counts, cv, 0);
+		long fixedPointTime = FixedPointLIFPopulationTest.run(FixedPointLIFPopulationTest.makeFixedPoint(n), current, length, dt, counts, cv, 1);
+
+		long referenceSpikes = 0;
+		long fixedPointSpikes = 0;
+		int maxCountError = 0;
+		int outliers = 0; //neurons with count difference over 1% + 1
+		float outlierDistance = 0; //greatest distance of an outlier's steady-state voltage (equal to its current) from threshold
+		double cvError = 0;
+		int firing = 0;
+		for (int i = 0; i < n; i++) {
+			referenceSpikes += counts[0][i];
+			fixedPointSpikes += counts[1][i];
+			int countError = Math.abs(counts[0][i] - counts[1][i]);
+			maxCountError = Math.max(maxCountError, countError);
+			if (countError > counts[0][i] / 100 + 1) {
+				outliers++;
+				outlierDistance = Math.max(outlierDistance, Math.abs(current[i] - 1));
+			}
+			if (counts[0][i] > 2) {
+				cvError += Math.abs(cv[0][i] - cv[1][i]);
+				firing++;
+			}
+		}
+
+		float neuronSteps = n * length / maxTimeStep;
+		System.out.println(n + " neurons, " + length + " s");
+		System.out.println("double state:      " + referenceTime + " ms (" + (neuronSteps / referenceTime / 1000)
+				+ " M neuron-steps/s), 16 bytes/neuron state, " + (referenceSpikes / (n * length)) + " spikes/s/neuron");
+		System.out.println("fixed-point state: " + fixedPointTime + " ms (" + (neuronSteps / fixedPointTime / 1000)
+				+ " M neuron-steps/s), 3 bytes/neuron state, " + (fixedPointSpikes / (n * length)) + " spikes/s/neuron");
+		System.out.println("max spike count difference: " + maxCountError + ", mean ISI CV difference: "
+				+ (firing > 0 ? cvError / firing : 0));
+		System.out.println(outliers + " neurons with spike count difference > 1% + 1, steady-state voltage at most "
+				+ outlierDistance + " from threshold (voltage error bound "
+				+ (FixedPointLIFPopulation.VOLTAGE_RESOLUTION * FixedPointLIFPopulationTest.TAU_RC / (2 * maxTimeStep))
+				+ ", both as fractions of threshold)");
+	}
+
+}
@@ -0,0 +1,176 @@
+package ca.nengo.model.neuron.impl;
+
+import junit.framework.TestCase;
+import ca.nengo.model.neuron.SpikeGenerator;
+
+/**
+ * Unit tests for FixedPointLIFPopulation. See FixedPointLIFPopulationBenchmark for a benchmark
+ * against LIFPopulationSpikeGenerator.
+ */
+public class FixedPointLIFPopulationTest extends TestCase {
+
+	static final float TAU_RC = .02f;
+	static final float TAU_REF = .002f;
+	static final float MAX_TIME_STEP = .00025f;
+
+	public void testMatchesLIFPopulationSpikeGenerator() {
+		int n = 50;
+		float[] current = new float[n];
+		for (int i = 0; i < n; i++) {
+			current[i] = 1.1f + .1f * i;
+		}
+
+		int[][] counts = new int[2][];
+		float[][] cv = new float[2][];
+		run(makeReference(n), current, 1f, .001f, counts, cv, 0);
+		run(makeFixedPoint(n), current, 1f, .001f, counts, cv, 1);
+
+		for (int i = 0; i < n; i++) {
+			assertTrue(counts[0][i] > 0);
+			assertTrue(counts[0][i] + " vs " + counts[1][i], Math.abs(counts[0][i] - counts[1][i]) <= counts[0][i] / 100 + 1);
+			assertEquals(cv[0][i], cv[1][i], .05f);
+		}
+	}
+
+	public void testSubthresholdVoltage() {
+		float[] current = new float[]{.2f, .5f, .9f, .99f};
+		int n = current.length;
+		SpikeGenerator[] generators = makeGenerators(n);
+		LIFPopulationSpikeGenerator reference = LIFPopulationSpikeGenerator.make(generators);
+		FixedPointLIFPopulation population = FixedPointLIFPopulation.make(generators);
+		double[][] referenceState = reference.makeState();
+		FixedPointLIFPopulation.State state = population.makeState();
+		float[] spikes = new float[n];
+
+		float bound = FixedPointLIFPopulation.VOLTAGE_RESOLUTION * TAU_RC / (2 * MAX_TIME_STEP);
+		for (int step = 0; step < 500; step++) {
+			reference.run(current, step * .001f, (step+1) * .001f, referenceState, spikes);
+			population.run(current, step * .001f, (step+1) * .001f, state, spikes);
+			for (int i = 0; i < n; i++) {
+				assertEquals(referenceState[0][i], state.getVoltage(i), bound);
+				assertEquals(0f, spikes[i]);
+			}
+		}
+	}
+
+	public void testReset() {
+		SpikeGenerator[] generators = new SpikeGenerator[]{new LIFSpikeGenerator(MAX_TIME_STEP, TAU_RC, TAU_REF, .3f)};
+		FixedPointLIFPopulation population = FixedPointLIFPopulation.make(generators);
+		FixedPointLIFPopulation.State state = population.makeState();
+		assertEquals(.3f, state.getVoltage(0), FixedPointLIFPopulation.VOLTAGE_RESOLUTION);
+
+		population.run(new float[]{2}, 0, .001f, state, new float[1]);
+		FixedPointLIFPopulation.State copy = state.clone();
+		assertTrue(state.getVoltage(0) > .3f);
+		population.reset(state);
+		assertEquals(.3f, state.getVoltage(0), FixedPointLIFPopulation.VOLTAGE_RESOLUTION);
+		assertTrue(copy.getVoltage(0) > .3f);
+	}
+
+	public void testMake() {
+		SpikeGenerator lif = new LIFSpikeGenerator(MAX_TIME_STEP, TAU_RC, TAU_REF);
+		assertNotNull(FixedPointLIFPopulation.make(new SpikeGenerator[]{lif}));
+		assertNull(FixedPointLIFPopulation.make(new SpikeGenerator[]{lif, new LIFSpikeGenerator(MAX_TIME_STEP, .03f, TAU_REF)}));
+		assertNull(FixedPointLIFPopulation.make(new SpikeGenerator[]{lif, new ALIFSpikeGenerator(TAU_REF, TAU_RC, .2f, .1f)}));
+
+		LIFSpikeGenerator exact = new LIFSpikeGenerator(MAX_TIME_STEP, TAU_RC, TAU_REF);
+		exact.setExact(true);
+		assertNull(FixedPointLIFPopulation.make(new SpikeGenerator[]{exact}));
+	}
+
+	private static SpikeGenerator[] makeGenerators(int n) {
+		SpikeGenerator[] result = new SpikeGenerator[n];
+		for (int i = 0; i < n; i++) {
+			result[i] = new LIFSpikeGenerator(MAX_TIME_STEP, TAU_RC, TAU_REF);
+		}
+		return result;
+	}
+
+	//a population with its state, so that both implementations can be run the same way
+	static interface Population {
+		public void run(float[] current, float startTime, float endTime, float[] spikes);
+	}
+
+	static Population makeReference(int n) {
+		final LIFPopulationSpikeGenerator population = LIFPopulationSpikeGenerator.make(makeGenerators(n));
+		final double[][] state = population.makeState();
+		return new Population() {
+			public void run(float[] current, float startTime, float endTime, float[] spikes) {
+				population.run(current, startTime, endTime, state, spikes);
+			}
+		};
+	}
+
+	static Population makeFixedPoint(int n) {
+		final FixedPointLIFPopulation population = FixedPointLIFPopulation.make(makeGenerators(n));
+		final FixedPointLIFPopulation.State state = population.makeState();
+		return new Population() {
+			public void run(float[] current, float startTime, float endTime, float[] spikes) {
+				population.run(current, startTime, endTime, state, spikes);
+			}
+		};
+	}
+
+	//runs a population and records spike counts and ISI CVs in the given row; returns run time (ms)
+	static long run(Population population, float[] current, float length, float dt, int[][] counts, float[][] cv, int row) {
+		int n = current.length;
+		SpikeStatistics statistics = new SpikeStatistics(n);
+		float[] spikes = new float[n];
+
+		long start = System.currentTimeMillis();
+		int steps = Math.round(length / dt);
+		for (int step = 0; step < steps; step++) {
+			population.run(current, step * dt, (step+1) * dt, spikes);
+			statistics.collect(spikes, step * dt);
+		}
+		long time = System.currentTimeMillis() - start;
+
+		counts[row] = statistics.myCounts;
+		cv[row] = statistics.getCV();
+		return time;
+	}
+
+	//spike counts and interspike interval moments of each neuron
+	private static class SpikeStatistics {
+
+		private int[] myCounts;
+		private float[] myLastSpike;
+		private double[] myISISum;
+		private double[] myISISquareSum;
+
+		public SpikeStatistics(int n) {
+			myCounts = new int[n];
+			myLastSpike = new float[n];
+			myISISum = new double[n];
+			myISISquareSum = new double[n];
+		}
+
+		public void collect(float[] spikes, float time) {
+			for (int i = 0; i < spikes.length; i++) {
+				if (spikes[i] != 0) {
+					if (myCounts[i] > 0) {
+						double isi = time - myLastSpike[i];
+						myISISum[i] += isi;
+						myISISquareSum[i] += isi * isi;
+					}
+					myLastSpike[i] = time;
+					myCounts[i]++;
+				}
+			}
+		}
+
+		public float[] getCV() {
+			float[] result = new float[myCounts.length];
+			for (int i = 0; i < result.length; i++) {
+				int intervals = myCounts[i] - 1;
+				if (intervals > 1) {
+					double mean = myISISum[i] / intervals;
+					double variance = Math.max(0, myISISquareSum[i] / intervals - mean * mean);
+					result[i] = (float) (Math.sqrt(variance) / mean);
+				}
+			}
+			return result;
+		}
+	}
+
+}
@@ -3,11 +3,13 @@
  */
 package ca.nengo.model.neuron.impl;
 
+import ca.nengo.model.PreciseSpikeOutput;
 import ca.nengo.model.RealOutput;
 import ca.nengo.model.SimulationException;
 import ca.nengo.model.SimulationMode;
 import ca.nengo.model.SpikeOutput;
 import ca.nengo.model.neuron.impl.LIFSpikeGenerator;
+import ca.nengo.util.Environment;
 import ca.nengo.util.TimeSeries;
 import ca.nengo.util.TimeSeries1D;
 import junit.framework.TestCase;
@@ -176,6 +178,78 @@ public void testRunPrecise() throws SimulationException {
 		assertTrue(value + " is out of range", value > low && value < high);
 	}
 
+	public void testExact() throws SimulationException {
+		float[] current = new float[]{0f, 1.5f, 2f, 5f, 20f};
+		float[] tauRC = new float[]{0.01f, .02f};
+		float[] tauRef = new float[]{.001f, .002f};
+
+		//no discretization error, so spike counts match constant rates closely
+		for (int i = 0; i < tauRC.length; i++) {
+			for (int j = 0; j < tauRef.length; j++) {
+				LIFSpikeGenerator sg = new LIFSpikeGenerator(.0005f, tauRC[i], tauRef[j]);
+				sg.setExact(true);
+				assertTrue(sg.getExact());
+				for (int k = 0; k < current.length; k++) {
+					assertSpikesCloseToRate(sg, current[k], 1.01f);
+				}
+			}
+		}
+
+		//first threshold crossing from rest is at tauRC*ln(I/(I-1))
+		LIFSpikeGenerator sg = new LIFSpikeGenerator(.0005f, .02f, .002f);
+		sg.setExact(true);
+		sg.setMode(SimulationMode.PRECISE);
+		float spikeTime = ((PreciseSpikeOutput) sg.run(new float[]{0f, .02f}, new float[]{2f, 2f})).getSpikeTimes()[0];
+		assertEquals(.02f * (float) Math.log(2), spikeTime, 1e-6f);
+
+		//subthreshold voltage follows I(1 - exp(-t/tauRC)), with one history point per run
+		sg.setMode(SimulationMode.DEFAULT);
+		sg.reset(false);
+		sg.run(new float[]{0f, .001f, .003f}, new float[]{.5f, .8f, .8f});
+		float[] voltage = ((TimeSeries1D) sg.getHistory("V")).getValues1D();
+		assertEquals(1, voltage.length);
+		float expected = .8f + (.5f * (1 - (float) Math.exp(-.05)) - .8f) * (float) Math.exp(-.1);
+		assertEquals(expected, voltage[0], 1e-6f);
+	}
+
+	public void testRecordingOnlyProbed() throws SimulationException {
+		boolean recordingOnlyProbed = Environment.isRecordingOnlyProbed();
+		try {
+			Environment.setRecordingOnlyProbed(true);
+			LIFSpikeGenerator sg = new LIFSpikeGenerator(.0005f, .02f, .002f);
+			LIFSpikeGenerator reference = new LIFSpikeGenerator(.0005f, .02f, .002f);
+			float[] time = new float[]{0f, .002f};
+			float[] current = new float[]{1.5f, 1.5f};
+
+			//unprobed state isn't recorded, but dynamics are unaffected
+			for (int i = 0; i < 20; i++) {
+				boolean spike = ((SpikeOutput) sg.run(time, current)).getValues()[0];
+				assertEquals(((SpikeOutput) reference.run(time, current)).getValues()[0], spike);
+			}
+			assertEquals(0, sg.getHistory("V").getTimes().length);
+
+			sg.probeAdded("V");
+			sg.run(time, current);
+			assertEquals(4, sg.getHistory("V").getTimes().length);
+
+			sg.probeAdded("V");
+			sg.probeRemoved("V");
+			sg.run(time, current);
+			assertEquals(4, sg.getHistory("V").getTimes().length);
+
+			sg.probeRemoved("V");
+			sg.run(time, current);
+			assertEquals(0, sg.getHistory("V").getTimes().length);
+
+			//all states are recorded when the flag is off
+			Environment.setRecordingOnlyProbed(false);
+			sg.run(time, current);
+			assertEquals(4, sg.getHistory("V").getTimes().length);
+		} finally {
+			Environment.setRecordingOnlyProbed(recordingOnlyProbed);
+		}
+	}
+
 	private static void assertSpikesCloseToRate(LIFSpikeGenerator sg, float current, float tolerance) throws SimulationException {
 		assertSpikesCloseToRate(sg,current,tolerance,SimulationMode.DEFAULT);
 	}
@@ -0,0 +1,135 @@
+package ca.nengo.model.neuron.impl;
+
+import junit.framework.TestCase;
+import ca.nengo.model.SimulationMode;
+import ca.nengo.model.SpikeOutput;
+import ca.nengo.model.neuron.PopulationSpikeGenerator;
+import ca.nengo.model.neuron.SpikeGenerator;
+
+/**
+ * Unit tests for LIFPopulationSpikeGenerator, ALIFPopulationSpikeGenerator and
+ * IzhikevichPopulationSpikeGenerator, each against the SpikeGenerator it reproduces.
+ */
+public class PopulationSpikeGeneratorTest extends TestCase {
+
+	public void testMatchesLIF() {
+		int n = 20;
+		SpikeGenerator[] generators = new SpikeGenerator[n];
+		float[] current = new float[n];
+		for (int i = 0; i < n; i++) {
+			generators[i] = new LIFSpikeGenerator(.0005f, .02f + .001f * i, .002f, .05f * (i % 5));
+			current[i] = .5f + .25f * i;
+		}
+
+		double[][] state = checkMatches(generators, LIFPopulationSpikeGenerator.make(generators), current, .001f, 500);
+		for (int i = 0; i < n; i++) {
+			assertEquals(((LIFSpikeGenerator) generators[i]).getVoltage(), state[0][i], 0);
+		}
+	}
+
+	public void testMatchesALIF() {
+		int n = 20;
+		SpikeGenerator[] generators = new SpikeGenerator[n];
+		float[] current = new float[n];
+		for (int i = 0; i < n; i++) {
+			generators[i] = new ALIFSpikeGenerator(.002f, .02f, .1f + .01f * i, .05f * (i % 4));
+			current[i] = .5f + .25f * i;
+		}
+
+		double[][] state = checkMatches(generators, ALIFPopulationSpikeGenerator.make(generators), current, .0005f, 1000);
+		for (int i = 0; i < n; i++) {
+			assertEquals(((ALIFSpikeGenerator) generators[i]).getVoltage(), state[0][i], 0);
+		}
+	}
+
+	public void testMatchesIzhikevich() {
+		IzhikevichSpikeGenerator.Preset[] presets = new IzhikevichSpikeGenerator.Preset[]{
+				IzhikevichSpikeGenerator.Preset.REGULAR_SPIKING, IzhikevichSpikeGenerator.Preset.FAST_SPIKING,
+				IzhikevichSpikeGenerator.Preset.CHATTERING};
+		int n = 12;
+		SpikeGenerator[] generators = new SpikeGenerator[n];
+		float[] current = new float[n];
+		for (int i = 0; i < n; i++) {
+			generators[i] = new IzhikevichSpikeGenerator(presets[i % presets.length]);
+			current[i] = 5 + 2 * i;
+		}
+
+		//state is kept in double precision as in IzhikevichSpikeGenerator, so spikes don't drift apart
+		checkMatches(generators, IzhikevichPopulationSpikeGenerator.make(generators), current, .001f, 3000);
+	}
+
+	public void testReset() {
+		checkReset(LIFPopulationSpikeGenerator.make(new SpikeGenerator[]{new LIFSpikeGenerator(.0005f, .02f, .002f, .3f)}),
+				2f, new double[]{.3f, .002f});
+		checkReset(ALIFPopulationSpikeGenerator.make(new SpikeGenerator[]{new ALIFSpikeGenerator(.002f, .02f, .2f, .5f)}),
+				5f, new double[]{0, .002f, 0});
+		checkReset(IzhikevichPopulationSpikeGenerator.make(new SpikeGenerator[]{new IzhikevichSpikeGenerator(.02f, .2f, -65f, 2f, -70f)}),
+				10f, new double[]{-70f, -14f});
+	}
+
+	public void testMake() {
+		SpikeGenerator lif = new LIFSpikeGenerator(.0005f, .02f, .002f);
+		SpikeGenerator alif = new ALIFSpikeGenerator(.002f, .02f, .2f, .1f);
+		SpikeGenerator izhikevich = new IzhikevichSpikeGenerator();
+		assertNull(LIFPopulationSpikeGenerator.make(new SpikeGenerator[]{lif, alif}));
+		assertNull(ALIFPopulationSpikeGenerator.make(new SpikeGenerator[]{alif, izhikevich}));
+		assertNull(IzhikevichPopulationSpikeGenerator.make(new SpikeGenerator[]{izhikevich, lif}));
+
+		LIFSpikeGenerator rate = new LIFSpikeGenerator(.0005f, .02f, .002f);
+		rate.setMode(SimulationMode.RATE);
+		assertNull(LIFPopulationSpikeGenerator.make(new SpikeGenerator[]{rate}));
+	}
+
+	//runs the population alongside the given generators, which must give exactly the same spikes
+	private static double[][] checkMatches(SpikeGenerator[] generators, PopulationSpikeGenerator population,
+			float[] current, float dt, int steps) {
+
+		int n = generators.length;
+		assertNotNull(population);
+		assertEquals(n, population.getSize());
+		double[][] state = population.makeState();
+		assertEquals(population.getStateNames().length, state.length);
+		float[] spikes = new float[n];
+
+		int count = 0;
+		for (int step = 0; step < steps; step++) {
+			float start = step * dt;
+			float end = (step + 1) * dt;
+			population.run(current, start, end, state, spikes);
+			for (int i = 0; i < n; i++) {
+				boolean spike = ((SpikeOutput) generators[i].run(new float[]{start, end},
+						new float[]{current[i], current[i]})).getValues()[0];
+				assertEquals(spike, spikes[i] != 0);
+				assertEquals(spike ? 1f / (end - start) : 0f, spikes[i]);
+				if (spike) count++;
+			}
+		}
+		assertTrue(count > 0);
+		return state;
+	}
+
+	//the state of a single neuron must change while it runs with the given current, and return to initial values on reset
+	private static void checkReset(PopulationSpikeGenerator population, float current, double[] initial) {
+		double[][] state = population.makeState();
+		assertEquals(initial.length, state.length);
+		for (int j = 0; j < initial.length; j++) {
+			assertEquals(initial[j], state[j][0], 1e-5);
+		}
+
+		float[] spikes = new float[1];
+		for (int step = 0; step < 100; step++) {
+			population.run(new float[]{current}, step * .001f, (step+1) * .001f, state, spikes);
+		}
+		boolean changed = false;
+		for (int j = 0; j < initial.length; j++) {
+			changed |= Math.abs(state[j][0] - initial[j]) > 1e-5;
+		}
+		assertTrue(changed);
+
+		population.reset(state);
+		for (int j = 0; j < initial.length; j++) {
+			assertEquals(initial[j], state[j][0], 1e-5);
+		}
+	}
+
+}
@@ -5,6 +5,7 @@ package ca.nengo.model.neuron.impl;
 
 import org.apache.log4j.Logger;
 
+import ca.nengo.math.impl.PostfixFunction;
 import ca.nengo.model.InstantaneousOutput;
 import ca.nengo.model.RealOutput;
 import ca.nengo.model.SimulationException;
@@ -19,6 +20,7 @@ import ca.nengo.model.neuron.impl.LIFSpikeGenerator;
 import ca.nengo.model.neuron.impl.LinearSynapticIntegrator;
 import ca.nengo.model.neuron.impl.SpikeGeneratorOrigin;
 import ca.nengo.model.neuron.impl.SpikingNeuron;
+import ca.nengo.util.Environment;
 import junit.framework.TestCase;
 
 /**
@@ -61,6 +63,33 @@ public class SpikingNeuronTest extends TestCase {
 //		assertEquals(myIntegrator, myNeuron.getIntegrator());
 //	}
 
+	public void testProbeAdded() throws SimulationException {
+		boolean recordingOnlyProbed = Environment.isRecordingOnlyProbed();
+		try {
+			Environment.setRecordingOnlyProbed(true);
+			myNeuron.run(0f, .005f);
+			assertEquals(0, myNeuron.getHistory("V").getTimes().length);
+			assertEquals(0, myNeuron.getHistory("I").getTimes().length);
+			assertEquals(.005f, myNeuron.getHistory("rate").getTimes()[0], 1e-6f);
+
+			myNeuron.probeAdded("I"); //not a generator state, so V still isn't recorded
+			myNeuron.run(.005f, .01f);
+			assertEquals(0, myNeuron.getHistory("V").getTimes().length);
+			assertTrue(myNeuron.getHistory("I").getTimes().length > 0);
+
+			myNeuron.probeAdded("V");
+			myNeuron.run(.01f, .015f);
+			assertTrue(myNeuron.getHistory("V").getTimes().length > 0);
+
+			myNeuron.probeRemoved("I");
+			myNeuron.run(.015f, .02f);
+			assertEquals(0, myNeuron.getHistory("I").getTimes().length);
+			assertTrue(myNeuron.getHistory("V").getTimes().length > 0);
+		} finally {
+			Environment.setRecordingOnlyProbed(recordingOnlyProbed);
+		}
+	}
+
 	/*
 	 * Test method for 'ca.bpt.cn.model.impl.SpikingNeuron.getOrigins()'
 	 */
@@ -106,4 +135,31 @@ public class SpikingNeuronTest extends TestCase {
 		ourLogger.info(((RealOutput) output).getValues()[0]);
 	}
 
+	/*
+	 * Test method for 'ca.nengo.model.neuron.impl.SpikingNeuron.getConstantRates(float[], float[])'
+	 */
+	public void testGetConstantRates() throws StructuralException, SimulationException {
+		SpikeGenerator[] generators = new SpikeGenerator[]{new LIFSpikeGenerator(.002f, .02f, .001f),
+				new ALIFSpikeGenerator(.002f, .02f, .2f, .1f),
+				new RateFunctionSpikeGenerator(new PostfixFunction("50*x0", 1))};
+		float[] radialInputs = new float[]{-1f, -.3f, 0f, .25f, .7f, 1f};
+
+		for (SpikeGenerator generator : generators) {
+			SpikingNeuron neuron = new SpikingNeuron(new LinearSynapticIntegrator(.001f, Units.ACU), generator, 2f, 1.5f, "test");
+			float[] rates = new float[radialInputs.length];
+			assertTrue(neuron.getConstantRates(radialInputs, rates));
+
+			neuron.setMode(SimulationMode.CONSTANT_RATE);
+			for (int i = 0; i < radialInputs.length; i++) {
+				neuron.setRadialInput(radialInputs[i]);
+				neuron.run(0, 0);
+				assertEquals(((RealOutput) neuron.getOrigins()[0].getValues()).getValues()[0], rates[i]);
+			}
+		}
+
+		//synaptic input isn't accounted for
+		myIntegrator.addTermination("test", new float[]{1}, .005f, false);
+		assertFalse(myNeuron.getConstantRates(radialInputs, new float[radialInputs.length]));
+	}
+
 }
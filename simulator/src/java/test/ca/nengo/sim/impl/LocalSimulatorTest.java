@@ -0,0 +1,274 @@
+package ca.nengo.sim.impl;
+
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+
+import junit.framework.TestCase;
+import ca.nengo.math.Function;
+import ca.nengo.math.PDFTools;
+import ca.nengo.math.impl.ConstantFunction;
+import ca.nengo.model.Network;
+import ca.nengo.model.RealOutput;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.FunctionInput;
+import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.util.Environment;
+import ca.nengo.util.MU;
+import ca.nengo.util.Probe;
+import ca.nengo.util.impl.NodeThreadPool;
+
+/**
+ * Unit tests for LocalSimulator.
+ */
+public class LocalSimulatorTest extends TestCase {
+
+	private static final float DT = .001f;
+
+	private Network myNetwork;
+	private LocalSimulator mySimulator;
+	private NEFEnsemble myB;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		build();
+	}
+
+	private void build() throws StructuralException {
+		if (myNetwork != null) {
+			close();
+		}
+		myNetwork = makeNetwork();
+		myB = (NEFEnsemble) myNetwork.getNode("B");
+
+		mySimulator = new LocalSimulator();
+		mySimulator.initialize(myNetwork);
+	}
+
+	/**
+	 * @return A small network (input -> A -> B, with B recurrent) that is the same each time it is made
+	 * @throws StructuralException if the network can't be built
+	 */
+	public static Network makeNetwork() throws StructuralException {
+		PDFTools.setSeed(1);
+		Network network = new NetworkImpl();
+		NEFEnsembleFactoryImpl factory = new NEFEnsembleFactoryImpl();
+
+		FunctionInput input = new FunctionInput("input", new Function[]{new ConstantFunction(1, .5f)}, Units.UNK);
+		NEFEnsemble a = factory.make("A", 50, 1);
+		NEFEnsemble b = factory.make("B", 50, 1);
+		network.addNode(input);
+		network.addNode(a);
+		network.addNode(b);
+
+		a.addDecodedTermination("input", MU.I(1), .005f, false);
+		b.addDecodedTermination("A", MU.I(1), .005f, false);
+		b.addDecodedTermination("B", MU.I(1), .05f, false);
+		network.addProjection(input.getOrigin(FunctionInput.ORIGIN_NAME), a.getTermination("input"));
+		network.addProjection(a.getOrigin(NEFEnsemble.X), b.getTermination("A"));
+		network.addProjection(b.getOrigin(NEFEnsemble.X), b.getTermination("B"));
+
+		return network;
+	}
+
+	protected void tearDown() throws Exception {
+		close();
+		Environment.setZeroAllocation(false);
+		PDFTools.setSeed(System.currentTimeMillis());
+		super.tearDown();
+	}
+
+	public void testZeroAllocationMatchesDefault() throws SimulationException, StructuralException {
+		float[] expected = run(300);
+
+		build();
+		Environment.setZeroAllocation(true);
+		float[] actual = run(300);
+
+		assertTrue(expected[0] > .2f);
+		assertEquals(expected[0], actual[0], 1e-6f);
+	}
+
+	public void testZeroAllocationStep() throws SimulationException, StructuralException {
+		if ( !(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) ) {
+			return;
+		}
+		com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		if (!bean.isThreadAllocatedMemorySupported()) {
+			return;
+		}
+		bean.setThreadAllocatedMemoryEnabled(true);
+		long thread = Thread.currentThread().getId();
+
+		Environment.setZeroAllocation(true);
+
+		//warm up through the same loop that is measured, until the JIT compiler is done with it (the
+		//interpreter and code between compilation tiers allocate where compiled code doesn't)
+		int steps = 1000;
+		CompilationMXBean compilation = ManagementFactory.getCompilationMXBean();
+		boolean timed = compilation != null && compilation.isCompilationTimeMonitoringSupported();
+		long compilationTime = -1;
+		for (int i = 0; i < 20 || (timed && i < 100 && compilation.getTotalCompilationTime() != compilationTime); i++) {
+			compilationTime = timed ? compilation.getTotalCompilationTime() : 0;
+			step(steps);
+		}
+
+		long overhead = bean.getThreadAllocatedBytes(thread);
+		overhead = bean.getThreadAllocatedBytes(thread) - overhead;
+
+		long before = bean.getThreadAllocatedBytes(thread);
+		step(steps);
+		long allocated = bean.getThreadAllocatedBytes(thread) - before - overhead;
+
+		assertEquals(0, allocated);
+	}
+
+	public void testThreadPoolReuse() throws SimulationException, StructuralException {
+		if (!NodeThreadPool.isMultithreading()) {
+			return;
+		}
+		LocalSimulator simulator = (LocalSimulator) myNetwork.getSimulator();
+		simulator.setDisplayProgress(false);
+
+		myNetwork.run(0, .01f);
+		NodeThreadPool pool = simulator.getNodeThreadPool();
+		assertNotNull(pool);
+		myNetwork.run(0, .01f);
+		assertSame(pool, simulator.getNodeThreadPool());
+
+		//structural change
+		myB.addDecodedTermination("C", MU.I(1), .005f, false);
+		assertNull(simulator.getNodeThreadPool());
+		myNetwork.run(0, .01f);
+		assertNotSame(pool, simulator.getNodeThreadPool());
+
+		//new probe
+		pool = simulator.getNodeThreadPool();
+		simulator.addProbe("B", NEFEnsemble.X, true);
+		myNetwork.run(0, .01f);
+		assertNotSame(pool, simulator.getNodeThreadPool());
+
+		simulator.killIdleThreadPool();
+		assertNull(simulator.getNodeThreadPool());
+
+		//closed simulators keep nothing between runs, but can still run
+		myNetwork.run(0, .01f);
+		assertNotNull(simulator.getNodeThreadPool());
+		simulator.close();
+		assertNull(simulator.getNodeThreadPool());
+		myB.addDecodedTermination("D", MU.I(1), .005f, false); //no longer listening, so harmless
+		myNetwork.run(0, .01f);
+		assertNotNull(simulator.getNodeThreadPool());
+
+		//each simulator keeps its own pool
+		LocalSimulator other = new LocalSimulator();
+		other.setDisplayProgress(false);
+		myNetwork.setSimulator(other);
+		assertNull(simulator.getNodeThreadPool()); //replaced simulator is closed
+		myNetwork.run(0, .01f);
+		assertNotNull(other.getNodeThreadPool());
+		other.close();
+	}
+
+	public void testChildThreadPools() throws SimulationException, StructuralException {
+		if (!NodeThreadPool.isMultithreading()) {
+			return;
+		}
+		NetworkImpl parent = new NetworkImpl();
+		parent.addNode(myNetwork);
+		LocalSimulator simulator = (LocalSimulator) parent.getSimulator();
+		LocalSimulator child = (LocalSimulator) myNetwork.getSimulator();
+		simulator.setDisplayProgress(false);
+		child.setDisplayProgress(false);
+
+		//a nested network run on its own keeps its pool until the top-level run ends
+		((NetworkImpl) myNetwork).run(0, .01f, false);
+		assertNotNull(child.getNodeThreadPool());
+		parent.run(0, .01f);
+		assertNotNull(simulator.getNodeThreadPool());
+		assertNull(child.getNodeThreadPool());
+
+		//closing a simulator closes those of nested networks
+		myNetwork.run(0, .01f);
+		assertNotNull(child.getNodeThreadPool());
+		simulator.close();
+		assertNull(simulator.getNodeThreadPool());
+		assertNull(child.getNodeThreadPool());
+	}
+
+	public void testBatching() throws SimulationException, StructuralException {
+		BatchSchedule schedule = new BatchSchedule(myNetwork.getNodes(), myNetwork.getProjections(), new ArrayList<Probe>(), .004f);
+		assertEquals(3, schedule.getNumClusters()); //all terminations are slow
+		assertEquals(2, schedule.getBatchedProjections().length); //B -> B stays within its cluster
+
+		//with one cluster there is no lag
+		float[][] expected = runWithProbe(1, 1f);
+		build();
+		float[][] actual = runWithProbe(5, 1f);
+		assertEquals(expected.length, actual.length);
+		assertEquals(expected[expected.length-1][0], actual[actual.length-1][0], 1e-6f);
+
+		//feedforward network with a slow projection between A and B
+		build();
+		myNetwork.removeProjection(myB.getTermination("B"));
+		expected = runWithProbe(1, .04f);
+		build();
+		myNetwork.removeProjection(myB.getTermination("B"));
+		actual = runWithProbe(5, .04f);
+		assertEquals(expected.length, actual.length);
+		assertEquals(.5f, mean(expected, 200), .1f);
+		assertEquals(mean(expected, 200), mean(actual, 200), .02f);
+
+		//the executor that runs the groups is kept between runs
+		if (NodeThreadPool.isMultithreading()) {
+			LocalSimulator simulator = (LocalSimulator) myNetwork.getSimulator();
+			ExecutorService executor = simulator.getBatchExecutor();
+			assertNotNull(executor);
+			myNetwork.run(0, .01f);
+			assertSame(executor, simulator.getBatchExecutor());
+			simulator.close();
+			assertNull(simulator.getBatchExecutor());
+			assertTrue(executor.isShutdown());
+		}
+	}
+
+	private float[][] runWithProbe(int batchSteps, float minTau) throws SimulationException, StructuralException {
+		myB.getTermination("A").setTau(.05f);
+		LocalSimulator simulator = (LocalSimulator) myNetwork.getSimulator();
+		simulator.setBatching(batchSteps, minTau);
+		simulator.setDisplayProgress(false);
+		Probe probe = simulator.addProbe("B", NEFEnsemble.X, true);
+		myNetwork.run(0, .3f);
+		return probe.getData().getValues();
+	}
+
+	private static float mean(float[][] values, int from) {
+		float sum = 0;
+		for (int i = from; i < values.length; i++) {
+			sum += values[i][0];
+		}
+		return sum / (values.length - from);
+	}
+
+	private float[] run(int steps) throws SimulationException, StructuralException {
+		step(steps);
+		return ((RealOutput) myB.getOrigin(NEFEnsemble.X).getValues()).getValues().clone();
+	}
+
+	private void close() {
+		mySimulator.close();
+		((LocalSimulator) myNetwork.getSimulator()).close();
+	}
+
+	private void step(int steps) throws SimulationException {
+		for (int i = 0; i < steps; i++) {
+			mySimulator.step(i * DT, (i+1) * DT);
+		}
+	}
+
+}
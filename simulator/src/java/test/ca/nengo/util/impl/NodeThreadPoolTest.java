@@ -0,0 +1,234 @@
+package ca.nengo.util.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+import ca.nengo.math.Function;
+import ca.nengo.math.PDFTools;
+import ca.nengo.math.impl.ConstantFunction;
+import ca.nengo.model.Network;
+import ca.nengo.model.Node;
+import ca.nengo.model.RealOutput;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.FunctionInput;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.sim.impl.LocalSimulator;
+import ca.nengo.sim.impl.LocalSimulatorTest;
+
+/**
+ * Unit tests for NodeThreadPool and its StepBarriers.
+ */
+public class NodeThreadPoolTest extends TestCase {
+
+	private StepBarrier.Factory myOriginalFactory;
+	private int myOriginalNumThreads;
+	private boolean myOriginalWorkStealing;
+	private boolean myOriginalDependencyScheduling;
+	private List<LocalSimulator> mySimulators;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		myOriginalFactory = NodeThreadPool.getBarrierFactory();
+		myOriginalNumThreads = NodeThreadPool.getNumJavaThreads();
+		myOriginalWorkStealing = NodeThreadPool.isWorkStealing();
+		myOriginalDependencyScheduling = NodeThreadPool.isDependencyScheduling();
+		mySimulators = new ArrayList<LocalSimulator>();
+	}
+
+	protected void tearDown() throws Exception {
+		for (LocalSimulator simulator : mySimulators) {
+			simulator.close();
+		}
+		NodeThreadPool.setBarrierFactory(myOriginalFactory);
+		NodeThreadPool.setNumJavaThreads(myOriginalNumThreads);
+		NodeThreadPool.setWorkStealing(myOriginalWorkStealing);
+		NodeThreadPool.setDependencyScheduling(myOriginalDependencyScheduling);
+		PDFTools.setSeed(System.currentTimeMillis());
+		super.tearDown();
+	}
+
+	public void testMonitorBarrier() throws Exception {
+		checkBarrier(new MonitorStepBarrier());
+	}
+
+	public void testSpinParkBarrier() throws Exception {
+		checkBarrier(new SpinParkStepBarrier());
+		checkBarrier(new SpinParkStepBarrier(0)); //always parks
+	}
+
+	public void testBarriersGiveSameResult() throws SimulationException, StructuralException {
+		NodeThreadPool.setNumJavaThreads(3);
+
+		NodeThreadPool.setBarrierFactory(new MonitorStepBarrier.Factory());
+		float[] expected = simulate();
+
+		NodeThreadPool.setBarrierFactory(new SpinParkStepBarrier.Factory(100));
+		float[] actual = simulate();
+
+		assertTrue(expected[0] > .2f);
+		assertEquals(expected[0], actual[0], 1e-6f);
+	}
+
+	public void testPartitionNodes() throws StructuralException {
+		NEFEnsembleFactoryImpl factory = new NEFEnsembleFactoryImpl();
+		Node[] nodes = new Node[7];
+		nodes[0] = factory.make("big", 300, 1);
+		for (int i = 1; i < 4; i++) {
+			nodes[i] = factory.make("small" + i, 100, 1);
+		}
+		for (int i = 4; i < nodes.length; i++) {
+			nodes[i] = new FunctionInput("input" + i, new Function[]{new ConstantFunction(1, 0)}, Units.UNK);
+		}
+
+		int[] bounds = NodeThreadPool.partitionNodes(nodes, 2);
+		assertEquals(3, bounds.length);
+		assertEquals(0, bounds[0]);
+		assertEquals(nodes.length, bounds[2]);
+
+		long[] loads = new long[2];
+		for (int j = 0; j < 2; j++) {
+			for (int i = bounds[j]; i < bounds[j+1]; i++) {
+				loads[j] += NodeThreadPool.estimateCost(nodes[i]);
+			}
+		}
+		assertEquals(302, Math.max(loads[0], loads[1])); //an equal-count split would put 500 on one thread
+		assertEquals(301, Math.min(loads[0], loads[1]));
+	}
+
+	public void testWorkStealingGivesSameResult() throws SimulationException, StructuralException {
+		NodeThreadPool.setNumJavaThreads(3);
+
+		float[] expected = simulate();
+
+		NodeThreadPool.setWorkStealing(true);
+		float[] actual = simulate();
+
+		assertEquals(expected[0], actual[0], 1e-6f);
+	}
+
+	public void testDependencySchedulingGivesSameResult() throws SimulationException, StructuralException {
+		NodeThreadPool.setNumJavaThreads(3);
+
+		float[] expected = simulate();
+
+		NodeThreadPool.setDependencyScheduling(true);
+		float[] actual = simulate();
+
+		assertEquals(expected[0], actual[0], 1e-6f);
+	}
+
+	public void testDependencySchedule() throws SimulationException, StructuralException {
+		Network network = LocalSimulatorTest.makeNetwork();
+		Node[] nodes = new Node[]{network.getNode("input"), network.getNode("A"), network.getNode("B")};
+		DependencySchedule schedule = new DependencySchedule(nodes, network.getProjections());
+
+		assertEquals(6, schedule.getNumItems());
+		assertEquals(1, schedule.getNumDependencies(0)); //output read
+		assertEquals(2, schedule.getNumDependencies(1)); //input set and output read
+		assertEquals(3, schedule.getNumDependencies(2)); //input set, and recurrent input set and output read
+
+		schedule.reset();
+		schedule.run(0, .001f); //a single thread must be able to take every item in order
+
+		try {
+			new DependencySchedule(new Node[]{nodes[0], nodes[1]}, network.getProjections());
+			fail("Should have thrown exception for projection to a node that isn't scheduled");
+		} catch (StructuralException e) {} // exception is expected
+	}
+
+	public void testDependencyScheduleAbort() throws Exception {
+		Network network = LocalSimulatorTest.makeNetwork();
+		Node[] nodes = new Node[]{network.getNode("input"), network.getNode("A"), network.getNode("B")};
+		final DependencySchedule schedule = new DependencySchedule(nodes, network.getProjections());
+
+		//the first projection fails, so A and the input are never published
+		FunctionInput input = (FunctionInput) nodes[0];
+		input.setFunctions(new Function[]{new ConstantFunction(1, .5f), new ConstantFunction(1, .5f)});
+		input.run(0, .001f);
+
+		schedule.reset();
+		try {
+			schedule.run(0, .001f);
+			fail("Should have thrown exception for input of the wrong dimension");
+		} catch (SimulationException e) {} // exception is expected
+		assertTrue(schedule.isAborted());
+
+		//another thread taking work from the same step must give up rather than wait forever
+		final AtomicInteger failures = new AtomicInteger();
+		Thread thread = new Thread() {
+			public void run() {
+				try {
+					schedule.run(0, .001f);
+				} catch (SimulationException e) {
+					failures.incrementAndGet();
+				}
+			}
+		};
+		thread.start();
+		thread.join(5000);
+		assertFalse(thread.isAlive());
+		assertEquals(1, failures.get());
+
+		schedule.reset();
+		assertFalse(schedule.isAborted());
+	}
+
+	//every thread counts each phase; no thread may see a count from a phase that hasn't finished
+	private void checkBarrier(final StepBarrier barrier) throws Exception {
+		final int numThreads = 4;
+		final int numPhases = 500;
+		final AtomicInteger count = new AtomicInteger();
+		final AtomicInteger errors = new AtomicInteger();
+
+		Thread[] threads = new Thread[numThreads];
+		for (int i = 0; i < numThreads; i++) {
+			threads[i] = new Thread() {
+				public void run() {
+					try {
+						barrier.threadWait();
+						for (int phase = 0; phase < numPhases; phase++) {
+							int c = count.incrementAndGet();
+							if (c <= phase * numThreads || c > (phase+1) * numThreads) {
+								errors.incrementAndGet();
+							}
+							barrier.threadFinished();
+						}
+					} catch (InterruptedException e) {
+					}
+				}
+			};
+		}
+		barrier.initialize(threads);
+		for (int i = 0; i < numThreads; i++) {
+			threads[i].start();
+		}
+
+		for (int phase = 0; phase < numPhases; phase++) {
+			barrier.startPhase();
+			assertEquals((phase+1) * numThreads, count.get());
+		}
+
+		for (int i = 0; i < numThreads; i++) {
+			threads[i].interrupt();
+		}
+		barrier.release();
+		for (int i = 0; i < numThreads; i++) {
+			threads[i].join(5000);
+			assertFalse(threads[i].isAlive());
+		}
+		assertEquals(0, errors.get());
+	}
+
+	private float[] simulate() throws SimulationException, StructuralException {
+		Network network = LocalSimulatorTest.makeNetwork();
+		mySimulators.add((LocalSimulator) network.getSimulator());
+		network.run(0, .2f);
+		return ((RealOutput) ((NEFEnsemble) network.getNode("B")).getOrigin(NEFEnsemble.X).getValues()).getValues().clone();
+	}
+
+}
@@ -0,0 +1,55 @@
+package ca.nengo.util.impl;
+
+import ca.nengo.util.Environment;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for ProbedStates.
+ */
+public class ProbedStatesTest extends TestCase {
+
+	public void testAddRemove() {
+		ProbedStates states = new ProbedStates();
+		assertFalse(states.isAnyProbed());
+		assertFalse(states.isProbed("V"));
+
+		states.add("V");
+		states.add("V");
+		assertTrue(states.isAnyProbed());
+		assertTrue(states.isProbed("V"));
+		assertFalse(states.isProbed("N"));
+
+		states.remove("V");
+		assertTrue(states.isProbed("V"));
+		states.remove("V");
+		assertFalse(states.isProbed("V"));
+		assertFalse(states.isAnyProbed());
+
+		states.remove("V"); //more removals than additions are ignored
+		assertFalse(states.isProbed("V"));
+	}
+
+	public void testIsRecording() {
+		boolean recordingOnlyProbed = Environment.isRecordingOnlyProbed();
+		try {
+			ProbedStates states = new ProbedStates();
+			states.add("V");
+
+			Environment.setRecordingOnlyProbed(false);
+			assertTrue(ProbedStates.isRecording(null));
+			assertTrue(ProbedStates.isRecording(null, "V"));
+			assertTrue(ProbedStates.isRecording(states, "N"));
+
+			Environment.setRecordingOnlyProbed(true);
+			assertFalse(ProbedStates.isRecording(null));
+			assertFalse(ProbedStates.isRecording(null, "V"));
+			assertTrue(ProbedStates.isRecording(states));
+			assertTrue(ProbedStates.isRecording(states, "V"));
+			assertFalse(ProbedStates.isRecording(states, "N"));
+			assertFalse(ProbedStates.isRecording(new ProbedStates()));
+		} finally {
+			Environment.setRecordingOnlyProbed(recordingOnlyProbed);
+		}
+	}
+
+}
@@ -0,0 +1,70 @@
+package ca.nengo.util.impl;
+
+import ca.nengo.TestUtil;
+import ca.nengo.math.PDFTools;
+import ca.nengo.util.VectorGenerator;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for QuasiRandomHypersphereVG.
+ */
+public class QuasiRandomHypersphereVGTest extends TestCase {
+
+	public void testGenVectors() {
+		for (int dim = 1; dim <= 6; dim++) {
+			float[][] v = new QuasiRandomHypersphereVG(true, 2f).genVectors(50, dim);
+			assertEquals(50, v.length);
+			for (float[] vector : v) {
+				assertEquals(dim, vector.length);
+				TestUtil.assertClose(2f, norm(vector), .0001f);
+			}
+
+			v = new QuasiRandomHypersphereVG(false, 2f).genVectors(50, dim);
+			for (float[] vector : v) {
+				assertTrue(norm(vector) <= 2f);
+			}
+		}
+
+		float[][] v = new QuasiRandomHypersphereVG(true, 1f).genVectors(10, 1);
+		float sum = 0;
+		for (float[] vector : v) {
+			sum += vector[0];
+		}
+		assertEquals(0f, sum, 1e-6f);
+	}
+
+	public void testUniformity() {
+		PDFTools.setSeed(1);
+		int n = 500;
+		float quasiError = 0;
+		float randomError = 0;
+		for (int dim = 2; dim <= 4; dim++) {
+			for (int surface = 0; surface < 2; surface++) {
+				//mean of x0^2 over the surface is 1/dim and over the volume is 1/(dim+2)
+				float expected = 1f / (surface == 1 ? dim : dim + 2);
+				quasiError += Math.abs(meanSquare(new QuasiRandomHypersphereVG(surface == 1, 1f), n, dim) - expected);
+				randomError += Math.abs(meanSquare(new RandomHypersphereVG(surface == 1, 1f, 0f), n, dim) - expected);
+			}
+		}
+		assertTrue(quasiError < .02f);
+		assertTrue(quasiError < randomError);
+	}
+
+	private static float meanSquare(VectorGenerator vg, int n, int dim) {
+		float[][] v = vg.genVectors(n, dim);
+		double sum = 0;
+		for (float[] vector : v) {
+			sum += vector[0] * vector[0];
+		}
+		return (float) (sum / n);
+	}
+
+	private static float norm(float[] vector) {
+		double sum = 0;
+		for (float element : vector) {
+			sum += element * element;
+		}
+		return (float) Math.sqrt(sum);
+	}
+
+}